@@ -0,0 +1,109 @@
+package com.nizar.atm.benchmark;
+
+import com.nizar.atm.model.Money;
+import com.nizar.atm.service.ATMService;
+import com.nizar.atm.service.impl.ATMServiceImpl;
+import com.nizar.atm.service.session.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@link ATMService} operations, each thread acting as one terminal with its own
+ * session, for a single terminal and for one terminal per core.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public abstract class ATMServiceBenchmark {
+    private static final Money ONE_CENT = Money.ofCents(1);
+
+    @State(Scope.Benchmark)
+    public static class Service {
+        @Param({"10000", "1000000"})
+        public int customers;
+
+        ATMService atmService;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            BenchmarkDatabase.open(customers);
+            atmService = new ATMServiceImpl();
+        }
+    }
+
+    /**
+     * One terminal per benchmark thread: a session logged in as the first customer of the
+     * thread's slice, plus a spare session for the login benchmark.
+     */
+    @State(Scope.Thread)
+    public static class Terminal {
+        ATMService atmService;
+        Session session;
+        Session loginSession;
+        long customer;
+
+        @Setup(Level.Trial)
+        public void setUp(Service service, ThreadSlice slice) {
+            atmService = service.atmService;
+            customer = slice.first();
+            session = atmService.openSession();
+            loginSession = atmService.openSession();
+            expectSuccess(atmService.login(session, BenchmarkDatabase.customerName(customer), BenchmarkDatabase.PIN));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            atmService.closeSession(session);
+            atmService.closeSession(loginSession);
+        }
+    }
+
+    @Benchmark
+    public String loginLogout(Terminal terminal, ThreadSlice slice) {
+        expectSuccess(terminal.atmService.login(terminal.loginSession, BenchmarkDatabase.customerName(slice.next()),
+                BenchmarkDatabase.PIN));
+        return expectSuccess(terminal.atmService.logout(terminal.loginSession));
+    }
+
+    @Benchmark
+    public String withdraw(Terminal terminal) {
+        return expectSuccess(terminal.atmService.withdraw(terminal.session, ONE_CENT));
+    }
+
+    @Benchmark
+    public String transfer(Terminal terminal, ThreadSlice slice) {
+        long recipient = slice.nextOtherThan(terminal.customer);
+        return expectSuccess(terminal.atmService.transfer(terminal.session, BenchmarkDatabase.accountNumber(recipient), ONE_CENT));
+    }
+
+    private static String expectSuccess(String response) {
+        if (response.startsWith("Error")) {
+            throw new IllegalStateException(response);
+        }
+        return response;
+    }
+
+    @Threads(1)
+    public static class SingleThreaded extends ATMServiceBenchmark {
+    }
+
+    @Threads(Threads.MAX)
+    public static class MultiThreaded extends ATMServiceBenchmark {
+    }
+}
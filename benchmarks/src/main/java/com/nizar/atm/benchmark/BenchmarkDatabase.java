@@ -0,0 +1,92 @@
+package com.nizar.atm.benchmark;
+
+import com.nizar.atm.config.DatabaseManager;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+/**
+ * Seeds a throwaway DuckDB database with a fixed number of customers for benchmarking.
+ *
+ * <p>Seeded customers are derived from their index, so benchmarks can pick a random customer
+ * without holding millions of ids in memory: customer {@code i} has id {@code new UUID(0, i)},
+ * name {@code customer-i}, account number {@code 8000000000000000 + i} and PIN {@value #PIN}.
+ */
+public final class BenchmarkDatabase {
+    public static final String PIN = "123456";
+    public static final String INITIAL_BALANCE = "1000000000.00";
+
+    private static final long ACCOUNT_NUMBER_BASE = 8_000_000_000_000_000L;
+
+    private static final String SEED_SQL = """
+        INSERT INTO customers (id, name, account_number, pin_code, balance, status)
+        SELECT CAST(printf('00000000-0000-0000-0000-%012x', i) AS UUID),
+               'customer-' || i,
+               CAST(? + i AS VARCHAR),
+               ?,
+               CAST(? AS DECIMAL(15,2)),
+               'ACTIVE'
+        FROM range(?) AS t(i)
+    """;
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Points the application at a fresh database file with {@code customers} seeded rows and
+     * returns its {@link DatabaseManager}. Must run before anything else touches the database,
+     * since {@link DatabaseManager} is a per-JVM singleton (JMH forks a JVM per trial).
+     */
+    public static DatabaseManager open(int customers) throws IOException, SQLException {
+        DatabaseManager dbManager = create();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement seed = conn.prepareStatement(SEED_SQL)) {
+            seed.setLong(1, ACCOUNT_NUMBER_BASE);
+            seed.setString(2, PIN);
+            seed.setString(3, INITIAL_BALANCE);
+            seed.setLong(4, customers);
+            seed.executeUpdate();
+
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM customers")) {
+                rs.next();
+                if (rs.getLong(1) != customers) {
+                    throw new IllegalStateException("Expected " + customers + " customers, found " + rs.getLong(1));
+                }
+            }
+        }
+        return dbManager;
+    }
+
+    /**
+     * Points the application at a fresh, empty database file and returns its
+     * {@link DatabaseManager}, for callers that seed customers themselves.
+     */
+    public static DatabaseManager create() throws IOException {
+        Path dir = Files.createTempDirectory("atm-bench-");
+        dir.toFile().deleteOnExit();
+        System.setProperty("db.path", dir.resolve("atm-bench.db").toString());
+        System.setProperty("db.env", "test");
+        return DatabaseManager.getInstance();
+    }
+
+    public static UUID customerId(long index) {
+        return new UUID(0L, index);
+    }
+
+    public static String customerName(long index) {
+        return "customer-" + index;
+    }
+
+    public static BigInteger accountNumber(long index) {
+        return BigInteger.valueOf(ACCOUNT_NUMBER_BASE + index);
+    }
+}
@@ -0,0 +1,126 @@
+package com.nizar.atm.benchmark;
+
+import com.nizar.atm.cli.Command;
+import com.nizar.atm.cli.CommandReader;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.service.response.ResponseBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-command cost of the terminal's input parsing and response formatting, without the database:
+ * each operation reads one scripted {@code withdraw} or {@code transfer} line, parses its arguments
+ * and formats the success response.
+ *
+ * <p>{@code splitAndFormat} is the way the terminal used to do it (a {@link Scanner}, a regex split,
+ * {@link BigDecimal} arguments and {@link String#format}); {@code tokenizeAndBuild} uses
+ * {@link CommandReader} and {@link ResponseBuilder}. Run with the GC profiler to see the bytes
+ * allocated per command ({@code gc.alloc.rate.norm}):
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar CommandBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandBenchmark {
+    private static final String SCRIPT = "withdraw 20.00\ntransfer 8712143069253745 12.50\n";
+    private static final BigDecimal DECIMAL_BALANCE = new BigDecimal("1234.56");
+    private static final Money BALANCE = Money.ofCents(123456);
+
+    private Scanner scanner;
+    private CommandReader reader;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        scanner = new Scanner(new ScriptReader(SCRIPT));
+        reader = new CommandReader(new ScriptReader(SCRIPT));
+    }
+
+    @Benchmark
+    public String splitAndFormat() {
+        String[] parts = scanner.nextLine().trim().split("\\s+");
+        switch (parts[0].toLowerCase()) {
+            case "withdraw": {
+                BigDecimal amount = new BigDecimal(parts[1]);
+                return String.format("Withdrawal successful!\nNew balance: $%.2f", DECIMAL_BALANCE.subtract(amount));
+            }
+            case "transfer": {
+                BigInteger account = new BigInteger(parts[1]);
+                BigDecimal amount = new BigDecimal(parts[2]);
+                return account.signum() > 0
+                        ? String.format("Transfer successful!\nNew balance: $%.2f", DECIMAL_BALANCE.subtract(amount))
+                        : null;
+            }
+            default:
+                throw new IllegalStateException("Unexpected command " + parts[0]);
+        }
+    }
+
+    @Benchmark
+    public String tokenizeAndBuild() throws IOException {
+        reader.next();
+        Command command = reader.command();
+        switch (command) {
+            case WITHDRAW: {
+                Money amount = reader.amount(1);
+                return ResponseBuilder.start().append("Withdrawal successful!\nNew balance: $")
+                        .append(BALANCE.minus(amount)).build();
+            }
+            case TRANSFER: {
+                long account = reader.number(1);
+                Money amount = reader.amount(2);
+                return account > 0
+                        ? ResponseBuilder.start().append("Transfer successful!\nNew balance: $")
+                                .append(BALANCE.minus(amount)).build()
+                        : null;
+            }
+            default:
+                throw new IllegalStateException("Unexpected command " + command);
+        }
+    }
+
+    /**
+     * Endless input that repeats a script.
+     */
+    static final class ScriptReader extends Reader {
+        private final char[] script;
+        private int position;
+
+        ScriptReader(String script) {
+            this.script = script.toCharArray();
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            int n = Math.min(length, script.length - position);
+            System.arraycopy(script, position, buffer, offset, n);
+            position = (position + n) % script.length;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
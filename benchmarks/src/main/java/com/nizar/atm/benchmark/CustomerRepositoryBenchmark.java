@@ -0,0 +1,123 @@
+package com.nizar.atm.benchmark;
+
+import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.CustomerStatus;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.repository.CustomerRepository;
+import com.nizar.atm.repository.impl.CustomerRepositoryImpl;
+import com.nizar.atm.repository.impl.JournaledCustomerRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot-path repository calls against a seeded database, with balance changes committed to the
+ * customers table or made durable in the balance journal. Throughput and sampled latency are
+ * reported for a single thread and for one thread per core.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public abstract class CustomerRepositoryBenchmark {
+    private static final Money ONE_CENT = Money.ofCents(1);
+
+    @State(Scope.Benchmark)
+    public static class Repository {
+        @Param({"10000", "1000000"})
+        public int customers;
+
+        @Param({"false", "true"})
+        public boolean journaled;
+
+        CustomerRepository repository;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            BenchmarkDatabase.open(customers);
+            repository = new CustomerRepositoryImpl();
+            if (journaled) {
+                repository = new JournaledCustomerRepository(repository);
+            }
+        }
+    }
+
+    @Benchmark
+    public Optional<Customer> findById(Repository db, ThreadSlice slice) throws Exception {
+        return db.repository.findById(BenchmarkDatabase.customerId(slice.next()));
+    }
+
+    @Benchmark
+    public Optional<Customer> findByName(Repository db, ThreadSlice slice) throws Exception {
+        return db.repository.findByName(BenchmarkDatabase.customerName(slice.next()));
+    }
+
+    @Benchmark
+    public Optional<Customer> findByAccountNumber(Repository db, ThreadSlice slice) throws Exception {
+        return db.repository.findByAccountNumber(BenchmarkDatabase.accountNumber(slice.next()));
+    }
+
+    @Benchmark
+    public void updateBalance(Repository db, ThreadSlice slice) throws Exception {
+        db.repository.updateBalance(BenchmarkDatabase.customerId(slice.next()), Money.parse(BenchmarkDatabase.INITIAL_BALANCE));
+    }
+
+    @Benchmark
+    public Optional<Money> debit(Repository db, ThreadSlice slice) throws Exception {
+        return db.repository.debit(BenchmarkDatabase.customerId(slice.next()), ONE_CENT);
+    }
+
+    @Benchmark
+    public Optional<Money> transfer(Repository db, ThreadSlice slice) throws Exception {
+        long sender = slice.next();
+        long recipient = slice.nextOtherThan(sender);
+        return db.repository.transfer(BenchmarkDatabase.customerId(sender), BenchmarkDatabase.customerId(recipient), ONE_CENT);
+    }
+
+    @Benchmark
+    public Customer saveExisting(Repository db, ThreadSlice slice) throws Exception {
+        long index = slice.next();
+        return db.repository.save(Customer.builder()
+                .id(BenchmarkDatabase.customerId(index))
+                .name(BenchmarkDatabase.customerName(index))
+                .accountNumber(BenchmarkDatabase.accountNumber(index))
+                .pinCode(BenchmarkDatabase.PIN)
+                .balance(Money.parse(BenchmarkDatabase.INITIAL_BALANCE))
+                .status(CustomerStatus.ACTIVE)
+                .build());
+    }
+
+    @Benchmark
+    public Customer saveNew(Repository db) throws Exception {
+        UUID id = UUID.randomUUID();
+        return db.repository.save(Customer.builder()
+                .name("bench-" + id)
+                .pinCode(BenchmarkDatabase.PIN)
+                .balance(Money.ZERO)
+                .status(CustomerStatus.ACTIVE)
+                .build());
+    }
+
+    @Threads(1)
+    public static class SingleThreaded extends CustomerRepositoryBenchmark {
+    }
+
+    @Threads(Threads.MAX)
+    public static class MultiThreaded extends CustomerRepositoryBenchmark {
+    }
+}
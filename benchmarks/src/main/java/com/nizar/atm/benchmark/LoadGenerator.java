@@ -0,0 +1,392 @@
+package com.nizar.atm.benchmark;
+
+import com.nizar.atm.config.DatabaseManager;
+import com.nizar.atm.metrics.LatencyHistogram;
+import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.CustomerStatus;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.repository.CustomerRepository;
+import com.nizar.atm.repository.TransactionRepository;
+import com.nizar.atm.repository.impl.CustomerRepositoryImpl;
+import com.nizar.atm.repository.impl.ShardedCustomerRepository;
+import com.nizar.atm.repository.impl.TransactionRepositoryImpl;
+import com.nizar.atm.service.ATMService;
+import com.nizar.atm.service.admission.AdmissionController;
+import com.nizar.atm.service.impl.ATMServiceImpl;
+import com.nizar.atm.service.impl.AdmissionControlledATMService;
+import com.nizar.atm.service.impl.CustomerImportServiceImpl;
+import com.nizar.atm.service.impl.CustomerServiceImpl;
+import com.nizar.atm.service.impl.DebtServiceImpl;
+import com.nizar.atm.service.impl.StatementServiceImpl;
+import com.nizar.atm.service.lock.AccountLockManager;
+import com.nizar.atm.service.session.Session;
+import com.nizar.atm.service.session.SessionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Soak test for {@link ATMServiceImpl}: seeds a fresh database with {@code --customers} customers,
+ * then runs {@code --terminals} simulated terminals, each on a virtual thread with a session of its
+ * own, for {@code --duration} seconds. A logged-out terminal logs in as a customer picked by
+ * {@link ZipfSampler}; a logged-in one withdraws, transfers to another Zipf-picked customer or logs
+ * out, weighted by {@code --mix}, and waits an exponentially distributed think time averaging
+ * {@code --think-ms} between calls.
+ *
+ * <p>Prints the throughput every {@code --report-interval} seconds and, at the end, per-operation
+ * counts, rates and latency percentiles, with calls turned away by admission control counted as
+ * busy rather than as errors. Then it checks that the customers' balances add up to
+ * what they were seeded with less the successful withdrawals, and exits with status 1 if money was
+ * created or lost. Settings in {@code database.properties} apply as usual and can be overridden
+ * with {@code -Ddb.*} (for example {@code -Ddb.shards.count=4}); only the database path is fixed.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.nizar.atm.benchmark.LoadGenerator \
+ *     --customers 100000 --terminals 5000 --duration 600 --zipf 1.0
+ * </pre>
+ */
+public final class LoadGenerator {
+    private static final String USAGE = "Usage: LoadGenerator [--customers N] [--terminals N] [--duration SECONDS]"
+            + " [--think-ms MS] [--zipf EXPONENT] [--mix withdraw=W,transfer=T,logout=L] [--balance AMOUNT]"
+            + " [--max-amount AMOUNT] [--report-interval SECONDS] [--seed N]";
+    private static final String DECLINED = "Error: Insufficient funds";
+    private static final int SEED_BATCH = 100_000;
+    // Terminals record into one of these stripes, so thousands of them don't contend on one lock
+    private static final int STRIPES = 64;
+
+    enum Operation { LOGIN, WITHDRAW, TRANSFER, LOGOUT }
+
+    private final int customers;
+    private final int terminals;
+    private final long durationSeconds;
+    private final long thinkMillis;
+    private final double zipfExponent;
+    private final int[] mix = {60, 30, 10};
+    private final Money balance;
+    private final Money maxAmount;
+    private final long reportIntervalSeconds;
+    private final long seed;
+
+    private final OperationStats[][] stats = new OperationStats[STRIPES][Operation.values().length];
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder withdrawnCents = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private ATMService atmService;
+    private ZipfSampler accounts;
+
+    private LoadGenerator(String[] args) {
+        int customers = 10_000;
+        int terminals = 1_000;
+        long durationSeconds = 60;
+        long thinkMillis = 100;
+        double zipfExponent = 1.0;
+        Money balance = Money.parse("10000.00");
+        Money maxAmount = Money.parse("50.00");
+        long reportIntervalSeconds = 10;
+        long seed = 42;
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException(args[i]);
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--customers" -> customers = Integer.parseInt(value);
+                case "--terminals" -> terminals = Integer.parseInt(value);
+                case "--duration" -> durationSeconds = Long.parseLong(value);
+                case "--think-ms" -> thinkMillis = Long.parseLong(value);
+                case "--zipf" -> zipfExponent = Double.parseDouble(value);
+                case "--mix" -> parseMix(value);
+                case "--balance" -> balance = Money.parse(value);
+                case "--max-amount" -> maxAmount = Money.parse(value);
+                case "--report-interval" -> reportIntervalSeconds = Long.parseLong(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                default -> throw new IllegalArgumentException(args[i - 1]);
+            }
+        }
+        if (customers < 2 || terminals < 1 || durationSeconds < 1 || thinkMillis < 0 || zipfExponent < 0
+                || balance.isNegative() || !maxAmount.isPositive() || reportIntervalSeconds < 1) {
+            throw new IllegalArgumentException("out of range");
+        }
+        this.customers = customers;
+        this.terminals = terminals;
+        this.durationSeconds = durationSeconds;
+        this.thinkMillis = thinkMillis;
+        this.zipfExponent = zipfExponent;
+        this.balance = balance;
+        this.maxAmount = maxAmount;
+        this.reportIntervalSeconds = reportIntervalSeconds;
+        this.seed = seed;
+        for (OperationStats[] stripe : stats) {
+            for (int i = 0; i < stripe.length; i++) {
+                stripe[i] = new OperationStats();
+            }
+        }
+    }
+
+    private void parseMix(String value) {
+        int[] weights = new int[mix.length];
+        for (String part : value.split(",")) {
+            String[] weight = part.split("=", 2);
+            if (weight.length != 2) {
+                throw new IllegalArgumentException(part);
+            }
+            Operation operation = Operation.valueOf(weight[0].trim().toUpperCase());
+            if (operation == Operation.LOGIN || Integer.parseInt(weight[1].trim()) < 0) {
+                throw new IllegalArgumentException(part);
+            }
+            weights[operation.ordinal() - 1] = Integer.parseInt(weight[1].trim());
+        }
+        if (weights[0] + weights[1] + weights[2] == 0) {
+            throw new IllegalArgumentException(value);
+        }
+        System.arraycopy(weights, 0, mix, 0, mix.length);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator;
+        try {
+            generator = new LoadGenerator(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(USAGE + " (" + e.getMessage() + ")");
+            return;
+        }
+        System.exit(generator.run() ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        DatabaseManager dbManager = BenchmarkDatabase.create();
+        long started = System.nanoTime();
+        seed(dbManager);
+        System.out.printf("Seeded %d customers with $%s each in %d ms%n", customers, balance,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+        // Built by hand rather than with ATMServiceImpl() to keep the customer service for the balance check
+        TransactionRepository ledger = new TransactionRepositoryImpl();
+        CustomerServiceImpl customerService = new CustomerServiceImpl(ledger);
+        atmService = new ATMServiceImpl(customerService, new StatementServiceImpl(ledger), new CustomerImportServiceImpl(),
+                new DebtServiceImpl(), new SessionManager(), new AccountLockManager());
+        if (dbManager.getProperty("db.admission.enabled", "true").equals("true")) {
+            atmService = new AdmissionControlledATMService(atmService, AdmissionController.create(dbManager, null));
+        }
+        accounts = new ZipfSampler(customers, zipfExponent);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        Thread reporter = Thread.ofPlatform().daemon().name("load-reporter").start(this::reportProgress);
+        started = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            SplittableRandom seeds = new SplittableRandom(seed);
+            for (int i = 0; i < terminals; i++) {
+                int terminal = i;
+                SplittableRandom random = seeds.split();
+                executor.execute(() -> runTerminal(terminal, random, deadline));
+            }
+        }
+        long elapsedNanos = System.nanoTime() - started;
+        reporter.interrupt();
+
+        printSummary(elapsedNanos);
+        boolean balanced = checkBalances(customerService);
+        atmService.close();
+        return balanced;
+    }
+
+    private void seed(DatabaseManager dbManager) throws Exception {
+        int shardCount = dbManager.getIntProperty("db.shards.count", 1);
+        CustomerRepository repository = shardCount > 1
+                ? new ShardedCustomerRepository(shardCount)
+                : new CustomerRepositoryImpl();
+        for (int first = 0; first < customers; first += SEED_BATCH) {
+            List<Customer> batch = new ArrayList<>(SEED_BATCH);
+            for (int i = first; i < Math.min(customers, first + SEED_BATCH); i++) {
+                batch.add(Customer.builder()
+                        .id(BenchmarkDatabase.customerId(i))
+                        .name(BenchmarkDatabase.customerName(i))
+                        .accountNumber(BenchmarkDatabase.accountNumber(i))
+                        .pinCode(BenchmarkDatabase.PIN)
+                        .balance(balance)
+                        .status(CustomerStatus.ACTIVE)
+                        .build());
+            }
+            if (!repository.insertAll(batch).isEmpty()) {
+                throw new IllegalStateException("Seeded customers collided with existing ones");
+            }
+        }
+    }
+
+    private void runTerminal(int terminal, SplittableRandom random, long deadline) {
+        OperationStats[] stripe = stats[terminal % STRIPES];
+        Session session = atmService.openSession();
+        int customer = -1;
+        try {
+            while (System.nanoTime() < deadline) {
+                Operation operation = customer < 0 ? Operation.LOGIN : pick(random);
+                Money amount = Money.ofCents(1 + random.nextLong(maxAmount.getCents()));
+                int login = customer < 0 ? accounts.next(random) : customer;
+
+                long start = System.nanoTime();
+                String response = switch (operation) {
+                    case LOGIN -> atmService.login(session, BenchmarkDatabase.customerName(login), BenchmarkDatabase.PIN);
+                    case WITHDRAW -> atmService.withdraw(session, amount);
+                    case TRANSFER -> atmService.transfer(session,
+                            BenchmarkDatabase.accountNumber(accounts.nextOtherThan(random, customer)), amount);
+                    case LOGOUT -> atmService.logout(session);
+                };
+                long nanos = System.nanoTime() - start;
+
+                boolean ok = !response.startsWith("Error") && !response.equals(AdmissionControlledATMService.BUSY);
+                if (ok && operation == Operation.LOGIN) {
+                    customer = login;
+                } else if (ok && operation == Operation.LOGOUT) {
+                    customer = -1;
+                } else if (ok && operation == Operation.WITHDRAW) {
+                    withdrawnCents.add(amount.getCents());
+                }
+                record(stripe[operation.ordinal()], operation, nanos, response, ok);
+                think(random);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            atmService.closeSession(session);
+        }
+    }
+
+    private Operation pick(SplittableRandom random) {
+        int roll = random.nextInt(mix[0] + mix[1] + mix[2]);
+        if (roll < mix[0]) {
+            return Operation.WITHDRAW;
+        }
+        return roll < mix[0] + mix[1] ? Operation.TRANSFER : Operation.LOGOUT;
+    }
+
+    private void record(OperationStats stats, Operation operation, long nanos, String response, boolean ok) {
+        calls.increment();
+        boolean declined = response.equals(DECLINED);
+        boolean busy = response.equals(AdmissionControlledATMService.BUSY);
+        if (!ok && !declined && !busy) {
+            failures.increment();
+            errors.computeIfAbsent(operation.name().toLowerCase() + ": " + response, key -> new LongAdder()).increment();
+        }
+        synchronized (stats) {
+            stats.latency.record(nanos);
+            if (declined) {
+                stats.declined++;
+            } else if (busy) {
+                stats.busy++;
+            } else if (!ok) {
+                stats.errors++;
+            }
+        }
+    }
+
+    // Exponentially distributed, like the gaps between independent arrivals
+    private void think(SplittableRandom random) throws InterruptedException {
+        if (thinkMillis > 0) {
+            Thread.sleep((long) (-thinkMillis * Math.log(1 - random.nextDouble())));
+        }
+    }
+
+    private void reportProgress() {
+        long lastCalls = 0;
+        long lastFailures = 0;
+        long elapsed = 0;
+        try {
+            while (true) {
+                TimeUnit.SECONDS.sleep(reportIntervalSeconds);
+                elapsed += reportIntervalSeconds;
+                long totalCalls = calls.sum();
+                long totalFailures = failures.sum();
+                long intervalCalls = totalCalls - lastCalls;
+                System.out.printf("[%5ds] %,10.0f calls/s  %6.3f%% errors%n", elapsed,
+                        (double) intervalCalls / reportIntervalSeconds,
+                        intervalCalls == 0 ? 0.0 : 100.0 * (totalFailures - lastFailures) / intervalCalls);
+                lastCalls = totalCalls;
+                lastFailures = totalFailures;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void printSummary(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%nRan %d terminals on %d customers for %.1f s (zipf %.2f, think %d ms, mix withdraw=%d,"
+                        + "transfer=%d,logout=%d)%n", terminals, customers, seconds, zipfExponent, thinkMillis,
+                mix[0], mix[1], mix[2]);
+        System.out.printf("%-9s %10s %10s %9s %9s %9s %9s %9s %9s %9s%n", "operation", "calls", "calls/s",
+                "declined", "busy", "errors", "p50 µs", "p99 µs", "p999 µs", "max µs");
+        OperationStats total = new OperationStats();
+        for (Operation operation : Operation.values()) {
+            OperationStats merged = new OperationStats();
+            for (OperationStats[] stripe : stats) {
+                synchronized (stripe[operation.ordinal()]) {
+                    merged.add(stripe[operation.ordinal()]);
+                }
+            }
+            printRow(operation.name().toLowerCase(), merged, seconds);
+            total.add(merged);
+        }
+        printRow("total", total, seconds);
+
+        if (!errors.isEmpty()) {
+            System.out.println("\nMost frequent errors:");
+            errors.entrySet().stream()
+                    .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+                    .limit(10)
+                    .forEach(error -> System.out.printf("%10d  %s%n", error.getValue().sum(), error.getKey()));
+        }
+    }
+
+    private static void printRow(String name, OperationStats stats, double seconds) {
+        long count = stats.latency.getCount();
+        System.out.printf("%-9s %10d %10.0f %8.3f%% %8.3f%% %8.3f%% %9d %9d %9d %9d%n", name, count, count / seconds,
+                percent(stats.declined, count), percent(stats.busy, count), percent(stats.errors, count),
+                stats.latency.percentileMicros(0.50), stats.latency.percentileMicros(0.99),
+                stats.latency.percentileMicros(0.999), stats.latency.getMaxMicros());
+    }
+
+    private static double percent(long part, long count) {
+        return count == 0 ? 0.0 : 100.0 * part / count;
+    }
+
+    // Transfers move money between customers and withdrawals take it out, so the balances must add
+    // up to what was seeded less what was withdrawn
+    private boolean checkBalances(CustomerServiceImpl customerService) throws Exception {
+        Money expected = Money.ofCents(balance.getCents() * customers - withdrawnCents.sum());
+        Money actual = Money.ZERO;
+        for (Customer customer : customerService.findAll()) {
+            actual = actual.plus(customer.getBalance());
+        }
+        if (actual.equals(expected)) {
+            System.out.printf("%nBalance check passed: customers hold $%s after $%s withdrawn%n", actual,
+                    Money.ofCents(withdrawnCents.sum()));
+            return true;
+        }
+        System.out.printf("%nBalance check FAILED: customers hold $%s, expected $%s (off by $%s)%n", actual, expected,
+                actual.minus(expected));
+        return false;
+    }
+
+    private static final class OperationStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        long declined;
+        long busy;
+        long errors;
+
+        void add(OperationStats other) {
+            latency.add(other.latency);
+            declined += other.declined;
+            busy += other.busy;
+            errors += other.errors;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.nizar.atm.benchmark;
+
+import com.nizar.atm.metrics.MetricsRegistry;
+import com.nizar.atm.metrics.OperationMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording one call in {@link OperationMetrics}, including both {@link System#nanoTime()}
+ * reads, on one thread and with every core recording into the same operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class MetricsBenchmark {
+    private final OperationMetrics operation = MetricsRegistry.getInstance().operation("Benchmark", "call");
+
+    @Benchmark
+    public long nanoTimeOnly() {
+        return System.nanoTime() - System.nanoTime();
+    }
+
+    @Benchmark
+    public void record() {
+        operation.record(System.nanoTime(), false);
+    }
+
+    @Benchmark
+    public String timeResponse() {
+        return operation.timeResponse(() -> "Withdrawn");
+    }
+
+    @Threads(1)
+    public static class SingleThreaded extends MetricsBenchmark {
+    }
+
+    @Threads(Threads.MAX)
+    public static class MultiThreaded extends MetricsBenchmark {
+    }
+}
@@ -0,0 +1,102 @@
+package com.nizar.atm.benchmark;
+
+import com.nizar.atm.cli.ExecutionMode;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.service.ATMService;
+import com.nizar.atm.service.impl.ATMServiceImpl;
+import com.nizar.atm.service.session.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many terminals at once on the two {@link ExecutionMode}s: each operation has every one of
+ * {@code sessions} logged-in sessions run a short command pipeline (a withdrawal and a transfer to
+ * the next session's customer) concurrently, and waits for all of them. {@code PLATFORM} runs the
+ * pipelines on a pool of {@value #PLATFORM_THREADS} threads, the server's default, and
+ * {@code VIRTUAL} on a virtual thread each. The score is the time for all sessions to finish.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionExecutionBenchmark {
+    private static final int CUSTOMERS = 10_000;
+    private static final int PLATFORM_THREADS = 16;
+    private static final Money ONE_CENT = Money.ofCents(1);
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public ExecutionMode mode;
+
+    @Param({"1000", "10000"})
+    public int sessions;
+
+    private ATMService atmService;
+    private ExecutorService executor;
+    private Session[] terminals;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkDatabase.open(CUSTOMERS);
+        atmService = new ATMServiceImpl();
+        executor = mode.newWorkerPool(PLATFORM_THREADS, "session");
+        terminals = new Session[sessions];
+        for (int i = 0; i < sessions; i++) {
+            terminals[i] = atmService.openSession();
+            expectSuccess(atmService.login(terminals[i], BenchmarkDatabase.customerName(i % CUSTOMERS),
+                    BenchmarkDatabase.PIN));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+        for (Session terminal : terminals) {
+            atmService.closeSession(terminal);
+        }
+    }
+
+    @Benchmark
+    public int allSessions() throws Exception {
+        List<Future<String>> pipelines = new ArrayList<>(sessions);
+        for (int i = 0; i < sessions; i++) {
+            Session terminal = terminals[i];
+            long recipient = (i + 1) % Math.min(sessions, CUSTOMERS);
+            pipelines.add(executor.submit(() -> {
+                expectSuccess(atmService.withdraw(terminal, ONE_CENT));
+                return expectSuccess(atmService.transfer(terminal, BenchmarkDatabase.accountNumber(recipient), ONE_CENT));
+            }));
+        }
+        int completed = 0;
+        for (Future<String> pipeline : pipelines) {
+            pipeline.get();
+            completed++;
+        }
+        return completed;
+    }
+
+    private static String expectSuccess(String response) {
+        if (response.startsWith("Error")) {
+            throw new IllegalStateException(response);
+        }
+        return response;
+    }
+}
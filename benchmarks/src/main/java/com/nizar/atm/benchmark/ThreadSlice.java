@@ -0,0 +1,46 @@
+package com.nizar.atm.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.SplittableRandom;
+
+/**
+ * Gives each benchmark thread its own disjoint range of seeded customers, so multi-threaded
+ * write benchmarks measure throughput rather than DuckDB write-write conflicts on the same rows.
+ */
+@State(Scope.Thread)
+public class ThreadSlice {
+    private final SplittableRandom random = new SplittableRandom(42);
+    private long first;
+    private long size;
+
+    @Setup
+    public void setUp(ThreadParams threads, BenchmarkParams params) {
+        long customers = Long.parseLong(params.getParam("customers"));
+        size = Math.max(1, customers / threads.getThreadCount());
+        first = threads.getThreadIndex() * size;
+    }
+
+    public long first() {
+        return first;
+    }
+
+    /**
+     * Random customer index within this thread's slice.
+     */
+    public long next() {
+        return first + random.nextLong(size);
+    }
+
+    /**
+     * Random customer index within this thread's slice, different from {@code exclude}.
+     */
+    public long nextOtherThan(long exclude) {
+        long index = next();
+        return index != exclude ? index : first + (index - first + 1) % size;
+    }
+}
@@ -0,0 +1,52 @@
+package com.nizar.atm.benchmark;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Picks customer indexes in {@code [0, n)} with Zipf-skewed popularity: index {@code k} is chosen
+ * with probability proportional to {@code 1 / (k + 1)^exponent}, so low indexes are the busy
+ * accounts. An exponent of 0 picks uniformly. Holds the cumulative weights of all {@code n}
+ * indexes (8 bytes each) and samples by binary search; safe to share between threads.
+ */
+public final class ZipfSampler {
+    private final double[] cumulative;
+
+    public ZipfSampler(int n, double exponent) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Zipf range must be positive");
+        }
+        if (exponent < 0) {
+            throw new IllegalArgumentException("Zipf exponent must not be negative");
+        }
+        cumulative = new double[n];
+        double total = 0;
+        for (int k = 0; k < n; k++) {
+            total += 1 / Math.pow(k + 1, exponent);
+            cumulative[k] = total;
+        }
+    }
+
+    public int size() {
+        return cumulative.length;
+    }
+
+    public int next(SplittableRandom random) {
+        double target = random.nextDouble() * cumulative[cumulative.length - 1];
+        int index = Arrays.binarySearch(cumulative, target);
+        // Not found gives -(insertion point) - 1, the first index whose cumulative weight exceeds target
+        return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+
+    /**
+     * Like {@link #next(SplittableRandom)}, but never returns {@code exclude} (when there is any
+     * other index to return).
+     */
+    public int nextOtherThan(SplittableRandom random, int exclude) {
+        if (cumulative.length == 1) {
+            return 0;
+        }
+        int index = next(random);
+        return index != exclude ? index : (index + 1) % cumulative.length;
+    }
+}
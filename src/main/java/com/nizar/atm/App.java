@@ -1,109 +1,312 @@
 package com.nizar.atm;
 
+import com.nizar.atm.cli.BatchRunner;
+import com.nizar.atm.cli.Command;
+import com.nizar.atm.cli.CommandReader;
+import com.nizar.atm.cli.ExecutionMode;
+import com.nizar.atm.config.DatabaseManager;
+import com.nizar.atm.metrics.MetricsRegistry;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.server.AtmServer;
 import com.nizar.atm.service.ATMService;
+import com.nizar.atm.service.admission.AdmissionController;
 import com.nizar.atm.service.impl.ATMServiceImpl;
+import com.nizar.atm.service.impl.AdmissionControlledATMService;
+import com.nizar.atm.service.impl.MeteredATMService;
+import com.nizar.atm.service.session.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.math.BigInteger;
-import java.util.Scanner;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class App {
     private static final Logger logger = LoggerFactory.getLogger(App.class);
-    private static final ATMService atmService = new ATMServiceImpl();
-    private static final Scanner scanner = new Scanner(System.in);
+    private static final ATMService atmService = createAtmService();
+    private static final CommandReader input = new CommandReader(new InputStreamReader(System.in));
+    private static final Session session = atmService.openSession();
+    private static final CountDownLatch stopped = new CountDownLatch(1);
+    private static volatile AtmServer server;
+    private static volatile ScheduledExecutorService idleSessions;
+    // Printed before every command, so built once
+    private static final String MENU = String.join(System.lineSeparator(),
+            "",
+            "ATM Menu:",
+            "1. register",
+            "2. login [name]",
+            "3. withdraw [amount]",
+            "4. transfer [account number] [amount]",
+            "5. statement [months]",
+            "6. logout",
+            "7. exit",
+            "> ");
+
+    private static ATMService createAtmService() {
+        DatabaseManager config = DatabaseManager.getInstance();
+        ATMService service = new ATMServiceImpl();
+        MetricsRegistry metrics = null;
+        if (config.getProperty("db.metrics.enabled", "true").equals("true")) {
+            metrics = MetricsRegistry.getInstance();
+            metrics.startReporting(config.getLongProperty("db.metrics.log_interval_s", 60));
+            service = new MeteredATMService(service, metrics);
+        }
+        // Outermost, so that the service metrics only see calls that were let through
+        if (config.getProperty("db.admission.enabled", "true").equals("true")) {
+            service = new AdmissionControlledATMService(service, AdmissionController.create(config, metrics));
+        }
+        return service;
+    }
 
     public static void main(String[] args) {
-        boolean running = true;
-        while (running) {
-            printMenu();
-            String input = scanner.nextLine().trim();
-            running = processCommand(input);
+        Runtime.getRuntime().addShutdownHook(new Thread(App::shutdown, "atm-shutdown"));
+        if (args.length > 0 && args[0].equals("rebuild-statements")) {
+            System.out.println(atmService.rebuildStatements());
+            return;
         }
-        scanner.close();
+        if (args.length > 0 && args[0].equals("archive")) {
+            System.out.println(atmService.archiveHistory());
+            return;
+        }
+        if (args.length > 0 && args[0].equals("net-debts")) {
+            System.out.println(atmService.netDebts());
+            return;
+        }
+        if (args.length > 0 && args[0].equals("import")) {
+            if (args.length < 3) {
+                System.out.println("Usage: import [customers.csv] [credentials.csv]");
+                return;
+            }
+            System.out.println(atmService.importCustomers(args[1], args[2]));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("batch")) {
+            runBatch(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("serve")) {
+            serve(args);
+            return;
+        }
+
+        try {
+            boolean running = true;
+            while (running && readLine(MENU)) {
+                running = processCommand();
+            }
+        } catch (IOException e) {
+            logger.error("Error reading input", e);
+        }
+        atmService.closeSession(session);
     }
 
-    private static void printMenu() {
-        System.out.println("\nATM Menu:");
-        System.out.println("1. register");
-        System.out.println("2. login [name]");
-        System.out.println("3. withdraw [amount]");
-        System.out.println("4. transfer [account number] [amount]");
-        System.out.println("5. logout");
-        System.out.println("6. exit");
-        System.out.print("> ");
+    private static void runBatch(String[] args) {
+        String file = "-";
+        int threads = 0;
+        ExecutionMode mode = ExecutionMode.PLATFORM;
+        boolean quiet = false;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--threads") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                    if (threads < 1) {
+                        throw new IllegalArgumentException(args[i]);
+                    }
+                } else if (args[i].equals("--virtual")) {
+                    mode = ExecutionMode.VIRTUAL;
+                } else if (args[i].equals("--quiet")) {
+                    quiet = true;
+                } else if (args[i].startsWith("--") || i != 1) {
+                    throw new IllegalArgumentException(args[i]);
+                } else {
+                    file = args[i];
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Usage: batch [commands file, or - for stdin] [--threads N] [--virtual] [--quiet]");
+            return;
+        }
+        if (threads == 0) {
+            // Virtual threads are limited to what the connection pool can serve
+            threads = mode == ExecutionMode.VIRTUAL ? DatabaseManager.getInstance().getIntProperty("db.max_connections", 10) : 1;
+        }
+
+        atmService.closeSession(session);
+        try (Reader in = file.equals("-") ? new InputStreamReader(System.in)
+                : Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            new BatchRunner(atmService, System.out, mode, threads, quiet).run(in);
+        } catch (IOException e) {
+            System.out.println("Error: " + e.getMessage());
+            logger.error("Batch run failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private static boolean processCommand(String input) {
-        String[] parts = input.split("\\s+");
-        String command = parts[0].toLowerCase();
+    private static void serve(String[] args) {
+        DatabaseManager config = DatabaseManager.getInstance();
+        int port;
+        ExecutionMode mode;
+        try {
+            port = args.length > 1 ? Integer.parseInt(args[1]) : config.getIntProperty("db.server.port", 7420);
+            mode = ExecutionMode.parse(config.getProperty("db.server.execution", "platform"));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Usage: serve [port] (" + e.getMessage() + ")");
+            return;
+        }
+        int selectors = config.getIntProperty("db.server.selectors", 2);
+        int workers = config.getIntProperty("db.server.workers", 16);
+
+        atmService.closeSession(session);
+        long idleTimeout = config.getLongProperty("db.server.session_idle_timeout_s", 300);
+        if (idleTimeout > 0) {
+            Duration maxIdle = Duration.ofSeconds(idleTimeout);
+            long interval = Math.max(1, idleTimeout / 10);
+            idleSessions = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "idle-session-reaper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            idleSessions.scheduleWithFixedDelay(() -> atmService.closeIdleSessions(maxIdle),
+                    interval, interval, TimeUnit.SECONDS);
+        }
+        server = new AtmServer(atmService, selectors, mode.newWorkerPool(workers, "atm-worker"));
+        try {
+            server.start(new InetSocketAddress(port));
+            System.out.println("Listening on port " + server.getPort());
+            stopped.await();
+        } catch (IOException e) {
+            System.out.println("Error: " + e.getMessage());
+            logger.error("Server failed to start", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The only shutdown hook, so that nothing is closed while something else still uses it: the
+     * server stops taking commands and finishes those running, then the service writes out what
+     * it buffers, and the database closes last.
+     */
+    private static void shutdown() {
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                logger.error("Error stopping server", e);
+            }
+        }
+        if (idleSessions != null) {
+            idleSessions.shutdownNow();
+        }
+        atmService.close();
+        DatabaseManager.getInstance().shutdown();
+        stopped.countDown();
+    }
+
+    /**
+     * Prints {@code prompt} and reads the next line into {@link #input}. Returns false at the end
+     * of the input.
+     */
+    private static boolean readLine(String prompt) throws IOException {
+        System.out.print(prompt);
+        return input.next();
+    }
+
+    private static boolean processCommand() throws IOException {
+        Command command = input.command();
+        if (command == null) {
+            System.out.println("Unknown command");
+            return true;
+        }
 
         try {
             switch (command) {
-                case "register": {
-                    System.out.print("Enter name: ");
-                    String name = scanner.nextLine().trim();
-                    System.out.print("Enter initial balance: ");
-                    BigDecimal balance = new BigDecimal(scanner.nextLine().trim());
+                case REGISTER: {
+                    if (!readLine("Enter name: ")) {
+                        return false;
+                    }
+                    String name = input.text();
+                    if (!readLine("Enter initial balance: ")) {
+                        return false;
+                    }
+                    Money balance = input.amount();
 
                     String result = atmService.register(name, balance);
                     System.out.println(result);
                     break;
                 }
 
-                case "login": {
-                    if (parts.length < 2) {
+                case LOGIN: {
+                    if (input.tokenCount() < 2) {
                         System.out.println("Usage: login [name]");
                         break;
                     }
-                    System.out.print("Enter PIN: ");
-                    String pin = scanner.nextLine().trim();
+                    String name = input.token(1);
+                    if (!readLine("Enter PIN: ")) {
+                        return false;
+                    }
+                    String pin = input.text();
 
-                    String result = atmService.login(parts[1], pin);
+                    String result = atmService.login(session, name, pin);
                     System.out.println(result);
                     break;
                 }
 
-                case "withdraw": {
-                    if (parts.length < 2) {
+                case WITHDRAW: {
+                    if (input.tokenCount() < 2) {
                         System.out.println("Usage: withdraw [amount]");
                         break;
                     }
-                    BigDecimal amount = new BigDecimal(parts[1]);
+                    Money amount = input.amount(1);
 
-                    String result = atmService.withdraw(amount);
+                    String result = atmService.withdraw(session, amount);
                     System.out.println(result);
                     break;
                 }
 
-                case "transfer": {
-                    if (parts.length < 3) {
+                case TRANSFER: {
+                    if (input.tokenCount() < 3) {
                         System.out.println("Usage: transfer [account number] [amount]");
                         break;
                     }
-                    BigInteger targetAccount = new BigInteger(parts[1]);
-                    BigDecimal amount = new BigDecimal(parts[2]);
+                    BigInteger targetAccount = BigInteger.valueOf(input.number(1));
+                    Money amount = input.amount(2);
 
-                    String result = atmService.transfer(targetAccount, amount);
+                    String result = atmService.transfer(session, targetAccount, amount);
                     System.out.println(result);
                     break;
                 }
 
-                case "logout": {
-                    String result = atmService.logout();
+                case STATEMENT: {
+                    int months = input.tokenCount() < 2 ? 6 : Math.toIntExact(input.number(1));
+
+                    String result = atmService.statement(session, months);
+                    System.out.println(result);
+                    break;
+                }
+
+                case LOGOUT: {
+                    String result = atmService.logout(session);
                     System.out.println(result);
                     break;
                 }
 
-                case "exit":
+                case EXIT:
                     System.out.println("Goodbye!");
                     return false;
-
-                default:
-                    System.out.println("Unknown command");
             }
-        } catch (NumberFormatException e) {
+        } catch (NumberFormatException | ArithmeticException e) {
             System.out.println("Error: Invalid number format");
             logger.error("Number format error", e);
         } catch (Exception e) {
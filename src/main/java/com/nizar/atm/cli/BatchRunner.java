@@ -0,0 +1,299 @@
+package com.nizar.atm.cli;
+
+import com.nizar.atm.metrics.LatencyHistogram;
+import com.nizar.atm.service.ATMService;
+import com.nizar.atm.service.session.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs terminal commands from a file or a pipe without prompting, for replaying recorded traffic
+ * and for batch jobs. Every argument is given inline, as described in {@link Request}.
+ *
+ * <p>A line may start with {@code @<session>} to run it in a named session; lines without one share
+ * a default session. Blank lines and lines starting with {@code #} are skipped. Commands of one
+ * session run in file order. With more than one thread, sessions are spread over the threads by
+ * name and run concurrently, so their output interleaves; every response is printed prefixed with
+ * its line number. In {@link ExecutionMode#VIRTUAL} mode every session gets a virtual thread of its
+ * own instead, so a session waiting on the database never holds up another, and the thread count
+ * only limits how many commands run at once. At the end a summary
+ * of throughput and of per-command latency is printed.
+ */
+public class BatchRunner {
+    private static final Logger logger = LoggerFactory.getLogger(BatchRunner.class);
+
+    private static final String DEFAULT_SESSION = "";
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private final ATMService atmService;
+    private final PrintStream out;
+    private final ExecutionMode mode;
+    private final int threads;
+    private final boolean quiet;
+    // Commands running at once in virtual mode
+    private final Semaphore permits;
+
+    /**
+     * @param threads number of platform threads sessions are spread over, or in
+     *                {@link ExecutionMode#VIRTUAL} mode the number of commands that run at once
+     * @param quiet   print only failed commands and the summary
+     */
+    public BatchRunner(ATMService atmService, PrintStream out, ExecutionMode mode, int threads, boolean quiet) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required");
+        }
+        this.atmService = atmService;
+        this.out = out;
+        this.mode = mode;
+        this.threads = threads;
+        this.quiet = quiet;
+        this.permits = mode == ExecutionMode.VIRTUAL ? new Semaphore(threads, true) : null;
+    }
+
+    /**
+     * Runs every command of {@code in} and returns the summary, which has also been printed.
+     */
+    public Summary run(Reader in) throws IOException, InterruptedException {
+        boolean virtual = mode == ExecutionMode.VIRTUAL;
+        // A single platform thread is the reader itself
+        boolean inline = !virtual && threads == 1;
+        List<Worker> workers = new ArrayList<>();
+        List<Thread> running = new ArrayList<>();
+        Map<String, Worker> sessionWorkers = new HashMap<>();
+        if (!virtual) {
+            for (int i = 0; i < threads; i++) {
+                Worker worker = new Worker();
+                workers.add(worker);
+                if (!inline) {
+                    running.add(mode.start("batch-" + i, worker::drain));
+                }
+            }
+        }
+
+        Summary summary = new Summary();
+        long start = System.nanoTime();
+        try {
+            CommandReader reader = new CommandReader(in);
+            long lineNumber = 0;
+            while (reader.next()) {
+                lineNumber++;
+                BatchCommand command;
+                try {
+                    command = parse(reader, lineNumber);
+                } catch (IllegalArgumentException e) {
+                    summary.invalid++;
+                    out.println(lineNumber + ": Error: " + e.getMessage());
+                    continue;
+                }
+                if (command == null) {
+                    continue;
+                }
+                Worker worker;
+                if (virtual) {
+                    worker = sessionWorkers.computeIfAbsent(command.session, session -> {
+                        Worker started = new Worker();
+                        running.add(mode.start("batch-" + workers.size(), started::drain));
+                        workers.add(started);
+                        return started;
+                    });
+                } else {
+                    worker = workers.get(Math.floorMod(command.session.hashCode(), threads));
+                }
+                if (inline) {
+                    worker.execute(command);
+                } else {
+                    worker.queue.put(command);
+                }
+            }
+        } finally {
+            if (!inline) {
+                for (Worker worker : workers) {
+                    worker.queue.put(BatchCommand.END);
+                }
+            }
+            for (Thread thread : running) {
+                thread.join();
+            }
+            for (Worker worker : workers) {
+                worker.closeSessions();
+            }
+        }
+
+        summary.elapsedNanos = System.nanoTime() - start;
+        for (Worker worker : workers) {
+            summary.add(worker);
+        }
+        summary.print(out);
+        return summary;
+    }
+
+    /**
+     * Parses the current line, or returns null for a blank or comment line. Throws
+     * {@link IllegalArgumentException} for a malformed command.
+     */
+    private static BatchCommand parse(CommandReader reader, long lineNumber) {
+        int tokens = reader.tokenCount();
+        if (tokens == 0 || reader.token(0).startsWith("#")) {
+            return null;
+        }
+        int first = 0;
+        String session = DEFAULT_SESSION;
+        if (reader.token(0).startsWith("@")) {
+            session = reader.token(0).substring(1);
+            first = 1;
+            if (tokens == 1) {
+                throw new IllegalArgumentException("Missing command");
+            }
+        }
+
+        Request request = Request.parse(reader, first);
+        if (request.getCommand() == Command.EXIT) {
+            throw new IllegalArgumentException("exit is not supported in batch mode");
+        }
+        return new BatchCommand(lineNumber, session, request);
+    }
+
+    private static final class BatchCommand {
+        private static final BatchCommand END = new BatchCommand(0, DEFAULT_SESSION, null);
+
+        private final long line;
+        private final String session;
+        private final Request request;
+
+        private BatchCommand(long line, String session, Request request) {
+            this.line = line;
+            this.session = session;
+            this.request = request;
+        }
+    }
+
+    /**
+     * Executes the commands of the sessions assigned to it, in order, and records their latency.
+     */
+    private final class Worker {
+        // Linked so that thousands of per-session workers don't each allocate the full capacity
+        private final BlockingQueue<BatchCommand> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+        private final Map<String, Session> sessions = new HashMap<>();
+        private final Map<Command, LatencyHistogram> latencies = new EnumMap<>(Command.class);
+        private final Map<Command, Long> errors = new EnumMap<>(Command.class);
+
+        private void drain() {
+            try {
+                BatchCommand command;
+                while ((command = queue.take()) != BatchCommand.END) {
+                    execute(command);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void execute(BatchCommand command) {
+            Session session = sessions.computeIfAbsent(command.session, name -> atmService.openSession());
+            String response;
+            if (permits != null) {
+                permits.acquireUninterruptibly();
+            }
+            long start = System.nanoTime();
+            try {
+                response = command.request.execute(atmService, session);
+            } catch (RuntimeException e) {
+                logger.error("Batch command on line {} failed", command.line, e);
+                response = "Error: " + e.getMessage();
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            latencies.computeIfAbsent(command.request.getCommand(), c -> new LatencyHistogram()).record(elapsed);
+
+            // A busy command was never attempted, which a replay must not pass over silently
+            boolean failed = response.startsWith("Error") || response.startsWith("Busy");
+            if (failed) {
+                errors.merge(command.request.getCommand(), 1L, Long::sum);
+            }
+            if (failed || !quiet) {
+                out.println(command.line + ": " + response);
+            }
+        }
+
+        private void closeSessions() {
+            for (Session session : sessions.values()) {
+                atmService.closeSession(session);
+            }
+            sessions.clear();
+        }
+    }
+
+    /**
+     * Totals of a batch run.
+     */
+    public static final class Summary {
+        private final Map<Command, LatencyHistogram> latencies = new EnumMap<>(Command.class);
+        private final Map<Command, Long> errors = new EnumMap<>(Command.class);
+        private long invalid;
+        private long elapsedNanos;
+
+        private void add(Worker worker) {
+            worker.latencies.forEach((command, histogram) ->
+                    latencies.computeIfAbsent(command, c -> new LatencyHistogram()).add(histogram));
+            worker.errors.forEach((command, count) -> errors.merge(command, count, Long::sum));
+        }
+
+        public long getExecuted() {
+            return latencies.values().stream().mapToLong(LatencyHistogram::getCount).sum();
+        }
+
+        /**
+         * Returns the number of commands that failed, including lines that couldn't be parsed.
+         */
+        public long getFailed() {
+            return invalid + errors.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        private void print(PrintStream out) {
+            long executed = getExecuted();
+            double seconds = elapsedNanos / 1e9;
+            out.println();
+            out.printf("Executed %d commands in %.3f s (%.0f commands/s), %d failed%n",
+                    executed, seconds, seconds == 0 ? 0 : executed / seconds, getFailed());
+            if (invalid > 0) {
+                out.printf("%d lines could not be parsed%n", invalid);
+            }
+            if (latencies.isEmpty()) {
+                return;
+            }
+            LatencyHistogram total = new LatencyHistogram();
+            out.printf("%-10s %10s %8s %10s %10s %10s %10s%n", "Command", "Count", "Errors",
+                    "p50 ms", "p90 ms", "p99 ms", "max ms");
+            for (Map.Entry<Command, LatencyHistogram> entry : latencies.entrySet()) {
+                total.add(entry.getValue());
+                printRow(out, entry.getKey().name(), entry.getValue(), errors.getOrDefault(entry.getKey(), 0L));
+            }
+            printRow(out, "ALL", total, getFailed() - invalid);
+        }
+
+        private static void printRow(PrintStream out, String name, LatencyHistogram histogram, long failed) {
+            out.printf("%-10s %10d %8d %10.3f %10.3f %10.3f %10.3f%n", name, histogram.getCount(), failed,
+                    histogram.percentileMicros(0.50) / 1000.0, histogram.percentileMicros(0.90) / 1000.0,
+                    histogram.percentileMicros(0.99) / 1000.0, histogram.getMaxMicros() / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.nizar.atm.cli;
+
+/**
+ * The commands understood by the interactive terminal.
+ */
+public enum Command {
+    REGISTER,
+    LOGIN,
+    WITHDRAW,
+    TRANSFER,
+    STATEMENT,
+    LOGOUT,
+    EXIT;
+
+    private static final Command[] VALUES = values();
+
+    // Lower case, as users type them
+    private final char[] keyword = name().toLowerCase().toCharArray();
+
+    /**
+     * Returns the command whose keyword equals {@code text[start, end)} ignoring case, or null.
+     */
+    static Command match(char[] text, int start, int end) {
+        for (Command command : VALUES) {
+            if (command.matches(text, start, end)) {
+                return command;
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(char[] text, int start, int end) {
+        if (end - start != keyword.length) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length; i++) {
+            if (Character.toLowerCase(text[start + i]) != keyword[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,249 @@
+package com.nizar.atm.cli;
+
+import com.nizar.atm.model.Money;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads terminal input a line at a time and splits each line into whitespace-separated tokens.
+ *
+ * <p>Scripts drive the terminal at thousands of commands per second, so reading a line allocates
+ * nothing: characters are copied from the input into a line buffer that is reused for every line,
+ * and tokens are kept as offsets into it. Commands, amounts and numbers are parsed straight from
+ * the buffer; only {@link #token(int)} and {@link #text()} create strings, for the values that the
+ * services need as strings anyway.
+ *
+ * <p>Lines end at {@code \n}, {@code \r} or {@code \r\n}. Only the first {@value #MAX_TOKENS}
+ * tokens of a line are kept, and its last token, however many come before it. Not thread-safe.
+ */
+public class CommandReader {
+    private static final int MAX_TOKENS = 8;
+
+    private final Reader in;
+    private final char[] input;
+    private int inputPosition;
+    private int inputLimit;
+    private boolean skipLineFeed;
+
+    private char[] line = new char[256];
+    // View of line for Money.parse; re-created when line grows
+    private CharBuffer lineView = CharBuffer.wrap(line);
+    private int length;
+
+    private final int[] starts = new int[MAX_TOKENS];
+    private final int[] ends = new int[MAX_TOKENS];
+    private int tokens;
+    // Last token of the line, and the end of the one before it, wherever they are
+    private int lastStart;
+    private int lastEnd;
+    private int beforeLastEnd;
+
+    public CommandReader(Reader in) {
+        this.in = in;
+        this.input = in == null ? null : new char[8192];
+    }
+
+    /**
+     * Creates a reader that is only given lines through {@link #read(CharSequence)}.
+     */
+    public CommandReader() {
+        this(null);
+    }
+
+    /**
+     * Reads and tokenizes the next line. Returns false at the end of the input.
+     */
+    public boolean next() throws IOException {
+        if (in == null) {
+            throw new IllegalStateException("No input to read from");
+        }
+        length = 0;
+        tokens = 0;
+        boolean read = false;
+        while (true) {
+            if (inputPosition == inputLimit && !fill()) {
+                if (read) {
+                    break;
+                }
+                return false;
+            }
+            char c = input[inputPosition++];
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            read = true;
+            if (c == '\n') {
+                break;
+            }
+            if (c == '\r') {
+                skipLineFeed = true;
+                break;
+            }
+            if (length == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+                lineView = CharBuffer.wrap(line);
+            }
+            line[length++] = c;
+        }
+        tokenize();
+        return true;
+    }
+
+    /**
+     * Makes {@code text}, which holds a single line without its terminator, the current line, for
+     * lines that arrive other than through a {@link Reader}.
+     */
+    public void read(CharSequence text) {
+        int textLength = text.length();
+        if (textLength > line.length) {
+            line = new char[Math.max(textLength, line.length * 2)];
+            lineView = CharBuffer.wrap(line);
+        }
+        for (int i = 0; i < textLength; i++) {
+            line[i] = text.charAt(i);
+        }
+        length = textLength;
+        tokens = 0;
+        tokenize();
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(input, 0, input.length);
+        while (n == 0) {
+            n = in.read(input, 0, input.length);
+        }
+        if (n < 0) {
+            return false;
+        }
+        inputPosition = 0;
+        inputLimit = n;
+        return true;
+    }
+
+    private void tokenize() {
+        lastStart = 0;
+        lastEnd = 0;
+        beforeLastEnd = 0;
+        int i = 0;
+        while (true) {
+            while (i < length && Character.isWhitespace(line[i])) {
+                i++;
+            }
+            if (i == length) {
+                return;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(line[i])) {
+                i++;
+            }
+            if (tokens < MAX_TOKENS) {
+                starts[tokens] = start;
+                ends[tokens++] = i;
+            }
+            beforeLastEnd = lastEnd;
+            lastStart = start;
+            lastEnd = i;
+        }
+    }
+
+    public int tokenCount() {
+        return tokens;
+    }
+
+    /**
+     * Returns the command named by the first token, or null if the line is blank or names none.
+     */
+    public Command command() {
+        return tokens == 0 ? null : command(0);
+    }
+
+    /**
+     * Returns the command named by a token, or null if it names none.
+     */
+    public Command command(int index) {
+        checkIndex(index);
+        return Command.match(line, starts[index], ends[index]);
+    }
+
+    public String token(int index) {
+        checkIndex(index);
+        return new String(line, starts[index], ends[index] - starts[index]);
+    }
+
+    /**
+     * Returns the whole line without leading and trailing whitespace.
+     */
+    public String text() {
+        return tokens == 0 ? "" : new String(line, starts[0], lastEnd - starts[0]);
+    }
+
+    /**
+     * Returns the line from token {@code index} up to, but not including, its last token, without
+     * surrounding whitespace, for free text followed by one more argument, such as a name that may
+     * hold spaces followed by an amount.
+     */
+    public String textBeforeLast(int index) {
+        checkIndex(index);
+        if (starts[index] >= lastStart) {
+            throw new IndexOutOfBoundsException("Token " + index + " is the last of the line");
+        }
+        return new String(line, starts[index], beforeLastEnd - starts[index]);
+    }
+
+    /**
+     * Parses the last token of the line as an amount of money.
+     */
+    public Money lastAmount() {
+        if (tokens == 0) {
+            throw new NumberFormatException("Not an amount: " + text());
+        }
+        return Money.parse(lineView, lastStart, lastEnd);
+    }
+
+    /**
+     * Parses a token as an amount of money. See {@link Money#parse(String)}.
+     */
+    public Money amount(int index) {
+        checkIndex(index);
+        return Money.parse(lineView, starts[index], ends[index]);
+    }
+
+    /**
+     * Parses the whole line as an amount of money, for prompts that ask for one.
+     */
+    public Money amount() {
+        if (tokens != 1) {
+            throw new NumberFormatException("Not an amount: " + text());
+        }
+        return amount(0);
+    }
+
+    /**
+     * Parses a token of decimal digits, throwing {@link NumberFormatException} if it isn't one or
+     * doesn't fit in a long.
+     */
+    public long number(int index) {
+        checkIndex(index);
+        long value = 0;
+        for (int i = starts[index]; i < ends[index]; i++) {
+            char c = line[i];
+            if (c < '0' || c > '9' || value > (Long.MAX_VALUE - (c - '0')) / 10) {
+                throw new NumberFormatException("Not a number: " + token(index));
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= tokens) {
+            throw new IndexOutOfBoundsException("No token " + index + " in a line of " + tokens);
+        }
+    }
+}
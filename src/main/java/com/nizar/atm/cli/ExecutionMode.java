@@ -0,0 +1,108 @@
+package com.nizar.atm.cli;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The kind of threads terminal sessions run their commands on.
+ *
+ * <p>Service calls block on JDBC, so with {@link #PLATFORM} threads every session waiting for the
+ * database, an account lock or the ledger writer holds one of a fixed number of OS threads.
+ * {@link #VIRTUAL} gives each session's commands a virtual thread instead, which only parks while
+ * it waits. Both still limit how many service calls run at once: more calls than there are pooled
+ * connections only makes lock holders queue for a connection while other calls time out on their
+ * locks. DuckDB runs queries in native code, which keeps the carrier thread for the duration of
+ * the call, so a virtual thread only frees its carrier while waiting on the Java side.
+ */
+public enum ExecutionMode {
+    PLATFORM,
+    VIRTUAL;
+
+    public static ExecutionMode parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown execution mode: " + value);
+        }
+    }
+
+    /**
+     * Returns an executor for service calls running at most {@code concurrency} of them at once: a
+     * pool of that many platform threads, or a virtual thread per task of which that many run while
+     * the rest wait for a permit.
+     */
+    public ExecutorService newWorkerPool(int concurrency, String name) {
+        if (this == VIRTUAL) {
+            return new LimitedExecutor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory()),
+                    concurrency);
+        }
+        return Executors.newFixedThreadPool(concurrency, Thread.ofPlatform().name(name + "-", 0).factory());
+    }
+
+    /**
+     * Starts a thread of this kind running {@code task}.
+     */
+    public Thread start(String name, Runnable task) {
+        return this == VIRTUAL ? Thread.ofVirtual().name(name).start(task) : Thread.ofPlatform().name(name).start(task);
+    }
+
+    /**
+     * Runs each task on its own thread of {@code delegate} once one of {@code concurrency} permits
+     * is free. Waiting for the permit happens on the task's (virtual) thread, so nothing queues in
+     * the executor itself.
+     */
+    private static final class LimitedExecutor extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        private LimitedExecutor(ExecutorService delegate, int concurrency) {
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("Concurrency must be positive");
+            }
+            this.delegate = delegate;
+            this.permits = new Semaphore(concurrency, true);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            delegate.execute(() -> {
+                permits.acquireUninterruptibly();
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.nizar.atm.cli;
+
+import com.nizar.atm.model.Money;
+import com.nizar.atm.service.ATMService;
+import com.nizar.atm.service.session.Session;
+
+import java.math.BigInteger;
+
+/**
+ * A terminal command with all of its arguments given inline, the form in which batch files and
+ * network terminals send them:
+ *
+ * <pre>
+ * register [name] [initial balance]
+ * login [name] [pin]
+ * withdraw [amount]
+ * transfer [account number] [amount]
+ * statement [months]
+ * logout
+ * exit
+ * </pre>
+ *
+ * <p>As at the interactive prompt, a name may hold spaces: {@code register} takes everything
+ * between the command and the last token as the name.
+ */
+public final class Request {
+    private static final int DEFAULT_STATEMENT_MONTHS = 6;
+
+    private final Command command;
+    private String name;
+    private String pin;
+    private Money amount;
+    private long account;
+    private int months;
+
+    private Request(Command command) {
+        this.command = command;
+    }
+
+    /**
+     * Parses the command that starts at token {@code first} of the reader's current line. Throws
+     * {@link IllegalArgumentException}, with a message fit for the terminal, if it is malformed.
+     */
+    public static Request parse(CommandReader reader, int first) {
+        Command command = reader.command(first);
+        if (command == null) {
+            throw new IllegalArgumentException("Unknown command " + reader.token(first));
+        }
+        int arguments = reader.tokenCount() - first - 1;
+        Request request = new Request(command);
+        try {
+            switch (command) {
+                case REGISTER:
+                    if (arguments < 2) {
+                        throw new IllegalArgumentException("Usage: register [name] [initial balance]");
+                    }
+                    request.name = reader.textBeforeLast(first + 1);
+                    request.amount = reader.lastAmount();
+                    break;
+                case LOGIN:
+                    expect(arguments, 2, "login [name] [pin]");
+                    request.name = reader.token(first + 1);
+                    request.pin = reader.token(first + 2);
+                    break;
+                case WITHDRAW:
+                    expect(arguments, 1, "withdraw [amount]");
+                    request.amount = reader.amount(first + 1);
+                    break;
+                case TRANSFER:
+                    expect(arguments, 2, "transfer [account number] [amount]");
+                    request.account = reader.number(first + 1);
+                    request.amount = reader.amount(first + 2);
+                    break;
+                case STATEMENT:
+                    if (arguments > 1) {
+                        throw new IllegalArgumentException("Usage: statement [months]");
+                    }
+                    request.months = arguments == 0 ? DEFAULT_STATEMENT_MONTHS
+                            : Math.toIntExact(reader.number(first + 1));
+                    break;
+                case LOGOUT:
+                    expect(arguments, 0, "logout");
+                    break;
+                case EXIT:
+                    expect(arguments, 0, "exit");
+                    break;
+            }
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid number format", e);
+        }
+        return request;
+    }
+
+    private static void expect(int arguments, int expected, String usage) {
+        if (arguments != expected) {
+            throw new IllegalArgumentException("Usage: " + usage);
+        }
+    }
+
+    public Command getCommand() {
+        return command;
+    }
+
+    /**
+     * Runs the command in {@code session} and returns the service's response. {@code exit} ends
+     * the conversation rather than calling the service, so callers handle it themselves.
+     */
+    public String execute(ATMService atmService, Session session) {
+        switch (command) {
+            case REGISTER:
+                return atmService.register(name, amount);
+            case LOGIN:
+                return atmService.login(session, name, pin);
+            case WITHDRAW:
+                return atmService.withdraw(session, amount);
+            case TRANSFER:
+                return atmService.transfer(session, BigInteger.valueOf(account), amount);
+            case STATEMENT:
+                return atmService.statement(session, months);
+            case LOGOUT:
+                return atmService.logout(session);
+            default:
+                throw new IllegalStateException("Unexpected command " + command);
+        }
+    }
+}
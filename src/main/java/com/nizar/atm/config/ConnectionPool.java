@@ -0,0 +1,430 @@
+package com.nizar.atm.config;
+
+import lombok.Getter;
+import lombok.ToString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded pool of JDBC connections.
+ *
+ * <p>Callers borrow a connection with {@link #borrow()} and give it back by closing it, so the
+ * usual try-with-resources blocks in the repositories return connections to the pool instead of
+ * closing the physical connection. Physical connections are created lazily through the supplied
+ * {@link ConnectionFactory} up to {@code maxSize}; when every connection is checked out, borrowers
+ * wait up to {@code borrowTimeoutMillis} for one to be returned.
+ *
+ * <p>Each physical connection also keeps its own cache of prepared statements keyed by query
+ * name (see {@link #prepare(Connection, String, String)}), so a statement is parsed and planned
+ * once per connection rather than once per call.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+    private final List<PooledConnection> all = new ArrayList<>();
+    private int active;
+    private boolean closed;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong invalidatedCount = new AtomicLong();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    public ConnectionPool(ConnectionFactory factory, int maxSize, long borrowTimeoutMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive");
+        }
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    /**
+     * Checks out a connection, validating it before handing it out. Closing the returned
+     * connection returns it to the pool.
+     */
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+        boolean waited = false;
+
+        while (true) {
+            PooledConnection candidate = null;
+            boolean create = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("Connection pool is closed");
+                    }
+                    if (!idle.isEmpty()) {
+                        candidate = idle.pollFirst();
+                        break;
+                    }
+                    if (all.size() < maxSize) {
+                        create = true;
+                        // Reserve the slot before releasing the lock so concurrent borrowers
+                        // can't overshoot maxSize while the physical connection is opened.
+                        all.add(null);
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeoutCount.incrementAndGet();
+                        throw new SQLException("Timed out after " + borrowTimeoutMillis
+                                + " ms waiting for a database connection (active=" + active + ")");
+                    }
+                    waited = true;
+                    available.awaitNanos(remaining);
+                }
+                active++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                candidate = createPooledConnection();
+            } else if (!isUsable(candidate)) {
+                discard(candidate);
+                continue;
+            }
+
+            recordBorrow(start, waited);
+            return candidate.checkout();
+        }
+    }
+
+    private PooledConnection createPooledConnection() throws SQLException {
+        try {
+            PooledConnection pooled = new PooledConnection(factory.create());
+            lock.lock();
+            try {
+                all.set(all.indexOf(null), pooled);
+            } finally {
+                lock.unlock();
+            }
+            logger.debug("Opened pooled connection ({} total)", all.size());
+            return pooled;
+        } catch (SQLException | RuntimeException e) {
+            lock.lock();
+            try {
+                all.remove(null);
+                active--;
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            logger.warn("Pooled connection failed validation", e);
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        invalidatedCount.incrementAndGet();
+        lock.lock();
+        try {
+            all.remove(pooled);
+            active--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+        closeQuietly(pooled.physical);
+    }
+
+    private void recordBorrow(long start, boolean waited) {
+        borrowCount.incrementAndGet();
+        if (!waited) {
+            return;
+        }
+        long waitNanos = System.nanoTime() - start;
+        waitCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    /**
+     * Returns the cached prepared statement for {@code name} on the physical connection behind
+     * {@code borrowed}, preparing {@code sql} on first use. The statement stays owned by the
+     * pool: callers close their result sets but must not close the statement itself.
+     */
+    public PreparedStatement prepare(Connection borrowed, String name, String sql) throws SQLException {
+        Handle handle = handleOf(borrowed);
+        if (handle.released) {
+            throw new SQLException("Connection has already been returned to the pool");
+        }
+
+        Map<String, PreparedStatement> statements = handle.pooled.statements;
+        PreparedStatement statement = statements.get(name);
+        if (statement != null && !statement.isClosed()) {
+            statementCacheHits.increment();
+            statement.clearParameters();
+            return statement;
+        }
+
+        statementCacheMisses.increment();
+        statement = handle.pooled.physical.prepareStatement(sql);
+        statements.put(name, statement);
+        return statement;
+    }
+
+    private Handle handleOf(Connection borrowed) {
+        if (Proxy.isProxyClass(borrowed.getClass())
+                && Proxy.getInvocationHandler(borrowed) instanceof Handle handle
+                && handle.owner() == this) {
+            return handle;
+        }
+        throw new IllegalArgumentException("Connection was not borrowed from this pool");
+    }
+
+    private void giveBack(PooledConnection pooled) {
+        boolean healthy = resetState(pooled.physical);
+        if (!healthy) {
+            discard(pooled);
+            return;
+        }
+
+        lock.lock();
+        try {
+            active--;
+            if (closed) {
+                all.remove(pooled);
+            } else {
+                idle.addFirst(pooled);
+                available.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        closeQuietly(pooled.physical);
+    }
+
+    private boolean resetState(Connection connection) {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            logger.warn("Failed to reset pooled connection, discarding it", e);
+            return false;
+        }
+    }
+
+    public PoolStats getStats() {
+        lock.lock();
+        try {
+            return new PoolStats(maxSize, all.size(), active, idle.size(),
+                    borrowCount.get(), waitCount.get(), timeoutCount.get(), invalidatedCount.get(),
+                    TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()),
+                    TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()),
+                    statementCacheHits.sum(), statementCacheMisses.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            all.removeAll(idle);
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (PooledConnection pooled : toClose) {
+            closeQuietly(pooled.physical);
+        }
+        logger.info("Connection pool closed ({} connections still checked out)", active);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("Error closing pooled connection", e);
+        }
+    }
+
+    /**
+     * Point-in-time view of the pool, wait times in milliseconds.
+     */
+    @Getter
+    @ToString
+    public static class PoolStats {
+        private final int maxSize;
+        private final int totalConnections;
+        private final int activeConnections;
+        private final int idleConnections;
+        private final long borrowCount;
+        private final long waitCount;
+        private final long timeoutCount;
+        private final long invalidatedCount;
+        private final long totalWaitMillis;
+        private final long maxWaitMillis;
+        private final long statementCacheHits;
+        private final long statementCacheMisses;
+
+        PoolStats(int maxSize, int totalConnections, int activeConnections, int idleConnections,
+                  long borrowCount, long waitCount, long timeoutCount, long invalidatedCount,
+                  long totalWaitMillis, long maxWaitMillis,
+                  long statementCacheHits, long statementCacheMisses) {
+            this.maxSize = maxSize;
+            this.totalConnections = totalConnections;
+            this.activeConnections = activeConnections;
+            this.idleConnections = idleConnections;
+            this.borrowCount = borrowCount;
+            this.waitCount = waitCount;
+            this.timeoutCount = timeoutCount;
+            this.invalidatedCount = invalidatedCount;
+            this.totalWaitMillis = totalWaitMillis;
+            this.maxWaitMillis = maxWaitMillis;
+            this.statementCacheHits = statementCacheHits;
+            this.statementCacheMisses = statementCacheMisses;
+        }
+
+        public double getAverageWaitMillis() {
+            return waitCount == 0 ? 0.0 : (double) totalWaitMillis / waitCount;
+        }
+
+        public double getStatementCacheHitRate() {
+            long lookups = statementCacheHits + statementCacheMisses;
+            return lookups == 0 ? 0.0 : (double) statementCacheHits / lookups;
+        }
+    }
+
+    /**
+     * Physical connection owned by the pool. Each checkout hands out a fresh proxy so a caller
+     * that closes twice, or keeps using a connection after closing it, can't affect the next
+     * borrower.
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        // Only touched by the thread that currently has the connection checked out.
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        private Connection checkout() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Handle(this));
+        }
+    }
+
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean released;
+
+        private Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        private ConnectionPool owner() {
+            return ConnectionPool.this;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        giveBack(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.physical + "]";
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -1,34 +1,56 @@
 // src/main/java/com/yourcompany/atm/config/DatabaseManager.java
 package com.nizar.atm.config;
 
+import org.duckdb.DuckDBConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
-import java.util.stream.Collectors;
 
 public class DatabaseManager {
     private static final Logger logger = LoggerFactory.getLogger(DatabaseManager.class);
     private static DatabaseManager instance;
+    private static final Map<Integer, DatabaseManager> shards = new HashMap<>();
     private final Connection connection;
+    private final ConnectionPool pool;
+    private final QueryCatalog queryCatalog;
     private final Properties dbProperties;
+    private final Deque<AutoCloseable> dependents = new ArrayDeque<>();
 
-    private static final String DUCKDB_DRIVER = "org.duckdb.DuckDB";
+    private static final String DUCKDB_DRIVER = "org.duckdb.DuckDBDriver";
+    private static final int DEFAULT_MAX_CONNECTIONS = 10;
+    private static final long DEFAULT_POOL_TIMEOUT_MS = 5000;
 
     private DatabaseManager() {
+        this(null);
+    }
+
+    // A null base loads database.properties; otherwise the base properties are used as given
+    private DatabaseManager(Properties base) {
         try {
-            this.dbProperties = loadDatabaseProperties();
+            this.dbProperties = base == null ? loadDatabaseProperties() : base;
             Class.forName(DUCKDB_DRIVER);
             this.connection = createConnection();
+            this.pool = new ConnectionPool(this::duplicateConnection,
+                    getIntProperty("db.max_connections", DEFAULT_MAX_CONNECTIONS),
+                    getLongProperty("db.pool.timeout_ms", DEFAULT_POOL_TIMEOUT_MS));
             initializeTables();
+            this.queryCatalog = QueryCatalog.load();
+            queryCatalog.validate(connection);
         } catch (SQLException | IOException | ClassNotFoundException e) {
             logger.error("Failed to initialize database", e);
             throw new RuntimeException("Database initialization failed", e);
@@ -42,18 +64,79 @@ public class DatabaseManager {
         return instance;
     }
 
+    /**
+     * Returns the manager of one shard of the customers when {@code db.shards.count} is above 1
+     * (see ShardedCustomerRepository). Each shard is a database file of its own, {@code
+     * shard-<index>.db} in {@code db.shards.path} (default {@code <db.path>.shards}), with the
+     * full schema, its own connection pool and the same settings as the main database.
+     */
+    public static synchronized DatabaseManager getShard(int index) {
+        DatabaseManager shard = shards.get(index);
+        if (shard == null) {
+            DatabaseManager main = getInstance();
+            Path directory = Paths.get(main.getProperty("db.shards.path", main.getDatabasePath() + ".shards"));
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                logger.error("Failed to create shard directory {}", directory, e);
+                throw new RuntimeException("Failed to create shard directory " + directory, e);
+            }
+            Properties properties = new Properties();
+            properties.putAll(main.dbProperties);
+            properties.setProperty("db.path", directory.resolve("shard-" + index + ".db").toString());
+            shard = new DatabaseManager(properties);
+            shards.put(index, shard);
+        }
+        return shard;
+    }
+
+    /**
+     * Borrows a connection from the pool. Callers must close it (try-with-resources) to hand it
+     * back; closing does not close the underlying DuckDB connection.
+     */
     public Connection getConnection() {
         try {
             if (connection == null || connection.isClosed()) {
                 throw new SQLException("Database connection is not available");
             }
-            return connection;
+            return pool.borrow();
         } catch (SQLException e) {
-            logger.error("Error checking database connection", e);
+            logger.error("Error checking out database connection", e);
             throw new RuntimeException("Failed to get database connection", e);
         }
     }
 
+    /**
+     * Returns the pooled prepared statement for the named query in {@code queries.properties}.
+     * {@code conn} must come from {@link #getConnection()}; the statement belongs to the pool
+     * and must not be closed by the caller.
+     */
+    public PreparedStatement prepareStatement(Connection conn, String queryName) throws SQLException {
+        return pool.prepare(conn, queryName, queryCatalog.get(queryName));
+    }
+
+    public QueryCatalog getQueryCatalog() {
+        return queryCatalog;
+    }
+
+    public ConnectionPool.PoolStats getPoolStats() {
+        return pool.getStats();
+    }
+
+    /**
+     * Opens a connection outside the pool for long-lived single-owner work such as a DuckDB
+     * appender. The caller owns it and must close it.
+     */
+    public Connection createDedicatedConnection() throws SQLException {
+        return duplicateConnection();
+    }
+
+    // DuckDB allows a single database instance per file and process, so pooled connections are
+    // duplicates of the primary connection that share its database instance.
+    private Connection duplicateConnection() throws SQLException {
+        return connection.unwrap(DuckDBConnection.class).duplicate();
+    }
+
     private Connection createConnection() throws SQLException {
         Properties connectionProps = new Properties();
         connectionProps.setProperty("user", dbProperties.getProperty("db.user", ""));
@@ -70,77 +153,24 @@ public class DatabaseManager {
         }
     }
 
-    private void initializeTables() throws SQLException {
-        String[] schemaFiles = {
-                "/db/schema/V1__create_tables.sql",
-                "/db/schema/V2__create_indices.sql"
-        };
-
-        Connection conn = getConnection();
-        try {
-            conn.setAutoCommit(false);
-
-            for (String schemaFile : schemaFiles) {
-                executeSchemaFile(conn, schemaFile);
-            }
-
-            conn.commit();
-            logger.info("Database schema initialized successfully");
-
-        } catch (SQLException | IOException e) {
-            try {
-                conn.rollback();
-            } catch (SQLException ex) {
-                logger.error("Failed to rollback schema initialization", ex);
-            }
-            logger.error("Failed to initialize database schema", e);
-            throw new SQLException("Schema initialization failed", e);
-        } finally {
-            try {
-                conn.setAutoCommit(true);
-            } catch (SQLException e) {
-                logger.error("Failed to reset auto-commit", e);
-            }
-        }
-    }
-
-    private void executeSchemaFile(Connection conn, String resourcePath) throws SQLException, IOException {
-        try (Statement stmt = conn.createStatement()) {
-            String schema = loadResourceFile(resourcePath);
-            for (String sql : schema.split(";")) {
-                if (!sql.trim().isEmpty()) {
-                    stmt.execute(sql.trim());
-                }
-            }
-            logger.debug("Executed schema file: {}", resourcePath);
-        }
-    }
-
-    private String loadResourceFile(String resourcePath) throws IOException {
-        try (InputStream is = getClass().getResourceAsStream(resourcePath);
-             BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
-            if (is == null) {
-                throw new IOException("Resource not found: " + resourcePath);
-            }
-            return reader.lines().collect(Collectors.joining("\n"));
-        } catch (IOException e) {
-            logger.error("Failed to load resource file: {}", resourcePath, e);
-            throw new IOException("Could not load resource file: " + resourcePath, e);
-        }
+    private void initializeTables() throws SQLException, IOException {
+        new SchemaMigrator(connection).migrate();
     }
 
     private Properties loadDatabaseProperties() throws IOException {
         Properties props = new Properties();
-        try (InputStream is = getClass().getResourceAsStream("/db/database.properties")) {
+        try (InputStream is = getClass().getResourceAsStream("/database.properties")) {
             if (is == null) {
                 logger.warn("database.properties not found, using defaults");
                 props.setProperty("db.path", "atm.db");
                 props.setProperty("db.user", "");
                 props.setProperty("db.password", "");
                 props.setProperty("db.env", "prod");
-                return props;
+                props.setProperty("db.max_connections", String.valueOf(DEFAULT_MAX_CONNECTIONS));
+            } else {
+                props.load(is);
             }
-            props.load(is);
+            applySystemOverrides(props);
             return props;
         } catch (IOException e) {
             logger.error("Failed to load database properties", e);
@@ -148,7 +178,56 @@ public class DatabaseManager {
         }
     }
 
+    // -Ddb.path=... and friends take precedence over database.properties, so tools and benchmarks
+    // can point the application at another database without repackaging it.
+    private void applySystemOverrides(Properties props) {
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("db.")) {
+                props.setProperty(key, System.getProperty(key));
+            }
+        }
+    }
+
+    public String getProperty(String key, String defaultValue) {
+        String value = dbProperties.getProperty(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    public int getIntProperty(String key, int defaultValue) {
+        return (int) getLongProperty(key, defaultValue);
+    }
+
+    public long getLongProperty(String key, long defaultValue) {
+        String value = dbProperties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value '{}' for {}, using default {}", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Registers something that works on this database in the background, to be closed by {@link
+     * #shutdown()} before the database is. The last one registered is closed first.
+     */
+    public synchronized void closeOnShutdown(AutoCloseable dependent) {
+        dependents.push(dependent);
+    }
+
     public void shutdown() {
+        AutoCloseable dependent;
+        while ((dependent = nextDependent()) != null) {
+            try {
+                dependent.close();
+            } catch (Exception e) {
+                logger.error("Error closing {} before the database", dependent, e);
+            }
+        }
+        pool.close();
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
@@ -159,8 +238,12 @@ public class DatabaseManager {
         }
     }
 
+    private synchronized AutoCloseable nextDependent() {
+        return dependents.poll();
+    }
+
     // For testing purposes
-    protected void clearDatabase() throws SQLException {
+    protected void clearDatabase() throws SQLException, IOException {
         if (!dbProperties.getProperty("db.env", "prod").equals("test")) {
             throw new IllegalStateException("Cannot clear database in non-test environment");
         }
@@ -175,7 +258,7 @@ public class DatabaseManager {
     // For testing and monitoring purposes
     public boolean isConnected() {
         try {
-            return connection != null && !connection.isClosed();
+            return connection != null && !connection.isClosed() && !pool.isClosed();
         } catch (SQLException e) {
             return false;
         }
@@ -0,0 +1,95 @@
+package com.nizar.atm.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Named SQL queries loaded once from {@code queries.properties}.
+ *
+ * <p>Repositories refer to queries by name only; the SQL text lives in the properties file so
+ * every statement the application runs can be planned and checked against the schema at startup
+ * by {@link #validate(Connection)}.
+ */
+public class QueryCatalog {
+    private static final Logger logger = LoggerFactory.getLogger(QueryCatalog.class);
+
+    private static final String QUERIES_RESOURCE = "/queries.properties";
+
+    private final Map<String, String> queries;
+
+    private QueryCatalog(Map<String, String> queries) {
+        this.queries = Collections.unmodifiableMap(queries);
+    }
+
+    public static QueryCatalog load() throws IOException {
+        return load(QUERIES_RESOURCE);
+    }
+
+    static QueryCatalog load(String resourcePath) throws IOException {
+        Properties props = new Properties();
+        try (InputStream is = QueryCatalog.class.getResourceAsStream(resourcePath)) {
+            if (is == null) {
+                throw new IOException("Resource not found: " + resourcePath);
+            }
+            props.load(is);
+        }
+
+        Map<String, String> queries = new TreeMap<>();
+        for (String name : props.stringPropertyNames()) {
+            String sql = props.getProperty(name).trim();
+            if (sql.isEmpty()) {
+                throw new IOException("Query '" + name + "' in " + resourcePath + " is empty");
+            }
+            queries.put(name, sql);
+        }
+        logger.debug("Loaded {} named queries from {}", queries.size(), resourcePath);
+        return new QueryCatalog(queries);
+    }
+
+    public String get(String name) {
+        String sql = queries.get(name);
+        if (sql == null) {
+            throw new IllegalArgumentException("Unknown query: " + name);
+        }
+        return sql;
+    }
+
+    /**
+     * Fails fast if any of the given query names is missing from the catalog.
+     */
+    public void require(String... names) {
+        for (String name : names) {
+            get(name);
+        }
+    }
+
+    public Set<String> names() {
+        return queries.keySet();
+    }
+
+    /**
+     * Prepares every query once so syntax errors and references to missing tables or columns
+     * surface at startup instead of on the first request that needs the query.
+     */
+    public void validate(Connection connection) throws SQLException {
+        for (Map.Entry<String, String> entry : queries.entrySet()) {
+            try (PreparedStatement ignored = connection.prepareStatement(entry.getValue())) {
+                logger.trace("Validated query {}", entry.getKey());
+            } catch (SQLException e) {
+                throw new SQLException("Invalid query '" + entry.getKey() + "': " + e.getMessage(), e);
+            }
+        }
+        logger.info("Validated {} named queries", queries.size());
+    }
+}
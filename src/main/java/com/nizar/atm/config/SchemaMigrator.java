@@ -0,0 +1,322 @@
+package com.nizar.atm.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Applies versioned SQL scripts from the classpath and records them in {@code schema_history}.
+ *
+ * <p>Scripts live under {@code db/migration} and are named {@code V<version>__<description>.sql}.
+ * Each pending script runs in its own transaction together with its history row, so a failed
+ * migration leaves neither partial DDL nor a history entry behind. Applied scripts are checked
+ * against the CRC32 checksum recorded when they ran; editing a script after it has been applied
+ * fails startup instead of silently diverging from the database. On an up-to-date database the
+ * only work done is reading the history table.
+ */
+public class SchemaMigrator {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    public static final String DEFAULT_LOCATION = "db/migration";
+
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    private static final String CREATE_HISTORY =
+            "CREATE TABLE IF NOT EXISTS schema_history (" +
+            "version INTEGER PRIMARY KEY, " +
+            "description VARCHAR NOT NULL, " +
+            "script VARCHAR NOT NULL, " +
+            "checksum BIGINT NOT NULL, " +
+            "installed_on TIMESTAMP NOT NULL, " +
+            "execution_time_ms BIGINT NOT NULL)";
+    private static final String FIND_APPLIED = "SELECT version, checksum FROM schema_history";
+    private static final String INSERT_APPLIED =
+            "INSERT INTO schema_history (version, description, script, checksum, installed_on, execution_time_ms) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final Connection connection;
+    private final String location;
+
+    public SchemaMigrator(Connection connection) {
+        this(connection, DEFAULT_LOCATION);
+    }
+
+    public SchemaMigrator(Connection connection, String location) {
+        this.connection = connection;
+        this.location = location;
+    }
+
+    /**
+     * Brings the schema up to date and returns the number of migrations applied.
+     */
+    public int migrate() throws SQLException, IOException {
+        Map<Integer, Long> applied = findApplied();
+        List<Migration> migrations = discover();
+
+        int latestApplied = applied.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+        List<Migration> pending = new ArrayList<>();
+        for (Migration migration : migrations) {
+            Long checksum = applied.get(migration.version);
+            if (checksum != null) {
+                if (checksum != migration.checksum) {
+                    throw new SQLException("Migration " + migration.script + " was changed after it was applied " +
+                            "(checksum " + migration.checksum + ", recorded " + checksum + ")");
+                }
+            } else if (migration.version < latestApplied) {
+                throw new SQLException("Migration " + migration.script + " is older than the applied version " +
+                        latestApplied + " and was never applied");
+            } else {
+                pending.add(migration);
+            }
+        }
+
+        if (pending.isEmpty()) {
+            logger.info("Database schema is up to date at version {}", latestApplied);
+            return 0;
+        }
+
+        for (Migration migration : pending) {
+            apply(migration);
+        }
+        logger.info("Applied {} migration(s), schema is now at version {}",
+                pending.size(), pending.get(pending.size() - 1).version);
+        return pending.size();
+    }
+
+    private Map<Integer, Long> findApplied() throws SQLException {
+        Map<Integer, Long> applied = new TreeMap<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(FIND_APPLIED)) {
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), rs.getLong("checksum"));
+            }
+            return applied;
+        } catch (SQLException e) {
+            // Only a brand-new database gets here; if the failure was something else, the
+            // CREATE below is a no-op and the query fails again with the real error.
+            logger.info("No schema history found, creating it");
+        }
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(CREATE_HISTORY);
+            try (ResultSet rs = stmt.executeQuery(FIND_APPLIED)) {
+                while (rs.next()) {
+                    applied.put(rs.getInt("version"), rs.getLong("checksum"));
+                }
+            }
+        }
+        return applied;
+    }
+
+    private void apply(Migration migration) throws SQLException {
+        logger.info("Applying migration {}", migration.script);
+        long start = System.nanoTime();
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            try (Statement stmt = connection.createStatement()) {
+                for (String sql : splitStatements(migration.sql)) {
+                    stmt.execute(sql);
+                }
+            }
+
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            try (PreparedStatement pstmt = connection.prepareStatement(INSERT_APPLIED)) {
+                pstmt.setInt(1, migration.version);
+                pstmt.setString(2, migration.description);
+                pstmt.setString(3, migration.script);
+                pstmt.setLong(4, migration.checksum);
+                pstmt.setTimestamp(5, Timestamp.valueOf(LocalDateTime.now()));
+                pstmt.setLong(6, elapsedMillis);
+                pstmt.executeUpdate();
+            }
+            connection.commit();
+            logger.debug("Applied migration {} in {} ms", migration.script, elapsedMillis);
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException ex) {
+                logger.error("Failed to roll back migration {}", migration.script, ex);
+            }
+            throw new SQLException("Migration " + migration.script + " failed", e);
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private List<Migration> discover() throws IOException {
+        ClassLoader classLoader = SchemaMigrator.class.getClassLoader();
+        Map<Integer, Migration> migrations = new TreeMap<>();
+        Enumeration<URL> roots = classLoader.getResources(location);
+        while (roots.hasMoreElements()) {
+            for (String name : listScripts(roots.nextElement())) {
+                Matcher matcher = SCRIPT_NAME.matcher(name);
+                if (!matcher.matches()) {
+                    logger.warn("Ignoring {}/{}: not a V<version>__<description>.sql script", location, name);
+                    continue;
+                }
+                String sql = readScript(classLoader, location + "/" + name);
+                Migration migration = new Migration(Integer.parseInt(matcher.group(1)),
+                        matcher.group(2).replace('_', ' '), name, sql);
+                Migration duplicate = migrations.put(migration.version, migration);
+                if (duplicate != null && !duplicate.script.equals(name)) {
+                    throw new IOException("Found two migrations for version " + migration.version + ": " +
+                            duplicate.script + " and " + name);
+                }
+            }
+        }
+        return new ArrayList<>(migrations.values());
+    }
+
+    private List<String> listScripts(URL root) throws IOException {
+        List<String> names = new ArrayList<>();
+        if ("file".equals(root.getProtocol())) {
+            Path dir;
+            try {
+                dir = Paths.get(root.toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid migration location: " + root, e);
+            }
+            try (Stream<Path> files = Files.list(dir)) {
+                files.filter(Files::isRegularFile)
+                        .forEach(file -> names.add(file.getFileName().toString()));
+            }
+        } else if ("jar".equals(root.getProtocol())) {
+            JarURLConnection jarConnection = (JarURLConnection) root.openConnection();
+            jarConnection.setUseCaches(false);
+            String prefix = jarConnection.getEntryName() + "/";
+            try (JarFile jar = jarConnection.getJarFile()) {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    String entry = entries.nextElement().getName();
+                    if (entry.startsWith(prefix) && entry.indexOf('/', prefix.length()) < 0
+                            && entry.length() > prefix.length()) {
+                        names.add(entry.substring(prefix.length()));
+                    }
+                }
+            }
+        } else {
+            throw new IOException("Cannot list migrations at " + root);
+        }
+        return names;
+    }
+
+    private static String readScript(ClassLoader classLoader, String resource) throws IOException {
+        try (InputStream is = classLoader.getResourceAsStream(resource)) {
+            if (is == null) {
+                throw new IOException("Resource not found: " + resource);
+            }
+            // Normalize line endings so a checkout on Windows doesn't change the checksum
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8).replace("\r\n", "\n");
+        }
+    }
+
+    /**
+     * Splits a script into statements on semicolons that are not inside quotes or comments.
+     * Comments are kept with the statement they precede; statements containing only comments
+     * and whitespace are dropped.
+     */
+    static List<String> splitStatements(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean hasCode = false;
+        int i = 0;
+        int length = script.length();
+        while (i < length) {
+            char c = script.charAt(i);
+            char next = i + 1 < length ? script.charAt(i + 1) : '\0';
+            if (c == '-' && next == '-') {
+                int end = script.indexOf('\n', i);
+                end = end < 0 ? length : end;
+                current.append(script, i, end);
+                i = end;
+            } else if (c == '/' && next == '*') {
+                int end = script.indexOf("*/", i + 2);
+                end = end < 0 ? length : end + 2;
+                current.append(script, i, end);
+                i = end;
+            } else if (c == '\'' || c == '"') {
+                // A doubled quote is an escaped quote and simply continues the literal
+                int end = i + 1;
+                while (end < length) {
+                    if (script.charAt(end) == c) {
+                        if (end + 1 < length && script.charAt(end + 1) == c) {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                end = Math.min(end + 1, length);
+                current.append(script, i, end);
+                hasCode = true;
+                i = end;
+            } else if (c == ';') {
+                if (hasCode) {
+                    statements.add(current.toString().trim());
+                }
+                current.setLength(0);
+                hasCode = false;
+                i++;
+            } else {
+                current.append(c);
+                hasCode |= !Character.isWhitespace(c);
+                i++;
+            }
+        }
+        if (hasCode) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
+    }
+
+    private static long checksum(String sql) {
+        CRC32 crc = new CRC32();
+        crc.update(sql.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static final class Migration {
+        private final int version;
+        private final String description;
+        private final String script;
+        private final String sql;
+        private final long checksum;
+
+        private Migration(int version, String description, String script, String sql) {
+            this.version = version;
+            this.description = description;
+            this.script = script;
+            this.sql = sql;
+            this.checksum = checksum(sql);
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package com.nizar.atm.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of account balances, written through memory-mapped segment files. Each
+ * entry has the next sequence number and the new balance, in cents, of one or two accounts; an
+ * entry is durable once {@link #sync(long)} has returned for its sequence.
+ *
+ * <p>An entry is an int body length and the CRC32C of the body, followed by the body: the long
+ * sequence, a byte account count, and per account its id as two longs and its balance. Segments
+ * are named after their first sequence and preallocated to {@code segmentBytes}, so the unwritten
+ * rest of a segment reads as a zero length. Reading a segment stops there, or at the first entry
+ * whose checksum or sequence doesn't match: the torn tail of a write that was never synced.
+ *
+ * <p>Appends only copy a few dozen bytes into the mapping and never wait for the disk, not even
+ * when they fill a segment: {@link #sync(long)} forces the full segments along with what was
+ * appended since the last force, once for every thread waiting on it. Both use
+ * {@link ReentrantLock}s rather than monitors, so virtual threads waiting on them or forcing under
+ * them don't pin their carrier thread.
+ */
+public class LedgerJournal implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(LedgerJournal.class);
+
+    private static final String SEGMENT_PREFIX = "ledger-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String LOCK_FILE = "journal.lock";
+    private static final int HEADER_BYTES = 8;
+    private static final int ACCOUNT_BYTES = 24;
+    private static final int MAX_BODY_BYTES = 9 + 2 * ACCOUNT_BYTES;
+
+    /**
+     * Receives the balances of replayed entries, in sequence order.
+     */
+    @FunctionalInterface
+    public interface Replay {
+        void apply(long sequence, UUID account, long cents);
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Guarded by appendLock
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private final ByteBuffer body = ByteBuffer.allocate(MAX_BODY_BYTES);
+    private final CRC32C crc = new CRC32C();
+    private MappedByteBuffer current;
+    private long lastSequence;
+    // Segments filled since the last force, oldest first; none of them is appended to any more
+    private final ArrayDeque<MappedByteBuffer> full = new ArrayDeque<>();
+
+    // Guarded by forceLock, which is taken before appendLock when both are held
+    private final ReentrantLock forceLock = new ReentrantLock();
+    private MappedByteBuffer forcedSegment;
+    private int forcedPosition;
+    private volatile long forcedSequence;
+
+    private LedgerJournal(Path directory, int segmentBytes, FileChannel lockChannel, FileLock lock) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+    }
+
+    public static boolean exists(Path directory) {
+        return Files.isDirectory(directory);
+    }
+
+    /**
+     * Opens the journal in {@code directory}, creating it if needed, and passes every entry after
+     * {@code afterSequence} to {@code replay}. New entries continue after the last one found, or
+     * after {@code afterSequence} if that is later. Fails when another journal has the directory
+     * open.
+     */
+    public static LedgerJournal open(Path directory, int segmentBytes, long afterSequence, Replay replay)
+            throws IOException {
+        if (segmentBytes < HEADER_BYTES + MAX_BODY_BYTES) {
+            throw new IllegalArgumentException("Journal segments must hold at least one entry");
+        }
+        Files.createDirectories(directory);
+        FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("Journal " + directory + " is already open");
+        }
+
+        LedgerJournal journal = new LedgerJournal(directory, segmentBytes, lockChannel, lock);
+        try {
+            journal.replay(afterSequence, replay);
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    private void replay(long afterSequence, Replay replay) throws IOException {
+        appendLock.lock();
+        try {
+            replaySegments(afterSequence, replay);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void replaySegments(long afterSequence, Replay replay) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), file);
+                }
+            });
+        }
+
+        long last = -1;
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            if (last >= 0 && segment.getKey() != last + 1) {
+                throw new IllegalStateException("Journal segment " + segment.getValue() + " starts at " +
+                        segment.getKey() + " but the previous one ends at " + last);
+            }
+            last = replaySegment(segment.getValue(), segment.getKey(), afterSequence, replay);
+        }
+        lastSequence = Math.max(afterSequence, last);
+        forcedSequence = lastSequence;
+    }
+
+    // Returns the sequence of the last entry in the segment
+    private long replaySegment(Path file, long firstSequence, long afterSequence, Replay replay) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        long expected = firstSequence;
+        while (in.remaining() >= HEADER_BYTES) {
+            int start = in.position();
+            int length = in.getInt();
+            int checksum = in.getInt();
+            if (length == 0) {
+                break;
+            }
+            if (length < 9 || length > MAX_BODY_BYTES || length > in.remaining()) {
+                logger.warn("Journal segment {} ends in a torn entry at offset {}", file, start);
+                break;
+            }
+            crc.reset();
+            crc.update(in.slice(in.position(), length));
+            long sequence = in.getLong(in.position());
+            if ((int) crc.getValue() != checksum || sequence != expected) {
+                logger.warn("Journal segment {} ends in a torn entry at offset {}", file, start);
+                break;
+            }
+            in.position(in.position() + 8);
+            int count = in.get();
+            for (int i = 0; i < count; i++) {
+                UUID account = new UUID(in.getLong(), in.getLong());
+                long cents = in.getLong();
+                if (sequence > afterSequence) {
+                    replay.apply(sequence, account, cents);
+                }
+            }
+            expected++;
+        }
+        return expected - 1;
+    }
+
+    public long lastSequence() {
+        appendLock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Appends the new balance of one account. Returns the entry's sequence.
+     */
+    public long append(UUID account, long cents) {
+        appendLock.lock();
+        try {
+            body.clear();
+            body.putLong(lastSequence + 1).put((byte) 1);
+            putAccount(account, cents);
+            return write();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Appends the new balances of two accounts in one entry, so replay sees both or neither.
+     * Returns the entry's sequence.
+     */
+    public long append(UUID account, long cents, UUID other, long otherCents) {
+        appendLock.lock();
+        try {
+            body.clear();
+            body.putLong(lastSequence + 1).put((byte) 2);
+            putAccount(account, cents);
+            putAccount(other, otherCents);
+            return write();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void putAccount(UUID account, long cents) {
+        body.putLong(account.getMostSignificantBits()).putLong(account.getLeastSignificantBits()).putLong(cents);
+    }
+
+    private long write() {
+        body.flip();
+        int length = body.remaining();
+        if (current == null || current.remaining() < HEADER_BYTES + length) {
+            rotate(lastSequence + 1);
+        }
+        crc.reset();
+        crc.update(body.array(), 0, length);
+        current.putInt(length).putInt((int) crc.getValue()).put(body);
+        return ++lastSequence;
+    }
+
+    private void rotate(long firstSequence) {
+        if (current != null) {
+            // Left for the next sync to force
+            full.addLast(current);
+        }
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        try (RandomAccessFile segment = new RandomAccessFile(file.toFile(), "rw")) {
+            // A segment left without entries by a crash has nothing worth keeping
+            segment.setLength(0);
+            segment.setLength(segmentBytes);
+            current = segment.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create journal segment " + file, e);
+        }
+        segments.put(firstSequence, file);
+        logger.debug("Started journal segment {}", file);
+    }
+
+    /**
+     * Returns once every entry up to {@code sequence} is on disk.
+     */
+    public void sync(long sequence) {
+        if (forcedSequence >= sequence) {
+            return;
+        }
+        forceLock.lock();
+        try {
+            if (forcedSequence >= sequence) {
+                return;
+            }
+            List<MappedByteBuffer> filled;
+            MappedByteBuffer segment;
+            int position;
+            long upTo;
+            appendLock.lock();
+            try {
+                filled = new ArrayList<>(full);
+                segment = current;
+                position = current.position();
+                upTo = lastSequence;
+            } finally {
+                appendLock.unlock();
+            }
+            for (MappedByteBuffer old : filled) {
+                // A full segment's position no longer moves
+                int from = old == forcedSegment ? forcedPosition : 0;
+                old.force(from, old.position() - from);
+            }
+            if (segment != forcedSegment) {
+                forcedSegment = segment;
+                forcedPosition = 0;
+            }
+            segment.force(forcedPosition, position - forcedPosition);
+            forcedPosition = position;
+            forcedSequence = upTo;
+            if (!filled.isEmpty()) {
+                appendLock.lock();
+                try {
+                    for (int i = 0; i < filled.size(); i++) {
+                        full.pollFirst();
+                    }
+                } finally {
+                    appendLock.unlock();
+                }
+            }
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments whose entries all have a sequence up to {@code sequence}, other than the
+     * one being appended to.
+     */
+    public void deleteThrough(long sequence) {
+        appendLock.lock();
+        try {
+            deleteSegmentsThrough(sequence);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void deleteSegmentsThrough(long sequence) {
+        Iterator<Map.Entry<Long, Path>> it = segments.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Path> segment = it.next();
+            Long next = segments.higherKey(segment.getKey());
+            if (next == null || next - 1 > sequence) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(segment.getValue());
+                logger.debug("Deleted journal segment {}", segment.getValue());
+            } catch (IOException e) {
+                logger.error("Failed to delete journal segment {}", segment.getValue(), e);
+                break;
+            }
+            it.remove();
+        }
+    }
+
+    /**
+     * Forces everything appended to disk and releases the directory.
+     */
+    @Override
+    public void close() {
+        forceLock.lock();
+        appendLock.lock();
+        try {
+            for (MappedByteBuffer old : full) {
+                old.force();
+            }
+            full.clear();
+            if (current != null) {
+                current.force();
+            }
+        } finally {
+            appendLock.unlock();
+            forceLock.unlock();
+        }
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            logger.error("Failed to release journal {}", directory, e);
+        }
+    }
+
+    /**
+     * Closes the journal and deletes its directory, once every entry is stored somewhere else. A
+     * file that can't be deleted is logged and left behind.
+     */
+    public void delete() {
+        close();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            logger.error("Failed to delete journal {}", directory, e);
+        }
+    }
+}
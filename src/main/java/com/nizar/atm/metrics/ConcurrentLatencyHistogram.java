@@ -0,0 +1,35 @@
+package com.nizar.atm.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link LatencyHistogram} that any number of threads can record into at once. Recording is one
+ * atomic increment of the sample's bucket, plus a compare-and-set in the rare case the sample is a
+ * new maximum. Read it through {@link #snapshot()}, which is not atomic with respect to concurrent
+ * recording: a sample recorded meanwhile may or may not be included.
+ */
+final class ConcurrentLatencyHistogram {
+    private final AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.BUCKETS);
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(LatencyHistogram.index(micros));
+        if (micros > maxMicros.get()) {
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    LatencyHistogram snapshot() {
+        LatencyHistogram snapshot = new LatencyHistogram();
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            long samples = counts.get(i);
+            if (samples > 0) {
+                snapshot.addBucket(i, samples);
+            }
+        }
+        snapshot.addMax(maxMicros.get());
+        return snapshot;
+    }
+}
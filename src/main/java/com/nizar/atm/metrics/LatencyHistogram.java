@@ -0,0 +1,90 @@
+package com.nizar.atm.metrics;
+
+/**
+ * Counts latencies in buckets of microseconds so that percentiles of millions of samples can be
+ * reported without keeping the samples. Values below 32 µs get a bucket each; above that each
+ * power of two is split into 16 buckets, so a reported percentile is at most 6.25% above the true
+ * value. Not thread-safe: record on one thread and {@link #add(LatencyHistogram) add} histograms
+ * together once recording is done, or record into a {@link ConcurrentLatencyHistogram} and take
+ * snapshots of it.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+    static final int BUCKETS = index(Long.MAX_VALUE) + 1;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long maxMicros;
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts[index(micros)]++;
+        count++;
+        maxMicros = Math.max(maxMicros, micros);
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        maxMicros = Math.max(maxMicros, other.maxMicros);
+    }
+
+    // For building snapshots of a ConcurrentLatencyHistogram
+    void addBucket(int index, long samples) {
+        counts[index] += samples;
+        count += samples;
+    }
+
+    void addMax(long micros) {
+        maxMicros = Math.max(maxMicros, micros);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * Returns the latency in microseconds that {@code fraction} of the samples don't exceed, or 0
+     * when nothing was recorded.
+     */
+    public long percentileMicros(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+
+    static int index(long micros) {
+        if (micros < LINEAR_LIMIT) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (micros >>> shift);
+    }
+
+    private static long highestValue(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index - (long) shift * SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,114 @@
+package com.nizar.atm.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The process's {@link OperationMetrics}, one per operation. Each is registered as a JMX MBean
+ * when first asked for, and {@link #startReporting(long)} logs a summary line of the calls made
+ * since the previous one.
+ */
+public final class MetricsRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsRegistry.class);
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+    private static final String DOMAIN = "com.nizar.atm";
+
+    // Sorted so that the summary lists operations by group and name
+    private final Map<String, OperationMetrics> operations = new ConcurrentSkipListMap<>();
+    private ScheduledExecutorService reporter;
+
+    private MetricsRegistry() {
+    }
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the metrics of operation {@code name} of {@code group}, creating and registering them
+     * on first use. Callers look their operations up once and keep them.
+     */
+    public OperationMetrics operation(String group, String name) {
+        return operations.computeIfAbsent(group + "." + name, key -> {
+            OperationMetrics metrics = new OperationMetrics(group, name);
+            register(metrics);
+            return metrics;
+        });
+    }
+
+    private void register(OperationMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=Operation,group=" + ObjectName.quote(metrics.getGroup())
+                    + ",name=" + ObjectName.quote(metrics.getName()));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(metrics, objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("Could not register metrics of {}.{} with JMX", metrics.getGroup(), metrics.getName(), e);
+        }
+    }
+
+    /**
+     * Logs a summary every {@code intervalSeconds} on a daemon thread. Intervals without calls are
+     * not logged.
+     */
+    public synchronized void startReporting(long intervalSeconds) {
+        if (reporter != null || intervalSeconds <= 0) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> {
+            String summary = takeSummary(intervalSeconds);
+            if (summary != null) {
+                logger.info(summary);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns one line with the count, errors and p50/p99/p999/max latency in milliseconds of every
+     * operation called since the previous summary, or null when nothing was called.
+     */
+    String takeSummary(long intervalSeconds) {
+        StringBuilder summary = new StringBuilder();
+        for (OperationMetrics metrics : operations.values()) {
+            OperationMetrics.Interval interval = metrics.takeInterval();
+            LatencyHistogram latencies = interval.latencies;
+            if (latencies.getCount() == 0) {
+                continue;
+            }
+            summary.append(summary.length() == 0 ? "" : "; ")
+                    .append(metrics.getGroup()).append('.').append(metrics.getName())
+                    .append(' ').append(latencies.getCount())
+                    .append(interval.errors > 0 ? " (" + interval.errors + " errors)" : "")
+                    .append(' ').append(millis(latencies.percentileMicros(0.50)))
+                    .append('/').append(millis(latencies.percentileMicros(0.99)))
+                    .append('/').append(millis(latencies.percentileMicros(0.999)))
+                    .append('/').append(millis(latencies.getMaxMicros()));
+        }
+        if (summary.length() == 0) {
+            return null;
+        }
+        return "Last " + intervalSeconds + " s, calls and p50/p99/p999/max ms: " + summary;
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.3f", micros / 1000.0);
+    }
+}
@@ -0,0 +1,128 @@
+package com.nizar.atm.metrics;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Latency and error counts of one operation, such as {@code ATMService.withdraw}. Calls are
+ * recorded twice: into totals since startup, read over JMX, and into an interval that
+ * {@link MetricsRegistry} resets every time it logs its summary.
+ *
+ * <p>Recording a call costs two {@link System#nanoTime()} reads and a few uncontended atomic
+ * increments and allocates nothing.
+ */
+public final class OperationMetrics implements OperationMetricsMBean {
+    private final String group;
+    private final String name;
+    private final ConcurrentLatencyHistogram total = new ConcurrentLatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private volatile ConcurrentLatencyHistogram interval = new ConcurrentLatencyHistogram();
+    private final LongAdder intervalErrors = new LongAdder();
+
+    OperationMetrics(String group, String name) {
+        this.group = group;
+        this.name = name;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records a call that started at {@code startNanos}, as returned by {@link System#nanoTime()}.
+     */
+    public void record(long startNanos, boolean failed) {
+        long elapsed = System.nanoTime() - startNanos;
+        total.record(elapsed);
+        interval.record(elapsed);
+        if (failed) {
+            errors.increment();
+            intervalErrors.increment();
+        }
+    }
+
+    /**
+     * Runs {@code call}, recording it as failed if it throws.
+     */
+    public <T> T time(Callable<T> call) throws Exception {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.call();
+            failed = false;
+            return result;
+        } finally {
+            record(start, failed);
+        }
+    }
+
+    /**
+     * Runs a service call that reports failure as a response starting with {@code Error}, recording
+     * it as failed if it does so or throws.
+     */
+    public String timeResponse(Supplier<String> call) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            String response = call.get();
+            failed = response == null || response.startsWith("Error");
+            return response;
+        } finally {
+            record(start, failed);
+        }
+    }
+
+    /**
+     * Returns the calls recorded since the previous call of this method and starts a new interval.
+     */
+    Interval takeInterval() {
+        ConcurrentLatencyHistogram ended = interval;
+        interval = new ConcurrentLatencyHistogram();
+        return new Interval(ended.snapshot(), intervalErrors.sumThenReset());
+    }
+
+    @Override
+    public long getCount() {
+        return total.snapshot().getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getP50Micros() {
+        return total.snapshot().percentileMicros(0.50);
+    }
+
+    @Override
+    public long getP99Micros() {
+        return total.snapshot().percentileMicros(0.99);
+    }
+
+    @Override
+    public long getP999Micros() {
+        return total.snapshot().percentileMicros(0.999);
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return total.snapshot().getMaxMicros();
+    }
+
+    static final class Interval {
+        final LatencyHistogram latencies;
+        final long errors;
+
+        private Interval(LatencyHistogram latencies, long errors) {
+            this.latencies = latencies;
+            this.errors = errors;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.nizar.atm.metrics;
+
+/**
+ * JMX view of an {@link OperationMetrics}, registered as
+ * {@code com.nizar.atm:type=Operation,group=<group>,name=<operation>}. Latencies are in
+ * microseconds and cover every call since startup.
+ */
+public interface OperationMetricsMBean {
+    long getCount();
+
+    long getErrors();
+
+    long getP50Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getMaxMicros();
+}
@@ -1,13 +1,17 @@
 package com.nizar.atm.model;
 
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
+import lombok.experimental.SuperBuilder;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Getter
 @Setter
+@SuperBuilder(toBuilder = true)
+@NoArgsConstructor
 public class AbstractEntity {
     protected UUID id;
     protected LocalDateTime createdAt;
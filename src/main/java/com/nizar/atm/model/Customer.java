@@ -3,23 +3,20 @@ package com.nizar.atm.model;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
 
-import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Date;
 
 @Getter
 @Setter
 @ToString
-@SuperBuilder
+@SuperBuilder(toBuilder = true)
 @AllArgsConstructor
 @NoArgsConstructor
 public class Customer extends AbstractEntity {
     private String name;
-    private BigDecimal balance;
+    private Money balance;
     private String pinCode;
     private BigInteger accountNumber;
     private CustomerStatus status;
     private Date lastLogin;
-    private Date createdAt;
-    private Date updatedAt;
 }
\ No newline at end of file
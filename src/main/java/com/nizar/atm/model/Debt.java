@@ -2,7 +2,6 @@ package com.nizar.atm.model;
 
 import lombok.*;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.UUID;
 
@@ -12,10 +11,11 @@ import java.util.UUID;
 @AllArgsConstructor
 @NoArgsConstructor
 public class Debt {
+    private UUID id;
     private UUID debtorId;
     private UUID creditorId;
-    private BigDecimal amount;
-    private String status;
+    private Money amount;
+    private DebtStatus status;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 }
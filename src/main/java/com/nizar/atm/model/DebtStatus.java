@@ -0,0 +1,9 @@
+package com.nizar.atm.model;
+
+/**
+ * {@code SETTLED} debts were paid off by transfers to the creditor; {@code NETTED} debts were
+ * replaced by the smaller set of debts a netting run left in their place.
+ */
+public enum DebtStatus {
+    ACTIVE, SETTLED, NETTED
+}
@@ -0,0 +1,16 @@
+package com.nizar.atm.model;
+
+import lombok.*;
+
+/**
+ * Outcome of a bulk customer import. Rejected rows are listed with their reason in the file
+ * written next to the credentials file.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ImportResult {
+    private final long imported;
+    private final long rejected;
+    private final long elapsedMillis;
+}
@@ -0,0 +1,184 @@
+package com.nizar.atm.model;
+
+import java.math.BigDecimal;
+
+/**
+ * An amount of money as a whole number of cents.
+ *
+ * <p>Balances and amounts are compared, added and subtracted on every withdrawal and transfer,
+ * so they are plain {@code long} arithmetic here instead of {@link BigDecimal}. Arithmetic throws
+ * {@link ArithmeticException} on overflow rather than wrapping. The database stores amounts as
+ * {@code DECIMAL(15,2)}; convert with {@link #of(BigDecimal)} and {@link #toBigDecimal()} at the
+ * JDBC boundary.
+ */
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0);
+
+    private static final int SCALE = 2;
+    private static final long CENTS_PER_UNIT = 100;
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /**
+     * Converts a decimal amount, failing if it has more than two decimal places.
+     */
+    public static Money of(BigDecimal amount) {
+        try {
+            return ofCents(amount.movePointRight(SCALE).longValueExact());
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException("Not a whole number of cents: " + amount);
+        }
+    }
+
+    /**
+     * Parses amounts such as {@code 12}, {@code -3.5} or {@code 1000.25}. Throws
+     * {@link NumberFormatException} for anything else, including more than two decimal places.
+     */
+    public static Money parse(String text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses the amount in {@code text[start, end)} like {@link #parse(String)}, without copying it
+     * out first.
+     */
+    public static Money parse(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+
+        long units = 0;
+        int digits = 0;
+        for (; i < end && text.charAt(i) != '.'; i++, digits++) {
+            // 18 digits can't overflow a long; anything longer is out of range in cents anyway
+            if (digits == 18) {
+                throw invalid("Amount out of range: ", text, start, end);
+            }
+            units = units * 10 + digit(text, i, start, end);
+        }
+        long fraction = 0;
+        int decimals = 0;
+        if (i < end) {
+            for (i++; i < end; i++, decimals++) {
+                if (decimals == SCALE) {
+                    throw invalid("More than two decimal places: ", text, start, end);
+                }
+                fraction = fraction * 10 + digit(text, i, start, end);
+            }
+        }
+        if (digits + decimals == 0) {
+            throw invalid("Not an amount: ", text, start, end);
+        }
+        for (; decimals < SCALE; decimals++) {
+            fraction *= 10;
+        }
+
+        try {
+            long cents = Math.addExact(Math.multiplyExact(units, CENTS_PER_UNIT), fraction);
+            return ofCents(negative ? -cents : cents);
+        } catch (ArithmeticException e) {
+            throw invalid("Amount out of range: ", text, start, end);
+        }
+    }
+
+    private static int digit(CharSequence text, int index, int start, int end) {
+        char c = text.charAt(index);
+        if (c < '0' || c > '9') {
+            throw invalid("Not an amount: ", text, start, end);
+        }
+        return c - '0';
+    }
+
+    private static NumberFormatException invalid(String message, CharSequence text, int start, int end) {
+        return new NumberFormatException(message + text.subSequence(start, end));
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    public Money negate() {
+        return ofCents(Math.negateExact(cents));
+    }
+
+    public int signum() {
+        return Long.signum(cents);
+    }
+
+    public boolean isPositive() {
+        return cents > 0;
+    }
+
+    public boolean isNegative() {
+        return cents < 0;
+    }
+
+    public boolean isLessThan(Money other) {
+        return cents < other.cents;
+    }
+
+    public boolean isGreaterThan(Money other) {
+        return cents > other.cents;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    /**
+     * Appends the amount with two decimal places, as {@link #toString()} returns it.
+     */
+    public StringBuilder appendTo(StringBuilder out) {
+        long value = cents;
+        if (value < 0) {
+            out.append('-');
+        }
+        // Split before taking absolute values, since -Long.MIN_VALUE overflows
+        long units = Math.abs(value / CENTS_PER_UNIT);
+        int fraction = (int) Math.abs(value % CENTS_PER_UNIT);
+        out.append(units).append('.');
+        if (fraction < 10) {
+            out.append('0');
+        }
+        return out.append(fraction);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(24)).toString();
+    }
+}
@@ -0,0 +1,18 @@
+package com.nizar.atm.model;
+
+import lombok.*;
+
+/**
+ * Outcome of a debt netting run: how many active debts went in and came out, and how much they
+ * added up to. Every customer's net position is the same before and after.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class NettingResult {
+    private final long debtsBefore;
+    private final long debtsAfter;
+    private final Money amountBefore;
+    private final Money amountAfter;
+    private final long elapsedMillis;
+}
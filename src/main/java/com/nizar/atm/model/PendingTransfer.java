@@ -0,0 +1,21 @@
+package com.nizar.atm.model;
+
+import lombok.*;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A transfer whose money has moved but whose ledger row may still be being written. The transfer
+ * is only acknowledged once {@code recorded} completes; see {@code CustomerService#awaitRecorded}.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class PendingTransfer {
+    private final Transaction transaction;
+    private final CompletableFuture<Void> recorded;
+
+    public Money getSenderBalance() {
+        return transaction.getBalanceAfter();
+    }
+}
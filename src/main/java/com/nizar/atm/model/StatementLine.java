@@ -0,0 +1,22 @@
+package com.nizar.atm.model;
+
+import lombok.*;
+
+import java.time.LocalDate;
+
+/**
+ * One row of a statement: the transactions of one type in one period (a day, or a month
+ * starting at {@code period}). {@code totalAmount} only counts successful transactions.
+ */
+@Getter
+@Setter
+@ToString
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatementLine {
+    private LocalDate period;
+    private TransactionType transactionType;
+    private long transactionCount;
+    private Money totalAmount;
+}
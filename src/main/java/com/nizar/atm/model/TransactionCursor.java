@@ -0,0 +1,23 @@
+package com.nizar.atm.model;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Position in a customer's transaction history: the (created_at, id) of the last row a page
+ * returned. The id breaks ties between transactions recorded in the same microsecond.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+public class TransactionCursor {
+    private final LocalDateTime createdAt;
+    private final UUID id;
+
+    public static TransactionCursor of(Transaction transaction) {
+        return new TransactionCursor(transaction.getCreatedAt(), transaction.getId());
+    }
+}
@@ -0,0 +1,21 @@
+package com.nizar.atm.model;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * One page of transaction history. {@code next} is null on the last page; otherwise pass it back
+ * to fetch the page that follows.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class TransactionPage {
+    private final List<Transaction> transactions;
+    private final TransactionCursor next;
+
+    public boolean hasNext() {
+        return next != null;
+    }
+}
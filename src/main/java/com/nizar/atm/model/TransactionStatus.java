@@ -0,0 +1,5 @@
+package com.nizar.atm.model;
+
+public enum TransactionStatus {
+    SUCCESS, FAILED
+}
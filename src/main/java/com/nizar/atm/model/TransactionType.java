@@ -0,0 +1,5 @@
+package com.nizar.atm.model;
+
+public enum TransactionType {
+    DEPOSIT, WITHDRAW, TRANSFER
+}
@@ -0,0 +1,13 @@
+package com.nizar.atm.repository;
+
+public interface AccountNumberSequenceRepository {
+    /**
+     * Returns the secret key of the account number permutation, creating it on first use.
+     */
+    long getPermutationKey() throws Exception;
+
+    /**
+     * Reserves {@code size} consecutive counter values and returns the first one.
+     */
+    long leaseBlock(int size) throws Exception;
+}
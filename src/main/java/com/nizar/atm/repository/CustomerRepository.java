@@ -1,8 +1,10 @@
 package com.nizar.atm.repository;
 
 import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.Money;
 
-import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -10,7 +12,39 @@ import java.util.UUID;
 public interface CustomerRepository {
     Optional<Customer> findById(UUID id) throws Exception;
     Optional<Customer> findByName(String name) throws Exception;
+    Optional<Customer> findByAccountNumber(BigInteger accountNumber) throws Exception;
+    Optional<Customer> findByCardNumber(String cardNumber) throws Exception;
     Customer save(Customer customer) throws Exception;
-    void updateBalance(UUID id, BigDecimal newBalance) throws Exception;
+
+    /**
+     * Inserts new customers in one database transaction, skipping those whose name is already
+     * registered or used earlier in the list. Returns the skipped customers.
+     */
+    List<Customer> insertAll(List<Customer> customers) throws Exception;
+    void updateBalance(UUID id, Money newBalance) throws Exception;
+
+    /**
+     * Subtracts {@code amount} if the account is active and holds at least that much.
+     * Returns the new balance, or empty when funds are insufficient.
+     *
+     * @throws InactiveAccountException if the account isn't active
+     */
+    Optional<Money> debit(UUID id, Money amount) throws Exception;
+
+    /**
+     * Moves {@code amount} between two active accounts in one database transaction.
+     * Returns the sender's new balance, or empty when the sender has insufficient funds.
+     *
+     * @throws InactiveAccountException if the sender's account isn't active
+     */
+    Optional<Money> transfer(UUID senderId, UUID recipientId, Money amount) throws Exception;
+    void updateLastLogin(UUID id, Date lastLogin) throws Exception;
+    void deleteById(UUID id) throws Exception;
     List<Customer> findAll() throws Exception;
+
+    /**
+     * Writes out whatever the repository still holds back and stops its background work. The
+     * repository is not used afterwards.
+     */
+    void close();
 }
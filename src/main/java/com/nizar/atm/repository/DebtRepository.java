@@ -1,6 +1,9 @@
 package com.nizar.atm.repository;
 
 import com.nizar.atm.model.Debt;
+import com.nizar.atm.model.DebtStatus;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.model.NettingResult;
 
 import java.util.List;
 import java.util.UUID;
@@ -8,5 +11,19 @@ import java.util.UUID;
 public interface DebtRepository {
     Debt save(Debt debt);
     List<Debt> findActiveDebtsByDebtorId(UUID debtorId);
-    void updateDebtStatus(UUID id, String status);
+    void updateDebtStatus(UUID id, DebtStatus status);
+
+    /**
+     * Pays down the active debts {@code debtorId} owes {@code creditorId}, oldest first, with up to
+     * {@code amount}, in one database transaction. Returns the amount used, which is less than
+     * {@code amount} when the debts were smaller.
+     */
+    Money applyPayment(UUID debtorId, UUID creditorId, Money amount);
+
+    /**
+     * Replaces the active debts with debts that leave each customer owing, or being owed, the same
+     * net amount as before, at most one fewer than the customers involved, in one database
+     * transaction. The debts are left as they are when that would not make them fewer.
+     */
+    NettingResult netAll();
 }
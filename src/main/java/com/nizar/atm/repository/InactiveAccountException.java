@@ -0,0 +1,10 @@
+package com.nizar.atm.repository;
+
+/**
+ * Thrown when money is to be taken from an account that exists but isn't active.
+ */
+public class InactiveAccountException extends Exception {
+    public InactiveAccountException() {
+        super("Account is not active");
+    }
+}
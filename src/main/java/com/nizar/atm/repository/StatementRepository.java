@@ -0,0 +1,17 @@
+package com.nizar.atm.repository;
+
+import com.nizar.atm.model.StatementLine;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Reads the daily and monthly rollups the transaction ledger maintains. Both ranges are inclusive
+ * and results are ordered newest period first.
+ */
+public interface StatementRepository {
+    List<StatementLine> findDailySummary(UUID customerId, LocalDate from, LocalDate to);
+    List<StatementLine> findMonthlyStatement(UUID customerId, YearMonth from, YearMonth to);
+}
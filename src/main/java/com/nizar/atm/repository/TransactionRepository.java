@@ -1,13 +1,60 @@
 package com.nizar.atm.repository;
 
 import com.nizar.atm.model.Transaction;
+import com.nizar.atm.model.TransactionCursor;
+import com.nizar.atm.model.TransactionPage;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface TransactionRepository {
+    /**
+     * Records a transaction. Implementations may buffer the write; use
+     * {@link #saveAndFlush(Transaction)} when the caller must not proceed until it is stored.
+     */
     Transaction save(Transaction transaction);
+    Transaction saveAndFlush(Transaction transaction);
+    /**
+     * Queues the transaction like {@link #saveAndFlush(Transaction)} but returns without waiting.
+     * The future completes once the transaction is stored; wait for it with
+     * {@link #awaitStored(CompletableFuture)}.
+     */
+    CompletableFuture<Void> saveAndFlushAsync(Transaction transaction);
+    /**
+     * Waits, for a bounded time, until a future of {@link #saveAndFlushAsync(Transaction)}
+     * completes, and throws if the transaction could not be stored.
+     */
+    void awaitStored(CompletableFuture<Void> stored);
+    void flush();
+    /**
+     * Recomputes the daily and monthly statement rollups from the stored transactions.
+     */
+    void rebuildRollups();
+    /**
+     * Moves whole months of history older than the configured age out of the transactions table
+     * into the archive, where the find methods still see them. Returns the number of rows moved.
+     */
+    long archiveHistory();
     List<Transaction> findByCustomerId(UUID customerId, int limit);
     List<Transaction> findByCustomerIdAndType(UUID customerId, String type, int limit);
     List<Transaction> findTransferHistory(UUID customerId, int limit);
+    /**
+     * Returns up to {@code pageSize} of the customer's transactions, newest first, starting right
+     * after {@code before} (or at the newest transaction when it is null).
+     */
+    TransactionPage findPageByCustomerId(UUID customerId, TransactionCursor before, int pageSize);
+    TransactionPage findTransferPage(UUID customerId, TransactionCursor before, int pageSize);
+    /**
+     * Passes every transaction of the customer created in [from, to) to {@code consumer}, oldest
+     * first, without holding more than one fetch of rows in memory. Returns the number of
+     * transactions passed.
+     */
+    long streamByCustomerId(UUID customerId, LocalDateTime from, LocalDateTime to, Consumer<Transaction> consumer);
+    /**
+     * Stops accepting transactions once everything buffered is stored.
+     */
+    void close();
 }
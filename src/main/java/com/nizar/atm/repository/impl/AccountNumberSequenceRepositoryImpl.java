@@ -0,0 +1,97 @@
+package com.nizar.atm.repository.impl;
+
+import com.nizar.atm.config.DatabaseManager;
+import com.nizar.atm.repository.AccountNumberSequenceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class AccountNumberSequenceRepositoryImpl implements AccountNumberSequenceRepository {
+    private static final Logger logger = LoggerFactory.getLogger(AccountNumberSequenceRepositoryImpl.class);
+    private final DatabaseManager dbManager;
+
+    private static final String INIT = "account-sequence.init";
+    private static final String FIND = "account-sequence.find";
+    private static final String ADVANCE = "account-sequence.advance";
+
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    public AccountNumberSequenceRepositoryImpl() {
+        this.dbManager = DatabaseManager.getInstance();
+        dbManager.getQueryCatalog().require(INIT, FIND, ADVANCE);
+    }
+
+    @Override
+    public long getPermutationKey() throws Exception {
+        try (Connection conn = dbManager.getConnection()) {
+            ensureSequence(conn);
+            return find(conn, "permutation_key");
+        } catch (SQLException e) {
+            logger.error("Error loading account number permutation key", e);
+            throw new Exception("Error loading account number permutation key", e);
+        }
+    }
+
+    @Override
+    public long leaseBlock(int size) throws Exception {
+        Connection conn = null;
+        try {
+            conn = dbManager.getConnection();
+            ensureSequence(conn);
+            conn.setAutoCommit(false);
+
+            PreparedStatement advance = dbManager.prepareStatement(conn, ADVANCE);
+            advance.setLong(1, size);
+            advance.executeUpdate();
+            long end = find(conn, "next_value");
+            conn.commit();
+
+            return end - size;
+        } catch (SQLException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    logger.error("Error rolling back transaction", ex);
+                }
+            }
+            logger.error("Error leasing account number block", e);
+            throw new Exception("Error leasing account number block", e);
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    logger.error("Error resetting auto-commit", e);
+                }
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    logger.error("Error returning connection to pool", e);
+                }
+            }
+        }
+    }
+
+    // Creates the single sequence row with a fresh random key unless it already exists
+    private void ensureSequence(Connection conn) throws SQLException {
+        PreparedStatement init = dbManager.prepareStatement(conn, INIT);
+        init.setLong(1, SECURE_RANDOM.nextLong());
+        init.executeUpdate();
+    }
+
+    private long find(Connection conn, String column) throws SQLException {
+        PreparedStatement pstmt = dbManager.prepareStatement(conn, FIND);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            if (!rs.next()) {
+                throw new SQLException("Account number sequence is missing");
+            }
+            return rs.getLong(column);
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.nizar.atm.repository.impl;
+
+import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.repository.CustomerRepository;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-through cache in front of a {@link CustomerRepository}.
+ *
+ * <p>Customers are cached by id in a fixed number of segments, each an access-ordered LRU map
+ * bounded to its share of {@code maxSize} and guarded by its own lock, with entries expiring
+ * {@code ttlMillis} after they were loaded. Name and account number lookups go through secondary
+ * indexes that map to the id. Writes made through this repository update or invalidate the cached
+ * entry, so the cache only goes stale through writes that bypass it, and then for at most the TTL.
+ *
+ * <p>Cached customers are copied on the way in and out because {@link Customer} is mutable and
+ * callers (sessions in particular) keep and modify the instances they are given.
+ */
+public class CachingCustomerRepository implements CustomerRepository {
+    private static final int SEGMENTS = 64;
+
+    private final CustomerRepository delegate;
+    private final long ttlNanos;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Map<String, UUID> idsByName = new ConcurrentHashMap<>();
+    private final Map<BigInteger, UUID> idsByAccountNumber = new ConcurrentHashMap<>();
+
+    // Logical clock used to drop loads that raced with a write to the same segment
+    private final AtomicLong clock = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public CachingCustomerRepository(CustomerRepository delegate, int maxSize, long ttlMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.delegate = delegate;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        int segmentCapacity = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    @Override
+    public Optional<Customer> findById(UUID id) throws Exception {
+        Customer cached = get(id);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long stamp = clock.get();
+        return cacheLoaded(delegate.findById(id), stamp);
+    }
+
+    @Override
+    public Optional<Customer> findByName(String name) throws Exception {
+        Customer cached = getIndexed(idsByName.get(name));
+        if (cached != null && name.equals(cached.getName())) {
+            return Optional.of(cached);
+        }
+        long stamp = clock.get();
+        return cacheLoaded(delegate.findByName(name), stamp);
+    }
+
+    @Override
+    public Optional<Customer> findByAccountNumber(BigInteger accountNumber) throws Exception {
+        Customer cached = getIndexed(idsByAccountNumber.get(accountNumber));
+        if (cached != null && accountNumber.equals(cached.getAccountNumber())) {
+            return Optional.of(cached);
+        }
+        long stamp = clock.get();
+        return cacheLoaded(delegate.findByAccountNumber(accountNumber), stamp);
+    }
+
+    @Override
+    public Optional<Customer> findByCardNumber(String cardNumber) throws Exception {
+        return delegate.findByCardNumber(cardNumber);
+    }
+
+    @Override
+    public Customer save(Customer customer) throws Exception {
+        try {
+            Customer saved = delegate.save(customer);
+            put(saved);
+            return saved;
+        } catch (Exception e) {
+            invalidate(customer.getId());
+            throw e;
+        }
+    }
+
+    @Override
+    public List<Customer> insertAll(List<Customer> customers) throws Exception {
+        // Bulk-inserted customers aren't cached; they are loaded on first use like any other
+        return delegate.insertAll(customers);
+    }
+
+    @Override
+    public void updateBalance(UUID id, Money newBalance) throws Exception {
+        try {
+            delegate.updateBalance(id, newBalance);
+            updateCachedBalance(id, newBalance);
+        } catch (Exception e) {
+            invalidate(id);
+            throw e;
+        }
+    }
+
+    @Override
+    public void updateLastLogin(UUID id, Date lastLogin) throws Exception {
+        try {
+            delegate.updateLastLogin(id, lastLogin);
+            Segment segment = segmentFor(id);
+            segment.lock.lock();
+            try {
+                segment.lastWrite = clock.incrementAndGet();
+                Entry entry = segment.entries.get(id);
+                if (entry != null) {
+                    entry.customer.setLastLogin(lastLogin);
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        } catch (Exception e) {
+            invalidate(id);
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<Money> debit(UUID id, Money amount) throws Exception {
+        try {
+            Optional<Money> newBalance = delegate.debit(id, amount);
+            if (newBalance.isPresent()) {
+                updateCachedBalance(id, newBalance.get());
+            }
+            return newBalance;
+        } catch (Exception e) {
+            invalidate(id);
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<Money> transfer(UUID senderId, UUID recipientId, Money amount) throws Exception {
+        try {
+            Optional<Money> senderBalance = delegate.transfer(senderId, recipientId, amount);
+            if (senderBalance.isPresent()) {
+                updateCachedBalance(senderId, senderBalance.get());
+                // The recipient's new balance isn't returned, so drop the entry
+                invalidate(recipientId);
+            }
+            return senderBalance;
+        } catch (Exception e) {
+            invalidate(senderId);
+            invalidate(recipientId);
+            throw e;
+        }
+    }
+
+    @Override
+    public void deleteById(UUID id) throws Exception {
+        try {
+            delegate.deleteById(id);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public List<Customer> findAll() throws Exception {
+        return delegate.findAll();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    public void invalidate(UUID id) {
+        if (id == null) {
+            return;
+        }
+        Segment segment = segmentFor(id);
+        Entry removed;
+        segment.lock.lock();
+        try {
+            segment.lastWrite = clock.incrementAndGet();
+            removed = segment.entries.remove(id);
+        } finally {
+            segment.lock.unlock();
+        }
+        if (removed != null) {
+            unindex(removed.customer);
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                segment.lastWrite = clock.incrementAndGet();
+                segment.entries.clear();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        idsByName.clear();
+        idsByAccountNumber.clear();
+    }
+
+    public CacheStats getStats() {
+        long size = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.entries.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return new CacheStats(size, hits.sum(), misses.sum(), evictions.sum(), expirations.sum());
+    }
+
+    private Customer getIndexed(UUID id) {
+        if (id == null) {
+            misses.increment();
+            return null;
+        }
+        return get(id);
+    }
+
+    private Customer get(UUID id) {
+        Segment segment = segmentFor(id);
+        Entry expired = null;
+        segment.lock.lock();
+        try {
+            Entry entry = segment.entries.get(id);
+            if (entry != null) {
+                if (System.nanoTime() - entry.expiresAt < 0) {
+                    hits.increment();
+                    return copy(entry.customer);
+                }
+                segment.entries.remove(id);
+                expired = entry;
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        if (expired != null) {
+            expirations.increment();
+            unindex(expired.customer);
+        }
+        misses.increment();
+        return null;
+    }
+
+    private Optional<Customer> cacheLoaded(Optional<Customer> loaded, long stamp) {
+        if (loaded.isEmpty()) {
+            return loaded;
+        }
+        Customer customer = loaded.get();
+        Segment segment = segmentFor(customer.getId());
+        segment.lock.lock();
+        try {
+            // A write to this segment since the load started may have made the row stale
+            if (segment.lastWrite <= stamp) {
+                segment.entries.put(customer.getId(), new Entry(copy(customer), System.nanoTime() + ttlNanos));
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        index(customer);
+        return loaded;
+    }
+
+    private void put(Customer customer) {
+        Segment segment = segmentFor(customer.getId());
+        segment.lock.lock();
+        try {
+            segment.lastWrite = clock.incrementAndGet();
+            segment.entries.put(customer.getId(), new Entry(copy(customer), System.nanoTime() + ttlNanos));
+        } finally {
+            segment.lock.unlock();
+        }
+        index(customer);
+    }
+
+    private void updateCachedBalance(UUID id, Money balance) {
+        Segment segment = segmentFor(id);
+        segment.lock.lock();
+        try {
+            segment.lastWrite = clock.incrementAndGet();
+            Entry entry = segment.entries.get(id);
+            if (entry != null) {
+                entry.customer.setBalance(balance);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    private void index(Customer customer) {
+        if (customer.getName() != null) {
+            idsByName.put(customer.getName(), customer.getId());
+        }
+        if (customer.getAccountNumber() != null) {
+            idsByAccountNumber.put(customer.getAccountNumber(), customer.getId());
+        }
+    }
+
+    private void unindex(Customer customer) {
+        if (customer.getName() != null) {
+            idsByName.remove(customer.getName(), customer.getId());
+        }
+        if (customer.getAccountNumber() != null) {
+            idsByAccountNumber.remove(customer.getAccountNumber(), customer.getId());
+        }
+    }
+
+    private Segment segmentFor(UUID id) {
+        int h = id.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    private static Customer copy(Customer customer) {
+        return customer.toBuilder().build();
+    }
+
+    private static final class Entry {
+        private final Customer customer;
+        private final long expiresAt;
+
+        private Entry(Customer customer, long expiresAt) {
+            this.customer = customer;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private long lastWrite;
+        private final LinkedHashMap<UUID, Entry> entries;
+
+        private Segment(int capacity) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+                    if (size() <= capacity) {
+                        return false;
+                    }
+                    evictions.increment();
+                    unindex(eldest.getValue().customer);
+                    return true;
+                }
+            };
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class CacheStats {
+        private final long size;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long expirations;
+
+        CacheStats(long size, long hits, long misses, long evictions, long expirations) {
+            this.size = size;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+        }
+
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+    }
+}
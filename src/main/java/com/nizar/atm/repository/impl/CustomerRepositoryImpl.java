@@ -2,7 +2,12 @@ package com.nizar.atm.repository.impl;
 
 import com.nizar.atm.config.DatabaseManager;
 import com.nizar.atm.repository.CustomerRepository;
+import com.nizar.atm.repository.InactiveAccountException;
 import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.CustomerStatus;
+import com.nizar.atm.model.Money;
+import org.duckdb.DuckDBAppender;
+import org.duckdb.DuckDBConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,62 +21,93 @@ public class CustomerRepositoryImpl implements CustomerRepository {
     private static final Logger logger = LoggerFactory.getLogger(CustomerRepositoryImpl.class);
     private final DatabaseManager dbManager;
 
-    private static final String FIND_BY_ID_SQL =
-            "SELECT * FROM customers WHERE id = ?";
-
-    private static final String FIND_BY_NAME_SQL =
-            "SELECT * FROM customers WHERE name = ?";
-
-    private static final String SAVE_SQL = """
-        INSERT INTO customers (id, name, card_number, pin_hash, balance, created_at, updated_at)
-        VALUES (?, ?, ?, ?, ?, ?, ?)
-        ON CONFLICT (id) DO UPDATE SET
-            name = EXCLUDED.name,
-            card_number = EXCLUDED.card_number,
-            pin_hash = EXCLUDED.pin_hash,
-            balance = EXCLUDED.balance,
-            updated_at = EXCLUDED.updated_at
-    """;
-
-    private static final String UPDATE_BALANCE_SQL =
-            "UPDATE customers SET balance = ?, updated_at = ? WHERE id = ?";
-
-    private static final String FIND_ALL_SQL =
-            "SELECT * FROM customers ORDER BY created_at DESC";
-
-    private static final String FIND_BY_CARD_NUMBER_SQL =
-            "SELECT * FROM customers WHERE card_number = ?";
-
-    private static final String FIND_BY_ACCOUNT_NUMBER_SQL =
-            "SELECT * FROM customers WHERE account_number = ?";
+    private static final String FIND_BY_ID = "customer.find-by-id";
+    private static final String FIND_BY_NAME = "customer.find-by-name";
+    private static final String FIND_BY_ACCOUNT_NUMBER = "customer.find-by-account-number";
+    private static final String FIND_BY_CARD_NUMBER = "customer.find-by-card-number";
+    private static final String FIND_ALL = "customer.find-all";
+    private static final String INSERT = "customer.insert";
+    private static final String UPDATE = "customer.update";
+    private static final String UPDATE_BALANCE = "customer.update-balance";
+    private static final String UPDATE_LAST_LOGIN = "customer.update-last-login";
+    private static final String DEBIT = "customer.debit";
+    private static final String CREDIT = "customer.credit";
+    private static final String FIND_BALANCE = "customer.find-balance";
+    private static final String FIND_STATUS = "customer.find-status";
+    private static final String DELETE = "customer.delete";
+
+    // Bulk inserts are staged in a connection-local temp table, which the named queries can't
+    // refer to since it doesn't exist when they are validated at startup.
+    private static final String STAGING_TABLE = "customer_import";
+    // Staged columns use the types cheapest to append (see insertAll)
+    private static final String CREATE_STAGING = "CREATE TEMP TABLE " + STAGING_TABLE + " (" +
+            "id VARCHAR, name VARCHAR, account_number BIGINT, pin_code VARCHAR, balance_cents BIGINT, status VARCHAR)";
+    private static final String FIND_STAGED_TAKEN =
+            "SELECT s.id FROM " + STAGING_TABLE + " s SEMI JOIN customers c ON c.name = s.name";
+    private static final String INSERT_STAGED =
+            "INSERT INTO customers (id, name, account_number, pin_code, balance, status, created_at, updated_at) " +
+            "SELECT CAST(s.id AS UUID), s.name, CAST(s.account_number AS VARCHAR), s.pin_code, " +
+            "CAST(s.balance_cents AS DECIMAL(18, 0)) / 100, s.status, ?, ? " +
+            "FROM " + STAGING_TABLE + " s ANTI JOIN customers c ON c.name = s.name";
 
     public CustomerRepositoryImpl() {
-        this.dbManager = DatabaseManager.getInstance();
+        this(DatabaseManager.getInstance());
+    }
+
+    public CustomerRepositoryImpl(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+        dbManager.getQueryCatalog().require(FIND_BY_ID, FIND_BY_NAME, FIND_BY_ACCOUNT_NUMBER,
+                FIND_BY_CARD_NUMBER, FIND_ALL, INSERT, UPDATE, UPDATE_BALANCE, UPDATE_LAST_LOGIN, DEBIT, CREDIT, FIND_BALANCE, FIND_STATUS, DELETE);
     }
 
     private Customer mapResultSetToCustomer(ResultSet rs) throws SQLException {
         Customer customer = new Customer();
         customer.setId(UUID.fromString(rs.getString("id")));
         customer.setName(rs.getString("name"));
-        customer.setBalance(rs.getBigDecimal("balance"));
-        customer.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-        customer.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
+        customer.setBalance(Money.of(rs.getBigDecimal("balance")));
+        customer.setPinCode(rs.getString("pin_code"));
+
+        String accountNumber = rs.getString("account_number");
+        if (accountNumber != null) {
+            customer.setAccountNumber(new BigInteger(accountNumber));
+        }
+        String status = rs.getString("status");
+        if (status != null) {
+            customer.setStatus(CustomerStatus.valueOf(status));
+        }
+        Timestamp lastLogin = rs.getTimestamp("last_login");
+        if (lastLogin != null) {
+            customer.setLastLogin(new java.util.Date(lastLogin.getTime()));
+        }
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        if (createdAt != null) {
+            customer.setCreatedAt(createdAt.toLocalDateTime());
+        }
+        Timestamp updatedAt = rs.getTimestamp("updated_at");
+        if (updatedAt != null) {
+            customer.setUpdatedAt(updatedAt.toLocalDateTime());
+        }
         return customer;
     }
 
-    @Override
-    public Optional<Customer> findById(UUID id) throws Exception {
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(FIND_BY_ID_SQL)) {
-
-            pstmt.setObject(1, id);
-            ResultSet rs = pstmt.executeQuery();
+    // Ids are bound as strings throughout: the DuckDB driver's setObject(UUID) flips the
+    // most significant bit, so ids written and read back that way never match again.
+    private Optional<Customer> findOne(Connection conn, String query, String parameter) throws SQLException {
+        PreparedStatement pstmt = dbManager.prepareStatement(conn, query);
+        pstmt.setString(1, parameter);
 
+        try (ResultSet rs = pstmt.executeQuery()) {
             if (rs.next()) {
                 return Optional.of(mapResultSetToCustomer(rs));
             }
             return Optional.empty();
+        }
+    }
 
+    @Override
+    public Optional<Customer> findById(UUID id) throws Exception {
+        try (Connection conn = dbManager.getConnection()) {
+            return findOne(conn, FIND_BY_ID, id.toString());
         } catch (SQLException e) {
             logger.error("Error finding customer by ID: {}", id, e);
             throw new Exception("Error finding customer by ID: " + id, e);
@@ -80,23 +116,18 @@ public class CustomerRepositoryImpl implements CustomerRepository {
 
     @Override
     public Optional<Customer> findByName(String name) throws Exception {
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(FIND_BY_NAME_SQL)) {
-
-            pstmt.setString(1, name);
-            ResultSet rs = pstmt.executeQuery();
-
-            if (rs.next()) {
-                return Optional.of(mapResultSetToCustomer(rs));
-            }
-            return Optional.empty();
-
+        try (Connection conn = dbManager.getConnection()) {
+            return findOne(conn, FIND_BY_NAME, name);
         } catch (SQLException e) {
             logger.error("Error finding customer by name: {}", name, e);
             throw new Exception("Error finding customer by name: " + name, e);
         }
     }
 
+    /**
+     * Inserts the customer, or, if its id is already stored, updates its PIN, balance, status and
+     * last login to the given values. Name and account number can't change once stored.
+     */
     @Override
     public Customer save(Customer customer) throws Exception {
         Connection conn = null;
@@ -104,105 +135,333 @@ public class CustomerRepositoryImpl implements CustomerRepository {
             conn = dbManager.getConnection();
             conn.setAutoCommit(false);
 
-            try (PreparedStatement pstmt = conn.prepareStatement(SAVE_SQL)) {
-                if (customer.getId() == null) {
-                    customer.setId(UUID.randomUUID());
-                }
-
-                Timestamp now = Timestamp.valueOf(LocalDateTime.now());
-                if (customer.getCreatedAt() == null) {
-                    customer.setCreatedAt(now.toLocalDateTime());
-                }
-                customer.setUpdatedAt(now.toLocalDateTime());
-
-                pstmt.setObject(1, customer.getId());
-                pstmt.setString(2, customer.getName());
-                pstmt.setString(3, null);
-                pstmt.setString(4, null);
-                pstmt.setBigDecimal(5, customer.getBalance());
-                pstmt.setTimestamp(6, Timestamp.valueOf(String.valueOf(customer.getCreatedAt())));
-                pstmt.setTimestamp(7, Timestamp.valueOf(String.valueOf(customer.getUpdatedAt())));
+            Optional<Customer> stored = Optional.empty();
+            if (customer.getId() == null) {
+                customer.setId(UUID.randomUUID());
+            } else {
+                stored = findOne(conn, FIND_BY_ID, customer.getId().toString());
+            }
 
-                pstmt.executeUpdate();
-                conn.commit();
+            LocalDateTime now = LocalDateTime.now();
+            if (customer.getCreatedAt() == null) {
+                customer.setCreatedAt(stored.map(Customer::getCreatedAt).orElse(now));
+            }
+            customer.setUpdatedAt(now);
 
-                logger.debug("Successfully saved customer: {}", customer.getId());
-                return customer;
+            if (stored.isPresent()) {
+                update(conn, stored.get(), customer);
+            } else {
+                insert(conn, customer);
             }
+            conn.commit();
+
+            logger.debug("Successfully saved customer: {}", customer.getId());
+            return customer;
         } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    logger.error("Error rolling back transaction", ex);
-                }
-            }
+            rollbackQuietly(conn);
             logger.error("Error saving customer: {}", customer.getName(), e);
             throw new Exception("Error saving customer: " + customer.getName(), e);
         } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                } catch (SQLException e) {
-                    logger.error("Error resetting auto-commit", e);
+            release(conn);
+        }
+    }
+
+    private void insert(Connection conn, Customer customer) throws SQLException {
+        PreparedStatement pstmt = dbManager.prepareStatement(conn, INSERT);
+        pstmt.setString(1, customer.getId().toString());
+        pstmt.setString(2, customer.getName());
+        pstmt.setString(3, accountNumber(customer));
+        pstmt.setString(4, null);
+        pstmt.setString(5, customer.getPinCode());
+        pstmt.setBigDecimal(6, customer.getBalance().toBigDecimal());
+        pstmt.setString(7, status(customer));
+        pstmt.setTimestamp(8, lastLogin(customer));
+        pstmt.setTimestamp(9, Timestamp.valueOf(customer.getCreatedAt()));
+        pstmt.setTimestamp(10, Timestamp.valueOf(customer.getUpdatedAt()));
+        pstmt.executeUpdate();
+    }
+
+    private void update(Connection conn, Customer stored, Customer customer) throws SQLException {
+        if (!Objects.equals(stored.getName(), customer.getName())
+                || !Objects.equals(stored.getAccountNumber(), customer.getAccountNumber())) {
+            throw new IllegalArgumentException("Name and account number of customer " + customer.getId()
+                    + " can't change");
+        }
+        PreparedStatement pstmt = dbManager.prepareStatement(conn, UPDATE);
+        pstmt.setString(1, customer.getPinCode());
+        pstmt.setBigDecimal(2, customer.getBalance().toBigDecimal());
+        pstmt.setString(3, status(customer));
+        pstmt.setTimestamp(4, lastLogin(customer));
+        pstmt.setTimestamp(5, Timestamp.valueOf(customer.getUpdatedAt()));
+        pstmt.setString(6, customer.getId().toString());
+        pstmt.executeUpdate();
+    }
+
+    private static String accountNumber(Customer customer) {
+        return customer.getAccountNumber() == null ? null : customer.getAccountNumber().toString();
+    }
+
+    private static String status(Customer customer) {
+        return customer.getStatus() == null ? CustomerStatus.ACTIVE.name() : customer.getStatus().name();
+    }
+
+    private static Timestamp lastLogin(Customer customer) {
+        return customer.getLastLogin() == null ? null : new Timestamp(customer.getLastLogin().getTime());
+    }
+
+    /**
+     * Loads the customers into a temp table through the DuckDB appender, then moves the ones whose
+     * name is free into {@code customers} with a single {@code INSERT ... SELECT}. That costs one
+     * commit per call instead of one per customer. A name repeated in the list is skipped after its
+     * first use. Ids, account numbers, PINs and statuses must
+     * already be set; creation and update times are set to now.
+     *
+     * <p>Each appended value is a JNI call, and the driver's UUID, DECIMAL and TIMESTAMP
+     * conversions cost several times more than strings and longs, so the staging table holds
+     * ids as text and balances as cents and the conversions run in SQL instead.
+     */
+    @Override
+    public List<Customer> insertAll(List<Customer> customers) throws Exception {
+        if (customers.isEmpty()) {
+            return Collections.emptyList();
+        }
+        try (DuckDBConnection conn = dbManager.createDedicatedConnection().unwrap(DuckDBConnection.class)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(CREATE_STAGING);
+            }
+            Set<String> names = new HashSet<>();
+            Set<UUID> repeated = new HashSet<>();
+            try (DuckDBAppender appender = conn.createAppender(DuckDBConnection.DEFAULT_SCHEMA, STAGING_TABLE)) {
+                for (Customer customer : customers) {
+                    if (!names.add(customer.getName())) {
+                        repeated.add(customer.getId());
+                        continue;
+                    }
+                    appender.beginRow();
+                    appender.append(customer.getId().toString());
+                    appender.append(customer.getName());
+                    appender.append(customer.getAccountNumber().longValueExact());
+                    appender.append(customer.getPinCode());
+                    appender.append(customer.getBalance().getCents());
+                    appender.append(customer.getStatus().name());
+                    appender.endRow();
+                }
+            }
+
+            LocalDateTime now = LocalDateTime.now();
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement();
+                 PreparedStatement insert = conn.prepareStatement(INSERT_STAGED)) {
+                Set<UUID> taken = new HashSet<>(repeated);
+                try (ResultSet rs = stmt.executeQuery(FIND_STAGED_TAKEN)) {
+                    while (rs.next()) {
+                        taken.add(UUID.fromString(rs.getString("id")));
+                    }
+                }
+                insert.setTimestamp(1, Timestamp.valueOf(now));
+                insert.setTimestamp(2, Timestamp.valueOf(now));
+                int inserted = insert.executeUpdate();
+                conn.commit();
+
+                List<Customer> skipped = new ArrayList<>(taken.size());
+                for (Customer customer : customers) {
+                    if (taken.contains(customer.getId())) {
+                        skipped.add(customer);
+                    } else {
+                        customer.setCreatedAt(now);
+                        customer.setUpdatedAt(now);
+                    }
                 }
+                logger.debug("Inserted {} customers, skipped {} with taken names", inserted, skipped.size());
+                return skipped;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.error("Error inserting {} customers", customers.size(), e);
+            throw new Exception("Error inserting " + customers.size() + " customers", e);
+        }
+    }
+
+    @Override
+    public void updateBalance(UUID id, Money newBalance) throws Exception {
+        try (Connection conn = dbManager.getConnection()) {
+            PreparedStatement pstmt = dbManager.prepareStatement(conn, UPDATE_BALANCE);
+            pstmt.setBigDecimal(1, newBalance.toBigDecimal());
+            pstmt.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now()));
+            pstmt.setString(3, id.toString());
+
+            int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected == 0) {
+                throw new Exception("No customer found with ID: " + id);
+            }
+
+            logger.debug("Successfully updated balance for customer: {}", id);
+        } catch (SQLException e) {
+            logger.error("Error updating balance for customer ID: {}", id, e);
+            throw new Exception("Error updating balance for customer ID: " + id, e);
+        }
+    }
+
+    @Override
+    public void updateLastLogin(UUID id, java.util.Date lastLogin) throws Exception {
+        try (Connection conn = dbManager.getConnection()) {
+            PreparedStatement pstmt = dbManager.prepareStatement(conn, UPDATE_LAST_LOGIN);
+            pstmt.setTimestamp(1, new Timestamp(lastLogin.getTime()));
+            pstmt.setString(2, id.toString());
+
+            if (pstmt.executeUpdate() == 0) {
+                throw new Exception("No customer found with ID: " + id);
             }
+        } catch (SQLException e) {
+            logger.error("Error updating last login for customer ID: {}", id, e);
+            throw new Exception("Error updating last login for customer ID: " + id, e);
         }
     }
 
     @Override
-    public void updateBalance(UUID id, BigDecimal newBalance) throws Exception {
+    public Optional<Money> debit(UUID id, Money amount) throws Exception {
         Connection conn = null;
         try {
             conn = dbManager.getConnection();
             conn.setAutoCommit(false);
 
-            try (PreparedStatement pstmt = conn.prepareStatement(UPDATE_BALANCE_SQL)) {
-                pstmt.setBigDecimal(1, newBalance);
-                pstmt.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now()));
-                pstmt.setObject(3, id);
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            if (applyDebit(conn, id, amount, now) == 0) {
+                conn.rollback();
+                requireActive(dbManager, conn, id);
+                logger.debug("Debit of {} rejected for customer: {}", amount, id);
+                return Optional.empty();
+            }
 
-                int rowsAffected = pstmt.executeUpdate();
-                if (rowsAffected == 0) {
-                    throw new Exception("No customer found with ID: " + id);
-                }
+            Money newBalance = findBalance(conn, id);
+            conn.commit();
 
-                conn.commit();
-                logger.debug("Successfully updated balance for customer: {}", id);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
+            logger.debug("Successfully debited {} from customer: {}", amount, id);
+            return Optional.of(newBalance);
         } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    logger.error("Error rolling back transaction", ex);
-                }
+            rollbackQuietly(conn);
+            logger.error("Error debiting customer ID: {}", id, e);
+            throw new Exception("Error debiting customer ID: " + id, e);
+        } finally {
+            release(conn);
+        }
+    }
+
+    @Override
+    public Optional<Money> transfer(UUID senderId, UUID recipientId, Money amount) throws Exception {
+        Connection conn = null;
+        try {
+            conn = dbManager.getConnection();
+            conn.setAutoCommit(false);
+
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            if (applyDebit(conn, senderId, amount, now) == 0) {
+                conn.rollback();
+                requireActive(dbManager, conn, senderId);
+                logger.debug("Transfer of {} rejected for customer: {}", amount, senderId);
+                return Optional.empty();
             }
-            logger.error("Error updating balance for customer ID: {}", id, e);
-            throw new Exception("Error updating balance for customer ID: " + id, e);
+
+            PreparedStatement credit = dbManager.prepareStatement(conn, CREDIT);
+            credit.setBigDecimal(1, amount.toBigDecimal());
+            credit.setTimestamp(2, now);
+            credit.setString(3, recipientId.toString());
+            if (credit.executeUpdate() == 0) {
+                conn.rollback();
+                throw new Exception("No active customer found with ID: " + recipientId);
+            }
+
+            Money senderBalance = findBalance(conn, senderId);
+            conn.commit();
+
+            logger.debug("Successfully transferred {} from customer: {} to customer: {}",
+                    amount, senderId, recipientId);
+            return Optional.of(senderBalance);
+        } catch (SQLException e) {
+            rollbackQuietly(conn);
+            logger.error("Error transferring from customer ID: {} to customer ID: {}", senderId, recipientId, e);
+            throw new Exception("Error transferring from customer ID: " + senderId, e);
         } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                } catch (SQLException e) {
-                    logger.error("Error resetting auto-commit", e);
-                }
+            release(conn);
+        }
+    }
+
+    private int applyDebit(Connection conn, UUID id, Money amount, Timestamp now) throws SQLException {
+        PreparedStatement debit = dbManager.prepareStatement(conn, DEBIT);
+        BigDecimal value = amount.toBigDecimal();
+        debit.setBigDecimal(1, value);
+        debit.setTimestamp(2, now);
+        debit.setString(3, id.toString());
+        debit.setBigDecimal(4, value);
+        return debit.executeUpdate();
+    }
+
+    /**
+     * Throws if the customer's account isn't active. A conditional debit that changed no row was
+     * rejected either for that or for insufficient funds, and the caller has to say which.
+     */
+    static void requireActive(DatabaseManager db, Connection conn, UUID id)
+            throws SQLException, InactiveAccountException {
+        PreparedStatement pstmt = db.prepareStatement(conn, FIND_STATUS);
+        pstmt.setString(1, id.toString());
+        try (ResultSet rs = pstmt.executeQuery()) {
+            if (!rs.next()) {
+                throw new SQLException("No customer found with ID: " + id);
+            }
+            if (!CustomerStatus.ACTIVE.name().equals(rs.getString(1))) {
+                throw new InactiveAccountException();
+            }
+        }
+    }
+
+    private Money findBalance(Connection conn, UUID id) throws SQLException {
+        PreparedStatement pstmt = dbManager.prepareStatement(conn, FIND_BALANCE);
+        pstmt.setString(1, id.toString());
+        try (ResultSet rs = pstmt.executeQuery()) {
+            if (!rs.next()) {
+                throw new SQLException("No customer found with ID: " + id);
+            }
+            return Money.of(rs.getBigDecimal(1));
+        }
+    }
+
+    private void rollbackQuietly(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.rollback();
+            } catch (SQLException ex) {
+                logger.error("Error rolling back transaction", ex);
+            }
+        }
+    }
+
+    private void release(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.error("Error resetting auto-commit", e);
+            }
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                logger.error("Error returning connection to pool", e);
             }
         }
     }
 
     @Override
     public List<Customer> findAll() throws Exception {
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(FIND_ALL_SQL)) {
-
-            ResultSet rs = pstmt.executeQuery();
+        try (Connection conn = dbManager.getConnection()) {
+            PreparedStatement pstmt = dbManager.prepareStatement(conn, FIND_ALL);
             List<Customer> customers = new ArrayList<>();
 
-            while (rs.next()) {
-                customers.add(mapResultSetToCustomer(rs));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    customers.add(mapResultSetToCustomer(rs));
+                }
             }
 
             return customers;
@@ -213,84 +472,57 @@ public class CustomerRepositoryImpl implements CustomerRepository {
         }
     }
 
-    public Optional<Customer> findByCardNumber(String cardNumber) throws Exception {
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(FIND_BY_CARD_NUMBER_SQL)) {
-
-            pstmt.setString(1, cardNumber);
-            ResultSet rs = pstmt.executeQuery();
-
-            if (rs.next()) {
-                return Optional.of(mapResultSetToCustomer(rs));
-            }
-            return Optional.empty();
+    /**
+     * Nothing to do: every write is committed before its method returns.
+     */
+    @Override
+    public void close() {
+    }
 
+    @Override
+    public Optional<Customer> findByCardNumber(String cardNumber) throws Exception {
+        try (Connection conn = dbManager.getConnection()) {
+            return findOne(conn, FIND_BY_CARD_NUMBER, cardNumber);
         } catch (SQLException e) {
             logger.error("Error finding customer by card number: {}", cardNumber, e);
             throw new Exception("Error finding customer by card number", e);
         }
     }
 
+    @Override
     public void deleteById(UUID id) throws Exception {
-        Connection conn = null;
-        try {
-            conn = dbManager.getConnection();
-            conn.setAutoCommit(false);
-
-            try (PreparedStatement pstmt = conn.prepareStatement(
-                    "DELETE FROM customers WHERE id = ?")) {
-                pstmt.setObject(1, id);
-                pstmt.executeUpdate();
-                conn.commit();
-                logger.debug("Successfully deleted customer: {}", id);
-            }
+        try (Connection conn = dbManager.getConnection()) {
+            PreparedStatement pstmt = dbManager.prepareStatement(conn, DELETE);
+            pstmt.setString(1, id.toString());
+            pstmt.executeUpdate();
+            logger.debug("Successfully deleted customer: {}", id);
         } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    logger.error("Error rolling back transaction", ex);
-                }
-            }
             logger.error("Error deleting customer: {}", id, e);
             throw new Exception("Error deleting customer: " + id, e);
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                } catch (SQLException e) {
-                    logger.error("Error resetting auto-commit", e);
-                }
-            }
         }
     }
 
+    @Override
     public Optional<Customer> findByAccountNumber(BigInteger accountNumber) throws Exception {
         if (accountNumber == null) {
             logger.warn("Attempted to find customer with null account number");
             throw new IllegalArgumentException("Account number cannot be null");
         }
 
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(FIND_BY_ACCOUNT_NUMBER_SQL)) {
-
-            // Convert BigInteger to String for storage
-            pstmt.setString(1, accountNumber.toString());
+        try (Connection conn = dbManager.getConnection()) {
+            // Account numbers are stored as strings
+            Optional<Customer> customer = findOne(conn, FIND_BY_ACCOUNT_NUMBER, accountNumber.toString());
 
-            ResultSet rs = pstmt.executeQuery();
-
-            if (rs.next()) {
-                Customer customer = mapResultSetToCustomer(rs);
+            if (customer.isPresent()) {
                 logger.debug("Found customer with account number: {}", accountNumber);
-                return Optional.of(customer);
+            } else {
+                logger.debug("No customer found with account number: {}", accountNumber);
             }
-
-            logger.debug("No customer found with account number: {}", accountNumber);
-            return Optional.empty();
+            return customer;
 
         } catch (SQLException e) {
             logger.error("Error finding customer by account number: {}", accountNumber, e);
             throw new Exception("Error finding customer by account number", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,249 @@
+package com.nizar.atm.repository.impl;
+
+import com.nizar.atm.config.DatabaseManager;
+import com.nizar.atm.model.Debt;
+import com.nizar.atm.model.DebtStatus;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.model.NettingResult;
+import com.nizar.atm.repository.DebtRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Debts between customers. A debt is paid down by {@link #applyPayment} and replaced wholesale by
+ * {@link #netAll}; in both cases the rows it replaces are kept with their final status.
+ *
+ * <p>Netting runs entirely inside DuckDB: set-based statements over the active debts, with no row
+ * ever read into the JVM, so it takes the same heap for a thousand debts as for millions.
+ */
+public class DebtRepositoryImpl implements DebtRepository {
+    private static final Logger logger = LoggerFactory.getLogger(DebtRepositoryImpl.class);
+
+    private static final String CREATE = "debt.create";
+    private static final String UPDATE = "debt.update";
+    private static final String UPDATE_STATUS = "debt.update-status";
+    private static final String FIND_ACTIVE = "debt.find-active";
+    private static final String FIND_ACTIVE_TO = "debt.find-active-to";
+    private static final String NETTING_RETIRE = "debt.netting.retire";
+    private static final String NETTING_INSERT = "debt.netting.insert";
+    private static final String NETTING_TOTALS = "debt.netting.totals";
+
+    private final DatabaseManager dbManager;
+
+    public DebtRepositoryImpl() {
+        this.dbManager = DatabaseManager.getInstance();
+        dbManager.getQueryCatalog().require(CREATE, UPDATE, UPDATE_STATUS, FIND_ACTIVE, FIND_ACTIVE_TO,
+                NETTING_RETIRE, NETTING_INSERT, NETTING_TOTALS);
+    }
+
+    @Override
+    public Debt save(Debt debt) {
+        if (debt.getId() == null) {
+            debt.setId(UUID.randomUUID());
+        }
+        if (debt.getStatus() == null) {
+            debt.setStatus(DebtStatus.ACTIVE);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (debt.getCreatedAt() == null) {
+            debt.setCreatedAt(now);
+        }
+        debt.setUpdatedAt(now);
+
+        try (Connection conn = dbManager.getConnection()) {
+            PreparedStatement pstmt = dbManager.prepareStatement(conn, CREATE);
+            pstmt.setString(1, debt.getId().toString());
+            pstmt.setString(2, debt.getDebtorId().toString());
+            pstmt.setString(3, debt.getCreditorId().toString());
+            pstmt.setBigDecimal(4, debt.getAmount().toBigDecimal());
+            pstmt.setString(5, debt.getStatus().name());
+            pstmt.setTimestamp(6, Timestamp.valueOf(debt.getCreatedAt()));
+            pstmt.setTimestamp(7, Timestamp.valueOf(debt.getUpdatedAt()));
+            pstmt.executeUpdate();
+            return debt;
+        } catch (SQLException e) {
+            logger.error("Error saving debt of {} to {}", debt.getDebtorId(), debt.getCreditorId(), e);
+            throw new RuntimeException("Error saving debt", e);
+        }
+    }
+
+    @Override
+    public List<Debt> findActiveDebtsByDebtorId(UUID debtorId) {
+        try (Connection conn = dbManager.getConnection()) {
+            PreparedStatement pstmt = dbManager.prepareStatement(conn, FIND_ACTIVE);
+            pstmt.setString(1, debtorId.toString());
+            return readDebts(pstmt);
+        } catch (SQLException e) {
+            logger.error("Error finding active debts of {}", debtorId, e);
+            throw new RuntimeException("Error finding active debts of " + debtorId, e);
+        }
+    }
+
+    @Override
+    public void updateDebtStatus(UUID id, DebtStatus status) {
+        try (Connection conn = dbManager.getConnection()) {
+            PreparedStatement pstmt = dbManager.prepareStatement(conn, UPDATE_STATUS);
+            pstmt.setString(1, status.name());
+            pstmt.setString(2, id.toString());
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("Error updating status of debt {}", id, e);
+            throw new RuntimeException("Error updating status of debt " + id, e);
+        }
+    }
+
+    @Override
+    public Money applyPayment(UUID debtorId, UUID creditorId, Money amount) {
+        Connection conn = null;
+        try {
+            conn = dbManager.getConnection();
+            conn.setAutoCommit(false);
+
+            PreparedStatement find = dbManager.prepareStatement(conn, FIND_ACTIVE_TO);
+            find.setString(1, debtorId.toString());
+            find.setString(2, creditorId.toString());
+            List<Debt> debts = readDebts(find);
+
+            Money remaining = amount;
+            for (Debt debt : debts) {
+                if (!remaining.isPositive()) {
+                    break;
+                }
+                if (debt.getAmount().isGreaterThan(remaining)) {
+                    PreparedStatement update = dbManager.prepareStatement(conn, UPDATE);
+                    update.setBigDecimal(1, debt.getAmount().minus(remaining).toBigDecimal());
+                    update.setString(2, debt.getId().toString());
+                    update.executeUpdate();
+                    remaining = Money.ZERO;
+                } else {
+                    PreparedStatement settle = dbManager.prepareStatement(conn, UPDATE_STATUS);
+                    settle.setString(1, DebtStatus.SETTLED.name());
+                    settle.setString(2, debt.getId().toString());
+                    settle.executeUpdate();
+                    remaining = remaining.minus(debt.getAmount());
+                }
+            }
+            conn.commit();
+            return amount.minus(remaining);
+        } catch (SQLException e) {
+            rollbackQuietly(conn);
+            logger.error("Error applying payment from {} to {}", debtorId, creditorId, e);
+            throw new RuntimeException("Error applying payment to debts of " + debtorId, e);
+        } finally {
+            release(conn);
+        }
+    }
+
+    @Override
+    public NettingResult netAll() {
+        long start = System.nanoTime();
+        // Tags this run's retired debts; runs are serialized and far more than a microsecond apart
+        Timestamp run = Timestamp.valueOf(LocalDateTime.now());
+        Connection conn = null;
+        try {
+            conn = dbManager.getConnection();
+            conn.setAutoCommit(false);
+
+            PreparedStatement retire = dbManager.prepareStatement(conn, NETTING_RETIRE);
+            retire.setTimestamp(1, run);
+            long before = retire.executeUpdate();
+
+            PreparedStatement insert = dbManager.prepareStatement(conn, NETTING_INSERT);
+            insert.setTimestamp(1, run);
+            insert.setTimestamp(2, run);
+            insert.setTimestamp(3, run);
+            insert.setTimestamp(4, run);
+            long after = insert.executeUpdate();
+
+            PreparedStatement totals = dbManager.prepareStatement(conn, NETTING_TOTALS);
+            totals.setTimestamp(1, run);
+            totals.setTimestamp(2, run);
+            Money amountBefore;
+            Money amountAfter;
+            try (ResultSet rs = totals.executeQuery()) {
+                rs.next();
+                amountBefore = Money.of(rs.getBigDecimal("amount_before"));
+                amountAfter = Money.of(rs.getBigDecimal("amount_after"));
+            }
+            // Sparse debts, where few customers owe more than one other, can net into more debts
+            // than they started as; those are left as they are
+            if (after >= before) {
+                conn.rollback();
+                long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+                logger.info("Netting {} debts would leave {}, kept them as they are", before, after);
+                return new NettingResult(before, before, amountBefore, amountBefore, elapsedMillis);
+            }
+            conn.commit();
+
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            logger.info("Netted {} debts totalling {} into {} totalling {} in {} ms", before, amountBefore,
+                    after, amountAfter, elapsedMillis);
+            return new NettingResult(before, after, amountBefore, amountAfter, elapsedMillis);
+        } catch (SQLException e) {
+            rollbackQuietly(conn);
+            logger.error("Error netting debts", e);
+            throw new RuntimeException("Error netting debts", e);
+        } finally {
+            release(conn);
+        }
+    }
+
+    private List<Debt> readDebts(PreparedStatement pstmt) throws SQLException {
+        List<Debt> debts = new ArrayList<>();
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                Debt debt = new Debt();
+                debt.setId(UUID.fromString(rs.getString("id")));
+                debt.setDebtorId(UUID.fromString(rs.getString("debtor_id")));
+                debt.setCreditorId(UUID.fromString(rs.getString("creditor_id")));
+                debt.setAmount(Money.of(rs.getBigDecimal("amount")));
+                debt.setStatus(DebtStatus.valueOf(rs.getString("status")));
+                Timestamp createdAt = rs.getTimestamp("created_at");
+                if (createdAt != null) {
+                    debt.setCreatedAt(createdAt.toLocalDateTime());
+                }
+                Timestamp updatedAt = rs.getTimestamp("updated_at");
+                if (updatedAt != null) {
+                    debt.setUpdatedAt(updatedAt.toLocalDateTime());
+                }
+                debts.add(debt);
+            }
+        }
+        return debts;
+    }
+
+    private void rollbackQuietly(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.rollback();
+            } catch (SQLException ex) {
+                logger.error("Error rolling back transaction", ex);
+            }
+        }
+    }
+
+    private void release(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.error("Error resetting auto-commit", e);
+            }
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                logger.error("Error returning connection to pool", e);
+            }
+        }
+    }
+}
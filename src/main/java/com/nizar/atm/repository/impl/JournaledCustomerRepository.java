@@ -0,0 +1,537 @@
+package com.nizar.atm.repository.impl;
+
+import com.nizar.atm.config.DatabaseManager;
+import com.nizar.atm.journal.LedgerJournal;
+import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.CustomerStatus;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.repository.CustomerRepository;
+import com.nizar.atm.repository.InactiveAccountException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Makes balance changes durable in a {@link LedgerJournal} instead of committing an update to the
+ * customers table for each of them.
+ *
+ * <p>The balances of accounts used since startup are kept in memory, where debits and transfers
+ * are checked and applied; the new balances are appended to the journal and the call returns once
+ * the journal has been forced to disk. Every {@code db.journal.apply_interval_ms} the latest
+ * balances changed since the last run are written to the customers table in one transaction,
+ * together with the journal sequence they include. That table is the snapshot recovery starts
+ * from: on startup the entries after its sequence are replayed into it, and journal segments are
+ * deleted once it includes all their entries. Customers read through this repository carry their
+ * journaled balance.
+ *
+ * <p>At most {@code db.journal.max_accounts} accounts are kept in memory. Beyond that, the least
+ * recently used accounts whose balances are all in the customers table are dropped, to be loaded
+ * again from there; accounts with changes still to apply stay. The state is guarded by a
+ * {@link ReentrantLock}, which virtual threads wait on without pinning their carrier.
+ */
+public class JournaledCustomerRepository implements CustomerRepository, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(JournaledCustomerRepository.class);
+
+    private static final String FIND_CHECKPOINT = "journal.find-checkpoint";
+    private static final String UPDATE_CHECKPOINT = "journal.update-checkpoint";
+    private static final String UPDATE_BALANCE = "customer.update-balance";
+
+    private final CustomerRepository delegate;
+    private final DatabaseManager dbManager;
+    private final LedgerJournal journal;
+    private final ScheduledExecutorService applier;
+    private final ReentrantLock applyLock = new ReentrantLock();
+    private final int maxAccounts;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock; in access order, least recently used first
+    private final Map<UUID, Account> accounts = new LinkedHashMap<>(16, 0.75f, true);
+    private Map<UUID, Long> unapplied = new HashMap<>();
+    // The batch being written to the customers table, whose accounts can't be dropped yet either
+    private Map<UUID, Long> applying = Map.of();
+    // Counts accounts dropped, deleted or saved, so that a load racing with one of those can tell
+    // that what it read may be stale
+    private long invalidations;
+
+    private static final class Account {
+        long cents;
+        boolean active;
+
+        Account(long cents, boolean active) {
+            this.cents = cents;
+            this.active = active;
+        }
+    }
+
+    public JournaledCustomerRepository(CustomerRepository delegate) {
+        this(delegate, DatabaseManager.getInstance().getIntProperty("db.journal.max_accounts", 1_000_000));
+    }
+
+    JournaledCustomerRepository(CustomerRepository delegate, int maxAccounts) {
+        this.delegate = delegate;
+        this.dbManager = DatabaseManager.getInstance();
+        this.maxAccounts = maxAccounts;
+        this.journal = recover(dbManager);
+
+        this.applier = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-journal-applier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = dbManager.getLongProperty("db.journal.apply_interval_ms", 200);
+        applier.scheduleWithFixedDelay(this::apply, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Whether a journal directory exists, possibly with balances an earlier run acknowledged but
+     * had not written to the customers table yet.
+     */
+    public static boolean hasJournal(DatabaseManager dbManager) {
+        return LedgerJournal.exists(path(dbManager));
+    }
+
+    /**
+     * Writes the balances an earlier journaled run left in the journal to the customers table, then
+     * deletes the journal, so that the database can be used without journaling from then on.
+     */
+    public static void drain(DatabaseManager dbManager) {
+        recover(dbManager).delete();
+        logger.info("Applied and deleted the balance journal {}", path(dbManager));
+    }
+
+    // Opens the journal and writes the entries after the checkpoint to the customers table
+    private static LedgerJournal recover(DatabaseManager dbManager) {
+        dbManager.getQueryCatalog().require(FIND_CHECKPOINT, UPDATE_CHECKPOINT, UPDATE_BALANCE);
+        long checkpoint = findCheckpoint(dbManager);
+        Map<UUID, Long> replayed = new HashMap<>();
+        Path path = path(dbManager);
+        LedgerJournal journal;
+        try {
+            journal = LedgerJournal.open(path,
+                    dbManager.getIntProperty("db.journal.segment_bytes", 64 * 1024 * 1024), checkpoint,
+                    (sequence, account, cents) -> replayed.put(account, cents));
+        } catch (IOException e) {
+            logger.error("Error opening balance journal {}", path, e);
+            throw new RuntimeException("Error opening balance journal " + path, e);
+        }
+        long last = journal.lastSequence();
+        if (last > checkpoint) {
+            try {
+                write(dbManager, replayed, last);
+            } catch (SQLException e) {
+                journal.close();
+                logger.error("Error replaying balance journal {}", path, e);
+                throw new RuntimeException("Error replaying balance journal " + path, e);
+            }
+            logger.info("Replayed journal entries {} to {} into {} balances", checkpoint + 1, last, replayed.size());
+        }
+        journal.deleteThrough(last);
+        return journal;
+    }
+
+    private static Path path(DatabaseManager dbManager) {
+        String path = dbManager.getProperty("db.journal.path", "");
+        return Paths.get(path.isEmpty() ? dbManager.getDatabasePath() + ".journal" : path).toAbsolutePath();
+    }
+
+    private static long findCheckpoint(DatabaseManager dbManager) {
+        try (Connection conn = dbManager.getConnection()) {
+            PreparedStatement pstmt = dbManager.prepareStatement(conn, FIND_CHECKPOINT);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            logger.error("Error reading the balance journal checkpoint", e);
+            throw new RuntimeException("Error reading the balance journal checkpoint", e);
+        }
+    }
+
+    // Writes the balances and the sequence they include in one transaction
+    private static void write(DatabaseManager dbManager, Map<UUID, Long> balances, long sequence)
+            throws SQLException {
+        Connection conn = null;
+        try {
+            conn = dbManager.getConnection();
+            conn.setAutoCommit(false);
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+            PreparedStatement update = dbManager.prepareStatement(conn, UPDATE_BALANCE);
+            for (Map.Entry<UUID, Long> balance : balances.entrySet()) {
+                update.setBigDecimal(1, Money.ofCents(balance.getValue()).toBigDecimal());
+                update.setTimestamp(2, now);
+                update.setString(3, balance.getKey().toString());
+                // A customer deleted since has no row left to update
+                update.executeUpdate();
+            }
+            PreparedStatement checkpoint = dbManager.prepareStatement(conn, UPDATE_CHECKPOINT);
+            checkpoint.setLong(1, sequence);
+            checkpoint.setTimestamp(2, now);
+            checkpoint.executeUpdate();
+            conn.commit();
+        } catch (SQLException e) {
+            rollbackQuietly(conn);
+            throw e;
+        } finally {
+            release(conn);
+        }
+    }
+
+    private void apply() {
+        applyLock.lock();
+        try {
+            Map<UUID, Long> batch;
+            long sequence;
+            lock.lock();
+            try {
+                if (unapplied.isEmpty()) {
+                    return;
+                }
+                batch = unapplied;
+                unapplied = new HashMap<>();
+                applying = batch;
+                sequence = journal.lastSequence();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                // Never let the table get ahead of what a crash would leave in the journal
+                journal.sync(sequence);
+                write(dbManager, batch, sequence);
+                logger.debug("Applied {} balances up to journal entry {}", batch.size(), sequence);
+            } catch (SQLException | RuntimeException e) {
+                logger.error("Error applying {} journaled balances, retrying with the next batch", batch.size(), e);
+                lock.lock();
+                try {
+                    batch.forEach(unapplied::putIfAbsent);
+                    applying = Map.of();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            lock.lock();
+            try {
+                applying = Map.of();
+                evictApplied(null);
+            } finally {
+                lock.unlock();
+            }
+            journal.deleteThrough(sequence);
+        } finally {
+            applyLock.unlock();
+        }
+    }
+
+    // Drops least recently used accounts whose balances are all stored, other than keep, while there
+    // are too many. Called with the lock held.
+    private void evictApplied(UUID keep) {
+        Iterator<UUID> ids = accounts.keySet().iterator();
+        while (accounts.size() > maxAccounts && ids.hasNext()) {
+            UUID id = ids.next();
+            if (!id.equals(keep) && !unapplied.containsKey(id) && !applying.containsKey(id)) {
+                ids.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    // Returns the account's in-memory state, loading it on first use, or null if there is no such customer
+    private Account account(UUID id) throws Exception {
+        while (true) {
+            long invalidationsBefore;
+            lock.lock();
+            try {
+                Account account = accounts.get(id);
+                if (account != null) {
+                    return account;
+                }
+                invalidationsBefore = invalidations;
+            } finally {
+                lock.unlock();
+            }
+            // An account only gets balance changes once it is in memory, and is only dropped once
+            // they are stored, so the stored row is current unless it was invalidated meanwhile
+            Optional<Customer> customer = delegate.findById(id);
+            if (customer.isEmpty()) {
+                return null;
+            }
+            lock.lock();
+            try {
+                Account account = accounts.get(id);
+                if (account != null) {
+                    return account;
+                }
+                if (invalidations == invalidationsBefore) {
+                    account = new Account(customer.get().getBalance().getCents(),
+                            customer.get().getStatus() == CustomerStatus.ACTIVE);
+                    accounts.put(id, account);
+                    evictApplied(id);
+                    return account;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    int getAccountCount() {
+        lock.lock();
+        try {
+            return accounts.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Optional<Customer> withJournaledBalance(Optional<Customer> customer) {
+        customer.ifPresent(this::withJournaledBalance);
+        return customer;
+    }
+
+    private void withJournaledBalance(Customer customer) {
+        lock.lock();
+        try {
+            Account account = accounts.get(customer.getId());
+            if (account != null) {
+                customer.setBalance(Money.ofCents(account.cents));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<Customer> findById(UUID id) throws Exception {
+        return withJournaledBalance(delegate.findById(id));
+    }
+
+    @Override
+    public Optional<Customer> findByName(String name) throws Exception {
+        return withJournaledBalance(delegate.findByName(name));
+    }
+
+    @Override
+    public Optional<Customer> findByAccountNumber(BigInteger accountNumber) throws Exception {
+        return withJournaledBalance(delegate.findByAccountNumber(accountNumber));
+    }
+
+    @Override
+    public Optional<Customer> findByCardNumber(String cardNumber) throws Exception {
+        return withJournaledBalance(delegate.findByCardNumber(cardNumber));
+    }
+
+    @Override
+    public Customer save(Customer customer) throws Exception {
+        Customer saved = delegate.save(customer);
+        long sequence;
+        lock.lock();
+        try {
+            invalidations++;
+            Account account = accounts.get(saved.getId());
+            if (account == null) {
+                return saved;
+            }
+            account.active = saved.getStatus() == CustomerStatus.ACTIVE;
+            // The stored balance would otherwise be overwritten by an older journaled one
+            long cents = saved.getBalance().getCents();
+            sequence = journal.append(saved.getId(), cents);
+            account.cents = cents;
+            unapplied.put(saved.getId(), cents);
+        } finally {
+            lock.unlock();
+        }
+        journal.sync(sequence);
+        return saved;
+    }
+
+    @Override
+    public List<Customer> insertAll(List<Customer> customers) throws Exception {
+        return delegate.insertAll(customers);
+    }
+
+    // Whether the account was dropped or deleted since it was looked up, so that changing it would
+    // be lost. Called with the lock held.
+    private boolean isStale(UUID id, Account account) {
+        return account != null && accounts.get(id) != account;
+    }
+
+    @Override
+    public void updateBalance(UUID id, Money newBalance) throws Exception {
+        while (true) {
+            Account account = account(id);
+            if (account == null) {
+                throw new Exception("No customer found with ID: " + id);
+            }
+            long sequence;
+            lock.lock();
+            try {
+                if (isStale(id, account)) {
+                    continue;
+                }
+                sequence = journal.append(id, newBalance.getCents());
+                account.cents = newBalance.getCents();
+                unapplied.put(id, account.cents);
+            } finally {
+                lock.unlock();
+            }
+            journal.sync(sequence);
+            return;
+        }
+    }
+
+    @Override
+    public Optional<Money> debit(UUID id, Money amount) throws Exception {
+        while (true) {
+            Account account = account(id);
+            long sequence;
+            long balance;
+            lock.lock();
+            try {
+                if (isStale(id, account)) {
+                    continue;
+                }
+                if (account != null && !account.active) {
+                    throw new InactiveAccountException();
+                }
+                if (account == null || account.cents < amount.getCents()) {
+                    return Optional.empty();
+                }
+                balance = account.cents - amount.getCents();
+                sequence = journal.append(id, balance);
+                account.cents = balance;
+                unapplied.put(id, balance);
+            } finally {
+                lock.unlock();
+            }
+            journal.sync(sequence);
+            return Optional.of(Money.ofCents(balance));
+        }
+    }
+
+    @Override
+    public Optional<Money> transfer(UUID senderId, UUID recipientId, Money amount) throws Exception {
+        while (true) {
+            Account sender = account(senderId);
+            Account recipient = account(recipientId);
+            long sequence;
+            long senderBalance;
+            lock.lock();
+            try {
+                if (isStale(senderId, sender) || isStale(recipientId, recipient)) {
+                    continue;
+                }
+                if (sender != null && !sender.active) {
+                    throw new InactiveAccountException();
+                }
+                if (sender == null || sender.cents < amount.getCents()) {
+                    return Optional.empty();
+                }
+                if (recipient == null || !recipient.active) {
+                    throw new Exception("No active customer found with ID: " + recipientId);
+                }
+                senderBalance = sender.cents - amount.getCents();
+                long recipientBalance = Math.addExact(recipient.cents, amount.getCents());
+                sequence = journal.append(senderId, senderBalance, recipientId, recipientBalance);
+                sender.cents = senderBalance;
+                recipient.cents = recipientBalance;
+                unapplied.put(senderId, senderBalance);
+                unapplied.put(recipientId, recipientBalance);
+            } finally {
+                lock.unlock();
+            }
+            journal.sync(sequence);
+            return Optional.of(Money.ofCents(senderBalance));
+        }
+    }
+
+    @Override
+    public void updateLastLogin(UUID id, Date lastLogin) throws Exception {
+        delegate.updateLastLogin(id, lastLogin);
+    }
+
+    @Override
+    public void deleteById(UUID id) throws Exception {
+        delegate.deleteById(id);
+        lock.lock();
+        try {
+            invalidations++;
+            accounts.remove(id);
+            unapplied.remove(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Customer> findAll() throws Exception {
+        List<Customer> customers = delegate.findAll();
+        customers.forEach(this::withJournaledBalance);
+        return customers;
+    }
+
+    /**
+     * Writes the balances not applied yet to the customers table and closes the journal.
+     */
+    @Override
+    public void close() {
+        if (applier.isShutdown()) {
+            return;
+        }
+        applier.shutdown();
+        try {
+            applier.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        apply();
+        journal.close();
+        delegate.close();
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.rollback();
+            } catch (SQLException ex) {
+                logger.error("Error rolling back transaction", ex);
+            }
+        }
+    }
+
+    private static void release(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.error("Error resetting auto-commit", e);
+            }
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                logger.error("Error returning connection to pool", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.nizar.atm.repository.impl;
+
+import com.nizar.atm.metrics.MetricsRegistry;
+import com.nizar.atm.metrics.OperationMetrics;
+import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.repository.CustomerRepository;
+
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Records the latency and failures of every call to a {@link CustomerRepository} under the
+ * {@code CustomerRepository} group of {@link MetricsRegistry}. A call fails when it throws; an
+ * empty result is a success.
+ */
+public class MeteredCustomerRepository implements CustomerRepository {
+    private static final String GROUP = "CustomerRepository";
+
+    private final CustomerRepository delegate;
+    private final OperationMetrics findById;
+    private final OperationMetrics findByName;
+    private final OperationMetrics findByAccountNumber;
+    private final OperationMetrics findByCardNumber;
+    private final OperationMetrics save;
+    private final OperationMetrics insertAll;
+    private final OperationMetrics updateBalance;
+    private final OperationMetrics debit;
+    private final OperationMetrics transfer;
+    private final OperationMetrics updateLastLogin;
+    private final OperationMetrics deleteById;
+    private final OperationMetrics findAll;
+
+    public MeteredCustomerRepository(CustomerRepository delegate, MetricsRegistry metrics) {
+        this.delegate = delegate;
+        this.findById = metrics.operation(GROUP, "findById");
+        this.findByName = metrics.operation(GROUP, "findByName");
+        this.findByAccountNumber = metrics.operation(GROUP, "findByAccountNumber");
+        this.findByCardNumber = metrics.operation(GROUP, "findByCardNumber");
+        this.save = metrics.operation(GROUP, "save");
+        this.insertAll = metrics.operation(GROUP, "insertAll");
+        this.updateBalance = metrics.operation(GROUP, "updateBalance");
+        this.debit = metrics.operation(GROUP, "debit");
+        this.transfer = metrics.operation(GROUP, "transfer");
+        this.updateLastLogin = metrics.operation(GROUP, "updateLastLogin");
+        this.deleteById = metrics.operation(GROUP, "deleteById");
+        this.findAll = metrics.operation(GROUP, "findAll");
+    }
+
+    @Override
+    public Optional<Customer> findById(UUID id) throws Exception {
+        return findById.time(() -> delegate.findById(id));
+    }
+
+    @Override
+    public Optional<Customer> findByName(String name) throws Exception {
+        return findByName.time(() -> delegate.findByName(name));
+    }
+
+    @Override
+    public Optional<Customer> findByAccountNumber(BigInteger accountNumber) throws Exception {
+        return findByAccountNumber.time(() -> delegate.findByAccountNumber(accountNumber));
+    }
+
+    @Override
+    public Optional<Customer> findByCardNumber(String cardNumber) throws Exception {
+        return findByCardNumber.time(() -> delegate.findByCardNumber(cardNumber));
+    }
+
+    @Override
+    public Customer save(Customer customer) throws Exception {
+        return save.time(() -> delegate.save(customer));
+    }
+
+    @Override
+    public List<Customer> insertAll(List<Customer> customers) throws Exception {
+        return insertAll.time(() -> delegate.insertAll(customers));
+    }
+
+    @Override
+    public void updateBalance(UUID id, Money newBalance) throws Exception {
+        updateBalance.time(() -> {
+            delegate.updateBalance(id, newBalance);
+            return null;
+        });
+    }
+
+    @Override
+    public Optional<Money> debit(UUID id, Money amount) throws Exception {
+        return debit.time(() -> delegate.debit(id, amount));
+    }
+
+    @Override
+    public Optional<Money> transfer(UUID senderId, UUID recipientId, Money amount) throws Exception {
+        return transfer.time(() -> delegate.transfer(senderId, recipientId, amount));
+    }
+
+    @Override
+    public void updateLastLogin(UUID id, Date lastLogin) throws Exception {
+        updateLastLogin.time(() -> {
+            delegate.updateLastLogin(id, lastLogin);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteById(UUID id) throws Exception {
+        deleteById.time(() -> {
+            delegate.deleteById(id);
+            return null;
+        });
+    }
+
+    @Override
+    public List<Customer> findAll() throws Exception {
+        return findAll.time(delegate::findAll);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
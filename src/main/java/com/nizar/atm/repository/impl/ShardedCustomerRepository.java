@@ -0,0 +1,623 @@
+package com.nizar.atm.repository.impl;
+
+import com.nizar.atm.config.DatabaseManager;
+import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.CustomerStatus;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.repository.CustomerRepository;
+import com.nizar.atm.repository.InactiveAccountException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routes customers to {@code db.shards.count} shard databases by a hash of their account number,
+ * so that writes to different shards commit on different DuckDB instances.
+ *
+ * <p>A shard holds the complete row of each of its customers and is the only place their balance
+ * and last login are kept up to date. The main database keeps a row for every customer too, as
+ * the directory that enforces unique names, resolves names, ids and card numbers to a shard, and
+ * that transactions and debts reference; its balances are the ones customers were created with.
+ *
+ * <p>A transfer between two customers on the same shard is one transaction there. Across shards
+ * it is committed in two phases: the sender's shard debits the sender and records the prepared
+ * debit, the recipient's shard records the prepared credit, and the main database records the
+ * decision to commit, which is the point the transfer is committed at. Then the recipient's shard
+ * credits the recipient and both shards mark their half committed. The first decision recorded
+ * for a transfer is the one that counts, and it is read back rather than assumed, so a decision
+ * whose write failed ambiguously is never followed by rolling back both halves.
+ *
+ * <p>Halves left prepared, by a crash or by a failure after the decision, are resolved when the
+ * first repository of the process starts and then every {@code db.shards.resolve_interval_s}
+ * seconds, once they are that old: halves of a transfer decided to commit are finished, credits
+ * included even if the recipient has been deactivated since, and the others are decided to abort
+ * and rolled back, refunding the sender. A half that can't be resolved is logged and tried again
+ * next time. One resolver does this for the whole process, however many repositories there are,
+ * and stops when the main database shuts down.
+ *
+ * <p>Only customer rows are spread over the shards. Transactions, statement rollups, debts and
+ * transfer decisions are all still written to the main database, so its single writer still
+ * bounds how many transfers commit per second however many shards there are; what sharding
+ * removes is the balance updates from that writer.
+ *
+ * <p>The shard of a customer depends on the shard count, so the count can't change once customers
+ * are registered.
+ */
+public class ShardedCustomerRepository implements CustomerRepository {
+    private static final Logger logger = LoggerFactory.getLogger(ShardedCustomerRepository.class);
+
+    private static final String FIND_BY_ID = "customer.find-by-id";
+    private static final String DEBIT = "customer.debit";
+    private static final String CREDIT_ANY_STATUS = "customer.credit-any-status";
+    private static final String FIND_BALANCE = "customer.find-balance";
+    private static final String PREPARE = "shard-transfer.prepare";
+    private static final String FINISH = "shard-transfer.finish";
+    private static final String FIND_PREPARED = "shard-transfer.find-prepared";
+    private static final String DECIDE = "shard-transfer.decide";
+    private static final String FIND_DECISION = "shard-transfer.find-decision";
+
+    private static final String DEBIT_HALF = "DEBIT";
+    private static final String CREDIT_HALF = "CREDIT";
+    private static final String COMMITTED = "COMMITTED";
+    private static final String ABORTED = "ABORTED";
+
+    private final DatabaseManager main;
+    private final CustomerRepository directory;
+    private final DatabaseManager[] shardDatabases;
+    private final CustomerRepository[] shards;
+    private final Map<UUID, Integer> shardsById = new ConcurrentHashMap<>();
+
+    // Resolves halves for the whole process; see Resolver
+    private static Resolver resolver;
+
+    public ShardedCustomerRepository(int shardCount) {
+        this(DatabaseManager.getInstance(), shardCount);
+        startResolver(main, shardCount);
+    }
+
+    private ShardedCustomerRepository(DatabaseManager main, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        this.main = main;
+        main.getQueryCatalog().require(FIND_BY_ID, DEBIT, CREDIT_ANY_STATUS, FIND_BALANCE, PREPARE, FINISH, FIND_PREPARED,
+                DECIDE, FIND_DECISION);
+        this.directory = new CustomerRepositoryImpl(main);
+        this.shardDatabases = new DatabaseManager[shardCount];
+        this.shards = new CustomerRepository[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shardDatabases[i] = DatabaseManager.getShard(i);
+            shards[i] = new CustomerRepositoryImpl(shardDatabases[i]);
+        }
+    }
+
+    // The first repository of the process starts the resolver, once every half left by an earlier
+    // run is resolved and before any transfer is in flight
+    private static synchronized void startResolver(DatabaseManager main, int shardCount) {
+        if (resolver == null) {
+            resolver = new Resolver(new ShardedCustomerRepository(main, shardCount));
+            main.closeOnShutdown(resolver);
+        } else if (resolver.repository.shards.length != shardCount) {
+            throw new IllegalStateException("Shard count can't change from " + resolver.repository.shards.length
+                    + " to " + shardCount + " while the process runs");
+        }
+    }
+
+    // For testing purposes
+    static synchronized boolean isResolving() {
+        return resolver != null && !resolver.executor.isShutdown();
+    }
+
+    /**
+     * Resolves the halves of the process every {@code db.shards.resolve_interval_s} seconds, with a
+     * repository of its own so that closing any other repository leaves it running. It is closed
+     * by the main database's {@link DatabaseManager#shutdown()}.
+     */
+    private static final class Resolver implements AutoCloseable {
+        private final ShardedCustomerRepository repository;
+        private final ScheduledExecutorService executor;
+
+        Resolver(ShardedCustomerRepository repository) {
+            this.repository = repository;
+            repository.resolvePrepared(Duration.ZERO);
+            long interval = repository.main.getLongProperty("db.shards.resolve_interval_s", 30);
+            this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "shard-transfer-resolver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(() -> repository.resolvePrepared(Duration.ofSeconds(interval)),
+                    interval, interval, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void close() {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            repository.close();
+            synchronized (ShardedCustomerRepository.class) {
+                if (resolver == this) {
+                    resolver = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the shard of an account number out of {@code shardCount}.
+     */
+    static int shardOf(BigInteger accountNumber, int shardCount) {
+        if (accountNumber == null) {
+            return 0;
+        }
+        // Account numbers are spread by a permutation already; mixing keeps any leftover pattern
+        // in the low bits from lining up with the shard count
+        long hash = accountNumber.longValue() * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(hash ^ (hash >>> 32), (long) shardCount);
+    }
+
+    private int shardOf(Customer customer) {
+        int shard = shardOf(customer.getAccountNumber(), shards.length);
+        shardsById.put(customer.getId(), shard);
+        return shard;
+    }
+
+    // Returns the shard of the customer, or -1 if there is no such customer
+    private int shardOf(UUID id) throws Exception {
+        Integer shard = shardsById.get(id);
+        if (shard != null) {
+            return shard;
+        }
+        Optional<Customer> customer = directory.findById(id);
+        return customer.isPresent() ? shardOf(customer.get()) : -1;
+    }
+
+    // Reads the customer's complete row from its shard
+    private Optional<Customer> fromShard(Optional<Customer> entry) throws Exception {
+        if (entry.isEmpty()) {
+            return entry;
+        }
+        return shards[shardOf(entry.get())].findById(entry.get().getId());
+    }
+
+    @Override
+    public Optional<Customer> findById(UUID id) throws Exception {
+        int shard = shardOf(id);
+        return shard < 0 ? Optional.empty() : shards[shard].findById(id);
+    }
+
+    @Override
+    public Optional<Customer> findByName(String name) throws Exception {
+        return fromShard(directory.findByName(name));
+    }
+
+    @Override
+    public Optional<Customer> findByAccountNumber(BigInteger accountNumber) throws Exception {
+        Optional<Customer> customer = shards[shardOf(accountNumber, shards.length)].findByAccountNumber(accountNumber);
+        customer.ifPresent(this::shardOf);
+        return customer;
+    }
+
+    @Override
+    public Optional<Customer> findByCardNumber(String cardNumber) throws Exception {
+        return fromShard(directory.findByCardNumber(cardNumber));
+    }
+
+    @Override
+    public Customer save(Customer customer) throws Exception {
+        // The directory assigns new customers their id and rejects taken names
+        boolean created = customer.getId() == null;
+        Customer saved = directory.save(customer);
+        try {
+            return shards[shardOf(saved)].save(saved);
+        } catch (Exception e) {
+            if (created) {
+                deleteQuietly(saved.getId());
+            }
+            throw e;
+        }
+    }
+
+    private void deleteQuietly(UUID id) {
+        try {
+            directory.deleteById(id);
+            shardsById.remove(id);
+        } catch (Exception e) {
+            logger.error("Error removing customer {} from the directory", id, e);
+        }
+    }
+
+    @Override
+    public List<Customer> insertAll(List<Customer> customers) throws Exception {
+        List<Customer> skipped = directory.insertAll(customers);
+        Set<UUID> taken = new HashSet<>();
+        skipped.forEach(customer -> taken.add(customer.getId()));
+        List<List<Customer>> batches = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            batches.add(new ArrayList<>());
+        }
+        for (Customer customer : customers) {
+            if (!taken.contains(customer.getId())) {
+                batches.get(shardOf(customer)).add(customer);
+            }
+        }
+        for (int i = 0; i < shards.length; i++) {
+            // Names are already unique by the directory, so a shard skips nothing
+            shards[i].insertAll(batches.get(i));
+        }
+        return skipped;
+    }
+
+    @Override
+    public void updateBalance(UUID id, Money newBalance) throws Exception {
+        int shard = shardOf(id);
+        if (shard < 0) {
+            throw new Exception("No customer found with ID: " + id);
+        }
+        shards[shard].updateBalance(id, newBalance);
+    }
+
+    @Override
+    public void updateLastLogin(UUID id, Date lastLogin) throws Exception {
+        int shard = shardOf(id);
+        if (shard < 0) {
+            throw new Exception("No customer found with ID: " + id);
+        }
+        shards[shard].updateLastLogin(id, lastLogin);
+    }
+
+    @Override
+    public Optional<Money> debit(UUID id, Money amount) throws Exception {
+        int shard = shardOf(id);
+        return shard < 0 ? Optional.empty() : shards[shard].debit(id, amount);
+    }
+
+    @Override
+    public Optional<Money> transfer(UUID senderId, UUID recipientId, Money amount) throws Exception {
+        int senderShard = shardOf(senderId);
+        if (senderShard < 0) {
+            return Optional.empty();
+        }
+        int recipientShard = shardOf(recipientId);
+        if (recipientShard < 0) {
+            throw new Exception("No active customer found with ID: " + recipientId);
+        }
+        if (senderShard == recipientShard) {
+            return shards[senderShard].transfer(senderId, recipientId, amount);
+        }
+
+        UUID transferId = UUID.randomUUID();
+        DatabaseManager sender = shardDatabases[senderShard];
+        DatabaseManager recipient = shardDatabases[recipientShard];
+        try {
+            Optional<Money> senderBalance = prepareDebit(sender, transferId, senderId, amount);
+            if (senderBalance.isEmpty()) {
+                return senderBalance;
+            }
+            if (!prepareCredit(recipient, transferId, recipientId, amount)) {
+                finish(sender, transferId, DEBIT_HALF, senderId, amount, ABORTED);
+                throw new Exception("No active customer found with ID: " + recipientId);
+            }
+        } catch (SQLException e) {
+            // Nothing is decided, and nothing will be but an abort, so both halves can go
+            abortQuietly(sender, transferId, senderId, amount);
+            abortQuietly(recipient, transferId, recipientId, amount);
+            logger.error("Error transferring from customer ID: {} to customer ID: {}", senderId, recipientId, e);
+            throw new Exception("Error transferring from customer ID: " + senderId, e);
+        }
+
+        String outcome;
+        try {
+            outcome = decide(transferId, COMMITTED);
+        } catch (SQLException e) {
+            // The decision may have been recorded all the same; the resolver reads it back and
+            // finishes the halves either way
+            logger.error("Transfer {} may or may not be committed, it will be resolved in the background", transferId, e);
+            throw new Exception("Transfer from customer ID: " + senderId + " could not be confirmed; "
+                    + "it will be completed or refunded shortly", e);
+        }
+        if (!outcome.equals(COMMITTED)) {
+            // Stalled long enough for the resolver to abort it
+            abortQuietly(sender, transferId, senderId, amount);
+            abortQuietly(recipient, transferId, recipientId, amount);
+            throw new Exception("Transfer from customer ID: " + senderId + " timed out and was cancelled");
+        }
+
+        // Committed; a failure from here on leaves the rest to the resolver
+        try {
+            finish(recipient, transferId, CREDIT_HALF, recipientId, amount, COMMITTED);
+            finish(sender, transferId, DEBIT_HALF, senderId, amount, COMMITTED);
+        } catch (SQLException e) {
+            logger.error("Transfer {} is committed but not finished, it will be in the background", transferId, e);
+        }
+        logger.debug("Transferred {} from customer: {} on shard {} to customer: {} on shard {}",
+                amount, senderId, senderShard, recipientId, recipientShard);
+        return Optional.of(findBalance(sender, senderId));
+    }
+
+    // Debits the sender and records the prepared debit in one transaction. Returns the new
+    // balance, or empty when funds are insufficient.
+    private Optional<Money> prepareDebit(DatabaseManager shard, UUID transferId, UUID senderId, Money amount)
+            throws SQLException, InactiveAccountException {
+        Connection conn = null;
+        try {
+            conn = shard.getConnection();
+            conn.setAutoCommit(false);
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            BigDecimal value = amount.toBigDecimal();
+
+            PreparedStatement debit = shard.prepareStatement(conn, DEBIT);
+            debit.setBigDecimal(1, value);
+            debit.setTimestamp(2, now);
+            debit.setString(3, senderId.toString());
+            debit.setBigDecimal(4, value);
+            if (debit.executeUpdate() == 0) {
+                conn.rollback();
+                CustomerRepositoryImpl.requireActive(shard, conn, senderId);
+                return Optional.empty();
+            }
+            prepare(shard, conn, transferId, DEBIT_HALF, senderId, amount, now);
+            conn.commit();
+            return Optional.of(findBalance(shard, senderId));
+        } catch (SQLException e) {
+            rollbackQuietly(conn);
+            throw e;
+        } finally {
+            release(conn);
+        }
+    }
+
+    // Records the prepared credit if the recipient is active
+    private boolean prepareCredit(DatabaseManager shard, UUID transferId, UUID recipientId, Money amount)
+            throws SQLException {
+        try (Connection conn = shard.getConnection()) {
+            PreparedStatement find = shard.prepareStatement(conn, FIND_BY_ID);
+            find.setString(1, recipientId.toString());
+            try (ResultSet rs = find.executeQuery()) {
+                if (!rs.next() || !CustomerStatus.ACTIVE.name().equals(rs.getString("status"))) {
+                    return false;
+                }
+            }
+            prepare(shard, conn, transferId, CREDIT_HALF, recipientId, amount, Timestamp.valueOf(LocalDateTime.now()));
+            return true;
+        }
+    }
+
+    private void prepare(DatabaseManager shard, Connection conn, UUID transferId, String half, UUID customerId,
+                         Money amount, Timestamp now) throws SQLException {
+        PreparedStatement prepare = shard.prepareStatement(conn, PREPARE);
+        prepare.setString(1, transferId.toString());
+        prepare.setString(2, half);
+        prepare.setString(3, customerId.toString());
+        prepare.setBigDecimal(4, amount.toBigDecimal());
+        prepare.setTimestamp(5, now);
+        prepare.setTimestamp(6, now);
+        prepare.executeUpdate();
+    }
+
+    // Records outcome as the transfer's decision unless one is recorded already, and returns the
+    // decision that was recorded first
+    private String decide(UUID transferId, String outcome) throws SQLException {
+        try (Connection conn = main.getConnection()) {
+            PreparedStatement decide = main.prepareStatement(conn, DECIDE);
+            decide.setString(1, transferId.toString());
+            decide.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now()));
+            decide.setString(3, outcome);
+            decide.executeUpdate();
+        } catch (SQLException e) {
+            // The insert may have gone through before it failed; what is recorded is what counts
+            String recorded = findDecision(transferId);
+            if (recorded == null) {
+                throw e;
+            }
+            return recorded;
+        }
+        String recorded = findDecision(transferId);
+        if (recorded == null) {
+            throw new SQLException("Decision on transfer " + transferId + " was not recorded");
+        }
+        return recorded;
+    }
+
+    // Returns the transfer's decision, or null if there is none yet
+    private String findDecision(UUID transferId) throws SQLException {
+        try (Connection conn = main.getConnection()) {
+            PreparedStatement find = main.prepareStatement(conn, FIND_DECISION);
+            find.setString(1, transferId.toString());
+            try (ResultSet rs = find.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Moves a prepared half to {@code state} and applies its money: a committed credit credits the
+     * recipient, an aborted debit refunds the sender. That money is owed once the transfer is
+     * decided, so it is paid whatever the customer's status. Does nothing if the half isn't
+     * prepared.
+     */
+    private void finish(DatabaseManager shard, UUID transferId, String half, UUID customerId, Money amount,
+                        String state) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = shard.getConnection();
+            conn.setAutoCommit(false);
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+            PreparedStatement finish = shard.prepareStatement(conn, FINISH);
+            finish.setString(1, state);
+            finish.setTimestamp(2, now);
+            finish.setString(3, transferId.toString());
+            finish.setString(4, half);
+            if (finish.executeUpdate() == 0) {
+                conn.rollback();
+                return;
+            }
+            boolean credits = half.equals(CREDIT_HALF) ? state.equals(COMMITTED) : state.equals(ABORTED);
+            if (credits) {
+                PreparedStatement credit = shard.prepareStatement(conn, CREDIT_ANY_STATUS);
+                credit.setBigDecimal(1, amount.toBigDecimal());
+                credit.setTimestamp(2, now);
+                credit.setString(3, customerId.toString());
+                if (credit.executeUpdate() == 0) {
+                    throw new SQLException("No customer found with ID: " + customerId);
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            rollbackQuietly(conn);
+            throw e;
+        } finally {
+            release(conn);
+        }
+    }
+
+    private void abortQuietly(DatabaseManager shard, UUID transferId, UUID customerId, Money amount) {
+        try {
+            finish(shard, transferId, DEBIT_HALF, customerId, amount, ABORTED);
+            finish(shard, transferId, CREDIT_HALF, customerId, amount, ABORTED);
+        } catch (SQLException e) {
+            logger.error("Error aborting transfer {}, it will be in the background", transferId, e);
+        }
+    }
+
+    /**
+     * Finishes every half prepared longer than {@code olderThan} ago: committed if its transfer was
+     * decided to commit, otherwise aborted after recording that decision, so that a transfer still
+     * in flight can no longer commit. Errors are logged and the half is left for the next run.
+     */
+    void resolvePrepared(Duration olderThan) {
+        int committed = 0;
+        int aborted = 0;
+        int failed = 0;
+        Timestamp before = Timestamp.valueOf(LocalDateTime.now().minus(olderThan));
+        for (DatabaseManager shard : shardDatabases) {
+            List<Object[]> halves = new ArrayList<>();
+            try (Connection conn = shard.getConnection()) {
+                PreparedStatement find = shard.prepareStatement(conn, FIND_PREPARED);
+                find.setTimestamp(1, before);
+                try (ResultSet rs = find.executeQuery()) {
+                    while (rs.next()) {
+                        halves.add(new Object[]{UUID.fromString(rs.getString("id")), rs.getString("direction"),
+                                UUID.fromString(rs.getString("customer_id")), Money.of(rs.getBigDecimal("amount"))});
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                logger.error("Error reading prepared transfers on shard {}", shard.getDatabasePath(), e);
+                failed++;
+                continue;
+            }
+            for (Object[] half : halves) {
+                UUID transferId = (UUID) half[0];
+                try {
+                    String outcome = decide(transferId, ABORTED);
+                    finish(shard, transferId, (String) half[1], (UUID) half[2], (Money) half[3], outcome);
+                    if (outcome.equals(COMMITTED)) {
+                        committed++;
+                    } else {
+                        aborted++;
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    logger.error("Error resolving {} half of transfer {} on shard {}", half[1], transferId,
+                            shard.getDatabasePath(), e);
+                    failed++;
+                }
+            }
+        }
+        if (committed + aborted + failed > 0) {
+            logger.info("Finished {} committed and aborted {} undecided halves of cross-shard transfers, {} failed",
+                    committed, aborted, failed);
+        }
+    }
+
+    private Money findBalance(DatabaseManager shard, UUID id) throws SQLException {
+        try (Connection conn = shard.getConnection()) {
+            PreparedStatement pstmt = shard.prepareStatement(conn, FIND_BALANCE);
+            pstmt.setString(1, id.toString());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("No customer found with ID: " + id);
+                }
+                return Money.of(rs.getBigDecimal(1));
+            }
+        }
+    }
+
+    @Override
+    public void deleteById(UUID id) throws Exception {
+        int shard = shardOf(id);
+        if (shard >= 0) {
+            shards[shard].deleteById(id);
+        }
+        directory.deleteById(id);
+        shardsById.remove(id);
+    }
+
+    @Override
+    public List<Customer> findAll() throws Exception {
+        List<Customer> customers = new ArrayList<>();
+        for (CustomerRepository shard : shards) {
+            customers.addAll(shard.findAll());
+        }
+        customers.sort(Comparator.comparing(Customer::getCreatedAt, Comparator.nullsLast(Comparator.reverseOrder())));
+        return customers;
+    }
+
+    @Override
+    public void close() {
+        for (CustomerRepository shard : shards) {
+            shard.close();
+        }
+    }
+
+    private void rollbackQuietly(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.rollback();
+            } catch (SQLException ex) {
+                logger.error("Error rolling back transaction", ex);
+            }
+        }
+    }
+
+    private void release(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.error("Error resetting auto-commit", e);
+            }
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                logger.error("Error returning connection to pool", e);
+            }
+        }
+    }
+}
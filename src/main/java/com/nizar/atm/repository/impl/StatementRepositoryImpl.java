@@ -0,0 +1,248 @@
+package com.nizar.atm.repository.impl;
+
+import com.nizar.atm.config.DatabaseManager;
+import com.nizar.atm.config.QueryCatalog;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.model.StatementLine;
+import com.nizar.atm.model.Transaction;
+import com.nizar.atm.model.TransactionStatus;
+import com.nizar.atm.model.TransactionType;
+import com.nizar.atm.repository.StatementRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Daily and monthly statement rollups keyed by (customer, period, transaction type).
+ *
+ * <p>The ledger writer calls {@link #accumulate(Connection, List)} after each batch it appends,
+ * so a statement is a lookup of one row per type and period instead of an aggregation over the
+ * customer's whole history. {@link #rebuild(TransactionArchive)} recomputes both tables from
+ * {@code transactions} and its archived months;
+ * it must not run concurrently with {@code accumulate}, which is why it is only invoked through
+ * {@link TransactionRepositoryImpl#rebuildRollups()}.
+ */
+public class StatementRepositoryImpl implements StatementRepository {
+    private static final Logger logger = LoggerFactory.getLogger(StatementRepositoryImpl.class);
+
+    private static final String DAILY_UPSERT = "rollup.daily.upsert";
+    private static final String MONTHLY_UPSERT = "rollup.monthly.upsert";
+    private static final String DAILY_FIND = "rollup.daily.find";
+    private static final String MONTHLY_FIND = "rollup.monthly.find";
+    private static final String[] DAILY_REBUILD = {
+            "rollup.daily.rebuild-drop",
+            "rollup.daily.rebuild-create"
+    };
+    private static final String DAILY_REBUILD_FILL = "rollup.daily.rebuild-fill";
+    private static final String DAILY_REBUILD_INDEX = "rollup.daily.rebuild-index";
+    private static final String[] MONTHLY_REBUILD = {
+            "rollup.monthly.rebuild-drop",
+            "rollup.monthly.rebuild-create"
+    };
+    private static final String MONTHLY_REBUILD_FILL = "rollup.monthly.rebuild-fill";
+    private static final String MONTHLY_REBUILD_INDEX = "rollup.monthly.rebuild-index";
+
+    private final DatabaseManager dbManager;
+    private final QueryCatalog queries;
+
+    public StatementRepositoryImpl() {
+        this.dbManager = DatabaseManager.getInstance();
+        this.queries = dbManager.getQueryCatalog();
+        queries.require(DAILY_UPSERT, MONTHLY_UPSERT, DAILY_FIND, MONTHLY_FIND);
+        queries.require(DAILY_REBUILD);
+        queries.require(MONTHLY_REBUILD);
+        queries.require(DAILY_REBUILD_FILL, MONTHLY_REBUILD_FILL, DAILY_REBUILD_INDEX, MONTHLY_REBUILD_INDEX);
+    }
+
+    @Override
+    public List<StatementLine> findDailySummary(UUID customerId, LocalDate from, LocalDate to) {
+        return find(DAILY_FIND, customerId, from, to);
+    }
+
+    @Override
+    public List<StatementLine> findMonthlyStatement(UUID customerId, YearMonth from, YearMonth to) {
+        return find(MONTHLY_FIND, customerId, from.atDay(1), to.atDay(1));
+    }
+
+    private List<StatementLine> find(String queryName, UUID customerId, LocalDate from, LocalDate to) {
+        try (Connection conn = dbManager.getConnection()) {
+            PreparedStatement pstmt = dbManager.prepareStatement(conn, queryName);
+            pstmt.setString(1, customerId.toString());
+            pstmt.setObject(2, from);
+            pstmt.setObject(3, to);
+
+            List<StatementLine> lines = new ArrayList<>();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    lines.add(StatementLine.builder()
+                            .period(rs.getObject("period", LocalDate.class))
+                            .transactionType(TransactionType.valueOf(rs.getString("transaction_type")))
+                            .transactionCount(rs.getLong("transaction_count"))
+                            .totalAmount(Money.of(rs.getBigDecimal("total_amount")))
+                            .build());
+                }
+            }
+            return lines;
+        } catch (SQLException e) {
+            logger.error("Error reading statement for customer: {}", customerId, e);
+            throw new RuntimeException("Error reading statement for customer: " + customerId, e);
+        }
+    }
+
+    /**
+     * Adds a batch of ledger rows to the rollups in one transaction on {@code conn}, which must be
+     * in auto-commit mode and is left that way.
+     */
+    public void accumulate(Connection conn, List<Transaction> batch) throws SQLException {
+        Map<RollupKey, Totals> daily = new HashMap<>();
+        Map<RollupKey, Totals> monthly = new HashMap<>();
+        for (Transaction transaction : batch) {
+            LocalDate day = transaction.getCreatedAt().toLocalDate();
+            long amount = transaction.getStatus() == TransactionStatus.SUCCESS
+                    && transaction.getAmount() != null ? transaction.getAmount().getCents() : 0;
+            daily.computeIfAbsent(new RollupKey(transaction.getCustomerId(), day, transaction.getTransactionType()),
+                    key -> new Totals()).add(amount);
+            monthly.computeIfAbsent(new RollupKey(transaction.getCustomerId(), day.withDayOfMonth(1),
+                    transaction.getTransactionType()), key -> new Totals()).add(amount);
+        }
+        if (daily.isEmpty()) {
+            return;
+        }
+
+        conn.setAutoCommit(false);
+        try {
+            upsert(conn, DAILY_UPSERT, daily);
+            upsert(conn, MONTHLY_UPSERT, monthly);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private void upsert(Connection conn, String queryName, Map<RollupKey, Totals> rows) throws SQLException {
+        // conn is the ledger's own connection rather than a pooled one, so the statement isn't cached
+        try (PreparedStatement pstmt = conn.prepareStatement(queries.get(queryName))) {
+            for (Map.Entry<RollupKey, Totals> row : rows.entrySet()) {
+                pstmt.setString(1, row.getKey().customerId.toString());
+                pstmt.setObject(2, row.getKey().period);
+                pstmt.setString(3, row.getKey().type.name());
+                pstmt.setLong(4, row.getValue().count);
+                pstmt.setBigDecimal(5, BigDecimal.valueOf(row.getValue().cents, 2));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Recomputes both rollup tables from the raw transaction history, archived months included.
+     * The two tables are rebuilt concurrently on separate connections, each swapped in by a single
+     * transaction, and DuckDB spreads each aggregation over its worker threads.
+     */
+    public void rebuild(TransactionArchive archive) {
+        String dailyFill = archive.withArchive(queries.get(DAILY_REBUILD_FILL), archive.getMonths());
+        String monthlyFill = archive.withArchive(queries.get(MONTHLY_REBUILD_FILL), archive.getMonths());
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "statement-rollup-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletableFuture.allOf(
+                    CompletableFuture.runAsync(() -> rebuildTable(DAILY_REBUILD, dailyFill, DAILY_REBUILD_INDEX), executor),
+                    CompletableFuture.runAsync(() -> rebuildTable(MONTHLY_REBUILD, monthlyFill, MONTHLY_REBUILD_INDEX), executor)
+            ).join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Failed to rebuild statement rollups", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        logger.info("Rebuilt statement rollups in {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void rebuildTable(String[] steps, String fill, String index) {
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (String step : steps) {
+                    dbManager.prepareStatement(conn, step).execute();
+                }
+                // Not a cached statement: with archived months the SQL names their files
+                try (PreparedStatement pstmt = conn.prepareStatement(fill)) {
+                    pstmt.execute();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            // DuckDB can't replay a WAL transaction that both fills a table and indexes it
+            dbManager.prepareStatement(conn, index).execute();
+        } catch (SQLException e) {
+            logger.error("Error rebuilding rollups with {}", steps[0], e);
+            throw new RuntimeException("Error rebuilding rollups with " + steps[0], e);
+        }
+    }
+
+    private static final class RollupKey {
+        private final UUID customerId;
+        private final LocalDate period;
+        private final TransactionType type;
+
+        private RollupKey(UUID customerId, LocalDate period, TransactionType type) {
+            this.customerId = customerId;
+            this.period = period;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RollupKey)) {
+                return false;
+            }
+            RollupKey other = (RollupKey) o;
+            return customerId.equals(other.customerId) && period.equals(other.period) && type == other.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(customerId, period, type);
+        }
+    }
+
+    private static final class Totals {
+        private long count;
+        private long cents;
+
+        private void add(long value) {
+            count++;
+            cents = Math.addExact(cents, value);
+        }
+    }
+}
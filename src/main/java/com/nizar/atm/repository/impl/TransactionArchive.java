@@ -0,0 +1,312 @@
+package com.nizar.atm.repository.impl;
+
+import com.nizar.atm.config.DatabaseManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Cold tier of the transaction history: whole months of old transactions moved out of the
+ * {@code transactions} table into Parquet files, one directory per month
+ * ({@code <root>/year=<y>/month=<m>/}).
+ *
+ * <p>{@link #archive(LocalDate)} writes every month not yet archived that ends before the cutoff
+ * with a single partitioned {@code COPY}, then deletes those rows and records the months in
+ * {@code archived_months} and each involved customer's range in one transaction. Readers pass a query written against
+ * {@code transactions} through {@link #withArchive(String, List)} to run it over the table plus the
+ * files of only the months their range touches. The archived months are the month directories
+ * holding files, so every process sharing the database sees the same months, and
+ * {@code archived_customers} narrows them down to those holding a given customer's rows.
+ *
+ * <p>Archived rows are unioned with set semantics. Between the {@code COPY} and the commit of the
+ * delete a month is both in its files and in the table, and readers see it once either way.
+ */
+public class TransactionArchive {
+    private static final Logger logger = LoggerFactory.getLogger(TransactionArchive.class);
+
+    private static final String FIND_PENDING = "archive.find-pending";
+    private static final String DELETE_PENDING = "archive.delete-pending";
+    private static final String RECORD_MONTH = "archive.record-month";
+    private static final String RECORD_CUSTOMERS = "archive.record-customers";
+    private static final String FIND_CUSTOMER = "archive.find-customer";
+    private static final String COUNT_CUSTOMERS = "archive.count-customers";
+
+    // Names a directory, so it can't be a prepared named query; same predicate as archive.find-pending
+    private static final String COPY_PENDING =
+            "COPY (SELECT *, year(created_at) AS year, month(created_at) AS month FROM transactions " +
+            "WHERE created_at < ? " +
+            "AND CAST(DATE_TRUNC('month', created_at) AS DATE) NOT IN (SELECT month FROM archived_months)) " +
+            "TO '%s' (FORMAT PARQUET, PARTITION_BY (year, month), OVERWRITE_OR_IGNORE)";
+    // Reads files, so it can't be a prepared named query either; same ranges as archive.record-customers
+    private static final String BACKFILL_CUSTOMERS =
+            "INSERT INTO archived_customers (customer_id, first_month, last_month) " +
+            "WITH archived AS (SELECT customer_id, target_customer_id, " +
+            "CAST(DATE_TRUNC('month', created_at) AS DATE) AS month FROM %s), " +
+            "involved AS (SELECT customer_id, month FROM archived " +
+            "UNION ALL SELECT target_customer_id, month FROM archived WHERE target_customer_id IS NOT NULL) " +
+            "SELECT customer_id, MIN(month), MAX(month) FROM involved GROUP BY customer_id";
+
+    private final DatabaseManager dbManager;
+    private final Path root;
+    private final int ageDays;
+
+    public TransactionArchive() {
+        this.dbManager = DatabaseManager.getInstance();
+        dbManager.getQueryCatalog().require(FIND_PENDING, DELETE_PENDING, RECORD_MONTH, RECORD_CUSTOMERS,
+                FIND_CUSTOMER, COUNT_CUSTOMERS);
+        this.root = Paths.get(dbManager.getProperty("db.archive.path", dbManager.getDatabasePath() + ".archive"))
+                .toAbsolutePath();
+        this.ageDays = dbManager.getIntProperty("db.archive.age_days", 365);
+        backfillCustomers();
+    }
+
+    // Months archived before archived_customers existed have no ranges yet; read them from the files
+    private void backfillCustomers() {
+        List<YearMonth> archived = getMonths();
+        if (archived.isEmpty()) {
+            return;
+        }
+        try (Connection conn = dbManager.getConnection()) {
+            try (ResultSet rs = dbManager.prepareStatement(conn, COUNT_CUSTOMERS).executeQuery()) {
+                if (rs.next() && rs.getLong(1) > 0) {
+                    return;
+                }
+            }
+            try (PreparedStatement backfill = conn.prepareStatement(
+                    String.format(BACKFILL_CUSTOMERS, readFiles(archived)))) {
+                logger.info("Recorded the archived months of {} customers", backfill.executeUpdate());
+            }
+        } catch (SQLException e) {
+            logger.error("Error recording the archived months of customers", e);
+            throw new RuntimeException("Error recording the archived months of customers", e);
+        }
+    }
+
+    /**
+     * Returns the archived months that overlap {@code [from, to]} and hold transactions of the
+     * customer, as sender or recipient; a null bound is open. Without archived months this costs no
+     * query.
+     */
+    public List<YearMonth> monthsBetween(UUID customerId, LocalDateTime from, LocalDateTime to) {
+        NavigableSet<YearMonth> months = listMonths();
+        if (months.isEmpty()) {
+            return Collections.emptyList();
+        }
+        YearMonth first;
+        YearMonth last;
+        try (Connection conn = dbManager.getConnection()) {
+            PreparedStatement find = dbManager.prepareStatement(conn, FIND_CUSTOMER);
+            find.setString(1, customerId.toString());
+            try (ResultSet rs = find.executeQuery()) {
+                if (!rs.next()) {
+                    return Collections.emptyList();
+                }
+                first = YearMonth.from(rs.getObject("first_month", LocalDate.class));
+                last = YearMonth.from(rs.getObject("last_month", LocalDate.class));
+            }
+        } catch (SQLException e) {
+            logger.error("Error finding archived months of customer: {}", customerId, e);
+            throw new RuntimeException("Error finding archived months of customer: " + customerId, e);
+        }
+        if (from != null && YearMonth.from(from).isAfter(first)) {
+            first = YearMonth.from(from);
+        }
+        if (to != null && YearMonth.from(to).isBefore(last)) {
+            last = YearMonth.from(to);
+        }
+        if (first.isAfter(last)) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(months.subSet(first, true, last, true));
+    }
+
+    public List<YearMonth> getMonths() {
+        return new ArrayList<>(listMonths());
+    }
+
+    // A month is archived once its directory holds files; the COPY writes them before the rows
+    // leave the table, so no reader misses a month
+    private NavigableSet<YearMonth> listMonths() {
+        NavigableSet<YearMonth> months = new TreeSet<>();
+        if (!Files.isDirectory(root)) {
+            return months;
+        }
+        try (DirectoryStream<Path> years = Files.newDirectoryStream(root, "year=*")) {
+            for (Path year : years) {
+                try (DirectoryStream<Path> monthsOfYear = Files.newDirectoryStream(year, "month=*")) {
+                    for (Path month : monthsOfYear) {
+                        if (hasFiles(month)) {
+                            months.add(YearMonth.of(partitionValue(year), partitionValue(month)));
+                        }
+                    }
+                }
+            }
+            return months;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error listing archived months in {}", root, e);
+            throw new RuntimeException("Error listing archived months in " + root, e);
+        }
+    }
+
+    private static boolean hasFiles(Path month) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(month, "*.parquet")) {
+            return files.iterator().hasNext();
+        }
+    }
+
+    private static int partitionValue(Path dir) {
+        String name = dir.getFileName().toString();
+        return Integer.parseInt(name.substring(name.indexOf('=') + 1));
+    }
+
+    /**
+     * Rewrites {@code sql} so that its references to {@code transactions} also see the rows of the
+     * given archived months. Returns {@code sql} unchanged when there are none.
+     */
+    public String withArchive(String sql, List<YearMonth> archived) {
+        if (archived.isEmpty()) {
+            return sql;
+        }
+        // BY NAME keeps older files readable after columns are added to the table
+        return "WITH transactions AS (SELECT * FROM main.transactions UNION BY NAME " +
+                "SELECT * FROM " + readFiles(archived) + ") " + sql;
+    }
+
+    private String readFiles(List<YearMonth> archived) {
+        StringJoiner files = new StringJoiner(", ", "[", "]");
+        for (YearMonth month : archived) {
+            files.add("'" + literal(partition(month).resolve("*.parquet")) + "'");
+        }
+        return "read_parquet(" + files + ", hive_partitioning = false)";
+    }
+
+    /**
+     * Archives the months that ended more than {@code db.archive.age_days} ago.
+     */
+    public long archive() {
+        return archive(LocalDate.now().minusDays(ageDays));
+    }
+
+    /**
+     * Moves every month that ends on or before {@code olderThan} and isn't archived yet to Parquet
+     * and returns the number of transactions moved. It runs on its own connection; if rows dated in
+     * those months are written while it runs, the delete no longer matches the copy and nothing is
+     * archived.
+     */
+    public long archive(LocalDate olderThan) {
+        // Only whole months: the month containing the cutoff stays in the table
+        LocalDateTime cutoff = YearMonth.from(olderThan).atDay(1).atStartOfDay();
+        long start = System.nanoTime();
+        try (Connection conn = dbManager.getConnection()) {
+            Map<YearMonth, Long> pending = findPending(conn, cutoff);
+            if (pending.isEmpty()) {
+                logger.info("No transactions before {} left to archive", cutoff.toLocalDate());
+                return 0;
+            }
+            long rows = pending.values().stream().mapToLong(Long::longValue).sum();
+
+            // Files left behind by a run that failed before its delete committed
+            for (YearMonth month : pending.keySet()) {
+                deleteRecursively(partition(month));
+            }
+            Files.createDirectories(root);
+            try (PreparedStatement copy = conn.prepareStatement(String.format(COPY_PENDING, literal(root)))) {
+                copy.setTimestamp(1, Timestamp.valueOf(cutoff));
+                copy.execute();
+            }
+
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement customers = dbManager.prepareStatement(conn, RECORD_CUSTOMERS);
+                customers.setTimestamp(1, Timestamp.valueOf(cutoff));
+                customers.executeUpdate();
+
+                PreparedStatement delete = dbManager.prepareStatement(conn, DELETE_PENDING);
+                delete.setTimestamp(1, Timestamp.valueOf(cutoff));
+                int deleted = delete.executeUpdate();
+                if (deleted != rows) {
+                    throw new SQLException("Archived " + rows + " transactions but would delete " + deleted);
+                }
+
+                PreparedStatement record = dbManager.prepareStatement(conn, RECORD_MONTH);
+                Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+                for (Map.Entry<YearMonth, Long> month : pending.entrySet()) {
+                    record.setObject(1, month.getKey().atDay(1));
+                    record.setLong(2, month.getValue());
+                    record.setTimestamp(3, now);
+                    record.addBatch();
+                }
+                record.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+            logger.info("Archived {} transactions from {} month(s) to {} in {} ms", rows, pending.size(), root,
+                    (System.nanoTime() - start) / 1_000_000);
+            return rows;
+        } catch (SQLException | IOException e) {
+            logger.error("Error archiving transactions before {}", cutoff, e);
+            throw new RuntimeException("Error archiving transactions before " + cutoff, e);
+        }
+    }
+
+    private Map<YearMonth, Long> findPending(Connection conn, LocalDateTime cutoff) throws SQLException {
+        PreparedStatement pstmt = dbManager.prepareStatement(conn, FIND_PENDING);
+        pstmt.setTimestamp(1, Timestamp.valueOf(cutoff));
+        Map<YearMonth, Long> pending = new LinkedHashMap<>();
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                pending.put(YearMonth.from(rs.getObject("month", LocalDate.class)), rs.getLong("row_count"));
+            }
+        }
+        return pending;
+    }
+
+    private Path partition(YearMonth month) {
+        // The layout DuckDB's PARTITION_BY (year, month) writes
+        return root.resolve("year=" + month.getYear()).resolve("month=" + month.getMonthValue());
+    }
+
+    private static String literal(Path path) {
+        return path.toString().replace("'", "''");
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
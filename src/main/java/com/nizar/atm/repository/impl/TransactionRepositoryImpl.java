@@ -0,0 +1,631 @@
+package com.nizar.atm.repository.impl;
+
+import com.nizar.atm.config.DatabaseManager;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.model.Transaction;
+import com.nizar.atm.model.TransactionCursor;
+import com.nizar.atm.model.TransactionPage;
+import com.nizar.atm.model.TransactionStatus;
+import com.nizar.atm.model.TransactionType;
+import com.nizar.atm.repository.TransactionRepository;
+import org.duckdb.DuckDBAppender;
+import org.duckdb.DuckDBConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind ledger for {@link Transaction} rows.
+ *
+ * <p>{@link #save(Transaction)} only places the row in a bounded in-memory buffer. A single writer
+ * thread drains the buffer and appends rows to the {@code transactions} table through the DuckDB
+ * appender, flushing a batch once {@code db.ledger.batch_size} rows have accumulated or
+ * {@code db.ledger.flush_interval_ms} has passed since the first row of the batch was queued.
+ * {@link #saveAndFlush(Transaction)} and {@link #flush()} force the pending batch out and wait
+ * until it is stored.
+ *
+ * <p>When the buffer is full, callers block for up to {@code db.ledger.enqueue_timeout_ms} and
+ * then fail, so a stalled writer pushes back on the service instead of growing memory without
+ * bound. Likewise a caller waits at most {@code db.ledger.await_timeout_ms} for its rows to be
+ * stored, and {@code db.ledger.rebuild_timeout_s} for a rollup rebuild.
+ *
+ * <p>Each batch is appended in one transaction of the writer's own connection, so it is stored whole
+ * or not at all, and every caller waiting on it is told which. The writer then adds the batch to
+ * the statement rollups (see {@link StatementRepositoryImpl}) in a transaction of its own, so a
+ * batch whose rollup update fails is stored but missing from the rollups until
+ * {@link #rebuildRollups()} is run.
+ *
+ * <p>Old months can be moved to Parquet files with {@link #archiveHistory()}; history queries
+ * read those files back in for the months their range touches (see {@link TransactionArchive}).
+ */
+public class TransactionRepositoryImpl implements TransactionRepository, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TransactionRepositoryImpl.class);
+
+    private static final String GET_HISTORY = "transaction.get-history";
+    private static final String GET_HISTORY_BEFORE = "transaction.get-history-before";
+    private static final String GET_BY_TYPE = "transaction.get-by-type";
+    private static final String GET_TRANSFER_HISTORY = "transaction.get-transfer-history";
+    private static final String GET_TRANSFER_HISTORY_BEFORE = "transaction.get-transfer-history-before";
+    private static final String GET_RANGE = "transaction.get-range";
+    private static final String GET_RANGE_AFTER = "transaction.get-range-after";
+
+    private static final String TABLE = "transactions";
+
+    private final DatabaseManager dbManager;
+    private final StatementRepositoryImpl rollups;
+    private final TransactionArchive archive;
+    private final BlockingQueue<Pending> buffer;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long enqueueTimeoutMillis;
+    private final long awaitTimeoutMillis;
+    private final long rebuildTimeoutMillis;
+    private final int fetchSize;
+    private final Thread writer;
+    private volatile boolean running = true;
+    // Held to queue an item, and exclusively to stop, so nothing is queued once the writer may exit
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    private DuckDBConnection appenderConnection;
+    private DuckDBAppender appender;
+
+    public TransactionRepositoryImpl() {
+        this.dbManager = DatabaseManager.getInstance();
+        dbManager.getQueryCatalog().require(GET_HISTORY, GET_HISTORY_BEFORE, GET_BY_TYPE, GET_TRANSFER_HISTORY,
+                GET_TRANSFER_HISTORY_BEFORE, GET_RANGE, GET_RANGE_AFTER);
+        this.rollups = new StatementRepositoryImpl();
+        this.archive = new TransactionArchive();
+
+        this.buffer = new ArrayBlockingQueue<>(dbManager.getIntProperty("db.ledger.buffer_size", 10000));
+        this.batchSize = dbManager.getIntProperty("db.ledger.batch_size", 1000);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+                dbManager.getLongProperty("db.ledger.flush_interval_ms", 50));
+        this.enqueueTimeoutMillis = dbManager.getLongProperty("db.ledger.enqueue_timeout_ms", 1000);
+        this.awaitTimeoutMillis = dbManager.getLongProperty("db.ledger.await_timeout_ms", 30000);
+        this.rebuildTimeoutMillis = TimeUnit.SECONDS.toMillis(
+                dbManager.getLongProperty("db.ledger.rebuild_timeout_s", 3600));
+        this.fetchSize = dbManager.getIntProperty("db.history.fetch_size", 1000);
+
+        this.writer = new Thread(this::runWriter, "transaction-ledger-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public Transaction save(Transaction transaction) {
+        prepare(transaction);
+        enqueue(new Pending(transaction, null, null));
+        return transaction;
+    }
+
+    @Override
+    public Transaction saveAndFlush(Transaction transaction) {
+        awaitStored(saveAndFlushAsync(transaction));
+        return transaction;
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAndFlushAsync(Transaction transaction) {
+        prepare(transaction);
+        CompletableFuture<Void> stored = new CompletableFuture<>();
+        enqueue(new Pending(transaction, stored, null));
+        return stored;
+    }
+
+    @Override
+    public void awaitStored(CompletableFuture<Void> stored) {
+        await(stored, awaitTimeoutMillis);
+    }
+
+    @Override
+    public void flush() {
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        enqueue(new Pending(null, flushed, null));
+        await(flushed, awaitTimeoutMillis);
+    }
+
+    /**
+     * Recomputes the statement rollups from the stored history. The rebuild runs on the writer
+     * thread after everything queued before it has been written, so no batch is counted twice or
+     * missed; new transactions wait in the buffer until it finishes.
+     */
+    @Override
+    public void rebuildRollups() {
+        CompletableFuture<Void> rebuilt = new CompletableFuture<>();
+        enqueue(new Pending(null, rebuilt, () -> rollups.rebuild(archive)));
+        await(rebuilt, rebuildTimeoutMillis);
+    }
+
+    /**
+     * Moves old months of history to Parquet. Everything queued so far is written first; the copy
+     * itself runs on the caller's thread and its own connection, so the ledger keeps writing
+     * meanwhile. New rows are dated now, long after the months it moves.
+     */
+    @Override
+    public long archiveHistory() {
+        flush();
+        return archive.archive();
+    }
+
+    private void prepare(Transaction transaction) {
+        if (transaction.getId() == null) {
+            transaction.setId(UUID.randomUUID());
+        }
+        if (transaction.getCreatedAt() == null) {
+            transaction.setCreatedAt(LocalDateTime.now());
+        }
+    }
+
+    private void enqueue(Pending pending) {
+        closeLock.readLock().lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Transaction ledger is closed");
+            }
+            if (!buffer.offer(pending, enqueueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warn("Transaction ledger buffer full after waiting {} ms", enqueueTimeoutMillis);
+                throw new IllegalStateException("Transaction ledger is overloaded, please try again");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing transaction", e);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    private static void await(CompletableFuture<Void> future, long timeoutMillis) {
+        try {
+            future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for transaction ledger flush", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to write transaction ledger", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timed out waiting for the transaction ledger after "
+                    + timeoutMillis + " ms");
+        }
+    }
+
+    private void runWriter() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        long deadline = 0;
+
+        while (running || !buffer.isEmpty() || !batch.isEmpty()) {
+            try {
+                long waitNanos = batch.isEmpty() ? flushIntervalNanos : deadline - System.nanoTime();
+                Pending next = waitNanos > 0 ? buffer.poll(waitNanos, TimeUnit.NANOSECONDS) : buffer.poll();
+                if (next != null) {
+                    if (batch.isEmpty()) {
+                        deadline = System.nanoTime() + flushIntervalNanos;
+                    }
+                    batch.add(next);
+                    buffer.drainTo(batch, Math.max(0, batchSize - batch.size()));
+                }
+
+                if (!batch.isEmpty() && (batch.size() >= batchSize
+                        || System.nanoTime() - deadline >= 0
+                        || hasWaiter(batch)
+                        || !running)) {
+                    writeBatch(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                // close() interrupts a writer that is idle-polling; loop to drain what is left
+                running = false;
+            }
+        }
+        closeAppender();
+    }
+
+    private static boolean hasWaiter(List<Pending> batch) {
+        for (Pending pending : batch) {
+            if (pending.stored != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeBatch(List<Pending> batch) {
+        // Tasks run in queue order: rows queued before a task are written first
+        int from = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Pending pending = batch.get(i);
+            if (pending.task != null) {
+                writeRows(batch.subList(from, i));
+                runTask(pending);
+                from = i + 1;
+            }
+        }
+        writeRows(batch.subList(from, batch.size()));
+    }
+
+    private void writeRows(List<Pending> batch) {
+        List<Transaction> rows = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            if (pending.transaction != null) {
+                rows.add(pending.transaction);
+            }
+        }
+        if (rows.isEmpty()) {
+            completeAll(batch);
+            return;
+        }
+        try {
+            DuckDBAppender out = appender();
+            // The appender commits each flush on its own unless a transaction is open
+            execute("BEGIN TRANSACTION");
+            for (Transaction row : rows) {
+                appendRow(out, row);
+            }
+            out.flush();
+            execute("COMMIT");
+            logger.debug("Flushed {} transactions to the ledger", rows.size());
+        } catch (SQLException | RuntimeException e) {
+            logger.error("Failed to write {} transactions to the ledger", rows.size(), e);
+            discardAppender();
+            for (Pending pending : batch) {
+                if (pending.stored != null) {
+                    pending.stored.completeExceptionally(e);
+                }
+            }
+            return;
+        }
+
+        try {
+            rollups.accumulate(appenderConnection, rows);
+        } catch (SQLException | RuntimeException e) {
+            // The rows themselves are stored, so callers still see success
+            logger.error("Failed to add {} transactions to the statement rollups; rebuild them to recover",
+                    rows.size(), e);
+        }
+        completeAll(batch);
+    }
+
+    private static void completeAll(List<Pending> batch) {
+        for (Pending pending : batch) {
+            if (pending.stored != null) {
+                pending.stored.complete(null);
+            }
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = appenderConnection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private void runTask(Pending pending) {
+        try {
+            pending.task.run();
+            pending.stored.complete(null);
+        } catch (RuntimeException e) {
+            logger.error("Ledger task failed", e);
+            pending.stored.completeExceptionally(e);
+        }
+    }
+
+    private void appendRow(DuckDBAppender out, Transaction transaction) throws SQLException {
+        // Column order must match the transactions table definition
+        out.beginRow();
+        out.append(transaction.getId().toString());
+        out.append(transaction.getTransactionType().name());
+        out.append(transaction.getCustomerId().toString());
+        out.append(toStringOrNull(transaction.getTargetCustomerId()));
+        out.appendBigDecimal(toDecimal(transaction.getAmount()));
+        out.appendBigDecimal(toDecimal(transaction.getBalanceBefore()));
+        out.appendBigDecimal(toDecimal(transaction.getBalanceAfter()));
+        out.append(transaction.getStatus().name());
+        out.append(transaction.getErrorMessage());
+        out.append(toStringOrNull(transaction.getReferenceId()));
+        out.appendLocalDateTime(transaction.getCreatedAt());
+        out.endRow();
+    }
+
+    private static String toStringOrNull(UUID id) {
+        return id == null ? null : id.toString();
+    }
+
+    // Money converts with the column's DECIMAL(15,2) scale, which the appender requires
+    private static BigDecimal toDecimal(Money value) {
+        return value == null ? null : value.toBigDecimal();
+    }
+
+    private static Money toMoney(BigDecimal value) {
+        return value == null ? null : Money.of(value);
+    }
+
+    private DuckDBAppender appender() throws SQLException {
+        if (appender == null) {
+            appenderConnection = dbManager.createDedicatedConnection().unwrap(DuckDBConnection.class);
+            appender = appenderConnection.createAppender(DuckDBConnection.DEFAULT_SCHEMA, TABLE);
+        }
+        return appender;
+    }
+
+    // Drops the rows appended since the batch began. Closing the appender flushes them into the
+    // open transaction, which is then rolled back rather than committed.
+    private void discardAppender() {
+        try {
+            if (appender != null) {
+                appender.close();
+            }
+        } catch (SQLException | RuntimeException e) {
+            logger.debug("Error closing the transaction appender of a failed batch", e);
+        }
+        appender = null;
+        try {
+            if (appenderConnection != null) {
+                execute("ROLLBACK");
+            }
+        } catch (SQLException e) {
+            logger.debug("Error rolling back a failed ledger batch", e);
+        }
+        closeAppender();
+    }
+
+    private void closeAppender() {
+        try {
+            if (appender != null) {
+                appender.close();
+            }
+        } catch (SQLException e) {
+            logger.error("Error closing transaction appender", e);
+        }
+        try {
+            if (appenderConnection != null) {
+                appenderConnection.close();
+            }
+        } catch (SQLException e) {
+            logger.error("Error closing transaction appender connection", e);
+        }
+        appender = null;
+        appenderConnection = null;
+    }
+
+    /**
+     * Stops accepting transactions and waits for the writer to flush everything still buffered.
+     * Whatever the writer leaves behind is failed rather than left waiting.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            logger.warn("Transaction ledger writer did not finish flushing in time");
+            return;
+        }
+        int dropped = 0;
+        IllegalStateException closed = new IllegalStateException("Transaction ledger is closed");
+        for (Pending pending = buffer.poll(); pending != null; pending = buffer.poll()) {
+            if (pending.transaction != null) {
+                dropped++;
+            }
+            if (pending.stored != null) {
+                pending.stored.completeExceptionally(closed);
+            }
+        }
+        if (dropped > 0) {
+            logger.error("Transaction ledger closed with {} transactions not written", dropped);
+        }
+    }
+
+    @Override
+    public List<Transaction> findByCustomerId(UUID customerId, int limit) {
+        return query(GET_HISTORY, customerId, limit, null, customerId, limit);
+    }
+
+    @Override
+    public List<Transaction> findByCustomerIdAndType(UUID customerId, String type, int limit) {
+        return query(GET_BY_TYPE, customerId, limit, null, customerId, type, limit);
+    }
+
+    @Override
+    public List<Transaction> findTransferHistory(UUID customerId, int limit) {
+        return query(GET_TRANSFER_HISTORY, customerId, limit, null, customerId, customerId, limit);
+    }
+
+    @Override
+    public TransactionPage findPageByCustomerId(UUID customerId, TransactionCursor before, int pageSize) {
+        validatePageSize(pageSize);
+        // One row more than the page tells whether another page follows
+        List<Transaction> rows = before == null
+                ? query(GET_HISTORY, customerId, pageSize + 1, null, customerId, pageSize + 1)
+                : query(GET_HISTORY_BEFORE, customerId, pageSize + 1, before, customerId,
+                        before.getCreatedAt(), before.getCreatedAt(), before.getId(), pageSize + 1);
+        return toPage(rows, pageSize);
+    }
+
+    @Override
+    public TransactionPage findTransferPage(UUID customerId, TransactionCursor before, int pageSize) {
+        validatePageSize(pageSize);
+        List<Transaction> rows = before == null
+                ? query(GET_TRANSFER_HISTORY, customerId, pageSize + 1, null, customerId, customerId, pageSize + 1)
+                : query(GET_TRANSFER_HISTORY_BEFORE, customerId, pageSize + 1, before, customerId, customerId,
+                        before.getCreatedAt(), before.getCreatedAt(), before.getId(), pageSize + 1);
+        return toPage(rows, pageSize);
+    }
+
+    private static void validatePageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+    }
+
+    private static TransactionPage toPage(List<Transaction> rows, int pageSize) {
+        if (rows.size() <= pageSize) {
+            return new TransactionPage(rows, null);
+        }
+        List<Transaction> page = new ArrayList<>(rows.subList(0, pageSize));
+        return new TransactionPage(page, TransactionCursor.of(page.get(pageSize - 1)));
+    }
+
+    /**
+     * Reads the range in keyset pages of {@code db.history.fetch_size} rows. Each page is a short
+     * query on its own pooled connection, so a long export neither holds a connection for its
+     * whole duration nor makes the database materialize the full result.
+     */
+    @Override
+    public long streamByCustomerId(UUID customerId, LocalDateTime from, LocalDateTime to,
+                                   Consumer<Transaction> consumer) {
+        flush();
+        List<YearMonth> archived = archive.monthsBetween(customerId, from, to.minusNanos(1));
+
+        Transaction[] last = new Transaction[1];
+        Consumer<Transaction> tracking = transaction -> {
+            last[0] = transaction;
+            consumer.accept(transaction);
+        };
+
+        long total = 0;
+        int fetched;
+        do {
+            fetched = last[0] == null
+                    ? forEach(GET_RANGE, archived, customerId, tracking, customerId, from, to, fetchSize)
+                    : forEach(GET_RANGE_AFTER, archived, customerId, tracking, customerId, to,
+                            last[0].getCreatedAt(), last[0].getCreatedAt(), last[0].getId(), fetchSize);
+            total += fetched;
+        } while (fetched == fetchSize);
+        return total;
+    }
+
+    /**
+     * Runs a newest-first query that returns at most {@code limit} rows older than {@code before}.
+     * It reads the table first and only goes back to the archive when archived months could hold
+     * rows that belong in the result.
+     */
+    private List<Transaction> query(String queryName, UUID customerId, int limit, TransactionCursor before,
+                                    Object... parameters) {
+        // Read-your-writes: make sure everything queued so far is visible
+        flush();
+
+        List<Transaction> transactions = new ArrayList<>(Math.min(limit, 1000));
+        forEach(queryName, Collections.emptyList(), customerId, transactions::add, parameters);
+
+        // A full result can only be affected by archived months back to its oldest row, a short one
+        // by any month holding the customer's archived rows
+        LocalDateTime oldest = transactions.size() == limit ? transactions.get(limit - 1).getCreatedAt() : null;
+        List<YearMonth> archived = archive.monthsBetween(customerId, oldest,
+                before == null ? null : before.getCreatedAt());
+        if (!archived.isEmpty()) {
+            transactions.clear();
+            forEach(queryName, archived, customerId, transactions::add, parameters);
+        }
+        return transactions;
+    }
+
+    private int forEach(String queryName, List<YearMonth> archived, UUID customerId,
+                        Consumer<Transaction> consumer, Object... parameters) {
+        try (Connection conn = dbManager.getConnection()) {
+            if (archived.isEmpty()) {
+                return read(dbManager.prepareStatement(conn, queryName), consumer, parameters);
+            }
+            // The archive query names the month files, so it is prepared per call instead of cached
+            String sql = archive.withArchive(dbManager.getQueryCatalog().get(queryName), archived);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                return read(pstmt, consumer, parameters);
+            }
+        } catch (SQLException e) {
+            logger.error("Error finding transactions for customer: {}", customerId, e);
+            throw new RuntimeException("Error finding transactions for customer: " + customerId, e);
+        }
+    }
+
+    private int read(PreparedStatement pstmt, Consumer<Transaction> consumer, Object... parameters)
+            throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            Object parameter = parameters[i];
+            if (parameter instanceof UUID) {
+                pstmt.setString(i + 1, parameter.toString());
+            } else if (parameter instanceof LocalDateTime) {
+                pstmt.setTimestamp(i + 1, Timestamp.valueOf((LocalDateTime) parameter));
+            } else {
+                pstmt.setObject(i + 1, parameter);
+            }
+        }
+
+        int rows = 0;
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                consumer.accept(mapResultSetToTransaction(rs));
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private Transaction mapResultSetToTransaction(ResultSet rs) throws SQLException {
+        Transaction transaction = new Transaction();
+        transaction.setId(UUID.fromString(rs.getString("id")));
+        transaction.setTransactionType(TransactionType.valueOf(rs.getString("transaction_type")));
+        transaction.setCustomerId(UUID.fromString(rs.getString("customer_id")));
+        String target = rs.getString("target_customer_id");
+        if (target != null) {
+            transaction.setTargetCustomerId(UUID.fromString(target));
+        }
+        transaction.setAmount(toMoney(rs.getBigDecimal("amount")));
+        transaction.setBalanceBefore(toMoney(rs.getBigDecimal("balance_before")));
+        transaction.setBalanceAfter(toMoney(rs.getBigDecimal("balance_after")));
+        transaction.setStatus(TransactionStatus.valueOf(rs.getString("status")));
+        transaction.setErrorMessage(rs.getString("error_message"));
+        String reference = rs.getString("reference_id");
+        if (reference != null) {
+            transaction.setReferenceId(UUID.fromString(reference));
+        }
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        if (createdAt != null) {
+            transaction.setCreatedAt(createdAt.toLocalDateTime());
+        }
+        return transaction;
+    }
+
+    private static final class Pending {
+        private final Transaction transaction;
+        private final CompletableFuture<Void> stored;
+        private final Runnable task;
+
+        private Pending(Transaction transaction, CompletableFuture<Void> stored, Runnable task) {
+            this.transaction = transaction;
+            this.stored = stored;
+            this.task = task;
+        }
+    }
+}
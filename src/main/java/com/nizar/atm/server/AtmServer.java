@@ -0,0 +1,139 @@
+package com.nizar.atm.server;
+
+import com.nizar.atm.service.ATMService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TCP front-end that lets network terminals talk to an {@link ATMService}.
+ *
+ * <p>The protocol is line based. A terminal sends one command per line, with every argument inline
+ * as described in {@link com.nizar.atm.cli.Request}. Each command gets one response: the service's
+ * text followed by an empty line. Commands may be pipelined; those of one connection run one at a
+ * time, in order. Every connection has its own session, opened with its first command and closed
+ * when the connection closes. {@code exit} answers {@code Goodbye!} and closes the connection.
+ *
+ * <p>An acceptor thread hands new connections round-robin to a few {@link SelectorLoop}s, which do
+ * all socket I/O with non-blocking channels. An idle connection holds no buffers and no thread, so
+ * a server can keep tens of thousands of them open. Service calls block on the database, so they
+ * run on the {@code workers} executor and their responses are passed back to the connection's
+ * selector thread to be written.
+ */
+public class AtmServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(AtmServer.class);
+
+    private static final int BACKLOG = 1024;
+    // Pause after an accept error such as running out of file descriptors, instead of spinning
+    private static final long ACCEPT_ERROR_BACKOFF_MS = 100;
+
+    private final ATMService atmService;
+    private final ExecutorService workers;
+    private final SelectorLoop[] loops;
+    private ServerSocketChannel serverChannel;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    /**
+     * @param selectors number of selector threads doing socket I/O
+     * @param workers   runs the service calls; shut down when the server is closed
+     */
+    public AtmServer(ATMService atmService, int selectors, ExecutorService workers) {
+        if (selectors < 1) {
+            throw new IllegalArgumentException("At least one selector thread is required");
+        }
+        this.atmService = atmService;
+        this.workers = workers;
+        this.loops = new SelectorLoop[selectors];
+    }
+
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (running) {
+            throw new IllegalStateException("Server already started");
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(address, BACKLOG);
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new SelectorLoop(atmService, workers);
+            Thread thread = new Thread(loops[i], "atm-selector-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        running = true;
+        acceptor = new Thread(this::acceptConnections, "atm-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Listening on {} with {} selector threads", serverChannel.getLocalAddress(), loops.length);
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int getConnectionCount() {
+        int count = 0;
+        for (SelectorLoop loop : loops) {
+            count += loop.getConnectionCount();
+        }
+        return count;
+    }
+
+    private void acceptConnections() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                logger.warn("Error accepting connection", e);
+                try {
+                    Thread.sleep(ACCEPT_ERROR_BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops accepting, closes every connection and waits for running service calls to finish.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        serverChannel.close();
+        try {
+            acceptor.join();
+            for (SelectorLoop loop : loops) {
+                loop.close();
+            }
+            workers.shutdown();
+            if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Service calls still running after shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Server stopped");
+    }
+}
@@ -0,0 +1,283 @@
+package com.nizar.atm.server;
+
+import com.nizar.atm.cli.Command;
+import com.nizar.atm.cli.CommandReader;
+import com.nizar.atm.cli.Request;
+import com.nizar.atm.service.session.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * State of one network terminal. Only touched by its {@link SelectorLoop}'s thread; workers hand
+ * responses back through {@link SelectorLoop#execute(Runnable)}.
+ *
+ * <p>Buffers are only held while there is something in them: the bytes of a line that hasn't been
+ * completed yet, commands waiting for the one in progress, and responses the socket hasn't taken
+ * yet. Reading pauses while too many commands are waiting or a response is stuck in the socket,
+ * so a client that pipelines without reading can't make the server buffer without bound.
+ */
+final class ClientConnection {
+    private static final Logger logger = LoggerFactory.getLogger(ClientConnection.class);
+
+    static final int MAX_LINE_BYTES = 1024;
+    private static final int MAX_WAITING = 32;
+    private static final byte[] TERMINATOR = {'\n', '\n'};
+
+    private final SelectorLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private Session session;
+
+    private byte[] partialLine;
+    private int partialLength;
+    private ArrayDeque<Pending> waiting;
+    private boolean busy;
+    private ArrayDeque<ByteBuffer> unsent;
+    private boolean closeWhenFlushed;
+    private boolean closed;
+
+    ClientConnection(SelectorLoop loop, SocketChannel channel, SelectionKey key) {
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+    }
+
+    void read() throws IOException {
+        ByteBuffer buffer = loop.getReadBuffer();
+        buffer.clear();
+        int read = channel.read(buffer);
+        if (read < 0) {
+            close();
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining() && !closeWhenFlushed) {
+            int end = indexOf(buffer, (byte) '\n');
+            if (end < 0) {
+                keepPartial(buffer);
+                break;
+            }
+            int next = end + 1;
+            if (partialLength > 0) {
+                ByteBuffer rest = buffer.duplicate();
+                rest.limit(end);
+                keepPartial(rest);
+                if (!closeWhenFlushed) {
+                    line(ByteBuffer.wrap(partialLine, 0, partialLength));
+                }
+                partialLength = 0;
+                partialLine = null;
+            } else if (end - buffer.position() > MAX_LINE_BYTES) {
+                tooLong();
+            } else {
+                ByteBuffer line = buffer.duplicate();
+                line.limit(end);
+                line(line);
+            }
+            buffer.position(next);
+        }
+        dispatch();
+        updateInterest();
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void keepPartial(ByteBuffer bytes) {
+        int length = bytes.remaining();
+        if (partialLength + length > MAX_LINE_BYTES) {
+            tooLong();
+            return;
+        }
+        if (partialLine == null) {
+            partialLine = new byte[Math.max(64, length)];
+        } else if (partialLine.length < partialLength + length) {
+            int capacity = Math.min(MAX_LINE_BYTES, Math.max(partialLength + length, partialLine.length * 2));
+            partialLine = Arrays.copyOf(partialLine, capacity);
+        }
+        bytes.get(partialLine, partialLength, length);
+        partialLength += length;
+    }
+
+    private void tooLong() {
+        partialLine = null;
+        partialLength = 0;
+        enqueue(new Pending("Error: Line too long", true));
+    }
+
+    private void line(ByteBuffer bytes) {
+        // Accept CRLF line ends
+        if (bytes.hasRemaining() && bytes.get(bytes.limit() - 1) == '\r') {
+            bytes.limit(bytes.limit() - 1);
+        }
+        CommandReader commands = loop.parse(bytes);
+        if (commands.tokenCount() == 0) {
+            return;
+        }
+        try {
+            Request request = Request.parse(commands, 0);
+            enqueue(request.getCommand() == Command.EXIT ? new Pending("Goodbye!", true) : new Pending(request));
+        } catch (IllegalArgumentException e) {
+            enqueue(new Pending("Error: " + e.getMessage(), false));
+        }
+    }
+
+    private void enqueue(Pending pending) {
+        if (waiting == null) {
+            waiting = new ArrayDeque<>();
+        }
+        waiting.add(pending);
+        if (pending.closeAfter) {
+            // Nothing after the last response is answered
+            closeWhenFlushed = true;
+        }
+    }
+
+    /**
+     * Starts the next waiting command unless one is already running.
+     */
+    private void dispatch() {
+        while (!busy && !closed && waiting != null && !waiting.isEmpty()) {
+            Pending pending = waiting.poll();
+            if (pending.request == null) {
+                send(pending.response);
+                continue;
+            }
+            if (session == null) {
+                session = loop.getAtmService().openSession();
+            }
+            busy = true;
+            Session current = session;
+            try {
+                loop.getWorkers().execute(() -> {
+                    String response;
+                    try {
+                        response = pending.request.execute(loop.getAtmService(), current);
+                    } catch (RuntimeException e) {
+                        logger.error("{} failed for {}", pending.request.getCommand(), current, e);
+                        response = "Error: " + e.getMessage();
+                    }
+                    String result = response;
+                    loop.execute(() -> complete(result));
+                });
+            } catch (RejectedExecutionException e) {
+                // The server is shutting down
+                close();
+            }
+        }
+        if (waiting != null && waiting.isEmpty()) {
+            waiting = null;
+        }
+        if (!busy && waiting == null && closeWhenFlushed && unsent == null) {
+            close();
+        }
+    }
+
+    private void complete(String response) {
+        busy = false;
+        if (closed) {
+            return;
+        }
+        send(response);
+        dispatch();
+        updateInterest();
+    }
+
+    private void send(String response) {
+        byte[] text = response.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer bytes = ByteBuffer.allocate(text.length + TERMINATOR.length);
+        bytes.put(text).put(TERMINATOR).flip();
+        if (unsent == null) {
+            try {
+                channel.write(bytes);
+            } catch (IOException e) {
+                logger.debug("Closing connection after write error", e);
+                close();
+                return;
+            }
+            if (!bytes.hasRemaining()) {
+                return;
+            }
+            unsent = new ArrayDeque<>();
+        }
+        unsent.add(bytes);
+    }
+
+    void flush() throws IOException {
+        while (unsent != null) {
+            ByteBuffer head = unsent.peek();
+            channel.write(head);
+            if (head.hasRemaining()) {
+                return;
+            }
+            unsent.poll();
+            if (unsent.isEmpty()) {
+                unsent = null;
+            }
+        }
+        dispatch();
+        updateInterest();
+    }
+
+    private void updateInterest() {
+        if (closed) {
+            return;
+        }
+        int waitingCount = waiting == null ? 0 : waiting.size();
+        boolean reading = !closeWhenFlushed && unsent == null && waitingCount < MAX_WAITING;
+        key.interestOps((reading ? SelectionKey.OP_READ : 0) | (unsent != null ? SelectionKey.OP_WRITE : 0));
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (session != null) {
+            loop.getAtmService().closeSession(session);
+        }
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Error closing connection", e);
+        }
+        loop.closed();
+    }
+
+    /**
+     * A command waiting its turn, or a response ready to be sent in its place.
+     */
+    private static final class Pending {
+        private final Request request;
+        private final String response;
+        private final boolean closeAfter;
+
+        private Pending(Request request) {
+            this.request = request;
+            this.response = null;
+            this.closeAfter = false;
+        }
+
+        private Pending(String response, boolean closeAfter) {
+            this.request = null;
+            this.response = response;
+            this.closeAfter = closeAfter;
+        }
+    }
+}
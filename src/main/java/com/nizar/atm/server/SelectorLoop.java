@@ -0,0 +1,181 @@
+package com.nizar.atm.server;
+
+import com.nizar.atm.cli.CommandReader;
+import com.nizar.atm.service.ATMService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * One selector thread of an {@link AtmServer}, serving the connections handed to it. Everything
+ * that touches those connections runs on this thread: other threads pass work in through
+ * {@link #register(SocketChannel)} and {@link #execute(Runnable)}. The read buffer and the parsing
+ * state are shared by all of the loop's connections.
+ */
+final class SelectorLoop implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(SelectorLoop.class);
+
+    private final ATMService atmService;
+    private final Executor workers;
+    private final Selector selector;
+    private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean running = true;
+    private volatile int connectionCount;
+
+    // Shared by the loop's connections, which are only ever served one at a time
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(16 * 1024);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer lineChars = CharBuffer.allocate(ClientConnection.MAX_LINE_BYTES);
+    private final CommandReader commands = new CommandReader();
+
+    SelectorLoop(ATMService atmService, Executor workers) throws IOException {
+        this.atmService = atmService;
+        this.workers = workers;
+        this.selector = Selector.open();
+    }
+
+    void register(SocketChannel channel) {
+        accepted.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * Runs {@code task} on this loop's thread.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    int getConnectionCount() {
+        return connectionCount;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                registerAccepted();
+                runTasks();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Selector loop failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                ((ClientConnection) key.attachment()).close();
+            }
+            closeQuietly();
+            stopped.countDown();
+        }
+    }
+
+    private void registerAccepted() {
+        SocketChannel channel;
+        while ((channel = accepted.poll()) != null) {
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new ClientConnection(this, channel, key));
+                connectionCount++;
+            } catch (IOException e) {
+                logger.warn("Error registering connection", e);
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Nothing left to release
+                }
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        ClientConnection connection = (ClientConnection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        } catch (IOException | CancelledKeyException e) {
+            logger.debug("Closing connection after error", e);
+            connection.close();
+        }
+    }
+
+    void closed() {
+        connectionCount--;
+    }
+
+    ATMService getAtmService() {
+        return atmService;
+    }
+
+    Executor getWorkers() {
+        return workers;
+    }
+
+    ByteBuffer getReadBuffer() {
+        return readBuffer;
+    }
+
+    /**
+     * Decodes a line of UTF-8 {@code bytes} and makes it the current line of the shared
+     * {@link CommandReader}, which is returned.
+     */
+    CommandReader parse(ByteBuffer bytes) {
+        lineChars.clear();
+        decoder.reset();
+        decoder.decode(bytes, lineChars, true);
+        decoder.flush(lineChars);
+        lineChars.flip();
+        commands.read(lineChars);
+        return commands;
+    }
+
+    void close() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        stopped.await();
+    }
+
+    private void closeQuietly() {
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.warn("Error closing selector", e);
+        }
+    }
+}
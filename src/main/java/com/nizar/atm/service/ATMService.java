@@ -1,12 +1,28 @@
 package com.nizar.atm.service;
 
-import java.math.BigDecimal;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.service.session.Session;
+
 import java.math.BigInteger;
+import java.time.Duration;
 
 public interface ATMService {
-    String register(String name, BigDecimal initialBalance);
-    String login(String name, String pin);
-    String withdraw(BigDecimal amount);
-    String transfer(BigInteger targetAccount, BigDecimal amount);
-    String logout();
+    Session openSession();
+    String register(String name, Money initialBalance);
+    String login(Session session, String name, String pin);
+    String withdraw(Session session, Money amount);
+    String transfer(Session session, BigInteger targetAccount, Money amount);
+    String statement(Session session, int months);
+    String rebuildStatements();
+    String archiveHistory();
+    String netDebts();
+    String importCustomers(String csvPath, String credentialsPath);
+    String logout(Session session);
+    void closeSession(Session session);
+    int closeIdleSessions(Duration maxIdle);
+    /**
+     * Stops background work and writes out everything still buffered. Called once, after the last
+     * call.
+     */
+    void close();
 }
@@ -0,0 +1,13 @@
+package com.nizar.atm.service;
+
+import com.nizar.atm.model.ImportResult;
+
+import java.nio.file.Path;
+
+public interface CustomerImportService {
+    /**
+     * Registers every customer listed in {@code csv} as {@code name,initial balance} lines and
+     * writes their account numbers and PINs to {@code credentials}.
+     */
+    ImportResult importCustomers(Path csv, Path credentials) throws Exception;
+}
@@ -1,8 +1,9 @@
 package com.nizar.atm.service;
 
 import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.model.PendingTransfer;
 
-import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.List;
 import java.util.Optional;
@@ -12,7 +13,23 @@ public interface CustomerService {
     Optional<Customer> findById(UUID id) throws Exception;
     Optional<Customer> findByName(String name) throws Exception;
     Customer save(Customer customer) throws Exception;
-    void updateBalance(UUID id, BigDecimal newBalance) throws Exception;
+    void updateBalance(UUID id, Money newBalance) throws Exception;
+    void recordLogin(UUID id) throws Exception;
+    Optional<Money> debit(UUID id, Money amount) throws Exception;
+    /**
+     * Moves the money and queues the transfer's ledger row without waiting for it to be stored, so
+     * that the caller can release its locks first. Returns empty when funds are insufficient.
+     */
+    Optional<PendingTransfer> transfer(UUID senderId, UUID recipientId, Money amount) throws Exception;
+    /**
+     * Waits until the ledger row of a transfer is stored. The money has moved either way, so the
+     * exception thrown when it can't be says so.
+     */
+    void awaitRecorded(PendingTransfer transfer) throws Exception;
     List<Customer> findAll() throws Exception;
     Optional<Customer> findByAccountNumber(BigInteger accountNumber) throws Exception;
+    /**
+     * Writes out the balances and transactions still buffered and stops the threads writing them.
+     */
+    void close();
 }
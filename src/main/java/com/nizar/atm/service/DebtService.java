@@ -0,0 +1,26 @@
+package com.nizar.atm.service;
+
+import com.nizar.atm.model.Debt;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.model.NettingResult;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface DebtService {
+    Debt recordDebt(UUID debtorId, UUID creditorId, Money amount) throws Exception;
+    List<Debt> getActiveDebts(UUID debtorId) throws Exception;
+
+    /**
+     * Applies a transfer the sender has made to the recipient to the sender's debts to the
+     * recipient, and returns how much of it went to them.
+     */
+    Money applyTransfer(UUID senderId, UUID recipientId, Money amount) throws Exception;
+
+    NettingResult netDebts() throws Exception;
+
+    /**
+     * Stops scheduled netting, waiting for a run in progress to finish.
+     */
+    void close();
+}
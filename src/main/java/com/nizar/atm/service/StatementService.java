@@ -0,0 +1,22 @@
+package com.nizar.atm.service;
+
+import com.nizar.atm.model.StatementLine;
+import com.nizar.atm.model.Transaction;
+import com.nizar.atm.model.TransactionCursor;
+import com.nizar.atm.model.TransactionPage;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public interface StatementService {
+    List<StatementLine> getMonthlyStatement(UUID customerId, YearMonth from, YearMonth to) throws Exception;
+    List<StatementLine> getDailySummary(UUID customerId, int days) throws Exception;
+    void rebuildRollups() throws Exception;
+    long archiveHistory() throws Exception;
+    TransactionPage getHistory(UUID customerId, TransactionCursor before, int pageSize) throws Exception;
+    TransactionPage getTransferHistory(UUID customerId, TransactionCursor before, int pageSize) throws Exception;
+    long exportHistory(UUID customerId, LocalDateTime from, LocalDateTime to, Consumer<Transaction> consumer) throws Exception;
+}
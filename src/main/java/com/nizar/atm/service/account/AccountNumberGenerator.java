@@ -0,0 +1,96 @@
+package com.nizar.atm.service.account;
+
+import com.nizar.atm.repository.AccountNumberSequenceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+/**
+ * Issues unique 16-digit account numbers starting with 8 without querying the customers table.
+ *
+ * <p>Numbers are {@code 8 * 10^15 + permute(counter)}: the counter never repeats and the keyed
+ * {@link AccountNumberPermutation} is a bijection, so numbers can't collide, yet consecutive
+ * registrations get unrelated-looking numbers. Counter values are leased from the database in
+ * blocks, so registrations only touch the sequence row once per block; values left in a block
+ * when the application stops are simply never used.
+ */
+public class AccountNumberGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(AccountNumberGenerator.class);
+
+    private static final long PREFIX = 8 * AccountNumberPermutation.DOMAIN;
+
+    private final AccountNumberSequenceRepository sequenceRepository;
+    private final int blockSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private AccountNumberPermutation permutation;
+    private long next;
+    private long blockEnd;
+
+    public AccountNumberGenerator(AccountNumberSequenceRepository sequenceRepository, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.sequenceRepository = sequenceRepository;
+        this.blockSize = blockSize;
+    }
+
+    public BigInteger next() throws Exception {
+        long counter;
+        AccountNumberPermutation current;
+        lock.lock();
+        try {
+            current = permutation();
+            if (next == blockEnd) {
+                next = sequenceRepository.leaseBlock(blockSize);
+                blockEnd = next + blockSize;
+                logger.debug("Leased account number block [{}, {})", next, blockEnd);
+            }
+            counter = next++;
+        } finally {
+            lock.unlock();
+        }
+
+        if (counter >= AccountNumberPermutation.DOMAIN) {
+            throw new IllegalStateException("Account number space exhausted");
+        }
+        return BigInteger.valueOf(PREFIX + current.permute(counter));
+    }
+
+    /**
+     * Issues {@code count} account numbers for a bulk import. They come from a block leased for
+     * this call alone, so a single sequence update covers the whole batch, and are computed in
+     * parallel.
+     */
+    public BigInteger[] next(int count) throws Exception {
+        if (count <= 0) {
+            return new BigInteger[0];
+        }
+        AccountNumberPermutation current;
+        lock.lock();
+        try {
+            current = permutation();
+        } finally {
+            lock.unlock();
+        }
+
+        long first = sequenceRepository.leaseBlock(count);
+        if (first + count > AccountNumberPermutation.DOMAIN) {
+            throw new IllegalStateException("Account number space exhausted");
+        }
+        BigInteger[] numbers = new BigInteger[count];
+        IntStream.range(0, count).parallel()
+                .forEach(i -> numbers[i] = BigInteger.valueOf(PREFIX + current.permute(first + i)));
+        return numbers;
+    }
+
+    // Callers hold the lock
+    private AccountNumberPermutation permutation() throws Exception {
+        if (permutation == null) {
+            permutation = new AccountNumberPermutation(sequenceRepository.getPermutationKey());
+        }
+        return permutation;
+    }
+}
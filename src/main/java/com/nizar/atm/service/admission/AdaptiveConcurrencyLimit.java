@@ -0,0 +1,84 @@
+package com.nizar.atm.service.admission;
+
+/**
+ * A concurrency limit that follows the latency of the calls it admits, in the manner of TCP
+ * Vegas: while calls take about as long as they usually do, the database has room and the limit
+ * creeps up by the square root of itself; once they take longer than {@code tolerance} times the
+ * usual, work is queueing inside the database and the limit shrinks by the same ratio.
+ *
+ * <p>Latencies are averaged over windows of at least {@value #MIN_WINDOW} calls. "Usual" is a
+ * slow moving average of those windows, so a database that gets lastingly slower (a bigger table,
+ * a busier disk) becomes the new usual instead of pinning the limit at its minimum. Windows in
+ * which fewer than half of the limit was ever in use say nothing about whether the limit is right
+ * and leave it alone.
+ *
+ * <p>Not thread-safe; {@link AdmissionController} calls it under its lock.
+ */
+public final class AdaptiveConcurrencyLimit {
+    static final int MIN_WINDOW = 10;
+    // The usual latency moves this fraction of the way towards each window's average
+    private static final double LONG_TERM_WEIGHT = 0.05;
+    // And the limit this fraction of the way towards its new target
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private double limit;
+    private double usualNanos;
+
+    private long windowNanos;
+    private int windowCalls;
+    private int windowMaxInFlight;
+
+    /**
+     * @param tolerance how many times the usual latency calls may take before the limit shrinks
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Concurrency limits must satisfy 1 <= min <= initial <= max");
+        }
+        if (tolerance < 1) {
+            throw new IllegalArgumentException("Latency tolerance must be at least 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.limit = initialLimit;
+    }
+
+    public int get() {
+        return (int) limit;
+    }
+
+    /**
+     * Records a call that took {@code latencyNanos} while {@code inFlight} calls, itself included,
+     * were running.
+     */
+    public void record(long latencyNanos, int inFlight) {
+        windowNanos += latencyNanos;
+        windowCalls++;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+        if (windowCalls < Math.max(MIN_WINDOW, get())) {
+            return;
+        }
+
+        double averageNanos = (double) windowNanos / windowCalls;
+        boolean used = windowMaxInFlight * 2 >= limit;
+        windowNanos = 0;
+        windowCalls = 0;
+        windowMaxInFlight = 0;
+
+        if (usualNanos == 0) {
+            usualNanos = averageNanos;
+        } else {
+            usualNanos += (averageNanos - usualNanos) * LONG_TERM_WEIGHT;
+        }
+        if (!used) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * usualNanos / averageNanos));
+        double target = limit * gradient + (gradient == 1.0 ? Math.sqrt(limit) : 0);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit + (target - limit) * SMOOTHING));
+    }
+}
@@ -0,0 +1,207 @@
+package com.nizar.atm.service.admission;
+
+import com.nizar.atm.config.DatabaseManager;
+import com.nizar.atm.metrics.MetricsRegistry;
+import com.nizar.atm.metrics.OperationMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds how many service calls run against the database at once, so that a burst queues here,
+ * briefly and boundedly, rather than inside the connection pool and DuckDB where every caller's
+ * latency grows with it.
+ *
+ * <p>At most {@link AdaptiveConcurrencyLimit#get()} calls are admitted at a time. A call beyond
+ * that waits in the queue of its {@link Operation}, which holds at most {@code queueCapacity}
+ * callers, for up to {@code queueTimeoutMillis}. When the queue is full or the wait runs out, the
+ * call is rejected straight away and the caller should answer "busy" rather than try it. A freed
+ * slot goes to the longest waiting caller of the highest priority operation, so work of customers
+ * already logged in is served before new logins.
+ *
+ * <p>With a {@link MetricsRegistry}, each operation's time spent waiting for admission is recorded
+ * under the {@code Admission} group, rejections counting as errors.
+ */
+public class AdmissionController {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+    private static final String GROUP = "Admission";
+
+    /**
+     * Operations subject to admission, highest priority first.
+     */
+    public enum Operation {
+        TRANSFER, WITHDRAW, STATEMENT, REGISTER, LOGIN
+    }
+
+    private static final class Waiter {
+        final Condition admitted;
+        boolean isAdmitted;
+
+        Waiter(Condition admitted) {
+            this.admitted = admitted;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AdaptiveConcurrencyLimit limit;
+    private final List<ArrayDeque<Waiter>> queues;
+    private final int queueCapacity;
+    private final long queueTimeoutNanos;
+    private final OperationMetrics[] waits;
+    private int inFlight;
+
+    @SuppressWarnings("unchecked")
+    public AdmissionController(AdaptiveConcurrencyLimit limit, int queueCapacity, long queueTimeoutMillis,
+                               MetricsRegistry metrics) {
+        if (queueCapacity < 0 || queueTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Queue capacity and timeout must not be negative");
+        }
+        this.limit = limit;
+        this.queueCapacity = queueCapacity;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        Operation[] operations = Operation.values();
+        this.queues = new ArrayList<>(operations.length);
+        this.waits = new OperationMetrics[operations.length];
+        for (Operation operation : operations) {
+            queues.add(new ArrayDeque<>());
+            if (metrics != null) {
+                waits[operation.ordinal()] = metrics.operation(GROUP, operation.name().toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    /**
+     * Builds a controller from the {@code db.admission.*} settings. The limit starts at
+     * {@code db.max_connections}, which is as many calls as can reach the database at once anyway.
+     */
+    public static AdmissionController create(DatabaseManager config, MetricsRegistry metrics) {
+        int connections = config.getIntProperty("db.max_connections", 10);
+        int minLimit = Math.min(connections, config.getIntProperty("db.admission.min_limit", 2));
+        int maxLimit = Math.max(connections, config.getIntProperty("db.admission.max_limit", 100));
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(connections, minLimit, maxLimit,
+                Double.parseDouble(config.getProperty("db.admission.latency_tolerance", "2.0")));
+        return new AdmissionController(limit, config.getIntProperty("db.admission.queue_size", 64),
+                config.getLongProperty("db.admission.queue_timeout_ms", 500), metrics);
+    }
+
+    /**
+     * Admits a call of {@code operation}, waiting for a slot if need be. Returns the admission time
+     * to hand to {@link #release(long)} once the call is done, or -1 if the call is rejected. An
+     * interrupted wait is rejected with the interrupt status set.
+     */
+    public long acquire(Operation operation) {
+        long start = System.nanoTime();
+        boolean admitted = false;
+        lock.lock();
+        try {
+            if (inFlight < limit.get()) {
+                inFlight++;
+                admitted = true;
+                return System.nanoTime();
+            }
+            ArrayDeque<Waiter> queue = queues.get(operation.ordinal());
+            if (queue.size() >= queueCapacity) {
+                return -1;
+            }
+            Waiter waiter = new Waiter(lock.newCondition());
+            queue.addLast(waiter);
+            long remaining = queueTimeoutNanos;
+            try {
+                while (!waiter.isAdmitted && remaining > 0) {
+                    remaining = waiter.admitted.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (waiter.isAdmitted) {
+                    // Admitted just as it was interrupted; pass the slot on
+                    inFlight--;
+                    admitWaiting();
+                }
+                queue.remove(waiter);
+                return -1;
+            }
+            if (!waiter.isAdmitted) {
+                queue.remove(waiter);
+                return -1;
+            }
+            admitted = true;
+            return System.nanoTime();
+        } finally {
+            lock.unlock();
+            OperationMetrics wait = waits[operation.ordinal()];
+            if (wait != null) {
+                wait.record(start, !admitted);
+            }
+        }
+    }
+
+    /**
+     * Ends a call admitted at {@code admittedAt}, feeding its latency to the limit and handing its
+     * slot to the next waiting caller.
+     */
+    public void release(long admittedAt) {
+        long latency = System.nanoTime() - admittedAt;
+        lock.lock();
+        try {
+            int before = limit.get();
+            limit.record(latency, inFlight);
+            inFlight--;
+            admitWaiting();
+            if (limit.get() != before) {
+                logger.debug("Concurrency limit changed from {} to {}", before, limit.get());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Fills free slots from the queues, highest priority first. Called with the lock held.
+    private void admitWaiting() {
+        for (ArrayDeque<Waiter> queue : queues) {
+            while (inFlight < limit.get() && !queue.isEmpty()) {
+                Waiter waiter = queue.pollFirst();
+                waiter.isAdmitted = true;
+                inFlight++;
+                waiter.admitted.signal();
+            }
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            int queued = 0;
+            for (ArrayDeque<Waiter> queue : queues) {
+                queued += queue.size();
+            }
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -2,36 +2,91 @@ package com.nizar.atm.service.impl;
 
 import com.nizar.atm.model.Customer;
 import com.nizar.atm.model.CustomerStatus;
+import com.nizar.atm.model.ImportResult;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.model.PendingTransfer;
+import com.nizar.atm.model.NettingResult;
+import com.nizar.atm.model.StatementLine;
+import com.nizar.atm.repository.InactiveAccountException;
+import com.nizar.atm.repository.TransactionRepository;
+import com.nizar.atm.repository.impl.TransactionRepositoryImpl;
 import com.nizar.atm.service.ATMService;
+import com.nizar.atm.service.CustomerImportService;
 import com.nizar.atm.service.CustomerService;
+import com.nizar.atm.service.DebtService;
+import com.nizar.atm.service.StatementService;
+import com.nizar.atm.service.lock.AccountLockManager;
+import com.nizar.atm.service.lock.AccountLockTimeoutException;
+import com.nizar.atm.service.response.ResponseBuilder;
+import com.nizar.atm.service.session.Session;
+import com.nizar.atm.service.session.SessionManager;
 import lombok.AllArgsConstructor;
-import lombok.NoArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.YearMonth;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 
 @AllArgsConstructor
 public class ATMServiceImpl implements ATMService {
     private static final Logger logger = LoggerFactory.getLogger(ATMServiceImpl.class);
     private CustomerService customerService;
-    private Customer currentSession;
+    private StatementService statementService;
+    private CustomerImportService customerImportService;
+    private DebtService debtService;
+    private SessionManager sessionManager;
+    private AccountLockManager lockManager;
 
     public ATMServiceImpl() {
-        this.customerService = new CustomerServiceImpl();
+        // Both services must share one ledger: it maintains the rollups statements are read from
+        TransactionRepository ledger = new TransactionRepositoryImpl();
+        this.customerService = new CustomerServiceImpl(ledger);
+        this.statementService = new StatementServiceImpl(ledger);
+        this.customerImportService = new CustomerImportServiceImpl();
+        this.debtService = new DebtServiceImpl();
+        this.sessionManager = new SessionManager();
+        this.lockManager = new AccountLockManager();
     }
 
     @Override
-    public String register(String name, BigDecimal initialBalance) {
+    public Session openSession() {
+        return sessionManager.open();
+    }
+
+    @Override
+    public void closeSession(Session session) {
+        sessionManager.close(session);
+    }
+
+    @Override
+    public int closeIdleSessions(Duration maxIdle) {
+        return sessionManager.closeIdle(maxIdle);
+    }
+
+    /**
+     * Stops netting first, since it writes debts, then writes out the balances and transactions
+     * still buffered.
+     */
+    @Override
+    public void close() {
+        debtService.close();
+        customerService.close();
+    }
+
+    @Override
+    public String register(String name, Money initialBalance) {
         try {
             if (name == null || name.trim().isEmpty()) {
                 return "Error: Name cannot be empty";
             }
-            if (initialBalance == null || initialBalance.compareTo(BigDecimal.ZERO) < 0) {
+            if (initialBalance == null || initialBalance.isNegative()) {
                 return "Error: Initial balance must be non-negative";
             }
 
@@ -41,8 +96,10 @@ public class ATMServiceImpl implements ATMService {
                     .status(CustomerStatus.ACTIVE)
                     .build());
 
-            return String.format("Registration successful!\nAccount Number: %s\nPIN: %s",
-                    customer.getAccountNumber(), customer.getPinCode());
+            return ResponseBuilder.start()
+                    .append("Registration successful!\nAccount Number: ").append(customer.getAccountNumber().toString())
+                    .append("\nPIN: ").append(customer.getPinCode())
+                    .build();
 
         } catch (Exception e) {
             logger.error("Registration failed for name: {}", name, e);
@@ -51,9 +108,12 @@ public class ATMServiceImpl implements ATMService {
     }
 
     @Override
-    public String login(String name, String pin) {
+    public String login(Session session, String name, String pin) {
         try {
-            if (currentSession != null) {
+            if (!sessionManager.isOpen(session)) {
+                return "Error: Invalid session";
+            }
+            if (session.isAuthenticated()) {
                 return "Error: Another user is already logged in";
             }
 
@@ -71,12 +131,13 @@ public class ATMServiceImpl implements ATMService {
                 return "Error: Account is not active";
             }
 
-            currentSession = foundCustomer;
+            customerService.recordLogin(foundCustomer.getId());
             foundCustomer.setLastLogin(new Date());
-            customerService.save(foundCustomer);
+            sessionManager.authenticate(session, foundCustomer);
 
-            return String.format("Welcome %s!\nCurrent balance: $%.2f",
-                    name, foundCustomer.getBalance());
+            return ResponseBuilder.start()
+                    .append("Welcome ").append(name).append("!\nCurrent balance: $").append(foundCustomer.getBalance())
+                    .build();
 
         } catch (Exception e) {
             logger.error("Login failed for name: {}", name, e);
@@ -85,40 +146,45 @@ public class ATMServiceImpl implements ATMService {
     }
 
     @Override
-    public String withdraw(BigDecimal amount) {
+    public String withdraw(Session session, Money amount) {
         try {
-            if (currentSession == null) {
+            if (!sessionManager.isOpen(session) || !session.isAuthenticated()) {
                 return "Error: No active session";
             }
+            Customer currentCustomer = session.getCustomer();
 
-            if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+            if (amount == null || !amount.isPositive()) {
                 return "Error: Invalid amount";
             }
 
-            if (currentSession.getBalance().compareTo(amount) < 0) {
+            Optional<Money> debited = lockManager.withLock(currentCustomer.getId(),
+                    () -> customerService.debit(currentCustomer.getId(), amount));
+            if (debited.isEmpty()) {
                 return "Error: Insufficient funds";
             }
 
-            BigDecimal newBalance = currentSession.getBalance().subtract(amount);
-            currentSession.setBalance(newBalance);
-            customerService.updateBalance(currentSession.getId(), newBalance);
+            Money newBalance = debited.get();
+            currentCustomer.setBalance(newBalance);
 
-            return String.format("Withdrawal successful!\nNew balance: $%.2f", newBalance);
+            return ResponseBuilder.start().append("Withdrawal successful!\nNew balance: $").append(newBalance).build();
 
+        } catch (AccountLockTimeoutException | InactiveAccountException e) {
+            return "Error: " + e.getMessage();
         } catch (Exception e) {
-            logger.error("Withdrawal failed for customer: {}", currentSession.getName(), e);
+            logger.error("Withdrawal failed for session: {}", session, e);
             return "Error: " + e.getMessage();
         }
     }
 
     @Override
-    public String transfer(BigInteger targetAccount, BigDecimal amount) {
+    public String transfer(Session session, BigInteger targetAccount, Money amount) {
         try {
-            if (currentSession == null) {
+            if (!sessionManager.isOpen(session) || !session.isAuthenticated()) {
                 return "Error: No active session";
             }
+            Customer currentCustomer = session.getCustomer();
 
-            if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+            if (amount == null || !amount.isPositive()) {
                 return "Error: Invalid amount";
             }
 
@@ -127,37 +193,148 @@ public class ATMServiceImpl implements ATMService {
                 return "Error: Target account not found";
             }
 
-            if (currentSession.getBalance().compareTo(amount) < 0) {
+            Customer recipient = targetCustomer.get();
+            if (recipient.getId().equals(currentCustomer.getId())) {
+                return "Error: Cannot transfer to your own account";
+            }
+
+            // Both legs are applied in one database transaction while holding both account locks.
+            // Waiting for the ledger row and paying down what the sender owes the recipient come
+            // after, outside the locks, since the ledger writer may be busy with a rollup rebuild
+            // and debt repayment may wait for a netting run to finish
+            Optional<PendingTransfer> transferred = lockManager.withLocks(currentCustomer.getId(), recipient.getId(),
+                    () -> customerService.transfer(currentCustomer.getId(), recipient.getId(), amount));
+            if (transferred.isEmpty()) {
                 return "Error: Insufficient funds";
             }
+            customerService.awaitRecorded(transferred.get());
+            Money repaid = repayDebts(currentCustomer.getId(), recipient.getId(), amount);
 
-            Customer recipient = targetCustomer.get();
+            Money senderNewBalance = transferred.get().getSenderBalance();
+            currentCustomer.setBalance(senderNewBalance);
+
+            ResponseBuilder response = ResponseBuilder.start().append("Transfer successful!\nNew balance: $").append(senderNewBalance);
+            if (repaid.isPositive()) {
+                response.append("\nDebt repaid: $").append(repaid);
+            }
+            return response.build();
+
+        } catch (AccountLockTimeoutException | InactiveAccountException e) {
+            return "Error: " + e.getMessage();
+        } catch (Exception e) {
+            logger.error("Transfer failed for session: {}", session, e);
+            return "Error: " + e.getMessage();
+        }
+    }
+
+    // The money has moved by now, so a failure here must not fail the transfer; the debt is still
+    // there to be paid by the next one
+    private Money repayDebts(UUID senderId, UUID recipientId, Money amount) {
+        try {
+            return debtService.applyTransfer(senderId, recipientId, amount);
+        } catch (Exception e) {
+            logger.error("Transfer from {} to {} could not be applied to debts", senderId, recipientId, e);
+            return Money.ZERO;
+        }
+    }
+
+    @Override
+    public String statement(Session session, int months) {
+        try {
+            if (!sessionManager.isOpen(session) || !session.isAuthenticated()) {
+                return "Error: No active session";
+            }
+            if (months <= 0) {
+                return "Error: Invalid number of months";
+            }
+
+            YearMonth to = YearMonth.now();
+            List<StatementLine> lines = statementService.getMonthlyStatement(session.getCustomer().getId(),
+                    to.minusMonths(months - 1L), to);
+            if (lines.isEmpty()) {
+                return "No transactions in the last " + months + " month(s)";
+            }
 
-            // Update sender's balance
-            BigDecimal senderNewBalance = currentSession.getBalance().subtract(amount);
-            currentSession.setBalance(senderNewBalance);
-            customerService.updateBalance(currentSession.getId(), senderNewBalance);
+            ResponseBuilder statement = ResponseBuilder.start().append("Month     Type      Count       Amount");
+            for (StatementLine line : lines) {
+                statement.newLine()
+                        .append(line.getPeriod().getYear()).append('-').appendTwoDigits(line.getPeriod().getMonthValue())
+                        .append("   ")
+                        .appendLeft(line.getTransactionType().name(), 9).append(' ')
+                        .appendRight(line.getTransactionCount(), 5).append(' ')
+                        .appendRight(line.getTotalAmount(), 12);
+            }
+            return statement.build();
+
+        } catch (Exception e) {
+            logger.error("Statement failed for session: {}", session, e);
+            return "Error: " + e.getMessage();
+        }
+    }
+
+    @Override
+    public String rebuildStatements() {
+        try {
+            statementService.rebuildRollups();
+            return "Statement rollups rebuilt";
+        } catch (Exception e) {
+            logger.error("Statement rollup rebuild failed", e);
+            return "Error: " + e.getMessage();
+        }
+    }
 
-            // Update recipient's balance
-            BigDecimal recipientNewBalance = recipient.getBalance().add(amount);
-            recipient.setBalance(recipientNewBalance);
-            customerService.updateBalance(recipient.getId(), recipientNewBalance);
+    @Override
+    public String netDebts() {
+        try {
+            NettingResult result = debtService.netDebts();
+            return ResponseBuilder.start()
+                    .append("Netted ").append(result.getDebtsBefore()).append(" debts ($").append(result.getAmountBefore())
+                    .append(") into ").append(result.getDebtsAfter()).append(" ($").append(result.getAmountAfter())
+                    .append(") in ").append(result.getElapsedMillis()).append(" ms")
+                    .build();
+        } catch (Exception e) {
+            logger.error("Debt netting failed", e);
+            return "Error: " + e.getMessage();
+        }
+    }
 
-            return String.format("Transfer successful!\nNew balance: $%.2f", senderNewBalance);
+    @Override
+    public String archiveHistory() {
+        try {
+            long archived = statementService.archiveHistory();
+            return "Archived " + archived + " transactions";
+        } catch (Exception e) {
+            logger.error("Transaction archival failed", e);
+            return "Error: " + e.getMessage();
+        }
+    }
 
+    @Override
+    public String importCustomers(String csvPath, String credentialsPath) {
+        try {
+            ImportResult result = customerImportService.importCustomers(Paths.get(csvPath), Paths.get(credentialsPath));
+            ResponseBuilder response = ResponseBuilder.start()
+                    .append("Imported ").append(result.getImported()).append(" customers in ")
+                    .append(result.getElapsedMillis()).append(" ms, credentials written to ").append(credentialsPath);
+            if (result.getRejected() > 0) {
+                response.newLine().append(result.getRejected()).append(" rows rejected, see ").append(credentialsPath)
+                        .append(".rejected");
+            }
+            return response.build();
         } catch (Exception e) {
-            logger.error("Transfer failed for customer: {}", currentSession.getName(), e);
+            logger.error("Customer import from {} failed", csvPath, e);
             return "Error: " + e.getMessage();
         }
     }
 
-    public String logout() {
+    @Override
+    public String logout(Session session) {
         try {
-            if (currentSession == null) {
+            if (!sessionManager.isOpen(session) || !session.isAuthenticated()) {
                 return "Error: No active session";
             }
 
-            currentSession = null;
+            sessionManager.logout(session);
             return "Logout successful!";
 
         } catch (Exception e) {
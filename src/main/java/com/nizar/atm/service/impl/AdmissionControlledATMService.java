@@ -0,0 +1,113 @@
+package com.nizar.atm.service.impl;
+
+import com.nizar.atm.model.Money;
+import com.nizar.atm.service.ATMService;
+import com.nizar.atm.service.admission.AdmissionController;
+import com.nizar.atm.service.admission.AdmissionController.Operation;
+import com.nizar.atm.service.session.Session;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Passes calls to an {@link ATMService} through an {@link AdmissionController}, answering
+ * {@value #BUSY} to those it rejects. The response starts with {@code Busy} rather than
+ * {@code Error} because nothing was attempted and the same call may succeed a moment later.
+ *
+ * <p>Logouts and sessions only touch memory and always go straight through, as do the
+ * maintenance commands, which run on their own rather than under customer load.
+ */
+public class AdmissionControlledATMService implements ATMService {
+    public static final String BUSY = "Busy: Too many requests, please retry";
+
+    private final ATMService delegate;
+    private final AdmissionController admission;
+
+    public AdmissionControlledATMService(ATMService delegate, AdmissionController admission) {
+        this.delegate = delegate;
+        this.admission = admission;
+    }
+
+    private String admit(Operation operation, Supplier<String> call) {
+        long admittedAt = admission.acquire(operation);
+        if (admittedAt < 0) {
+            return BUSY;
+        }
+        try {
+            return call.get();
+        } finally {
+            admission.release(admittedAt);
+        }
+    }
+
+    @Override
+    public Session openSession() {
+        return delegate.openSession();
+    }
+
+    @Override
+    public String register(String name, Money initialBalance) {
+        return admit(Operation.REGISTER, () -> delegate.register(name, initialBalance));
+    }
+
+    @Override
+    public String login(Session session, String name, String pin) {
+        return admit(Operation.LOGIN, () -> delegate.login(session, name, pin));
+    }
+
+    @Override
+    public String withdraw(Session session, Money amount) {
+        return admit(Operation.WITHDRAW, () -> delegate.withdraw(session, amount));
+    }
+
+    @Override
+    public String transfer(Session session, BigInteger targetAccount, Money amount) {
+        return admit(Operation.TRANSFER, () -> delegate.transfer(session, targetAccount, amount));
+    }
+
+    @Override
+    public String statement(Session session, int months) {
+        return admit(Operation.STATEMENT, () -> delegate.statement(session, months));
+    }
+
+    @Override
+    public String rebuildStatements() {
+        return delegate.rebuildStatements();
+    }
+
+    @Override
+    public String archiveHistory() {
+        return delegate.archiveHistory();
+    }
+
+    @Override
+    public String netDebts() {
+        return delegate.netDebts();
+    }
+
+    @Override
+    public String importCustomers(String csvPath, String credentialsPath) {
+        return delegate.importCustomers(csvPath, credentialsPath);
+    }
+
+    @Override
+    public String logout(Session session) {
+        return delegate.logout(session);
+    }
+
+    @Override
+    public void closeSession(Session session) {
+        delegate.closeSession(session);
+    }
+
+    @Override
+    public int closeIdleSessions(Duration maxIdle) {
+        return delegate.closeIdleSessions(maxIdle);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
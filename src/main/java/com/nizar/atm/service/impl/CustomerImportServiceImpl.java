@@ -0,0 +1,266 @@
+package com.nizar.atm.service.impl;
+
+import com.nizar.atm.config.DatabaseManager;
+import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.CustomerStatus;
+import com.nizar.atm.model.ImportResult;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.repository.CustomerRepository;
+import com.nizar.atm.repository.impl.AccountNumberSequenceRepositoryImpl;
+import com.nizar.atm.repository.impl.CustomerRepositoryImpl;
+import com.nizar.atm.repository.impl.ShardedCustomerRepository;
+import com.nizar.atm.service.CustomerImportService;
+import com.nizar.atm.service.account.AccountNumberGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+
+/**
+ * Registers customers in bulk from a CSV file of {@code name,initial balance} lines.
+ *
+ * <p>The file is read in batches of {@code db.import.batch_size} rows. While one batch is being
+ * inserted, the next one gets its account numbers and PINs on the common fork-join pool, so
+ * credential generation runs on every core and overlaps with the database work. Each batch costs
+ * one appender load and one commit (see {@link CustomerRepository#insertAll(List)}), and its
+ * credentials are written out only once it has been committed.
+ *
+ * <p>Rows with a malformed balance, a name used earlier in the file or a name that is already
+ * registered are skipped and listed in {@code <credentials>.rejected}.
+ */
+public class CustomerImportServiceImpl implements CustomerImportService {
+    private static final Logger logger = LoggerFactory.getLogger(CustomerImportServiceImpl.class);
+
+    private static final int PIN_LENGTH = 6;
+    // DECIMAL(15,2) balance column
+    private static final Money MAX_BALANCE = Money.ofCents(999_999_999_999_999L);
+    // A shared SecureRandom serializes its callers; one per thread keeps PIN generation parallel
+    private static final ThreadLocal<SecureRandom> PIN_RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+
+    private final CustomerRepository customerRepository;
+    private final AccountNumberGenerator accountNumberGenerator;
+    private final int batchSize;
+
+    public CustomerImportServiceImpl() {
+        DatabaseManager dbManager = DatabaseManager.getInstance();
+        int shardCount = dbManager.getIntProperty("db.shards.count", 1);
+        this.customerRepository = shardCount > 1
+                ? new ShardedCustomerRepository(shardCount)
+                : new CustomerRepositoryImpl();
+        this.accountNumberGenerator = new AccountNumberGenerator(new AccountNumberSequenceRepositoryImpl(),
+                dbManager.getIntProperty("db.account_numbers.block_size", 1000));
+        this.batchSize = dbManager.getIntProperty("db.import.batch_size", 100000);
+    }
+
+    @Override
+    public ImportResult importCustomers(Path csv, Path credentials) throws Exception {
+        if (csv == null || credentials == null) {
+            throw new IllegalArgumentException("Input and credentials files are required");
+        }
+        long start = System.nanoTime();
+        Path rejects = credentials.resolveSibling(credentials.getFileName() + ".rejected");
+
+        try (BufferedReader in = Files.newBufferedReader(csv, StandardCharsets.UTF_8);
+             BufferedWriter out = Files.newBufferedWriter(credentials, StandardCharsets.UTF_8);
+             BufferedWriter rejected = Files.newBufferedWriter(rejects, StandardCharsets.UTF_8)) {
+            out.write("name,account_number,pin");
+            out.newLine();
+            rejected.write("line,reason");
+            rejected.newLine();
+
+            CsvBatches batches = new CsvBatches(in, rejected);
+            long imported = 0;
+            CompletableFuture<Batch> inFlight = null;
+            while (true) {
+                Batch batch = batches.next(batchSize);
+                CompletableFuture<Batch> prepared = batch == null ? null
+                        : CompletableFuture.supplyAsync(() -> issueCredentials(batch));
+                if (inFlight != null) {
+                    imported += insert(join(inFlight), out, batches);
+                    logger.info("Imported {} customers", imported);
+                }
+                if (prepared == null) {
+                    break;
+                }
+                inFlight = prepared;
+            }
+
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            logger.info("Imported {} customers from {} in {} ms, rejected {}", imported, csv, elapsedMillis,
+                    batches.rejected);
+            return new ImportResult(imported, batches.rejected, elapsedMillis);
+        } catch (IOException e) {
+            logger.error("Error importing customers from {}", csv, e);
+            throw new Exception("Failed to import customers from " + csv, e);
+        }
+    }
+
+    private Batch issueCredentials(Batch batch) {
+        BigInteger[] accountNumbers;
+        try {
+            accountNumbers = accountNumberGenerator.next(batch.customers.size());
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+        IntStream.range(0, accountNumbers.length).parallel().forEach(i -> {
+            Customer customer = batch.customers.get(i);
+            customer.setAccountNumber(accountNumbers[i]);
+            customer.setPinCode(generatePinCode());
+        });
+        return batch;
+    }
+
+    private long insert(Batch batch, BufferedWriter out, CsvBatches batches) throws Exception {
+        List<Customer> skipped = customerRepository.insertAll(batch.customers);
+        Set<UUID> skippedIds = new HashSet<>();
+        for (Customer customer : skipped) {
+            skippedIds.add(customer.getId());
+        }
+
+        for (int i = 0; i < batch.customers.size(); i++) {
+            Customer customer = batch.customers.get(i);
+            if (skippedIds.contains(customer.getId())) {
+                batches.reject(batch.lines[i], "name already registered");
+            } else {
+                out.write(csvField(customer.getName()));
+                out.write(',');
+                out.write(customer.getAccountNumber().toString());
+                out.write(',');
+                out.write(customer.getPinCode());
+                out.newLine();
+            }
+        }
+        // Keep the file in step with what has been committed in case a later batch fails
+        out.flush();
+        return batch.customers.size() - skipped.size();
+    }
+
+    private static String generatePinCode() {
+        SecureRandom random = PIN_RANDOM.get();
+        char[] pin = new char[PIN_LENGTH];
+        for (int i = 0; i < PIN_LENGTH; i++) {
+            pin[i] = (char) ('0' + random.nextInt(10));
+        }
+        return new String(pin);
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static final class Batch {
+        private final List<Customer> customers;
+        // Source line of each customer, for the rejects file
+        private final long[] lines;
+
+        private Batch(int size) {
+            this.customers = new ArrayList<>(size);
+            this.lines = new long[size];
+        }
+    }
+
+    /**
+     * Turns the input into batches of valid customers, writing rejected lines as it goes.
+     */
+    private static final class CsvBatches {
+        private final BufferedReader in;
+        private final BufferedWriter rejects;
+        private final Set<String> names = new HashSet<>();
+        private long line;
+        private long rejected;
+
+        private CsvBatches(BufferedReader in, BufferedWriter rejects) {
+            this.in = in;
+            this.rejects = rejects;
+        }
+
+        /**
+         * Returns the next batch of up to {@code size} customers, or null at the end of the input.
+         */
+        private Batch next(int size) throws IOException {
+            Batch batch = new Batch(size);
+            String text;
+            while (batch.customers.size() < size && (text = in.readLine()) != null) {
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                // Split on the last comma so that names may contain commas
+                int comma = text.lastIndexOf(',');
+                if (comma < 0) {
+                    reject(line, "expected name,balance");
+                    continue;
+                }
+                String name = unquote(text.substring(0, comma).trim());
+                Money balance;
+                try {
+                    balance = Money.parse(text.substring(comma + 1).trim());
+                } catch (NumberFormatException e) {
+                    // A first line without a numeric balance is a header
+                    if (line > 1) {
+                        reject(line, "invalid balance");
+                    }
+                    continue;
+                }
+                if (name.isEmpty()) {
+                    reject(line, "empty name");
+                } else if (balance.isNegative() || balance.isGreaterThan(MAX_BALANCE)) {
+                    reject(line, "balance must be non-negative and at most " + MAX_BALANCE);
+                } else if (!names.add(name)) {
+                    reject(line, "duplicate name");
+                } else {
+                    batch.lines[batch.customers.size()] = line;
+                    batch.customers.add(Customer.builder()
+                            .id(UUID.randomUUID())
+                            .name(name)
+                            .balance(balance)
+                            .status(CustomerStatus.ACTIVE)
+                            .build());
+                }
+            }
+            return batch.customers.isEmpty() ? null : batch;
+        }
+
+        private void reject(long lineNumber, String reason) throws IOException {
+            rejected++;
+            rejects.write(lineNumber + "," + reason);
+            rejects.newLine();
+        }
+
+        private static String unquote(String value) {
+            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                return value.substring(1, value.length() - 1).replace("\"\"", "\"").trim();
+            }
+            return value;
+        }
+    }
+}
@@ -1,27 +1,85 @@
 package com.nizar.atm.service.impl;
 
+import com.nizar.atm.config.DatabaseManager;
+import com.nizar.atm.metrics.MetricsRegistry;
 import com.nizar.atm.model.Customer;
 import com.nizar.atm.model.CustomerStatus;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.model.PendingTransfer;
+import com.nizar.atm.model.Transaction;
+import com.nizar.atm.model.TransactionStatus;
+import com.nizar.atm.model.TransactionType;
+import com.nizar.atm.repository.CustomerRepository;
+import com.nizar.atm.repository.InactiveAccountException;
+import com.nizar.atm.repository.TransactionRepository;
+import com.nizar.atm.repository.impl.AccountNumberSequenceRepositoryImpl;
+import com.nizar.atm.repository.impl.CachingCustomerRepository;
 import com.nizar.atm.repository.impl.CustomerRepositoryImpl;
+import com.nizar.atm.repository.impl.JournaledCustomerRepository;
+import com.nizar.atm.repository.impl.MeteredCustomerRepository;
+import com.nizar.atm.repository.impl.ShardedCustomerRepository;
+import com.nizar.atm.repository.impl.TransactionRepositoryImpl;
 import com.nizar.atm.service.CustomerService;
+import com.nizar.atm.service.account.AccountNumberGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.time.LocalDateTime;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public class CustomerServiceImpl implements CustomerService {
     private static final Logger logger = LoggerFactory.getLogger(CustomerServiceImpl.class);
-    private final CustomerRepositoryImpl customerRepository;
+    private final CachingCustomerRepository customerRepository;
+    private final TransactionRepository transactionRepository;
+    private final AccountNumberGenerator accountNumberGenerator;
     private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+    private static final String INSUFFICIENT_FUNDS = "Insufficient funds";
 
     public CustomerServiceImpl() {
-        this.customerRepository = new CustomerRepositoryImpl();
+        this(new TransactionRepositoryImpl());
+    }
+
+    public CustomerServiceImpl(TransactionRepository transactionRepository) {
+        DatabaseManager dbManager = DatabaseManager.getInstance();
+        int shardCount = dbManager.getIntProperty("db.shards.count", 1);
+        boolean journaled = dbManager.getProperty("db.journal.enabled", "false").equals("true");
+        if (shardCount > 1 && journaled) {
+            throw new IllegalStateException("Journaled balances are not supported with more than one shard");
+        }
+        if (shardCount > 1 && JournaledCustomerRepository.hasJournal(dbManager)) {
+            // The journal holds balances of the main database's customers table, which sharding
+            // would leave behind as a directory
+            throw new IllegalStateException("A balance journal is left from a journaled run; start once without "
+                    + "sharding to apply it first");
+        }
+        CustomerRepository repository = shardCount > 1
+                ? new ShardedCustomerRepository(shardCount)
+                : new CustomerRepositoryImpl();
+        if (dbManager.getProperty("db.metrics.enabled", "true").equals("true")) {
+            repository = new MeteredCustomerRepository(repository, MetricsRegistry.getInstance());
+        }
+        if (journaled) {
+            repository = new JournaledCustomerRepository(repository);
+        } else if (JournaledCustomerRepository.hasJournal(dbManager)) {
+            // Applies whatever balances a journaled run left behind before going on without it
+            JournaledCustomerRepository.drain(dbManager);
+        }
+        this.customerRepository = new CachingCustomerRepository(repository,
+                dbManager.getIntProperty("db.customer_cache.max_size", 100000),
+                dbManager.getLongProperty("db.customer_cache.ttl_ms", 60000));
+        this.transactionRepository = transactionRepository;
+        this.accountNumberGenerator = new AccountNumberGenerator(new AccountNumberSequenceRepositoryImpl(),
+                dbManager.getIntProperty("db.account_numbers.block_size", 1000));
+    }
+
+    public CachingCustomerRepository.CacheStats getCacheStats() {
+        return customerRepository.getStats();
     }
 
     @Override
@@ -67,29 +125,7 @@ public class CustomerServiceImpl implements CustomerService {
         }
     }
 
-    // Helper methods for generating account number and PIN
-    private BigInteger generateUniqueAccountNumber() throws Exception {
-        int maxAttempts = 10; // Prevent infinite loop
-        int attempts = 0;
-
-        while (attempts < maxAttempts) {
-            // Generate 16-digit account number starting with 8
-            StringBuilder accountNum = new StringBuilder("8");
-            for (int i = 0; i < 15; i++) {
-                accountNum.append(SECURE_RANDOM.nextInt(10));
-            }
-
-            BigInteger generatedNumber = new BigInteger(accountNum.toString());
-
-            // Check if account number is unique
-            if (customerRepository.findByAccountNumber(generatedNumber).isEmpty()) {
-                return generatedNumber;
-            }
-            attempts++;
-        }
-        throw new Exception("Failed to generate unique account number after " + maxAttempts + " attempts");
-    }
-
+    // Helper method for generating the PIN
     private String generatePinCode() {
         // Generate 6-digit PIN
         StringBuilder pin = new StringBuilder();
@@ -108,10 +144,10 @@ public class CustomerServiceImpl implements CustomerService {
 
             if (customer.getId() == null) {
                 // This is a new customer, generate account number and PIN
-                customer.setAccountNumber(generateUniqueAccountNumber());
+                customer.setAccountNumber(accountNumberGenerator.next());
                 customer.setPinCode(generatePinCode());
                 customer.setStatus(CustomerStatus.ACTIVE);
-                customer.setCreatedAt(new Date());
+                customer.setCreatedAt(LocalDateTime.now());
                 logger.debug("Generated new account number: {} for customer: {}",
                         customer.getAccountNumber(), customer.getName());
             } else {
@@ -136,7 +172,7 @@ public class CustomerServiceImpl implements CustomerService {
             }
 
             // Always update the updatedAt timestamp
-            customer.setUpdatedAt(new Date());
+            customer.setUpdatedAt(LocalDateTime.now());
 
             // If status is not set, set it to ACTIVE
             if (customer.getStatus() == null) {
@@ -165,13 +201,13 @@ public class CustomerServiceImpl implements CustomerService {
         if (customer.getBalance() == null) {
             throw new IllegalArgumentException("Customer balance cannot be null");
         }
-        if (customer.getBalance().compareTo(BigDecimal.ZERO) < 0) {
+        if (customer.getBalance().isNegative()) {
             throw new IllegalArgumentException("Customer balance cannot be negative");
         }
     }
 
     @Override
-    public void updateBalance(UUID id, BigDecimal newBalance) throws Exception {
+    public void updateBalance(UUID id, Money newBalance) throws Exception {
         if (id == null) {
             logger.warn("Attempted to update balance with null ID");
             throw new IllegalArgumentException("Customer ID cannot be null");
@@ -182,21 +218,14 @@ public class CustomerServiceImpl implements CustomerService {
             throw new IllegalArgumentException("New balance cannot be null");
         }
 
-        if (newBalance.compareTo(BigDecimal.ZERO) < 0) {
+        if (newBalance.isNegative()) {
             logger.warn("Attempted to update with negative balance for customer: {}", id);
             throw new IllegalArgumentException("New balance cannot be negative");
         }
 
         try {
             logger.debug("Updating balance for customer: {} to {}", id, newBalance);
-
-            // Verify customer exists before updating
-            Optional<Customer> customer = customerRepository.findById(id);
-            if (customer.isEmpty()) {
-                logger.warn("Attempted to update balance for non-existent customer: {}", id);
-                throw new Exception("Customer not found with ID: " + id);
-            }
-
+            // The update itself fails when no row matches, so there is no need to look the customer up first
             customerRepository.updateBalance(id, newBalance);
             logger.debug("Successfully updated balance for customer: {}", id);
 
@@ -206,6 +235,138 @@ public class CustomerServiceImpl implements CustomerService {
         }
     }
 
+    @Override
+    public void recordLogin(UUID id) throws Exception {
+        if (id == null) {
+            logger.warn("Attempted to record login with null ID");
+            throw new IllegalArgumentException("Customer ID cannot be null");
+        }
+
+        try {
+            customerRepository.updateLastLogin(id, new Date());
+        } catch (Exception e) {
+            logger.error("Error recording login for customer: {}", id, e);
+            throw new Exception("Failed to record login for customer: " + id, e);
+        }
+    }
+
+    @Override
+    public Optional<Money> debit(UUID id, Money amount) throws Exception {
+        validateAmount(id, amount);
+
+        try {
+            logger.debug("Debiting {} from customer: {}", amount, id);
+            Optional<Money> newBalance = customerRepository.debit(id, amount);
+            record(newBalance.isPresent()
+                    ? succeeded(TransactionType.WITHDRAW, id, null, amount, newBalance.get())
+                    : failed(TransactionType.WITHDRAW, id, null, amount, INSUFFICIENT_FUNDS));
+            return newBalance;
+        } catch (InactiveAccountException e) {
+            record(failed(TransactionType.WITHDRAW, id, null, amount, e.getMessage()));
+            throw e;
+        } catch (Exception e) {
+            logger.error("Error debiting customer: {}", id, e);
+            throw new Exception("Failed to debit customer: " + id, e);
+        }
+    }
+
+    @Override
+    public Optional<PendingTransfer> transfer(UUID senderId, UUID recipientId, Money amount) throws Exception {
+        validateAmount(senderId, amount);
+        if (recipientId == null) {
+            logger.warn("Attempted to transfer to null recipient ID");
+            throw new IllegalArgumentException("Recipient ID cannot be null");
+        }
+        if (senderId.equals(recipientId)) {
+            throw new IllegalArgumentException("Cannot transfer to the same account");
+        }
+
+        Optional<Money> senderBalance;
+        try {
+            logger.debug("Transferring {} from customer: {} to customer: {}", amount, senderId, recipientId);
+            senderBalance = customerRepository.transfer(senderId, recipientId, amount);
+        } catch (InactiveAccountException e) {
+            record(failed(TransactionType.TRANSFER, senderId, recipientId, amount, e.getMessage()));
+            throw e;
+        } catch (Exception e) {
+            logger.error("Error transferring from customer: {} to customer: {}", senderId, recipientId, e);
+            throw new Exception("Failed to transfer from customer: " + senderId, e);
+        }
+        if (senderBalance.isEmpty()) {
+            record(failed(TransactionType.TRANSFER, senderId, recipientId, amount, INSUFFICIENT_FUNDS));
+            return Optional.empty();
+        }
+
+        // A successful transfer is only acknowledged once its ledger row is stored (see awaitRecorded)
+        Transaction transaction = succeeded(TransactionType.TRANSFER, senderId, recipientId, amount,
+                senderBalance.get());
+        CompletableFuture<Void> recorded;
+        try {
+            recorded = transactionRepository.saveAndFlushAsync(transaction);
+        } catch (RuntimeException e) {
+            recorded = CompletableFuture.failedFuture(e);
+        }
+        return Optional.of(new PendingTransfer(transaction, recorded));
+    }
+
+    @Override
+    public void awaitRecorded(PendingTransfer transfer) throws Exception {
+        try {
+            transactionRepository.awaitStored(transfer.getRecorded());
+        } catch (RuntimeException e) {
+            Transaction transaction = transfer.getTransaction();
+            logger.error("Transfer of {} from customer: {} to customer: {} is committed but not in the ledger",
+                    transaction.getAmount(), transaction.getCustomerId(), transaction.getTargetCustomerId(), e);
+            throw new Exception("Transfer was made but could not be recorded, please report it to the bank", e);
+        }
+    }
+
+    private static Transaction succeeded(TransactionType type, UUID customerId, UUID targetCustomerId,
+                                         Money amount, Money balanceAfter) {
+        return Transaction.builder()
+                .transactionType(type)
+                .customerId(customerId)
+                .targetCustomerId(targetCustomerId)
+                .amount(amount)
+                .status(TransactionStatus.SUCCESS)
+                .balanceBefore(balanceAfter.plus(amount))
+                .balanceAfter(balanceAfter)
+                .build();
+    }
+
+    private static Transaction failed(TransactionType type, UUID customerId, UUID targetCustomerId,
+                                      Money amount, String reason) {
+        return Transaction.builder()
+                .transactionType(type)
+                .customerId(customerId)
+                .targetCustomerId(targetCustomerId)
+                .amount(amount)
+                .status(TransactionStatus.FAILED)
+                .errorMessage(reason)
+                .build();
+    }
+
+    // Buffered; the balance change, if any, is already committed, so a ledger failure is only logged
+    private void record(Transaction transaction) {
+        try {
+            transactionRepository.save(transaction);
+        } catch (RuntimeException e) {
+            logger.error("Failed to record {} transaction for customer: {}", transaction.getTransactionType(),
+                    transaction.getCustomerId(), e);
+        }
+    }
+
+    private void validateAmount(UUID id, Money amount) {
+        if (id == null) {
+            logger.warn("Attempted to change balance with null ID");
+            throw new IllegalArgumentException("Customer ID cannot be null");
+        }
+        if (amount == null || !amount.isPositive()) {
+            logger.warn("Attempted to change balance by non-positive amount for customer: {}", id);
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+    }
+
     @Override
     public List<Customer> findAll() throws Exception {
         try {
@@ -220,6 +381,12 @@ public class CustomerServiceImpl implements CustomerService {
         }
     }
 
+    @Override
+    public void close() {
+        customerRepository.close();
+        transactionRepository.close();
+    }
+
     @Override
     public Optional<Customer> findByAccountNumber(BigInteger accountNumber) throws Exception {
         // Validate the account number format before querying
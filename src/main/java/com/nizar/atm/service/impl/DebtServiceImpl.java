@@ -0,0 +1,149 @@
+package com.nizar.atm.service.impl;
+
+import com.nizar.atm.config.DatabaseManager;
+import com.nizar.atm.model.Debt;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.model.NettingResult;
+import com.nizar.atm.repository.DebtRepository;
+import com.nizar.atm.repository.impl.DebtRepositoryImpl;
+import com.nizar.atm.service.DebtService;
+import com.nizar.atm.service.lock.AccountLockManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Settles debts as customers pay them and nets them across all customers every
+ * {@code db.debts.netting_interval_s} seconds (never when 0).
+ *
+ * <p>Netting replaces every active debt, so payments wait while it runs: they share a read lock,
+ * netting takes the write lock. Payments of one debtor are applied one at a time, in the order they
+ * got their debtor's lock. A payment may wait for a whole netting run, so callers must not hold
+ * account locks while applying one.
+ */
+public class DebtServiceImpl implements DebtService {
+    private static final Logger logger = LoggerFactory.getLogger(DebtServiceImpl.class);
+    private final DebtRepository debtRepository;
+    private final ReadWriteLock nettingLock = new ReentrantReadWriteLock();
+    private final AccountLockManager debtorLocks = new AccountLockManager();
+    private ScheduledExecutorService netting;
+
+    public DebtServiceImpl() {
+        this(new DebtRepositoryImpl());
+        long interval = DatabaseManager.getInstance().getLongProperty("db.debts.netting_interval_s", 3600);
+        if (interval > 0) {
+            netting = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "debt-netting");
+                thread.setDaemon(true);
+                return thread;
+            });
+            netting.scheduleWithFixedDelay(this::netQuietly, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    public DebtServiceImpl(DebtRepository debtRepository) {
+        this.debtRepository = debtRepository;
+    }
+
+    @Override
+    public Debt recordDebt(UUID debtorId, UUID creditorId, Money amount) throws Exception {
+        if (debtorId == null || creditorId == null) {
+            throw new IllegalArgumentException("Debtor and creditor are required");
+        }
+        if (debtorId.equals(creditorId)) {
+            throw new IllegalArgumentException("A customer cannot owe themselves");
+        }
+        if (amount == null || !amount.isPositive()) {
+            throw new IllegalArgumentException("Debt amount must be positive");
+        }
+
+        nettingLock.readLock().lock();
+        try {
+            Debt debt = new Debt();
+            debt.setDebtorId(debtorId);
+            debt.setCreditorId(creditorId);
+            debt.setAmount(amount);
+            return debtRepository.save(debt);
+        } catch (RuntimeException e) {
+            logger.error("Error recording debt of {} to {}", debtorId, creditorId, e);
+            throw new Exception("Failed to record debt of " + debtorId, e);
+        } finally {
+            nettingLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Debt> getActiveDebts(UUID debtorId) throws Exception {
+        if (debtorId == null) {
+            throw new IllegalArgumentException("Debtor is required");
+        }
+        try {
+            return debtRepository.findActiveDebtsByDebtorId(debtorId);
+        } catch (RuntimeException e) {
+            logger.error("Error reading debts of {}", debtorId, e);
+            throw new Exception("Failed to read debts of " + debtorId, e);
+        }
+    }
+
+    @Override
+    public Money applyTransfer(UUID senderId, UUID recipientId, Money amount) throws Exception {
+        nettingLock.readLock().lock();
+        try {
+            Money applied = debtorLocks.withLock(senderId,
+                    () -> debtRepository.applyPayment(senderId, recipientId, amount));
+            if (applied.isPositive()) {
+                logger.debug("Applied {} of a transfer from {} to their debts to {}", applied, senderId, recipientId);
+            }
+            return applied;
+        } catch (RuntimeException e) {
+            logger.error("Error applying transfer from {} to {} to debts", senderId, recipientId, e);
+            throw new Exception("Failed to apply transfer to debts of " + senderId, e);
+        } finally {
+            nettingLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public NettingResult netDebts() throws Exception {
+        nettingLock.writeLock().lock();
+        try {
+            logger.info("Netting debts");
+            return debtRepository.netAll();
+        } catch (RuntimeException e) {
+            logger.error("Error netting debts", e);
+            throw new Exception("Failed to net debts", e);
+        } finally {
+            nettingLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (netting == null) {
+            return;
+        }
+        netting.shutdown();
+        try {
+            if (!netting.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Debt netting did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void netQuietly() {
+        try {
+            netDebts();
+        } catch (Exception e) {
+            // Already logged; the next run starts over from the current debts
+        }
+    }
+}
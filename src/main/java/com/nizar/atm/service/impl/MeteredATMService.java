@@ -0,0 +1,134 @@
+package com.nizar.atm.service.impl;
+
+import com.nizar.atm.metrics.MetricsRegistry;
+import com.nizar.atm.metrics.OperationMetrics;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.service.ATMService;
+import com.nizar.atm.service.session.Session;
+
+import java.math.BigInteger;
+import java.time.Duration;
+
+/**
+ * Records the latency and failures of every call to an {@link ATMService} under the
+ * {@code ATMService} group of {@link MetricsRegistry}. A call fails when its response starts with
+ * {@code Error} or it throws.
+ */
+public class MeteredATMService implements ATMService {
+    private static final String GROUP = "ATMService";
+
+    private final ATMService delegate;
+    private final OperationMetrics openSession;
+    private final OperationMetrics register;
+    private final OperationMetrics login;
+    private final OperationMetrics withdraw;
+    private final OperationMetrics transfer;
+    private final OperationMetrics statement;
+    private final OperationMetrics rebuildStatements;
+    private final OperationMetrics archiveHistory;
+    private final OperationMetrics netDebts;
+    private final OperationMetrics importCustomers;
+    private final OperationMetrics logout;
+    private final OperationMetrics closeSession;
+
+    public MeteredATMService(ATMService delegate, MetricsRegistry metrics) {
+        this.delegate = delegate;
+        this.openSession = metrics.operation(GROUP, "openSession");
+        this.register = metrics.operation(GROUP, "register");
+        this.login = metrics.operation(GROUP, "login");
+        this.withdraw = metrics.operation(GROUP, "withdraw");
+        this.transfer = metrics.operation(GROUP, "transfer");
+        this.statement = metrics.operation(GROUP, "statement");
+        this.rebuildStatements = metrics.operation(GROUP, "rebuildStatements");
+        this.archiveHistory = metrics.operation(GROUP, "archiveHistory");
+        this.netDebts = metrics.operation(GROUP, "netDebts");
+        this.importCustomers = metrics.operation(GROUP, "importCustomers");
+        this.logout = metrics.operation(GROUP, "logout");
+        this.closeSession = metrics.operation(GROUP, "closeSession");
+    }
+
+    @Override
+    public Session openSession() {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Session session = delegate.openSession();
+            failed = false;
+            return session;
+        } finally {
+            openSession.record(start, failed);
+        }
+    }
+
+    @Override
+    public String register(String name, Money initialBalance) {
+        return register.timeResponse(() -> delegate.register(name, initialBalance));
+    }
+
+    @Override
+    public String login(Session session, String name, String pin) {
+        return login.timeResponse(() -> delegate.login(session, name, pin));
+    }
+
+    @Override
+    public String withdraw(Session session, Money amount) {
+        return withdraw.timeResponse(() -> delegate.withdraw(session, amount));
+    }
+
+    @Override
+    public String transfer(Session session, BigInteger targetAccount, Money amount) {
+        return transfer.timeResponse(() -> delegate.transfer(session, targetAccount, amount));
+    }
+
+    @Override
+    public String statement(Session session, int months) {
+        return statement.timeResponse(() -> delegate.statement(session, months));
+    }
+
+    @Override
+    public String rebuildStatements() {
+        return rebuildStatements.timeResponse(delegate::rebuildStatements);
+    }
+
+    @Override
+    public String archiveHistory() {
+        return archiveHistory.timeResponse(delegate::archiveHistory);
+    }
+
+    @Override
+    public String netDebts() {
+        return netDebts.timeResponse(delegate::netDebts);
+    }
+
+    @Override
+    public String importCustomers(String csvPath, String credentialsPath) {
+        return importCustomers.timeResponse(() -> delegate.importCustomers(csvPath, credentialsPath));
+    }
+
+    @Override
+    public String logout(Session session) {
+        return logout.timeResponse(() -> delegate.logout(session));
+    }
+
+    @Override
+    public void closeSession(Session session) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate.closeSession(session);
+            failed = false;
+        } finally {
+            closeSession.record(start, failed);
+        }
+    }
+
+    @Override
+    public int closeIdleSessions(Duration maxIdle) {
+        return delegate.closeIdleSessions(maxIdle);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
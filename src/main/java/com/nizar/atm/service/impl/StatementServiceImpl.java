@@ -0,0 +1,154 @@
+package com.nizar.atm.service.impl;
+
+import com.nizar.atm.model.StatementLine;
+import com.nizar.atm.model.Transaction;
+import com.nizar.atm.model.TransactionCursor;
+import com.nizar.atm.model.TransactionPage;
+import com.nizar.atm.repository.StatementRepository;
+import com.nizar.atm.repository.TransactionRepository;
+import com.nizar.atm.repository.impl.StatementRepositoryImpl;
+import com.nizar.atm.service.StatementService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public class StatementServiceImpl implements StatementService {
+    private static final Logger logger = LoggerFactory.getLogger(StatementServiceImpl.class);
+    private final TransactionRepository transactionRepository;
+    private final StatementRepository statementRepository;
+
+    /**
+     * {@code transactionRepository} must be the ledger the rest of the application records
+     * transactions in, since it maintains the rollups this service reads.
+     */
+    public StatementServiceImpl(TransactionRepository transactionRepository) {
+        this.transactionRepository = transactionRepository;
+        this.statementRepository = new StatementRepositoryImpl();
+    }
+
+    @Override
+    public List<StatementLine> getMonthlyStatement(UUID customerId, YearMonth from, YearMonth to) throws Exception {
+        validateCustomerId(customerId);
+        if (from == null || to == null || from.isAfter(to)) {
+            throw new IllegalArgumentException("Statement period must start before it ends");
+        }
+
+        try {
+            logger.debug("Reading monthly statement for customer: {} from {} to {}", customerId, from, to);
+            // Rollups are updated when the ledger flushes; include anything still buffered
+            transactionRepository.flush();
+            return statementRepository.findMonthlyStatement(customerId, from, to);
+        } catch (RuntimeException e) {
+            logger.error("Error reading monthly statement for customer: {}", customerId, e);
+            throw new Exception("Failed to read monthly statement for customer: " + customerId, e);
+        }
+    }
+
+    @Override
+    public List<StatementLine> getDailySummary(UUID customerId, int days) throws Exception {
+        validateCustomerId(customerId);
+        if (days <= 0) {
+            throw new IllegalArgumentException("Number of days must be positive");
+        }
+        LocalDate to = LocalDate.now();
+        LocalDate from = to.minusDays(days - 1L);
+
+        try {
+            logger.debug("Reading {}-day summary for customer: {}", days, customerId);
+            transactionRepository.flush();
+            return statementRepository.findDailySummary(customerId, from, to);
+        } catch (RuntimeException e) {
+            logger.error("Error reading daily summary for customer: {}", customerId, e);
+            throw new Exception("Failed to read daily summary for customer: " + customerId, e);
+        }
+    }
+
+    @Override
+    public void rebuildRollups() throws Exception {
+        try {
+            logger.info("Rebuilding statement rollups");
+            transactionRepository.rebuildRollups();
+        } catch (RuntimeException e) {
+            logger.error("Error rebuilding statement rollups", e);
+            throw new Exception("Failed to rebuild statement rollups", e);
+        }
+    }
+
+    @Override
+    public long archiveHistory() throws Exception {
+        try {
+            logger.info("Archiving old transaction history");
+            return transactionRepository.archiveHistory();
+        } catch (RuntimeException e) {
+            logger.error("Error archiving transaction history", e);
+            throw new Exception("Failed to archive transaction history", e);
+        }
+    }
+
+    @Override
+    public TransactionPage getHistory(UUID customerId, TransactionCursor before, int pageSize) throws Exception {
+        validateCustomerId(customerId);
+        validatePageSize(pageSize);
+
+        try {
+            logger.debug("Reading transaction history for customer: {} before {}", customerId, before);
+            return transactionRepository.findPageByCustomerId(customerId, before, pageSize);
+        } catch (RuntimeException e) {
+            logger.error("Error reading transaction history for customer: {}", customerId, e);
+            throw new Exception("Failed to read transaction history for customer: " + customerId, e);
+        }
+    }
+
+    @Override
+    public TransactionPage getTransferHistory(UUID customerId, TransactionCursor before, int pageSize) throws Exception {
+        validateCustomerId(customerId);
+        validatePageSize(pageSize);
+
+        try {
+            logger.debug("Reading transfer history for customer: {} before {}", customerId, before);
+            return transactionRepository.findTransferPage(customerId, before, pageSize);
+        } catch (RuntimeException e) {
+            logger.error("Error reading transfer history for customer: {}", customerId, e);
+            throw new Exception("Failed to read transfer history for customer: " + customerId, e);
+        }
+    }
+
+    /**
+     * Passes every transaction in {@code [from, to)} to {@code consumer} in chronological order
+     * and returns how many there were. Memory use does not depend on the size of the range.
+     */
+    @Override
+    public long exportHistory(UUID customerId, LocalDateTime from, LocalDateTime to,
+                              Consumer<Transaction> consumer) throws Exception {
+        validateCustomerId(customerId);
+        if (from == null || to == null || !from.isBefore(to)) {
+            throw new IllegalArgumentException("Export period must start before it ends");
+        }
+
+        try {
+            logger.debug("Exporting transactions for customer: {} from {} to {}", customerId, from, to);
+            return transactionRepository.streamByCustomerId(customerId, from, to, consumer);
+        } catch (RuntimeException e) {
+            logger.error("Error exporting transactions for customer: {}", customerId, e);
+            throw new Exception("Failed to export transactions for customer: " + customerId, e);
+        }
+    }
+
+    private void validatePageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+    }
+
+    private void validateCustomerId(UUID customerId) {
+        if (customerId == null) {
+            throw new IllegalArgumentException("Customer ID cannot be null");
+        }
+    }
+}
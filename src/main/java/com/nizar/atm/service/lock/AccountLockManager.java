@@ -0,0 +1,202 @@
+package com.nizar.atm.service.lock;
+
+import lombok.Getter;
+import lombok.ToString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes balance changes per account using a fixed array of lock stripes.
+ *
+ * <p>Each customer id hashes onto one stripe, so memory stays constant no matter how many
+ * accounts exist, at the cost of unrelated accounts occasionally sharing a stripe. Operations on
+ * two accounts always lock the lower stripe index first, which rules out lock-order deadlocks
+ * between concurrent transfers in opposite directions. Every acquisition is a timed try-lock, so
+ * a stuck holder turns into an {@link AccountLockTimeoutException} instead of a hung terminal.
+ *
+ * <p>Per-stripe counters record how often a stripe was found held and how long callers waited
+ * for it, which is what to look at when deciding whether the stripe count is large enough.
+ */
+public class AccountLockManager {
+    private static final Logger logger = LoggerFactory.getLogger(AccountLockManager.class);
+
+    public static final int DEFAULT_STRIPES = 1024;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 2000;
+
+    @FunctionalInterface
+    public interface LockedOperation<T> {
+        T run() throws Exception;
+    }
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final long timeoutNanos;
+
+    public AccountLockManager() {
+        this(DEFAULT_STRIPES, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param stripeCount number of stripes, rounded up to a power of two
+     * @param timeoutMillis how long to wait for each stripe before giving up
+     */
+    public AccountLockManager(int stripeCount, long timeoutMillis) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive");
+        }
+        int size = Integer.highestOneBit(stripeCount);
+        if (size < stripeCount) {
+            size <<= 1;
+        }
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.mask = size - 1;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    public <T> T withLock(UUID account, LockedOperation<T> operation) throws Exception {
+        Stripe stripe = stripes[stripeIndex(account)];
+        acquire(stripe, account);
+        try {
+            return operation.run();
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Runs {@code operation} while holding the stripes of both accounts, acquired in stripe
+     * index order.
+     */
+    public <T> T withLocks(UUID first, UUID second, LockedOperation<T> operation) throws Exception {
+        int firstIndex = stripeIndex(first);
+        int secondIndex = stripeIndex(second);
+        if (firstIndex == secondIndex) {
+            return withLock(first, operation);
+        }
+
+        Stripe lower = stripes[Math.min(firstIndex, secondIndex)];
+        Stripe upper = stripes[Math.max(firstIndex, secondIndex)];
+        acquire(lower, firstIndex < secondIndex ? first : second);
+        try {
+            acquire(upper, firstIndex < secondIndex ? second : first);
+            try {
+                return operation.run();
+            } finally {
+                upper.lock.unlock();
+            }
+        } finally {
+            lower.lock.unlock();
+        }
+    }
+
+    int stripeIndex(UUID account) {
+        int h = account.hashCode();
+        // Spread the high bits so the mask doesn't only look at the low bits of the UUID
+        h ^= (h >>> 16);
+        return h & mask;
+    }
+
+    private void acquire(Stripe stripe, UUID account) throws AccountLockTimeoutException, InterruptedException {
+        stripe.acquisitions.incrementAndGet();
+        if (stripe.lock.tryLock()) {
+            return;
+        }
+
+        stripe.contended.incrementAndGet();
+        long start = System.nanoTime();
+        boolean acquired = stripe.lock.tryLock(timeoutNanos, TimeUnit.NANOSECONDS);
+        stripe.waitNanos.addAndGet(System.nanoTime() - start);
+        if (!acquired) {
+            stripe.timeouts.incrementAndGet();
+            logger.warn("Timed out waiting for lock on account {}", account);
+            throw new AccountLockTimeoutException("Account is busy, please try again");
+        }
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    public List<StripeStats> getStripeStats() {
+        List<StripeStats> stats = new ArrayList<>(stripes.length);
+        for (int i = 0; i < stripes.length; i++) {
+            stats.add(stripes[i].snapshot(i));
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the {@code limit} stripes with the most contended acquisitions.
+     */
+    public List<StripeStats> getHottestStripes(int limit) {
+        List<StripeStats> stats = getStripeStats();
+        stats.sort(Comparator.comparingLong(StripeStats::getContended).reversed());
+        return stats.subList(0, Math.min(limit, stats.size()));
+    }
+
+    public StripeStats getTotals() {
+        long acquisitions = 0;
+        long contended = 0;
+        long waitNanos = 0;
+        long timeouts = 0;
+        for (Stripe stripe : stripes) {
+            acquisitions += stripe.acquisitions.get();
+            contended += stripe.contended.get();
+            waitNanos += stripe.waitNanos.get();
+            timeouts += stripe.timeouts.get();
+        }
+        return new StripeStats(-1, acquisitions, contended, waitNanos, timeouts);
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final AtomicLong acquisitions = new AtomicLong();
+        private final AtomicLong contended = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+
+        private StripeStats snapshot(int index) {
+            return new StripeStats(index, acquisitions.get(), contended.get(), waitNanos.get(), timeouts.get());
+        }
+    }
+
+    /**
+     * Counters for one stripe; {@code index} is -1 for totals across all stripes.
+     */
+    @Getter
+    @ToString
+    public static class StripeStats {
+        private final int index;
+        private final long acquisitions;
+        private final long contended;
+        private final long waitNanos;
+        private final long timeouts;
+
+        StripeStats(int index, long acquisitions, long contended, long waitNanos, long timeouts) {
+            this.index = index;
+            this.acquisitions = acquisitions;
+            this.contended = contended;
+            this.waitNanos = waitNanos;
+            this.timeouts = timeouts;
+        }
+
+        public double getContentionRate() {
+            return acquisitions == 0 ? 0.0 : (double) contended / acquisitions;
+        }
+
+        public double getAverageWaitMicros() {
+            return contended == 0 ? 0.0 : waitNanos / 1000.0 / contended;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.nizar.atm.service.lock;
+
+/**
+ * Thrown when an account lock couldn't be acquired within the configured timeout.
+ */
+public class AccountLockTimeoutException extends Exception {
+    public AccountLockTimeoutException(String message) {
+        super(message);
+    }
+}
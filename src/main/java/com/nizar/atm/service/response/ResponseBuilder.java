@@ -0,0 +1,117 @@
+package com.nizar.atm.service.response;
+
+import com.nizar.atm.model.Money;
+
+/**
+ * Builds the text of a service response in a buffer that is reused by every response built on the
+ * same thread, so formatting one costs only the returned string. Amounts are appended straight
+ * from their cents; there is no {@link java.util.Formatter} involved.
+ *
+ * <p>{@link #start()} hands out the calling thread's builder, emptied. Finish one response with
+ * {@link #build()} before starting the next on the same thread. Virtual threads get a new builder
+ * each time instead: they are started per task, so a thread-local buffer would be allocated for
+ * one response anyway and only add the cost of the thread-local map.
+ */
+public final class ResponseBuilder {
+    private static final ThreadLocal<ResponseBuilder> BUILDERS = ThreadLocal.withInitial(ResponseBuilder::new);
+    // Don't hold on to the buffer of an unusually long response
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+    private StringBuilder text = new StringBuilder(256);
+
+    private ResponseBuilder() {
+    }
+
+    public static ResponseBuilder start() {
+        if (Thread.currentThread().isVirtual()) {
+            return new ResponseBuilder();
+        }
+        ResponseBuilder builder = BUILDERS.get();
+        if (builder.text.capacity() > MAX_RETAINED_CAPACITY) {
+            builder.text = new StringBuilder(256);
+        } else {
+            builder.text.setLength(0);
+        }
+        return builder;
+    }
+
+    public ResponseBuilder append(CharSequence value) {
+        text.append(value);
+        return this;
+    }
+
+    public ResponseBuilder append(char value) {
+        text.append(value);
+        return this;
+    }
+
+    public ResponseBuilder append(long value) {
+        text.append(value);
+        return this;
+    }
+
+    public ResponseBuilder append(Money value) {
+        value.appendTo(text);
+        return this;
+    }
+
+    /**
+     * Ends the line with {@code '\n'}, the separator of every response whatever the platform.
+     */
+    public ResponseBuilder newLine() {
+        text.append('\n');
+        return this;
+    }
+
+    /**
+     * Appends {@code value} left-aligned in a column of {@code width} characters.
+     */
+    public ResponseBuilder appendLeft(CharSequence value, int width) {
+        text.append(value);
+        return pad(width - value.length());
+    }
+
+    /**
+     * Appends {@code value} right-aligned in a column of {@code width} characters.
+     */
+    public ResponseBuilder appendRight(long value, int width) {
+        int start = text.length();
+        text.append(value);
+        return alignRight(start, width);
+    }
+
+    public ResponseBuilder appendRight(Money value, int width) {
+        int start = text.length();
+        value.appendTo(text);
+        return alignRight(start, width);
+    }
+
+    /**
+     * Appends a two-digit number, zero-padded.
+     */
+    public ResponseBuilder appendTwoDigits(int value) {
+        if (value < 10) {
+            text.append('0');
+        }
+        text.append(value);
+        return this;
+    }
+
+    private ResponseBuilder alignRight(int start, int width) {
+        for (int padding = width - (text.length() - start); padding > 0; padding--) {
+            text.insert(start, ' ');
+        }
+        return this;
+    }
+
+    private ResponseBuilder pad(int count) {
+        for (int i = 0; i < count; i++) {
+            text.append(' ');
+        }
+        return this;
+    }
+
+    public String build() {
+        return text.toString();
+    }
+}
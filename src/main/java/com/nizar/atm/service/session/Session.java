@@ -0,0 +1,49 @@
+package com.nizar.atm.service.session;
+
+import com.nizar.atm.model.Customer;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Handle for one terminal's conversation with the ATM service. A session is opened before login
+ * and stays open across logins and logouts until the terminal closes it.
+ *
+ * <p>A session is only ever driven by its own terminal, so its state needs visibility across
+ * threads but no locking.
+ */
+@Getter
+public class Session {
+    private final UUID token;
+    private final Instant openedAt;
+    private volatile Instant lastAccessedAt;
+    private volatile Customer customer;
+
+    Session(UUID token) {
+        this.token = token;
+        this.openedAt = Instant.now();
+        this.lastAccessedAt = openedAt;
+    }
+
+    public boolean isAuthenticated() {
+        return customer != null;
+    }
+
+    void touch() {
+        lastAccessedAt = Instant.now();
+    }
+
+    void authenticate(Customer customer) {
+        this.customer = customer;
+    }
+
+    void clear() {
+        this.customer = null;
+    }
+
+    @Override
+    public String toString() {
+        return "Session[" + token + "]";
+    }
+}
@@ -0,0 +1,84 @@
+package com.nizar.atm.service.session;
+
+import com.nizar.atm.model.Customer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of open sessions keyed by token. Sessions live in a {@link ConcurrentHashMap}, so
+ * terminals working on different sessions never wait on each other.
+ */
+public class SessionManager {
+    private static final Logger logger = LoggerFactory.getLogger(SessionManager.class);
+
+    private final ConcurrentMap<UUID, Session> sessions = new ConcurrentHashMap<>();
+
+    public Session open() {
+        Session session = new Session(UUID.randomUUID());
+        sessions.put(session.getToken(), session);
+        logger.debug("Opened session {}", session.getToken());
+        return session;
+    }
+
+    public Optional<Session> find(UUID token) {
+        return Optional.ofNullable(token == null ? null : sessions.get(token));
+    }
+
+    /**
+     * Returns true if {@code session} is the registered session for its token, i.e. it was opened
+     * here and hasn't been closed or expired. Marks the session as accessed.
+     */
+    public boolean isOpen(Session session) {
+        if (session == null || sessions.get(session.getToken()) != session) {
+            return false;
+        }
+        session.touch();
+        return true;
+    }
+
+    public void authenticate(Session session, Customer customer) {
+        session.authenticate(customer);
+    }
+
+    public void logout(Session session) {
+        session.clear();
+    }
+
+    public void close(Session session) {
+        if (session != null && sessions.remove(session.getToken(), session)) {
+            session.clear();
+            logger.debug("Closed session {}", session.getToken());
+        }
+    }
+
+    /**
+     * Closes every session that has been idle for longer than {@code maxIdle}.
+     *
+     * @return the number of sessions closed
+     */
+    public int closeIdle(Duration maxIdle) {
+        Instant cutoff = Instant.now().minus(maxIdle);
+        int closed = 0;
+        for (Session session : sessions.values()) {
+            if (session.getLastAccessedAt().isBefore(cutoff) && sessions.remove(session.getToken(), session)) {
+                session.clear();
+                closed++;
+            }
+        }
+        if (closed > 0) {
+            logger.info("Closed {} idle sessions", closed);
+        }
+        return closed;
+    }
+
+    public int getOpenSessionCount() {
+        return sessions.size();
+    }
+}
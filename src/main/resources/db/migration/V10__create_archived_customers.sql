@@ -0,0 +1,11 @@
+-- src/main/resources/db/migration/V10__create_archived_customers.sql
+
+-- First and last archived month holding transactions of each customer, as sender or recipient
+-- (see TransactionArchive). History queries only read those months' files, and none at all for
+-- customers without archived transactions. Filled from the archive itself on the first startup
+-- after an earlier archive run.
+CREATE TABLE archived_customers (
+    customer_id UUID PRIMARY KEY,
+    first_month DATE NOT NULL,
+    last_month DATE NOT NULL
+    );
@@ -0,0 +1,7 @@
+-- src/main/resources/db/migration/V11__add_shard_transfer_outcome.sql
+
+-- A cross-shard transfer is decided either way by the first decision recorded for it: the
+-- transfer records COMMITTED, and recovery records ABORTED for halves left prepared too long, so a
+-- transfer that stalled before deciding can no longer commit once its halves are being rolled
+-- back. Decisions recorded before this column existed were all to commit.
+ALTER TABLE shard_transfer_decisions ADD COLUMN outcome VARCHAR DEFAULT 'COMMITTED';
@@ -1,12 +1,12 @@
--- src/main/resources/db/v1__create_tables.sql
-
--- Add some useful indices and audit columns
--- src/main/resources/db/schema.sql
+-- src/main/resources/db/migration/V1__create_tables.sql
 
 -- Customers table
 CREATE TABLE IF NOT EXISTS customers (
                                          id UUID PRIMARY KEY,
                                          name VARCHAR NOT NULL UNIQUE,
+                                         account_number VARCHAR UNIQUE,
+                                         card_number VARCHAR,
+                                         pin_code VARCHAR,
                                          balance DECIMAL(15,2) NOT NULL DEFAULT 0.00,
     status VARCHAR NOT NULL DEFAULT 'ACTIVE',
     last_login TIMESTAMP,
@@ -44,7 +44,14 @@ CREATE TABLE IF NOT EXISTS transactions (
     FOREIGN KEY (target_customer_id) REFERENCES customers(id)
     );
 
+-- Counter and permutation key for account number generation
+CREATE TABLE IF NOT EXISTS account_number_sequence (
+    id INTEGER PRIMARY KEY,
+    permutation_key BIGINT NOT NULL,
+    next_value BIGINT NOT NULL
+    );
+
 -- Indexes for better performance
 CREATE INDEX IF NOT EXISTS idx_transactions_customer ON transactions(customer_id, created_at);
 CREATE INDEX IF NOT EXISTS idx_transactions_type ON transactions(transaction_type, created_at);
-CREATE INDEX IF NOT EXISTS idx_debts_debtor ON debts(debtor_id, status);
\ No newline at end of file
+CREATE INDEX IF NOT EXISTS idx_debts_debtor ON debts(debtor_id, status);
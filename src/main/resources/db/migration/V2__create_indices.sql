@@ -1,4 +1,4 @@
--- src/main/resources/db/schema/V2__create_indices.sql
+-- src/main/resources/db/migration/V2__create_indices.sql
 -- Indexes for customers table
 CREATE INDEX IF NOT EXISTS idx_customers_name ON customers(name);
 CREATE INDEX IF NOT EXISTS idx_customers_status ON customers(status);
@@ -13,5 +13,3 @@ CREATE INDEX IF NOT EXISTS idx_transactions_status ON transactions(status);
 CREATE INDEX IF NOT EXISTS idx_debts_debtor ON debts(debtor_id, status);
 CREATE INDEX IF NOT EXISTS idx_debts_creditor ON debts(creditor_id, status);
 
--- Indexes for transaction_details table
-CREATE INDEX IF NOT EXISTS idx_transaction_details_transaction ON transaction_details(transaction_id);
\ No newline at end of file
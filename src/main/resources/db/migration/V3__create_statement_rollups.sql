@@ -0,0 +1,34 @@
+-- src/main/resources/db/migration/V3__create_statement_rollups.sql
+
+-- Per-customer transaction counts and successful amounts, kept up to date by the ledger writer.
+-- The rollup.*.rebuild queries recreate these tables, so keep them in sync with this script.
+CREATE TABLE daily_rollups (
+    customer_id UUID NOT NULL,
+    day DATE NOT NULL,
+    transaction_type VARCHAR NOT NULL,
+    transaction_count BIGINT NOT NULL,
+    total_amount DECIMAL(18,2) NOT NULL,
+    PRIMARY KEY (customer_id, day, transaction_type)
+    );
+
+CREATE TABLE monthly_rollups (
+    customer_id UUID NOT NULL,
+    month DATE NOT NULL,
+    transaction_type VARCHAR NOT NULL,
+    transaction_count BIGINT NOT NULL,
+    total_amount DECIMAL(18,2) NOT NULL,
+    PRIMARY KEY (customer_id, month, transaction_type)
+    );
+
+-- Backfill from the history recorded so far
+INSERT INTO daily_rollups
+SELECT customer_id, CAST(created_at AS DATE), transaction_type, COUNT(*),
+       SUM(CASE WHEN status = 'SUCCESS' THEN amount ELSE 0 END)
+FROM transactions
+GROUP BY ALL;
+
+INSERT INTO monthly_rollups
+SELECT customer_id, CAST(DATE_TRUNC('month', created_at) AS DATE), transaction_type, COUNT(*),
+       SUM(CASE WHEN status = 'SUCCESS' THEN amount ELSE 0 END)
+FROM transactions
+GROUP BY ALL;
@@ -0,0 +1,7 @@
+-- src/main/resources/db/migration/V4__index_statement_rollups.sql
+
+-- Statement lookups filter on customer_id alone, which the composite primary key can't serve.
+-- Kept apart from V3: DuckDB fails to replay a WAL in which one transaction both fills a table
+-- and creates an index on it.
+CREATE INDEX idx_daily_rollups_customer ON daily_rollups(customer_id);
+CREATE INDEX idx_monthly_rollups_customer ON monthly_rollups(customer_id);
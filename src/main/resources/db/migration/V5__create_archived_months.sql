@@ -0,0 +1,9 @@
+-- src/main/resources/db/migration/V5__create_archived_months.sql
+
+-- Months of transaction history moved out of the transactions table into Parquet files
+-- (see TransactionArchive). Queries union these months back in when their range touches them.
+CREATE TABLE archived_months (
+    month DATE PRIMARY KEY,
+    row_count BIGINT NOT NULL,
+    archived_at TIMESTAMP NOT NULL
+    );
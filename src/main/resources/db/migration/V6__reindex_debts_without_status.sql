@@ -0,0 +1,7 @@
+-- Debts change status as they are settled and netted. DuckDB rewrites an update to an indexed
+-- column as a delete and an insert, which its primary key check rejects within one statement,
+-- so the debt indexes cover the customer only.
+DROP INDEX IF EXISTS idx_debts_debtor;
+DROP INDEX IF EXISTS idx_debts_creditor;
+CREATE INDEX IF NOT EXISTS idx_debts_debtor ON debts(debtor_id);
+CREATE INDEX IF NOT EXISTS idx_debts_creditor ON debts(creditor_id);
@@ -0,0 +1,8 @@
+
+-- Journal sequence the balances in the customers table include (see JournaledCustomerRepository).
+-- Recovery replays the journal entries after it.
+CREATE TABLE ledger_journal_checkpoint (
+    applied_sequence BIGINT NOT NULL,
+    applied_at TIMESTAMP NOT NULL
+    );
+INSERT INTO ledger_journal_checkpoint VALUES (0, CURRENT_TIMESTAMP);
@@ -0,0 +1,18 @@
+
+-- Transfers between customers on different shards (see ShardedCustomerRepository). Each shard
+-- records its half of a transfer while it is prepared; the main database records the decision to
+-- commit. Every database gets both tables since they all share one schema.
+CREATE TABLE shard_transfers (
+    id UUID NOT NULL,
+    direction VARCHAR NOT NULL,
+    customer_id UUID NOT NULL,
+    amount DECIMAL(15,2) NOT NULL,
+    state VARCHAR NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (id, direction)
+    );
+CREATE TABLE shard_transfer_decisions (
+    id UUID PRIMARY KEY,
+    decided_at TIMESTAMP NOT NULL
+    );
@@ -0,0 +1,7 @@
+-- Customers are deactivated through CustomerRepository.save, which never changes their name or
+-- account number. DuckDB rewrites an update of an indexed column as a delete and an insert, which
+-- fails for customers that transactions or debts reference, so status loses its index (lookups go
+-- by id, name or account number anyway). The index on name duplicates that of its UNIQUE
+-- constraint and goes too.
+DROP INDEX IF EXISTS idx_customers_status;
+DROP INDEX IF EXISTS idx_customers_name;
@@ -0,0 +1,58 @@
+package com.nizar.atm;
+
+import com.nizar.atm.config.DatabaseManager;
+import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.CustomerStatus;
+import com.nizar.atm.model.Money;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Points {@link DatabaseManager} at a throwaway database for tests that need real tables.
+ *
+ * <p>The manager is a per-JVM singleton, so every test class shares one database file (and one
+ * directory of shard files); tests keep out of each other's way by creating customers with unique
+ * names and account numbers through {@link #newCustomer(String, long)}.
+ */
+public final class TestDatabase {
+    private static Path directory;
+
+    private TestDatabase() {
+    }
+
+    public static synchronized DatabaseManager get() {
+        if (directory == null) {
+            try {
+                directory = Files.createTempDirectory("atm-test-");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            directory.toFile().deleteOnExit();
+            System.setProperty("db.path", directory.resolve("atm-test.db").toString());
+            System.setProperty("db.shards.path", directory.resolve("shards").toString());
+            System.setProperty("db.env", "test");
+        }
+        return DatabaseManager.getInstance();
+    }
+
+    /**
+     * An active customer, not saved yet, with a name starting with {@code prefix}, a random account
+     * number and PIN 123456.
+     */
+    public static Customer newCustomer(String prefix, long balanceCents) {
+        return Customer.builder()
+                .id(UUID.randomUUID())
+                .name(prefix + "-" + UUID.randomUUID())
+                .accountNumber(BigInteger.valueOf(ThreadLocalRandom.current().nextLong(1_000_000_000_000_000L, 9_000_000_000_000_000L)))
+                .pinCode("123456")
+                .balance(Money.ofCents(balanceCents))
+                .status(CustomerStatus.ACTIVE)
+                .build();
+    }
+}
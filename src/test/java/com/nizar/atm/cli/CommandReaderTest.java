@@ -0,0 +1,82 @@
+package com.nizar.atm.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import com.nizar.atm.model.Money;
+import org.junit.jupiter.api.Test;
+
+public class CommandReaderTest {
+
+    @Test
+    public void splitsLinesIntoTokens() throws IOException {
+        CommandReader reader = new CommandReader(new StringReader("  Transfer\t8712143069253745   12.5 \r\nlogout"));
+
+        assertTrue(reader.next());
+        assertEquals(Command.TRANSFER, reader.command());
+        assertEquals(3, reader.tokenCount());
+        assertEquals(8712143069253745L, reader.number(1));
+        assertEquals(Money.ofCents(1250), reader.amount(2));
+        assertEquals("Transfer\t8712143069253745   12.5", reader.text());
+
+        assertTrue(reader.next());
+        assertEquals(Command.LOGOUT, reader.command());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void keepsBlankLinesAndUnknownCommands() throws IOException {
+        CommandReader reader = new CommandReader(new StringReader("\r\rwithdrawal 5\n"));
+
+        assertTrue(reader.next());
+        assertEquals(0, reader.tokenCount());
+        assertNull(reader.command());
+        assertEquals("", reader.text());
+        assertTrue(reader.next());
+        assertTrue(reader.next());
+        assertNull(reader.command());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void readsLinesLongerThanItsBuffers() throws IOException {
+        String name = "x".repeat(20_000);
+        CommandReader reader = new CommandReader(new StringReader("login " + name + "\n1.00"));
+
+        assertTrue(reader.next());
+        assertEquals(name, reader.token(1));
+        assertTrue(reader.next());
+        assertEquals(Money.ofCents(100), reader.amount());
+    }
+
+    @Test
+    public void readsTextBeforeTheLastTokenOfLongLines() {
+        CommandReader reader = new CommandReader();
+        reader.read("register  Anna  Maria de la Cruz y Santos Lopez  250.75 ");
+
+        assertEquals(8, reader.tokenCount());
+        assertEquals("Anna  Maria de la Cruz y Santos Lopez", reader.textBeforeLast(1));
+        assertEquals(Money.ofCents(25075), reader.lastAmount());
+
+        reader.read("register 10");
+        assertThrows(IndexOutOfBoundsException.class, () -> reader.textBeforeLast(1));
+    }
+
+    @Test
+    public void rejectsMalformedNumbers() throws IOException {
+        CommandReader reader = new CommandReader(new StringReader("transfer 12a 1.001 99999999999999999999"));
+
+        assertTrue(reader.next());
+        assertThrows(NumberFormatException.class, () -> reader.number(1));
+        assertThrows(NumberFormatException.class, () -> reader.amount(2));
+        assertThrows(NumberFormatException.class, () -> reader.number(3));
+        assertThrows(NumberFormatException.class, reader::amount);
+        assertThrows(IndexOutOfBoundsException.class, () -> reader.token(4));
+    }
+}
@@ -0,0 +1,47 @@
+package com.nizar.atm.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class ExecutionModeTest {
+
+    @Test
+    public void runsVirtualTasksOnVirtualThreadsWithinTheLimit() throws Exception {
+        ExecutorService workers = ExecutionMode.VIRTUAL.newWorkerPool(4, "test");
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        List<Future<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            tasks.add(workers.submit(() -> {
+                mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(1);
+                running.decrementAndGet();
+                return Thread.currentThread().isVirtual();
+            }));
+        }
+        for (Future<Boolean> task : tasks) {
+            assertTrue(task.get());
+        }
+        workers.shutdown();
+        assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertTrue(mostRunning.get() <= 4, "at most 4 tasks at once, saw " + mostRunning.get());
+    }
+
+    @Test
+    public void parsesModeNames() {
+        assertEquals(ExecutionMode.VIRTUAL, ExecutionMode.parse(" Virtual "));
+        assertEquals(ExecutionMode.PLATFORM, ExecutionMode.parse("platform"));
+        assertThrows(IllegalArgumentException.class, () -> ExecutionMode.parse("green"));
+    }
+}
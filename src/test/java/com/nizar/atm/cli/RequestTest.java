@@ -0,0 +1,107 @@
+package com.nizar.atm.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigInteger;
+import java.time.Duration;
+
+import com.nizar.atm.model.Money;
+import com.nizar.atm.service.ATMService;
+import com.nizar.atm.service.session.Session;
+import org.junit.jupiter.api.Test;
+
+public class RequestTest {
+
+    @Test
+    public void registersNamesWithSpaces() {
+        CommandReader reader = new CommandReader();
+        reader.read("@t1 register Mary Ann Smith 100.00");
+
+        Request request = Request.parse(reader, 1);
+
+        assertEquals(Command.REGISTER, request.getCommand());
+        assertEquals("register Mary Ann Smith 100.00", request.execute(new EchoService(), null));
+    }
+
+    @Test
+    public void rejectsRegisterWithoutNameOrBalance() {
+        CommandReader reader = new CommandReader();
+        reader.read("register 100.00");
+        assertThrows(IllegalArgumentException.class, () -> Request.parse(reader, 0));
+
+        reader.read("register Mary Ann");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> Request.parse(reader, 0));
+        assertEquals("Invalid number format", e.getMessage());
+    }
+
+    private static final class EchoService implements ATMService {
+        @Override
+        public Session openSession() {
+            return null;
+        }
+
+        @Override
+        public String register(String name, Money initialBalance) {
+            return "register " + name + " " + initialBalance;
+        }
+
+        @Override
+        public String login(Session session, String name, String pin) {
+            return null;
+        }
+
+        @Override
+        public String withdraw(Session session, Money amount) {
+            return null;
+        }
+
+        @Override
+        public String transfer(Session session, BigInteger targetAccount, Money amount) {
+            return null;
+        }
+
+        @Override
+        public String statement(Session session, int months) {
+            return null;
+        }
+
+        @Override
+        public String rebuildStatements() {
+            return null;
+        }
+
+        @Override
+        public String archiveHistory() {
+            return null;
+        }
+
+        @Override
+        public String netDebts() {
+            return null;
+        }
+
+        @Override
+        public String importCustomers(String csvPath, String credentialsPath) {
+            return null;
+        }
+
+        @Override
+        public String logout(Session session) {
+            return null;
+        }
+
+        @Override
+        public void closeSession(Session session) {
+        }
+
+        @Override
+        public int closeIdleSessions(Duration maxIdle) {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.nizar.atm.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class ConnectionPoolTest {
+
+    @Test
+    public void neverHandsOutMoreThanMaxSize() throws Exception {
+        List<Connection> opened = new CopyOnWriteArrayList<>();
+        AtomicInteger checkedOut = new AtomicInteger();
+        AtomicInteger maxCheckedOut = new AtomicInteger();
+        ExecutorService borrowers = Executors.newFixedThreadPool(12);
+        try (ConnectionPool pool = new ConnectionPool(opening(opened), 3, 10_000)) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> done = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                done.add(borrowers.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 20; j++) {
+                        try (Connection conn = pool.borrow()) {
+                            maxCheckedOut.accumulateAndGet(checkedOut.incrementAndGet(), Math::max);
+                            Thread.sleep(1);
+                            checkedOut.decrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : done) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+
+            assertTrue(maxCheckedOut.get() <= 3, maxCheckedOut.get() + " connections checked out");
+            assertTrue(opened.size() <= 3, opened.size() + " connections opened");
+            assertEquals(240, pool.getStats().getBorrowCount());
+        } finally {
+            borrowers.shutdownNow();
+            closeAll(opened);
+        }
+    }
+
+    @Test
+    public void borrowsTimeOutWhenEveryConnectionIsCheckedOut() throws Exception {
+        List<Connection> opened = new CopyOnWriteArrayList<>();
+        try (ConnectionPool pool = new ConnectionPool(opening(opened), 1, 50);
+             Connection held = pool.borrow()) {
+            long start = System.nanoTime();
+            assertThrows(SQLException.class, pool::borrow);
+
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+            assertEquals(1, pool.getStats().getTimeoutCount());
+        } finally {
+            closeAll(opened);
+        }
+    }
+
+    @Test
+    public void replacesBrokenConnectionsOnBorrow() throws Exception {
+        List<Connection> opened = new CopyOnWriteArrayList<>();
+        try (ConnectionPool pool = new ConnectionPool(opening(opened), 1, 1_000)) {
+            pool.borrow().close();
+            // The database went away while the connection sat idle
+            opened.get(0).close();
+
+            try (Connection conn = pool.borrow()) {
+                assertFalse(conn.isClosed());
+                assertTrue(conn.isValid(1));
+            }
+            assertEquals(2, opened.size());
+            assertEquals(1, pool.getStats().getInvalidatedCount());
+            assertEquals(1, pool.getStats().getTotalConnections());
+        } finally {
+            closeAll(opened);
+        }
+    }
+
+    @Test
+    public void closingAConnectionReturnsItToThePool() throws Exception {
+        List<Connection> opened = new CopyOnWriteArrayList<>();
+        try (ConnectionPool pool = new ConnectionPool(opening(opened), 1, 50)) {
+            Connection first = pool.borrow();
+            first.close();
+            first.close();
+
+            assertTrue(first.isClosed());
+            assertThrows(SQLException.class, first::createStatement);
+            assertEquals(1, pool.getStats().getIdleConnections());
+            try (Connection second = pool.borrow()) {
+                assertFalse(second.isClosed());
+            }
+            assertEquals(1, opened.size());
+            assertFalse(opened.get(0).isClosed());
+        } finally {
+            closeAll(opened);
+        }
+    }
+
+    private static ConnectionPool.ConnectionFactory opening(List<Connection> opened) {
+        return () -> {
+            Connection conn = DriverManager.getConnection("jdbc:duckdb:");
+            opened.add(conn);
+            return conn;
+        };
+    }
+
+    private static void closeAll(List<Connection> opened) throws SQLException {
+        for (Connection conn : opened) {
+            conn.close();
+        }
+    }
+}
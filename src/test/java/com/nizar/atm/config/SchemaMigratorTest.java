@@ -0,0 +1,45 @@
+package com.nizar.atm.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class SchemaMigratorTest {
+
+    @Test
+    public void splitsOnSemicolonsOutsideQuotesAndComments() {
+        List<String> statements = SchemaMigrator.splitStatements(
+                "-- leading; comment\n" +
+                "CREATE TABLE t (v VARCHAR DEFAULT 'a;''b');\n" +
+                "/* block; comment */\n" +
+                "INSERT INTO \"odd;name\" VALUES (1);\n" +
+                ";  -- trailing\n");
+
+        assertEquals(2, statements.size());
+        assertTrue(statements.get(0).endsWith("CREATE TABLE t (v VARCHAR DEFAULT 'a;''b')"));
+        assertTrue(statements.get(1).endsWith("INSERT INTO \"odd;name\" VALUES (1)"));
+    }
+
+    @Test
+    public void appliesPendingMigrationsOnlyOnce() throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:duckdb:")) {
+            int first = new SchemaMigrator(conn).migrate();
+            int second = new SchemaMigrator(conn).migrate();
+
+            assertTrue(first > 0);
+            assertEquals(0, second);
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM schema_history")) {
+                rs.next();
+                assertEquals(first, rs.getInt(1));
+            }
+        }
+    }
+}
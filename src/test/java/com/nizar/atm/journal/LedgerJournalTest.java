@@ -0,0 +1,91 @@
+package com.nizar.atm.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LedgerJournalTest {
+    // Room for two single-account entries (8 + 33 bytes each)
+    private static final int SEGMENT_BYTES = 90;
+
+    @TempDir
+    Path directory;
+
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+
+    @Test
+    public void replaysEntriesAfterTheCheckpointAcrossSegments() throws Exception {
+        try (LedgerJournal journal = LedgerJournal.open(directory, SEGMENT_BYTES, 0, (s, a, c) -> { })) {
+            assertEquals(1, journal.append(alice, 10_000));
+            assertEquals(2, journal.append(alice, 9_000, bob, 1_000));
+            assertEquals(3, journal.append(bob, 500));
+            journal.sync(3);
+        }
+        assertEquals(3, segments());
+
+        List<String> replayed = new ArrayList<>();
+        try (LedgerJournal journal = LedgerJournal.open(directory, SEGMENT_BYTES, 1,
+                (sequence, account, cents) -> replayed.add(sequence + " " + (account.equals(alice) ? "alice" : "bob") + " " + cents))) {
+            assertEquals(List.of("2 alice 9000", "2 bob 1000", "3 bob 500"), replayed);
+            assertEquals(4, journal.append(alice, 8_500), "new entries continue the sequence");
+
+            journal.deleteThrough(3);
+            assertEquals(1, segments(), "only the segment being appended to is left");
+        }
+    }
+
+    @Test
+    public void stopsAtATornEntry() throws Exception {
+        try (LedgerJournal journal = LedgerJournal.open(directory, 1024, 0, (s, a, c) -> { })) {
+            journal.append(alice, 10_000);
+            journal.append(bob, 2_000);
+            journal.sync(2);
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            Path segment = files.filter(file -> file.toString().endsWith(".journal")).findFirst().orElseThrow();
+            try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+                // Last byte of bob's balance
+                file.seek(41 + 40);
+                file.write(0x7f);
+            }
+        }
+
+        List<Long> replayed = new ArrayList<>();
+        try (LedgerJournal journal = LedgerJournal.open(directory, 1024, 0, (sequence, account, cents) -> replayed.add(cents))) {
+            assertEquals(List.of(10_000L), replayed);
+            assertEquals(2, journal.append(bob, 2_000), "the torn entry is written again");
+        }
+    }
+
+    @Test
+    public void startsAfterTheCheckpointWhenTheJournalIsGone() throws Exception {
+        try (LedgerJournal journal = LedgerJournal.open(directory, SEGMENT_BYTES, 41, (s, a, c) -> { })) {
+            assertEquals(42, journal.append(alice, 100));
+        }
+    }
+
+    @Test
+    public void refusesASecondWriter() throws Exception {
+        try (LedgerJournal journal = LedgerJournal.open(directory, SEGMENT_BYTES, 0, (s, a, c) -> { })) {
+            assertThrows(IllegalStateException.class,
+                    () -> LedgerJournal.open(directory, SEGMENT_BYTES, 0, (s, a, c) -> { }));
+        }
+    }
+
+    private long segments() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".journal")).count();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.nizar.atm.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void reportsPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100_000; micros++) {
+            histogram.record(micros * 1000);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000, histogram.getMaxMicros());
+        assertWithin(50_000, histogram.percentileMicros(0.50));
+        assertWithin(99_000, histogram.percentileMicros(0.99));
+        assertEquals(100_000, histogram.percentileMicros(1.0));
+    }
+
+    @Test
+    public void addsHistogramsTogether() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(5_000);
+        second.record(7_000_000);
+        second.record(7_000_000);
+
+        first.add(second);
+        assertEquals(3, first.getCount());
+        assertEquals(5, first.percentileMicros(0.30));
+        assertWithin(7_000, first.percentileMicros(0.50));
+        assertEquals(0, new LatencyHistogram().percentileMicros(0.99));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16, "expected ~" + expected + " but was " + actual);
+    }
+}
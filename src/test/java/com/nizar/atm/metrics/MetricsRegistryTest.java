@@ -0,0 +1,49 @@
+package com.nizar.atm.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+public class MetricsRegistryTest {
+    private final MetricsRegistry registry = MetricsRegistry.getInstance();
+
+    @Test
+    public void countsCallsAndFailuresAndExposesThemOverJmx() throws Exception {
+        OperationMetrics withdraw = registry.operation("TestService", "withdraw");
+        assertSame(withdraw, registry.operation("TestService", "withdraw"));
+
+        assertEquals("Withdrawn", withdraw.timeResponse(() -> "Withdrawn"));
+        assertEquals("Error: Insufficient funds", withdraw.timeResponse(() -> "Error: Insufficient funds"));
+        assertThrows(IllegalStateException.class, () -> withdraw.time(() -> {
+            throw new IllegalStateException("down");
+        }));
+
+        ObjectName name = new ObjectName("com.nizar.atm:type=Operation,group=\"TestService\",name=\"withdraw\"");
+        assertEquals(3L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Count"));
+        assertEquals(2L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Errors"));
+    }
+
+    @Test
+    public void summarizesOnlyTheCallsOfTheLastInterval() {
+        OperationMetrics login = registry.operation("SummaryService", "login");
+        registry.takeSummary(60);
+        assertNull(registry.takeSummary(60), "nothing called since the previous summary");
+
+        for (int i = 0; i < 100; i++) {
+            login.record(System.nanoTime() - 2_000_000, i == 0);
+        }
+        String summary = registry.takeSummary(60);
+        assertTrue(summary.startsWith("Last 60 s, calls and p50/p99/p999/max ms: "), summary);
+        assertTrue(summary.contains("SummaryService.login 100 (1 errors) 2."), summary);
+        assertNull(registry.takeSummary(60));
+        assertEquals(100, login.getCount(), "totals are kept across intervals");
+    }
+}
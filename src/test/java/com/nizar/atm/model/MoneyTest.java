@@ -0,0 +1,51 @@
+package com.nizar.atm.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+public class MoneyTest {
+
+    @Test
+    public void parsesWholeAndFractionalAmounts() {
+        assertEquals(1200, Money.parse("12").getCents());
+        assertEquals(1250, Money.parse("12.5").getCents());
+        assertEquals(1205, Money.parse("12.05").getCents());
+        assertEquals(50, Money.parse(".5").getCents());
+        assertEquals(-350, Money.parse("-3.50").getCents());
+    }
+
+    @Test
+    public void rejectsMalformedAmounts() {
+        for (String text : new String[] {"", "-", ".", "1.234", "1,00", "12a", "1e3", "1.2.3"}) {
+            assertThrows(NumberFormatException.class, () -> Money.parse(text), text);
+        }
+        assertThrows(NumberFormatException.class, () -> Money.parse("92233720368547758.08"));
+    }
+
+    @Test
+    public void formatsWithTwoDecimals() {
+        assertEquals("0.00", Money.ZERO.toString());
+        assertEquals("12.05", Money.ofCents(1205).toString());
+        assertEquals("-0.07", Money.ofCents(-7).toString());
+        assertEquals("-92233720368547758.08", Money.ofCents(Long.MIN_VALUE).toString());
+    }
+
+    @Test
+    public void convertsAtTheDecimalBoundary() {
+        assertEquals(new BigDecimal("12.30"), Money.parse("12.3").toBigDecimal());
+        assertEquals(Money.ofCents(1230), Money.of(new BigDecimal("12.300")));
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("0.001")));
+    }
+
+    @Test
+    public void arithmeticFailsOnOverflow() {
+        assertEquals(Money.ofCents(150), Money.ofCents(100).plus(Money.ofCents(50)));
+        assertEquals(Money.ofCents(-50), Money.ofCents(50).minus(Money.ofCents(100)));
+        assertThrows(ArithmeticException.class, () -> Money.ofCents(Long.MAX_VALUE).plus(Money.ofCents(1)));
+        assertThrows(ArithmeticException.class, () -> Money.ofCents(Long.MIN_VALUE).negate());
+    }
+}
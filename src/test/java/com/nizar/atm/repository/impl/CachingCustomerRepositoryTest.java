@@ -0,0 +1,213 @@
+package com.nizar.atm.repository.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.nizar.atm.TestDatabase;
+import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.repository.CustomerRepository;
+import org.junit.jupiter.api.Test;
+
+public class CachingCustomerRepositoryTest {
+    private static final long HOUR_MILLIS = 3_600_000;
+
+    @Test
+    public void lookupsByAnyKeyAreServedOnceLoaded() throws Exception {
+        StubRepository stub = new StubRepository();
+        CachingCustomerRepository cache = new CachingCustomerRepository(stub, 1_000, HOUR_MILLIS);
+        Customer customer = stub.add(TestDatabase.newCustomer("cache-hit", 10_000));
+
+        cache.findById(customer.getId());
+        assertEquals(customer.getId(), cache.findByName(customer.getName()).orElseThrow().getId());
+        assertEquals(customer.getId(), cache.findByAccountNumber(customer.getAccountNumber()).orElseThrow().getId());
+        assertEquals(1, stub.loads.get());
+    }
+
+    @Test
+    public void writesUpdateOrDropTheCachedCustomerUnderEveryKey() throws Exception {
+        StubRepository stub = new StubRepository();
+        CachingCustomerRepository cache = new CachingCustomerRepository(stub, 1_000, HOUR_MILLIS);
+        Customer sender = stub.add(TestDatabase.newCustomer("cache-sender", 10_000));
+        Customer recipient = stub.add(TestDatabase.newCustomer("cache-recipient", 1_000));
+        cache.findById(sender.getId());
+        cache.findById(recipient.getId());
+
+        cache.debit(sender.getId(), Money.ofCents(1_000));
+        assertEquals(Money.ofCents(9_000), cache.findByName(sender.getName()).orElseThrow().getBalance());
+        assertEquals(2, stub.loads.get());
+
+        // The recipient's new balance isn't returned, so it is loaded again by any key
+        cache.transfer(sender.getId(), recipient.getId(), Money.ofCents(2_000));
+        assertEquals(Money.ofCents(7_000), cache.findById(sender.getId()).orElseThrow().getBalance());
+        assertEquals(Money.ofCents(3_000),
+                cache.findByAccountNumber(recipient.getAccountNumber()).orElseThrow().getBalance());
+        assertEquals(3, stub.loads.get());
+
+        cache.deleteById(sender.getId());
+        assertTrue(cache.findById(sender.getId()).isEmpty());
+        assertTrue(cache.findByName(sender.getName()).isEmpty());
+        assertTrue(cache.findByAccountNumber(sender.getAccountNumber()).isEmpty());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedBeyondMaxSize() throws Exception {
+        StubRepository stub = new StubRepository();
+        // One entry per segment
+        CachingCustomerRepository cache = new CachingCustomerRepository(stub, 64, HOUR_MILLIS);
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            customers.add(stub.add(TestDatabase.newCustomer("cache-evict", 1_000)));
+        }
+        for (Customer customer : customers) {
+            cache.findById(customer.getId());
+        }
+
+        CachingCustomerRepository.CacheStats stats = cache.getStats();
+        assertTrue(stats.getSize() <= 64, "cache holds " + stats.getSize());
+        assertTrue(stats.getEvictions() >= 500 - 64);
+        // Evicted customers are no longer indexed by name, so they are loaded again
+        int loads = stub.loads.get();
+        for (Customer customer : customers) {
+            assertEquals(customer.getId(), cache.findByName(customer.getName()).orElseThrow().getId());
+        }
+        assertTrue(stub.loads.get() - loads >= 500 - 64);
+    }
+
+    @Test
+    public void expiredCustomersAreLoadedAgain() throws Exception {
+        StubRepository stub = new StubRepository();
+        CachingCustomerRepository cache = new CachingCustomerRepository(stub, 1_000, 1);
+        Customer customer = stub.add(TestDatabase.newCustomer("cache-expire", 1_000));
+
+        cache.findById(customer.getId());
+        Thread.sleep(10);
+        cache.findById(customer.getId());
+
+        assertEquals(2, stub.loads.get());
+        assertEquals(1, cache.getStats().getExpirations());
+    }
+
+    @Test
+    public void loadsThatRaceAWriteAreNotCached() throws Exception {
+        StubRepository stub = new StubRepository();
+        CachingCustomerRepository cache = new CachingCustomerRepository(stub, 1_000, HOUR_MILLIS);
+        Customer customer = stub.add(TestDatabase.newCustomer("cache-race", 10_000));
+        // The row is read, then a debit commits before the load is cached
+        stub.duringLoad = () -> {
+            stub.duringLoad = null;
+            try {
+                cache.debit(customer.getId(), Money.ofCents(1_000));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+
+        assertEquals(Money.ofCents(10_000), cache.findById(customer.getId()).orElseThrow().getBalance());
+        assertEquals(Money.ofCents(9_000), cache.findById(customer.getId()).orElseThrow().getBalance());
+        assertEquals(2, stub.loads.get());
+    }
+
+    /**
+     * Keeps customers in memory and counts the lookups that reach it.
+     */
+    private static final class StubRepository implements CustomerRepository {
+        private final Map<UUID, Customer> customers = new ConcurrentHashMap<>();
+        private final AtomicInteger loads = new AtomicInteger();
+        private volatile Runnable duringLoad;
+
+        Customer add(Customer customer) {
+            customers.put(customer.getId(), customer.toBuilder().build());
+            return customer;
+        }
+
+        private Optional<Customer> load(Optional<Customer> found) {
+            loads.incrementAndGet();
+            Optional<Customer> copy = found.map(customer -> customer.toBuilder().build());
+            Runnable hook = duringLoad;
+            if (hook != null) {
+                hook.run();
+            }
+            return copy;
+        }
+
+        @Override
+        public Optional<Customer> findById(UUID id) {
+            return load(Optional.ofNullable(customers.get(id)));
+        }
+
+        @Override
+        public Optional<Customer> findByName(String name) {
+            return load(customers.values().stream().filter(c -> c.getName().equals(name)).findFirst());
+        }
+
+        @Override
+        public Optional<Customer> findByAccountNumber(BigInteger accountNumber) {
+            return load(customers.values().stream().filter(c -> c.getAccountNumber().equals(accountNumber)).findFirst());
+        }
+
+        @Override
+        public Optional<Customer> findByCardNumber(String cardNumber) {
+            return Optional.empty();
+        }
+
+        @Override
+        public Customer save(Customer customer) {
+            return add(customer);
+        }
+
+        @Override
+        public List<Customer> insertAll(List<Customer> customers) {
+            customers.forEach(this::add);
+            return List.of();
+        }
+
+        @Override
+        public void updateBalance(UUID id, Money newBalance) {
+            customers.get(id).setBalance(newBalance);
+        }
+
+        @Override
+        public Optional<Money> debit(UUID id, Money amount) {
+            Customer customer = customers.get(id);
+            customer.setBalance(customer.getBalance().minus(amount));
+            return Optional.of(customer.getBalance());
+        }
+
+        @Override
+        public Optional<Money> transfer(UUID senderId, UUID recipientId, Money amount) {
+            Customer recipient = customers.get(recipientId);
+            recipient.setBalance(recipient.getBalance().plus(amount));
+            return debit(senderId, amount);
+        }
+
+        @Override
+        public void updateLastLogin(UUID id, Date lastLogin) {
+            customers.get(id).setLastLogin(lastLogin);
+        }
+
+        @Override
+        public void deleteById(UUID id) {
+            customers.remove(id);
+        }
+
+        @Override
+        public List<Customer> findAll() {
+            return new ArrayList<>(customers.values());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
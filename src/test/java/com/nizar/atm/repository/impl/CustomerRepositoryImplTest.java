@@ -0,0 +1,155 @@
+package com.nizar.atm.repository.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.nizar.atm.TestDatabase;
+import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.CustomerStatus;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.repository.InactiveAccountException;
+import org.junit.jupiter.api.Test;
+
+public class CustomerRepositoryImplTest {
+    private final CustomerRepositoryImpl repository = new CustomerRepositoryImpl(TestDatabase.get());
+
+    @Test
+    public void saveUpdatesEveryMutableColumnOfAnExistingCustomer() throws Exception {
+        Customer customer = repository.save(TestDatabase.newCustomer("save", 10_000));
+
+        Customer changed = repository.findById(customer.getId()).orElseThrow();
+        Date login = new Date(1_700_000_000_000L);
+        changed.setPinCode("654321");
+        changed.setBalance(Money.ofCents(2_500));
+        changed.setStatus(CustomerStatus.INACTIVE);
+        changed.setLastLogin(login);
+        repository.save(changed);
+
+        Customer reread = repository.findById(customer.getId()).orElseThrow();
+        assertEquals(customer.getName(), reread.getName());
+        assertEquals(customer.getAccountNumber(), reread.getAccountNumber());
+        assertEquals("654321", reread.getPinCode());
+        assertEquals(Money.ofCents(2_500), reread.getBalance());
+        assertEquals(CustomerStatus.INACTIVE, reread.getStatus());
+        assertEquals(login, reread.getLastLogin());
+        assertEquals(customer.getCreatedAt().withNano(0), reread.getCreatedAt().withNano(0));
+        assertNotNull(reread.getUpdatedAt());
+    }
+
+    @Test
+    public void saveRejectsANewNameOrAccountNumber() throws Exception {
+        Customer customer = repository.save(TestDatabase.newCustomer("keep", 10_000));
+
+        Customer renamed = repository.findById(customer.getId()).orElseThrow();
+        renamed.setName("renamed-" + customer.getId());
+        assertThrows(IllegalArgumentException.class, () -> repository.save(renamed));
+        Customer renumbered = repository.findById(customer.getId()).orElseThrow();
+        renumbered.setAccountNumber(customer.getAccountNumber().add(BigInteger.ONE));
+        assertThrows(IllegalArgumentException.class, () -> repository.save(renumbered));
+
+        Customer reread = repository.findByAccountNumber(customer.getAccountNumber()).orElseThrow();
+        assertEquals(customer.getName(), reread.getName());
+        assertEquals(Money.ofCents(10_000), reread.getBalance());
+    }
+
+    @Test
+    public void debitTellsInactiveAccountsFromInsufficientFunds() throws Exception {
+        Customer poor = repository.save(TestDatabase.newCustomer("poor", 100));
+        Customer inactive = TestDatabase.newCustomer("inactive", 10_000);
+        inactive.setStatus(CustomerStatus.INACTIVE);
+        repository.save(inactive);
+
+        assertTrue(repository.debit(poor.getId(), Money.ofCents(101)).isEmpty());
+        assertThrows(InactiveAccountException.class, () -> repository.debit(inactive.getId(), Money.ofCents(1)));
+        assertThrows(InactiveAccountException.class,
+                () -> repository.transfer(inactive.getId(), poor.getId(), Money.ofCents(1)));
+        assertEquals(Money.ofCents(10_000), repository.findById(inactive.getId()).orElseThrow().getBalance());
+    }
+
+    @Test
+    public void racingDebitsAndTransfersNeverOverdrawAnAccount() throws Exception {
+        Customer account = repository.save(TestDatabase.newCustomer("race", 10_000));
+        Customer recipient = repository.save(TestDatabase.newCustomer("race-recipient", 0));
+        AtomicInteger debited = new AtomicInteger();
+        AtomicInteger transferred = new AtomicInteger();
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> done = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                boolean transfers = i % 2 == 0;
+                done.add(callers.submit(() -> {
+                    start.await();
+                    // Until the account runs dry; a write conflict changes nothing and is retried
+                    boolean funded = true;
+                    while (funded) {
+                        try {
+                            if (transfers) {
+                                funded = repository.transfer(account.getId(), recipient.getId(), Money.ofCents(700))
+                                        .isPresent();
+                                if (funded) {
+                                    transferred.incrementAndGet();
+                                }
+                            } else {
+                                funded = repository.debit(account.getId(), Money.ofCents(700)).isPresent();
+                                if (funded) {
+                                    debited.incrementAndGet();
+                                }
+                            }
+                        } catch (Exception e) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : done) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        Money balance = repository.findById(account.getId()).orElseThrow().getBalance();
+        Money received = repository.findById(recipient.getId()).orElseThrow().getBalance();
+        assertTrue(!balance.isNegative(), "balance went to " + balance);
+        assertEquals(Money.ofCents(700L * transferred.get()), received);
+        assertEquals(Money.ofCents(10_000 - 700L * (debited.get() + transferred.get())), balance);
+        assertEquals(Money.ofCents(200), balance);
+    }
+
+    @Test
+    public void insertAllSkipsRegisteredAndRepeatedNames() throws Exception {
+        Customer registered = repository.save(TestDatabase.newCustomer("registered", 100));
+        Customer fresh = TestDatabase.newCustomer("bulk", 200);
+        Customer taken = TestDatabase.newCustomer("taken", 300);
+        taken.setName(registered.getName());
+        Customer repeated = TestDatabase.newCustomer("repeated", 400);
+        repeated.setName(fresh.getName());
+
+        List<Customer> skipped = repository.insertAll(List.of(fresh, taken, repeated));
+
+        assertEquals(List.of(taken.getId(), repeated.getId()), skipped.stream().map(Customer::getId).toList());
+        Customer stored = repository.findByName(fresh.getName()).orElseThrow();
+        assertEquals(fresh.getId(), stored.getId());
+        assertEquals(Money.ofCents(200), stored.getBalance());
+        assertEquals(fresh.getAccountNumber(), stored.getAccountNumber());
+        assertEquals(registered.getId(), repository.findByName(registered.getName()).orElseThrow().getId());
+        assertTrue(repository.findById(taken.getId()).isEmpty());
+        assertTrue(repository.findById(repeated.getId()).isEmpty());
+    }
+}
@@ -0,0 +1,129 @@
+package com.nizar.atm.repository.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.nizar.atm.TestDatabase;
+import com.nizar.atm.model.Debt;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.model.NettingResult;
+import org.junit.jupiter.api.Test;
+
+// Netting takes in every active debt in the database, so each test pays off what it leaves
+public class DebtRepositoryImplTest {
+    private static final CustomerRepositoryImpl customers = new CustomerRepositoryImpl(TestDatabase.get());
+    private static final DebtRepositoryImpl debts = new DebtRepositoryImpl();
+
+    @Test
+    public void paymentsSettleTheOldestDebtsFirstAndPayTheNextOneDownPartially() throws Exception {
+        UUID debtor = newCustomer();
+        UUID creditor = newCustomer();
+        UUID other = newCustomer();
+        LocalDateTime now = LocalDateTime.now();
+        Debt older = debt(debtor, creditor, 1_000, now.minusMinutes(2));
+        Debt newer = debt(debtor, creditor, 2_000, now.minusMinutes(1));
+        Debt unrelated = debt(debtor, other, 500, now.minusMinutes(3));
+
+        assertEquals(Money.ofCents(1_500), debts.applyPayment(debtor, creditor, Money.ofCents(1_500)));
+
+        Map<UUID, Money> active = activeAmounts(debtor);
+        assertEquals(2, active.size());
+        assertEquals(Money.ofCents(1_500), active.get(newer.getId()));
+        assertEquals(Money.ofCents(500), active.get(unrelated.getId()));
+
+        // Only what is owed is applied; the rest of the payment is a plain transfer
+        assertEquals(Money.ofCents(1_500), debts.applyPayment(debtor, creditor, Money.ofCents(5_000)));
+        assertEquals(List.of(unrelated.getId()), new ArrayList<>(activeAmounts(debtor).keySet()));
+        assertEquals(Money.ZERO, debts.applyPayment(debtor, creditor, Money.ofCents(100)));
+        assertFalse(activeAmounts(debtor).containsKey(older.getId()));
+
+        assertEquals(Money.ofCents(500), debts.applyPayment(debtor, other, Money.ofCents(500)));
+    }
+
+    @Test
+    public void nettingCancelsCyclesAndMutualDebts() throws Exception {
+        UUID a = newCustomer();
+        UUID b = newCustomer();
+        UUID c = newCustomer();
+        LocalDateTime now = LocalDateTime.now();
+        debt(a, b, 1_000, now);
+        debt(b, c, 1_000, now);
+        debt(c, a, 1_000, now);
+        UUID d = newCustomer();
+        UUID e = newCustomer();
+        debt(d, e, 700, now);
+        debt(e, d, 700, now);
+
+        NettingResult result = debts.netAll();
+
+        assertEquals(5, result.getDebtsBefore());
+        assertEquals(0, result.getDebtsAfter());
+        assertEquals(Money.ofCents(4_400), result.getAmountBefore());
+        assertEquals(Money.ZERO, result.getAmountAfter());
+        for (UUID customer : List.of(a, b, c, d, e)) {
+            assertTrue(activeAmounts(customer).isEmpty(), "customer still owes after netting");
+        }
+        assertEquals(Money.ZERO, debts.applyPayment(a, b, Money.ofCents(1_000)));
+    }
+
+    @Test
+    public void nettingKeepsEveryNetPosition() throws Exception {
+        UUID a = newCustomer();
+        UUID b = newCustomer();
+        UUID c = newCustomer();
+        LocalDateTime now = LocalDateTime.now();
+        debt(a, b, 3_000, now);
+        debt(b, c, 1_000, now);
+        debt(c, a, 500, now);
+        debt(b, a, 500, now);
+
+        NettingResult result = debts.netAll();
+
+        assertEquals(4, result.getDebtsBefore());
+        assertEquals(Money.ofCents(2_000), result.getAmountAfter());
+        // a owes 2000 net, b is owed 1500 and c 500, in at most two debts, all from a
+        List<Debt> owed = debts.findActiveDebtsByDebtorId(a);
+        assertTrue(owed.size() <= 2);
+        assertTrue(debts.findActiveDebtsByDebtorId(b).isEmpty());
+        assertTrue(debts.findActiveDebtsByDebtorId(c).isEmpty());
+        Map<UUID, Money> byCreditor = new HashMap<>();
+        for (Debt debt : owed) {
+            byCreditor.merge(debt.getCreditorId(), debt.getAmount(), Money::plus);
+        }
+        assertEquals(Map.of(b, Money.ofCents(1_500), c, Money.ofCents(500)), byCreditor);
+
+        // The netted debt is paid down like any other
+        assertEquals(Money.ofCents(1_500), debts.applyPayment(a, b, Money.ofCents(2_000)));
+        assertEquals(Money.ofCents(500), debts.applyPayment(a, c, Money.ofCents(500)));
+        assertTrue(debts.findActiveDebtsByDebtorId(a).isEmpty());
+    }
+
+    private static UUID newCustomer() throws Exception {
+        return customers.save(TestDatabase.newCustomer("debt", 0)).getId();
+    }
+
+    private static Debt debt(UUID debtor, UUID creditor, long cents, LocalDateTime createdAt) {
+        Debt debt = new Debt();
+        debt.setDebtorId(debtor);
+        debt.setCreditorId(creditor);
+        debt.setAmount(Money.ofCents(cents));
+        debt.setCreatedAt(createdAt);
+        return debts.save(debt);
+    }
+
+    private static Map<UUID, Money> activeAmounts(UUID debtor) {
+        Map<UUID, Money> amounts = new HashMap<>();
+        for (Debt debt : debts.findActiveDebtsByDebtorId(debtor)) {
+            amounts.put(debt.getId(), debt.getAmount());
+        }
+        return amounts;
+    }
+}
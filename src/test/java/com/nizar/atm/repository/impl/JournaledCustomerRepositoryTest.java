@@ -0,0 +1,99 @@
+package com.nizar.atm.repository.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nizar.atm.TestDatabase;
+import com.nizar.atm.config.DatabaseManager;
+import com.nizar.atm.journal.LedgerJournal;
+import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.CustomerStatus;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.repository.InactiveAccountException;
+import org.junit.jupiter.api.Test;
+
+public class JournaledCustomerRepositoryTest {
+    private static final CustomerRepositoryImpl customers = new CustomerRepositoryImpl(TestDatabase.get());
+
+    @Test
+    public void deactivatedCustomersCanNoLongerBeDebited() throws Exception {
+        JournaledCustomerRepository repository = new JournaledCustomerRepository(customers, 100);
+        try {
+            Customer customer = repository.save(TestDatabase.newCustomer("journal-inactive", 10_000));
+            assertEquals(Money.ofCents(9_000), repository.debit(customer.getId(), Money.ofCents(1_000)).orElseThrow());
+
+            Customer deactivated = repository.findById(customer.getId()).orElseThrow();
+            deactivated.setStatus(CustomerStatus.INACTIVE);
+            repository.save(deactivated);
+
+            assertThrows(InactiveAccountException.class, () -> repository.debit(customer.getId(), Money.ofCents(1_000)));
+        } finally {
+            repository.close();
+        }
+    }
+
+    @Test
+    public void keepsAtMostMaxAccountsOnceTheirBalancesAreApplied() throws Exception {
+        JournaledCustomerRepository repository = new JournaledCustomerRepository(customers, 2);
+        List<Customer> saved = new ArrayList<>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                saved.add(customers.save(TestDatabase.newCustomer("journal-evict", 10_000)));
+            }
+            for (Customer customer : saved) {
+                repository.debit(customer.getId(), Money.ofCents(1_000));
+            }
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (repository.getAccountCount() > 2 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            assertTrue(repository.getAccountCount() <= 2);
+
+            // Dropped accounts are loaded again with the balance that was applied
+            for (Customer customer : saved) {
+                assertEquals(Money.ofCents(8_000), repository.debit(customer.getId(), Money.ofCents(1_000)).orElseThrow());
+            }
+        } finally {
+            repository.close();
+        }
+        for (Customer customer : saved) {
+            assertEquals(Money.ofCents(8_000), customers.findById(customer.getId()).orElseThrow().getBalance());
+        }
+    }
+
+    @Test
+    public void drainingAppliesTheJournalAndDeletesIt() throws Exception {
+        DatabaseManager dbManager = TestDatabase.get();
+        Customer customer = customers.save(TestDatabase.newCustomer("journal-drain", 10_000));
+
+        // What a journaled run leaves when it stops before writing its balances to the table
+        Path path = Paths.get(dbManager.getDatabasePath() + ".journal").toAbsolutePath();
+        try (LedgerJournal journal = LedgerJournal.open(path, 1024 * 1024, checkpoint(dbManager),
+                (sequence, account, cents) -> { })) {
+            journal.sync(journal.append(customer.getId(), 7_000));
+        }
+
+        JournaledCustomerRepository.drain(dbManager);
+
+        assertFalse(JournaledCustomerRepository.hasJournal(dbManager));
+        assertEquals(Money.ofCents(7_000), customers.findById(customer.getId()).orElseThrow().getBalance());
+    }
+
+    private static long checkpoint(DatabaseManager dbManager) throws Exception {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT applied_sequence FROM ledger_journal_checkpoint")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.nizar.atm.repository.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import com.nizar.atm.TestDatabase;
+import com.nizar.atm.config.DatabaseManager;
+import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.CustomerStatus;
+import com.nizar.atm.model.Money;
+import org.junit.jupiter.api.Test;
+
+public class ShardedCustomerRepositoryTest {
+    private static final int SHARDS = 2;
+    private static final ShardedCustomerRepository repository = newRepository();
+
+    private static ShardedCustomerRepository newRepository() {
+        TestDatabase.get();
+        return new ShardedCustomerRepository(SHARDS);
+    }
+
+    @Test
+    public void accountNumbersStayOnTheirShard() {
+        BigInteger accountNumber = BigInteger.valueOf(123_456_789L);
+        int shard = ShardedCustomerRepository.shardOf(accountNumber, 8);
+        assertTrue(shard >= 0 && shard < 8);
+        assertEquals(shard, ShardedCustomerRepository.shardOf(new BigInteger("123456789"), 8));
+    }
+
+    @Test
+    public void consecutiveAccountNumbersSpreadEvenly() {
+        int shardCount = 4;
+        int[] counts = new int[shardCount];
+        int total = 100_000;
+        for (long i = 0; i < total; i++) {
+            counts[ShardedCustomerRepository.shardOf(BigInteger.valueOf(i), shardCount)]++;
+        }
+        for (int count : counts) {
+            assertTrue(Math.abs(count - total / shardCount) < total / 100, "uneven shard size " + count);
+        }
+    }
+
+    @Test
+    public void missingAccountNumbersGoToTheFirstShard() {
+        assertEquals(0, ShardedCustomerRepository.shardOf(null, 8));
+    }
+
+    @Test
+    public void transfersBetweenShardsCommitBothHalves() throws Exception {
+        Customer sender = repository.save(customerOnShard("shard-sender", 10_000, 0));
+        Customer recipient = repository.save(customerOnShard("shard-recipient", 1_000, 1));
+
+        assertEquals(Money.ofCents(7_500),
+                repository.transfer(sender.getId(), recipient.getId(), Money.ofCents(2_500)).orElseThrow());
+
+        assertEquals(Money.ofCents(7_500), repository.findById(sender.getId()).orElseThrow().getBalance());
+        assertEquals(Money.ofCents(3_500), repository.findById(recipient.getId()).orElseThrow().getBalance());
+        UUID transferId = findTransferId(0, sender.getId());
+        assertEquals("COMMITTED", findState(0, transferId, "DEBIT"));
+        assertEquals("COMMITTED", findState(1, transferId, "CREDIT"));
+        assertEquals("COMMITTED", findDecision(transferId));
+    }
+
+    @Test
+    public void transfersToInactiveRecipientsRefundTheSender() throws Exception {
+        Customer sender = repository.save(customerOnShard("shard-refunded", 10_000, 0));
+        Customer recipient = customerOnShard("shard-inactive", 1_000, 1);
+        recipient.setStatus(CustomerStatus.INACTIVE);
+        recipient = repository.save(recipient);
+        UUID recipientId = recipient.getId();
+
+        assertThrows(Exception.class, () -> repository.transfer(sender.getId(), recipientId, Money.ofCents(2_500)));
+
+        assertEquals(Money.ofCents(10_000), repository.findById(sender.getId()).orElseThrow().getBalance());
+        assertEquals(Money.ofCents(1_000), repository.findById(recipientId).orElseThrow().getBalance());
+        assertEquals("ABORTED", findState(0, findTransferId(0, sender.getId()), "DEBIT"));
+    }
+
+    @Test
+    public void resolvesDecidedHalvesByCommittingThem() throws Exception {
+        Customer sender = repository.save(customerOnShard("shard-decided-sender", 7_500, 0));
+        Customer recipient = customerOnShard("shard-decided-recipient", 1_000, 1);
+        // Deactivated after the transfer was decided; the credit is still owed
+        recipient.setStatus(CustomerStatus.INACTIVE);
+        recipient = repository.save(recipient);
+        UUID transferId = UUID.randomUUID();
+        insertPrepared(0, transferId, "DEBIT", sender.getId(), 2_500);
+        insertPrepared(1, transferId, "CREDIT", recipient.getId(), 2_500);
+        insertDecision(transferId);
+
+        repository.resolvePrepared(Duration.ZERO);
+
+        assertEquals(Money.ofCents(7_500), repository.findById(sender.getId()).orElseThrow().getBalance());
+        assertEquals(Money.ofCents(3_500), repository.findById(recipient.getId()).orElseThrow().getBalance());
+        assertEquals("COMMITTED", findState(0, transferId, "DEBIT"));
+        assertEquals("COMMITTED", findState(1, transferId, "CREDIT"));
+    }
+
+    @Test
+    public void resolvesUndecidedHalvesByRefundingTheSender() throws Exception {
+        // The sender was debited, then the process stopped before the credit was prepared
+        Customer sender = repository.save(customerOnShard("shard-undecided", 7_500, 0));
+        UUID transferId = UUID.randomUUID();
+        insertPrepared(0, transferId, "DEBIT", sender.getId(), 2_500);
+        assertNull(findDecision(transferId));
+
+        repository.resolvePrepared(Duration.ZERO);
+
+        assertEquals(Money.ofCents(10_000), repository.findById(sender.getId()).orElseThrow().getBalance());
+        assertEquals("ABORTED", findState(0, transferId, "DEBIT"));
+        assertEquals("ABORTED", findDecision(transferId));
+    }
+
+    @Test
+    public void theResolverOutlivesTheRepositoriesThatStartedIt() {
+        new ShardedCustomerRepository(SHARDS).close();
+
+        assertTrue(ShardedCustomerRepository.isResolving());
+        assertThrows(IllegalStateException.class, () -> new ShardedCustomerRepository(SHARDS + 1));
+    }
+
+    private static Customer customerOnShard(String prefix, long balanceCents, int shard) {
+        while (true) {
+            Customer customer = TestDatabase.newCustomer(prefix, balanceCents);
+            if (ShardedCustomerRepository.shardOf(customer.getAccountNumber(), SHARDS) == shard) {
+                return customer;
+            }
+        }
+    }
+
+    private static void insertPrepared(int shard, UUID transferId, String direction, UUID customerId, long cents)
+            throws SQLException {
+        DatabaseManager database = DatabaseManager.getShard(shard);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try (Connection conn = database.getConnection();
+             PreparedStatement insert = conn.prepareStatement("INSERT INTO shard_transfers "
+                     + "(id, direction, customer_id, amount, state, created_at, updated_at) "
+                     + "VALUES (?, ?, ?, ?, 'PREPARED', ?, ?)")) {
+            insert.setString(1, transferId.toString());
+            insert.setString(2, direction);
+            insert.setString(3, customerId.toString());
+            insert.setBigDecimal(4, Money.ofCents(cents).toBigDecimal());
+            insert.setTimestamp(5, now);
+            insert.setTimestamp(6, now);
+            insert.executeUpdate();
+        }
+    }
+
+    private static void insertDecision(UUID transferId) throws SQLException {
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO shard_transfer_decisions (id, decided_at, outcome) VALUES (?, ?, 'COMMITTED')")) {
+            insert.setString(1, transferId.toString());
+            insert.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now()));
+            insert.executeUpdate();
+        }
+    }
+
+    private static UUID findTransferId(int shard, UUID customerId) throws SQLException {
+        try (Connection conn = DatabaseManager.getShard(shard).getConnection();
+             PreparedStatement find = conn.prepareStatement("SELECT id FROM shard_transfers WHERE customer_id = ?")) {
+            find.setString(1, customerId.toString());
+            try (ResultSet rs = find.executeQuery()) {
+                assertTrue(rs.next());
+                return UUID.fromString(rs.getString(1));
+            }
+        }
+    }
+
+    private static String findState(int shard, UUID transferId, String direction) throws SQLException {
+        try (Connection conn = DatabaseManager.getShard(shard).getConnection();
+             PreparedStatement find = conn.prepareStatement(
+                     "SELECT state FROM shard_transfers WHERE id = ? AND direction = ?")) {
+            find.setString(1, transferId.toString());
+            find.setString(2, direction);
+            try (ResultSet rs = find.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private static String findDecision(UUID transferId) throws SQLException {
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement find = conn.prepareStatement(
+                     "SELECT outcome FROM shard_transfer_decisions WHERE id = ?")) {
+            find.setString(1, transferId.toString());
+            try (ResultSet rs = find.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+}
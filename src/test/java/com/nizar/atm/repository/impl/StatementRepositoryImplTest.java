@@ -0,0 +1,92 @@
+package com.nizar.atm.repository.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import com.nizar.atm.TestDatabase;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.model.StatementLine;
+import com.nizar.atm.model.Transaction;
+import com.nizar.atm.model.TransactionStatus;
+import com.nizar.atm.model.TransactionType;
+import org.junit.jupiter.api.Test;
+
+public class StatementRepositoryImplTest {
+    private static final CustomerRepositoryImpl customers = new CustomerRepositoryImpl(TestDatabase.get());
+    private static final TransactionRepositoryImpl ledger = new TransactionRepositoryImpl();
+    private static final StatementRepositoryImpl statements = new StatementRepositoryImpl();
+
+    @Test
+    public void incrementalRollupsMatchARebuild() throws Exception {
+        UUID customer = customers.save(TestDatabase.newCustomer("rollup", 0)).getId();
+        UUID other = customers.save(TestDatabase.newCustomer("rollup-other", 0)).getId();
+
+        // Two batches touching the same days, across a month boundary, with failed attempts
+        ledger.save(transaction(customer, null, TransactionType.WITHDRAW, 1_000, TransactionStatus.SUCCESS, "2025-01-30T10:00"));
+        ledger.save(transaction(customer, null, TransactionType.WITHDRAW, 500, TransactionStatus.FAILED, "2025-01-30T11:00"));
+        ledger.save(transaction(customer, other, TransactionType.TRANSFER, 250, TransactionStatus.SUCCESS, "2025-01-31T23:59:59"));
+        ledger.saveAndFlush(transaction(customer, null, TransactionType.WITHDRAW, 2_000, TransactionStatus.SUCCESS, "2025-02-01T00:00"));
+        ledger.save(transaction(customer, null, TransactionType.WITHDRAW, 3_000, TransactionStatus.SUCCESS, "2025-01-30T12:00"));
+        ledger.save(transaction(customer, other, TransactionType.TRANSFER, 125, TransactionStatus.SUCCESS, "2025-03-15T09:30"));
+        ledger.saveAndFlush(transaction(other, customer, TransactionType.TRANSFER, 10_000, TransactionStatus.SUCCESS, "2025-01-30T10:00"));
+
+        List<String> daily = daily(customer);
+        List<String> monthly = monthly(customer);
+        assertEquals(List.of(
+                line("2025-03-15", TransactionType.TRANSFER, 1, 125),
+                line("2025-02-01", TransactionType.WITHDRAW, 1, 2_000),
+                line("2025-01-31", TransactionType.TRANSFER, 1, 250),
+                line("2025-01-30", TransactionType.WITHDRAW, 3, 4_000)), daily);
+        assertEquals(List.of(
+                line("2025-03-01", TransactionType.TRANSFER, 1, 125),
+                line("2025-02-01", TransactionType.WITHDRAW, 1, 2_000),
+                line("2025-01-01", TransactionType.TRANSFER, 1, 250),
+                line("2025-01-01", TransactionType.WITHDRAW, 3, 4_000)), monthly);
+
+        ledger.rebuildRollups();
+        assertEquals(daily, daily(customer));
+        assertEquals(monthly, monthly(customer));
+        assertEquals(List.of(line("2025-01-01", TransactionType.TRANSFER, 1, 10_000)), monthly(other));
+
+        // Later batches keep adding to the rebuilt tables
+        ledger.saveAndFlush(transaction(customer, null, TransactionType.WITHDRAW, 1, TransactionStatus.SUCCESS, "2025-01-02T08:00"));
+        assertEquals(line("2025-01-01", TransactionType.WITHDRAW, 4, 4_001), monthly(customer).get(3));
+    }
+
+    private static Transaction transaction(UUID customerId, UUID targetId, TransactionType type, long cents,
+                                           TransactionStatus status, String at) {
+        return Transaction.builder()
+                .transactionType(type)
+                .customerId(customerId)
+                .targetCustomerId(targetId)
+                .amount(Money.ofCents(cents))
+                .status(status)
+                .createdAt(LocalDateTime.parse(at))
+                .build();
+    }
+
+    private static List<String> daily(UUID customerId) {
+        return format(statements.findDailySummary(customerId, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 12, 31)));
+    }
+
+    private static List<String> monthly(UUID customerId) {
+        return format(statements.findMonthlyStatement(customerId, YearMonth.of(2025, 1), YearMonth.of(2025, 12)));
+    }
+
+    private static List<String> format(List<StatementLine> lines) {
+        return lines.stream()
+                .map(l -> line(l.getPeriod().toString(), l.getTransactionType(), l.getTransactionCount(),
+                        l.getTotalAmount().getCents()))
+                .collect(Collectors.toList());
+    }
+
+    private static String line(String period, TransactionType type, long count, long cents) {
+        return period + " " + type + " " + count + " " + cents;
+    }
+}
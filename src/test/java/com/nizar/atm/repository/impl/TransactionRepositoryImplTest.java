@@ -0,0 +1,194 @@
+package com.nizar.atm.repository.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import com.nizar.atm.TestDatabase;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.model.Transaction;
+import com.nizar.atm.model.TransactionCursor;
+import com.nizar.atm.model.TransactionPage;
+import com.nizar.atm.model.TransactionStatus;
+import com.nizar.atm.model.TransactionType;
+import org.junit.jupiter.api.Test;
+
+public class TransactionRepositoryImplTest {
+    private static final CustomerRepositoryImpl customers = new CustomerRepositoryImpl(TestDatabase.get());
+    private static final TransactionRepositoryImpl ledger = new TransactionRepositoryImpl();
+
+    // Newest first, ties broken by id in the database's UUID order, which is that of the text form
+    private static final Comparator<Transaction> NEWEST_FIRST = Comparator
+            .comparing(Transaction::getCreatedAt)
+            .thenComparing(t -> t.getId().toString())
+            .reversed();
+
+    @Test
+    public void pagesDoNotSkipOrRepeatRowsWithEqualTimestamps() throws Exception {
+        UUID customer = customers.save(TestDatabase.newCustomer("pages", 0)).getId();
+        LocalDateTime same = LocalDateTime.parse("2025-06-01T12:00:00");
+        List<Transaction> saved = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            saved.add(ledger.save(transaction(customer, null, TransactionType.WITHDRAW, same)));
+        }
+        saved.add(ledger.save(transaction(customer, null, TransactionType.WITHDRAW, same.plusSeconds(1))));
+        saved.add(ledger.save(transaction(customer, null, TransactionType.WITHDRAW, same.minusSeconds(1))));
+        saved.sort(NEWEST_FIRST);
+
+        // Page boundaries fall inside the run of equal timestamps, and the last page is exactly full
+        List<Transaction> read = new ArrayList<>();
+        TransactionCursor cursor = null;
+        int pages = 0;
+        do {
+            TransactionPage page = ledger.findPageByCustomerId(customer, cursor, 4);
+            read.addAll(page.getTransactions());
+            cursor = page.getNext();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(ids(saved), ids(read));
+    }
+
+    @Test
+    public void transferPagesIncludeBothDirectionsAcrossEqualTimestamps() throws Exception {
+        UUID customer = customers.save(TestDatabase.newCustomer("transfer-pages", 0)).getId();
+        UUID other = customers.save(TestDatabase.newCustomer("transfer-pages-other", 0)).getId();
+        LocalDateTime same = LocalDateTime.parse("2025-06-02T08:30:00");
+        List<Transaction> transfers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            transfers.add(ledger.save(transaction(customer, other, TransactionType.TRANSFER, same)));
+            transfers.add(ledger.save(transaction(other, customer, TransactionType.TRANSFER, same)));
+        }
+        ledger.save(transaction(customer, null, TransactionType.WITHDRAW, same));
+        transfers.sort(NEWEST_FIRST);
+
+        List<Transaction> read = new ArrayList<>();
+        TransactionPage page = ledger.findTransferPage(customer, null, 3);
+        read.addAll(page.getTransactions());
+        while (page.hasNext()) {
+            page = ledger.findTransferPage(customer, page.getNext(), 3);
+            read.addAll(page.getTransactions());
+        }
+        assertEquals(ids(transfers), ids(read));
+    }
+
+    @Test
+    public void streamResumesInsideARunOfEqualTimestamps() throws Exception {
+        UUID customer = customers.save(TestDatabase.newCustomer("stream", 0)).getId();
+        LocalDateTime same = LocalDateTime.parse("2025-06-03T00:00:00");
+        // More rows at one instant than the default fetch size of 1000
+        for (int i = 0; i < 1_200; i++) {
+            ledger.save(transaction(customer, null, TransactionType.WITHDRAW, same));
+        }
+        ledger.save(transaction(customer, null, TransactionType.WITHDRAW, same.plusDays(1)));
+
+        List<Transaction> streamed = new ArrayList<>();
+        long count = ledger.streamByCustomerId(customer, same, same.plusDays(1), streamed::add);
+
+        assertEquals(1_200, count);
+        assertEquals(1_200, new HashSet<>(ids(streamed)).size());
+        List<Transaction> sorted = new ArrayList<>(streamed);
+        sorted.sort(NEWEST_FIRST.reversed());
+        assertEquals(ids(sorted), ids(streamed));
+        assertFalse(streamed.stream().anyMatch(t -> t.getCreatedAt().isAfter(same)));
+        assertTrue(ledger.findPageByCustomerId(customer, null, 1).hasNext());
+    }
+
+    @Test
+    public void archivedHistoryIsReadOnlyFromTheCustomersMonths() throws Exception {
+        UUID customer = customers.save(TestDatabase.newCustomer("archive", 0)).getId();
+        UUID recipient = customers.save(TestDatabase.newCustomer("archive-recipient", 0)).getId();
+        UUID other = customers.save(TestDatabase.newCustomer("archive-other", 0)).getId();
+        UUID fresh = customers.save(TestDatabase.newCustomer("archive-fresh", 0)).getId();
+        ledger.save(transaction(customer, null, TransactionType.WITHDRAW, LocalDateTime.parse("2020-01-10T10:00")));
+        ledger.save(transaction(customer, recipient, TransactionType.TRANSFER, LocalDateTime.parse("2020-03-10T10:00")));
+        ledger.save(transaction(other, null, TransactionType.WITHDRAW, LocalDateTime.parse("2020-02-10T10:00")));
+        ledger.save(transaction(customer, null, TransactionType.WITHDRAW, LocalDateTime.parse("2026-01-10T10:00")));
+        ledger.save(transaction(fresh, null, TransactionType.WITHDRAW, LocalDateTime.parse("2026-01-10T10:00")));
+        ledger.flush();
+
+        TransactionArchive archive = new TransactionArchive();
+        assertEquals(3, archive.archive(LocalDate.of(2020, 12, 31)));
+
+        // Months come from the directory, so another instance sees them too
+        List<YearMonth> months = List.of(YearMonth.of(2020, 1), YearMonth.of(2020, 2), YearMonth.of(2020, 3));
+        assertEquals(months, new TransactionArchive().getMonths());
+        assertEquals(months, archive.monthsBetween(customer, null, null));
+        assertEquals(List.of(YearMonth.of(2020, 2), YearMonth.of(2020, 3)),
+                archive.monthsBetween(customer, LocalDateTime.parse("2020-02-15T00:00"), null));
+        assertEquals(List.of(YearMonth.of(2020, 3)), archive.monthsBetween(recipient, null, null));
+        assertEquals(List.of(), archive.monthsBetween(fresh, null, null));
+        assertEquals(List.of(), archive.monthsBetween(customer, null, LocalDateTime.parse("2019-12-31T00:00")));
+
+        // Short pages still find the archived rows
+        TransactionPage page = ledger.findPageByCustomerId(customer, null, 10);
+        assertEquals(3, page.getTransactions().size());
+        assertFalse(page.hasNext());
+        assertEquals(1, ledger.findTransferPage(recipient, null, 10).getTransactions().size());
+        assertEquals(1, ledger.findPageByCustomerId(fresh, null, 10).getTransactions().size());
+        assertEquals(2, ledger.streamByCustomerId(customer, LocalDateTime.parse("2020-01-01T00:00"),
+                LocalDateTime.parse("2021-01-01T00:00"), t -> { }));
+
+        // Ranges lost (as before archived_customers existed) are recovered from the files
+        try (Connection conn = TestDatabase.get().getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM archived_customers");
+        }
+        assertEquals(months, new TransactionArchive().monthsBetween(customer, null, null));
+        assertEquals(List.of(YearMonth.of(2020, 2)), archive.monthsBetween(other, null, null));
+    }
+
+    @Test
+    public void failedBatchesStoreNoneOfTheirRows() throws Exception {
+        UUID customer = customers.save(TestDatabase.newCustomer("failed-batch", 0)).getId();
+        LocalDateTime at = LocalDateTime.parse("2025-06-04T00:00:00");
+        ledger.save(transaction(customer, null, TransactionType.WITHDRAW, at));
+        // Appended whole, but refers to no customer, so the batch fails as it is stored
+        Transaction dangling = transaction(UUID.randomUUID(), null, TransactionType.WITHDRAW, at);
+        assertThrows(RuntimeException.class, () -> ledger.saveAndFlush(dangling));
+
+        // Neither row was stored, and the next batch is
+        Transaction next = ledger.saveAndFlush(transaction(customer, null, TransactionType.WITHDRAW, at.plusSeconds(1)));
+        assertEquals(List.of(next.getId()), ids(ledger.findByCustomerId(customer, 10)));
+    }
+
+    @Test
+    public void closedLedgersRejectWritesInsteadOfWaitingForThem() {
+        TransactionRepositoryImpl closed = new TransactionRepositoryImpl();
+        closed.close();
+        assertThrows(IllegalStateException.class, closed::flush);
+        assertThrows(IllegalStateException.class, () -> closed.save(transaction(UUID.randomUUID(), null,
+                TransactionType.WITHDRAW, LocalDateTime.now())));
+    }
+
+    private static Transaction transaction(UUID customerId, UUID targetId, TransactionType type, LocalDateTime at) {
+        return Transaction.builder()
+                .transactionType(type)
+                .customerId(customerId)
+                .targetCustomerId(targetId)
+                .amount(Money.ofCents(100))
+                .status(TransactionStatus.SUCCESS)
+                .createdAt(at)
+                .build();
+    }
+
+    private static List<UUID> ids(List<Transaction> transactions) {
+        List<UUID> ids = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            ids.add(transaction.getId());
+        }
+        return ids;
+    }
+}
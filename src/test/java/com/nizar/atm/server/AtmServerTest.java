@@ -0,0 +1,226 @@
+package com.nizar.atm.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import com.nizar.atm.model.Money;
+import com.nizar.atm.service.ATMService;
+import com.nizar.atm.service.session.Session;
+import com.nizar.atm.service.session.SessionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class AtmServerTest {
+    private final StubService service = new StubService();
+    private AtmServer server;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = new AtmServer(service, 2, Executors.newFixedThreadPool(4));
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    public void stopServer() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void answersEachCommandWithItsResponse() throws IOException {
+        try (Terminal terminal = new Terminal(server.getPort())) {
+            terminal.send("login alice 1234\n");
+            assertEquals("Welcome alice!", terminal.response());
+            terminal.send("withdraw 12.5\r\n");
+            assertEquals("Withdrawn 12.50\nby alice", terminal.response());
+            terminal.send("transfer 8712143069253745 1\n");
+            assertEquals("Transferred 1.00 to 8712143069253745", terminal.response());
+            terminal.send("exit\n");
+            assertEquals("Goodbye!", terminal.response());
+            assertEquals(null, terminal.in.readLine());
+        }
+        assertTrue(service.sessions.isEmpty(), "session closed with the connection");
+    }
+
+    @Test
+    public void answersPipelinedCommandsInOrder() throws IOException {
+        try (Terminal terminal = new Terminal(server.getPort())) {
+            StringBuilder script = new StringBuilder("login bob 1\n");
+            for (int i = 1; i <= 200; i++) {
+                script.append(i % 50 == 0 ? "withdraw x\n" : "withdraw " + i + "\n");
+            }
+            // Split mid-line to exercise partial lines
+            String text = script.toString();
+            terminal.send(text.substring(0, 7));
+            terminal.send(text.substring(7));
+
+            assertEquals("Welcome bob!", terminal.response());
+            for (int i = 1; i <= 200; i++) {
+                String expected = i % 50 == 0 ? "Error: Invalid number format" : "Withdrawn " + i + ".00\nby bob";
+                assertEquals(expected, terminal.response());
+            }
+        }
+    }
+
+    @Test
+    public void keepsManyIdleConnectionsOpen() throws Exception {
+        List<Terminal> idle = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                idle.add(new Terminal(server.getPort()));
+            }
+            try (Terminal terminal = new Terminal(server.getPort())) {
+                terminal.send("login carol 1\n");
+                assertEquals("Welcome carol!", terminal.response());
+            }
+            for (int attempt = 0; attempt < 100 && server.getConnectionCount() != idle.size(); attempt++) {
+                Thread.sleep(20);
+            }
+            assertEquals(idle.size(), server.getConnectionCount());
+        } finally {
+            for (Terminal terminal : idle) {
+                terminal.close();
+            }
+        }
+    }
+
+    @Test
+    public void closesConnectionsThatSendOverlongLines() throws IOException {
+        try (Terminal terminal = new Terminal(server.getPort())) {
+            terminal.send("login " + "x".repeat(2000) + "\n");
+            assertEquals("Error: Line too long", terminal.response());
+            assertEquals(null, terminal.in.readLine());
+        }
+    }
+
+    private static final class Terminal implements AutoCloseable {
+        private final Socket socket;
+        private final OutputStream out;
+        private final BufferedReader in;
+
+        private Terminal(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            out = socket.getOutputStream();
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        private void send(String text) throws IOException {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        private String response() throws IOException {
+            StringBuilder response = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null && !line.isEmpty()) {
+                response.append(response.length() == 0 ? "" : "\n").append(line);
+            }
+            return response.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * Answers with the arguments it was given, remembering who is logged in to each session.
+     */
+    private static final class StubService implements ATMService {
+        private final SessionManager sessionManager = new SessionManager();
+        private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+        private final ConcurrentHashMap<Session, String> users = new ConcurrentHashMap<>();
+
+        @Override
+        public Session openSession() {
+            Session session = sessionManager.open();
+            sessions.add(session);
+            return session;
+        }
+
+        @Override
+        public void closeSession(Session session) {
+            sessions.remove(session);
+            users.remove(session);
+            sessionManager.close(session);
+        }
+
+        @Override
+        public int closeIdleSessions(Duration maxIdle) {
+            return sessionManager.closeIdle(maxIdle);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String register(String name, Money initialBalance) {
+            return "Registered " + name;
+        }
+
+        @Override
+        public String login(Session session, String name, String pin) {
+            users.put(session, name);
+            return "Welcome " + name + "!";
+        }
+
+        @Override
+        public String withdraw(Session session, Money amount) {
+            return "Withdrawn " + amount + "\nby " + users.get(session);
+        }
+
+        @Override
+        public String transfer(Session session, BigInteger targetAccount, Money amount) {
+            return "Transferred " + amount + " to " + targetAccount;
+        }
+
+        @Override
+        public String statement(Session session, int months) {
+            return "Statement";
+        }
+
+        @Override
+        public String rebuildStatements() {
+            return "";
+        }
+
+        @Override
+        public String archiveHistory() {
+            return "";
+        }
+
+        @Override
+        public String netDebts() {
+            return "";
+        }
+
+        @Override
+        public String importCustomers(String csvPath, String credentialsPath) {
+            return "";
+        }
+
+        @Override
+        public String logout(Session session) {
+            users.remove(session);
+            return "Logout successful!";
+        }
+    }
+}
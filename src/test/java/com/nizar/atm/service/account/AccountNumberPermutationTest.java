@@ -0,0 +1,40 @@
+package com.nizar.atm.service.account;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class AccountNumberPermutationTest {
+
+    @Test
+    public void consecutiveCountersMapToDistinctValuesInDomain() {
+        AccountNumberPermutation permutation = new AccountNumberPermutation(42L);
+        Set<Long> seen = new HashSet<>();
+        for (long i = 0; i < 200_000; i++) {
+            long value = permutation.permute(i);
+            assertTrue(value >= 0 && value < AccountNumberPermutation.DOMAIN);
+            assertTrue(seen.add(value), "duplicate value for counter " + i);
+        }
+    }
+
+    @Test
+    public void differentKeysGiveDifferentSequences() {
+        AccountNumberPermutation first = new AccountNumberPermutation(1L);
+        AccountNumberPermutation second = new AccountNumberPermutation(2L);
+        assertEquals(first.permute(7), new AccountNumberPermutation(1L).permute(7));
+        assertNotEquals(first.permute(7), second.permute(7));
+    }
+
+    @Test
+    public void rejectsValuesOutsideDomain() {
+        AccountNumberPermutation permutation = new AccountNumberPermutation(42L);
+        assertThrows(IllegalArgumentException.class, () -> permutation.permute(AccountNumberPermutation.DOMAIN));
+        assertThrows(IllegalArgumentException.class, () -> permutation.permute(-1));
+    }
+}
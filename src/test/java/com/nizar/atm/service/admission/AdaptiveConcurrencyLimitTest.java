@@ -0,0 +1,72 @@
+package com.nizar.atm.service.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveConcurrencyLimitTest {
+    private static final long MILLI = 1_000_000L;
+
+    private static void feed(AdaptiveConcurrencyLimit limit, int calls, long latencyNanos) {
+        for (int i = 0; i < calls; i++) {
+            limit.record(latencyNanos, limit.get());
+        }
+    }
+
+    @Test
+    public void growsWhileLatencyStaysUsual() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 2, 100, 2.0);
+        feed(limit, 2_000, MILLI);
+        assertTrue(limit.get() > 20, "limit " + limit.get());
+        assertTrue(limit.get() <= 100);
+    }
+
+    @Test
+    public void shrinksWhenLatencyRises() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(50, 2, 100, 2.0);
+        feed(limit, 200, MILLI);
+        int before = limit.get();
+        feed(limit, 200, 10 * MILLI);
+        assertTrue(limit.get() < before, "limit " + limit.get() + " not below " + before);
+    }
+
+    @Test
+    public void staysWithinBounds() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 4, 12, 1.5);
+        feed(limit, 200, MILLI);
+        assertEquals(12, limit.get());
+        int lowest = limit.get();
+        for (int i = 0; i < 200; i++) {
+            limit.record(1_000 * MILLI, limit.get());
+            lowest = Math.min(lowest, limit.get());
+        }
+        assertEquals(4, lowest);
+    }
+
+    @Test
+    public void lastingSlownessBecomesTheUsual() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 2, 100, 2.0);
+        feed(limit, 200, MILLI);
+        feed(limit, 200, 10 * MILLI);
+        int lowered = limit.get();
+        feed(limit, 5_000, 10 * MILLI);
+        assertTrue(limit.get() > lowered, "limit " + limit.get() + " stuck at " + lowered);
+    }
+
+    @Test
+    public void leavesLimitAloneWhenMostlyUnused() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(40, 2, 100, 2.0);
+        for (int i = 0; i < 1_000; i++) {
+            limit.record(MILLI, 1);
+        }
+        assertEquals(40, limit.get());
+    }
+
+    @Test
+    public void rejectsInconsistentBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimit(1, 2, 10, 2.0));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimit(5, 2, 10, 0.5));
+    }
+}
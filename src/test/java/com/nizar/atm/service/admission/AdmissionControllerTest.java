@@ -0,0 +1,81 @@
+package com.nizar.atm.service.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.nizar.atm.service.admission.AdmissionController.Operation;
+import org.junit.jupiter.api.Test;
+
+public class AdmissionControllerTest {
+
+    private static AdmissionController singleSlot(int queueCapacity, long queueTimeoutMillis) {
+        return new AdmissionController(new AdaptiveConcurrencyLimit(1, 1, 1, 2.0), queueCapacity, queueTimeoutMillis, null);
+    }
+
+    @Test
+    public void rejectsAtOnceWhenQueueIsFull() {
+        AdmissionController admission = singleSlot(0, 10_000);
+        long held = admission.acquire(Operation.WITHDRAW);
+        assertTrue(held >= 0);
+
+        long start = System.nanoTime();
+        assertEquals(-1, admission.acquire(Operation.LOGIN));
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+
+        admission.release(held);
+        assertTrue(admission.acquire(Operation.LOGIN) >= 0);
+    }
+
+    @Test
+    public void rejectsWhenWaitRunsOut() {
+        AdmissionController admission = singleSlot(10, 20);
+        long held = admission.acquire(Operation.WITHDRAW);
+        assertEquals(-1, admission.acquire(Operation.TRANSFER));
+        assertEquals(0, admission.getQueued());
+        assertEquals(1, admission.getInFlight());
+        admission.release(held);
+        assertEquals(0, admission.getInFlight());
+    }
+
+    @Test
+    public void freedSlotGoesToHigherPriorityFirst() throws Exception {
+        AdmissionController admission = singleSlot(10, 10_000);
+        long held = admission.acquire(Operation.WITHDRAW);
+        List<Operation> admitted = Collections.synchronizedList(new ArrayList<>());
+
+        Thread login = start(admission, Operation.LOGIN, admitted);
+        awaitQueued(admission, 1);
+        Thread transfer = start(admission, Operation.TRANSFER, admitted);
+        awaitQueued(admission, 2);
+
+        admission.release(held);
+        login.join(10_000);
+        transfer.join(10_000);
+        assertEquals(List.of(Operation.TRANSFER, Operation.LOGIN), admitted);
+        assertEquals(0, admission.getInFlight());
+    }
+
+    private static Thread start(AdmissionController admission, Operation operation, List<Operation> admitted) {
+        Thread thread = new Thread(() -> {
+            long admittedAt = admission.acquire(operation);
+            if (admittedAt >= 0) {
+                admitted.add(operation);
+                admission.release(admittedAt);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitQueued(AdmissionController admission, int queued) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (admission.getQueued() < queued && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(queued, admission.getQueued());
+    }
+}
@@ -0,0 +1,77 @@
+package com.nizar.atm.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import com.nizar.atm.TestDatabase;
+import com.nizar.atm.model.Customer;
+import com.nizar.atm.model.ImportResult;
+import com.nizar.atm.model.Money;
+import com.nizar.atm.repository.impl.CustomerRepositoryImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CustomerImportServiceImplTest {
+    private static final CustomerRepositoryImpl repository = new CustomerRepositoryImpl(TestDatabase.get());
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void importsValidRowsAndListsTheRejectedOnes() throws Exception {
+        String prefix = "import-" + UUID.randomUUID();
+        Customer registered = repository.save(TestDatabase.newCustomer(prefix + "-registered", 100));
+        Path csv = dir.resolve("customers.csv");
+        Files.write(csv, List.of(
+                "name,initial balance",
+                prefix + "-alice,100.50",
+                "\"" + prefix + "-smith, bob\",0",
+                "",
+                prefix + "-alice,5",
+                registered.getName() + ",7",
+                prefix + "-carol,abc",
+                prefix + "-dave,-1",
+                ",10",
+                "no balance",
+                prefix + "-erin,1e3"), StandardCharsets.UTF_8);
+        Path credentials = dir.resolve("credentials.csv");
+
+        ImportResult result = new CustomerImportServiceImpl().importCustomers(csv, credentials);
+
+        assertEquals(2, result.getImported());
+        assertEquals(7, result.getRejected());
+        assertEquals(List.of(
+                "line,reason",
+                "5,duplicate name",
+                "7,invalid balance",
+                "8,balance must be non-negative and at most 9999999999999.99",
+                "9,empty name",
+                "10,expected name,balance",
+                "11,invalid balance",
+                "6,name already registered"), Files.readAllLines(credentials.resolveSibling("credentials.csv.rejected")));
+
+        List<String> issued = Files.readAllLines(credentials);
+        assertEquals("name,account_number,pin", issued.get(0));
+        assertEquals(3, issued.size());
+        assertCredentials(issued.get(1), prefix + "-alice", Money.ofCents(10_050));
+        assertTrue(issued.get(2).startsWith("\"" + prefix + "-smith, bob\","));
+        assertEquals(Money.ofCents(0), repository.findByName(prefix + "-smith, bob").orElseThrow().getBalance());
+        assertEquals(Money.ofCents(100), repository.findByName(registered.getName()).orElseThrow().getBalance());
+    }
+
+    private static void assertCredentials(String line, String name, Money balance) throws Exception {
+        String[] fields = line.split(",");
+        Customer customer = repository.findByName(name).orElseThrow();
+        assertEquals(name, fields[0]);
+        assertEquals(customer.getAccountNumber().toString(), fields[1]);
+        assertEquals(customer.getPinCode(), fields[2]);
+        assertEquals(6, fields[2].length());
+        assertEquals(balance, customer.getBalance());
+    }
+}
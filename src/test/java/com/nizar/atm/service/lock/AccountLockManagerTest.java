@@ -0,0 +1,145 @@
+package com.nizar.atm.service.lock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+public class AccountLockManagerTest {
+
+    @Test
+    public void roundsStripeCountUpToPowerOfTwo() {
+        assertEquals(8, new AccountLockManager(5, 100).getStripeCount());
+        assertEquals(8, new AccountLockManager(8, 100).getStripeCount());
+        assertEquals(1, new AccountLockManager(1, 100).getStripeCount());
+        assertThrows(IllegalArgumentException.class, () -> new AccountLockManager(0, 100));
+    }
+
+    @Test
+    public void timesOutWhileAnotherCallerHoldsTheStripe() throws Exception {
+        AccountLockManager locks = new AccountLockManager(4, 50);
+        UUID account = UUID.randomUUID();
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread holder = hold(locks, account, held, done);
+
+        held.await();
+        long start = System.nanoTime();
+        assertThrows(AccountLockTimeoutException.class, () -> locks.withLock(account, () -> "never"));
+        assertTrue(System.nanoTime() - start >= 50_000_000L);
+        done.countDown();
+        holder.join(10_000);
+
+        assertEquals(1, locks.getTotals().getTimeouts());
+        assertEquals(1, locks.getTotals().getContended());
+        assertEquals("ran", locks.withLock(account, () -> "ran"));
+    }
+
+    @Test
+    public void locksLowerStripeFirstWhicheverAccountComesFirst() throws Exception {
+        AccountLockManager locks = new AccountLockManager(16, 50);
+        UUID lower = UUID.randomUUID();
+        UUID upper = UUID.randomUUID();
+        while (locks.stripeIndex(upper) <= locks.stripeIndex(lower)) {
+            upper = UUID.randomUUID();
+        }
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread holder = hold(locks, lower, held, done);
+
+        held.await();
+        UUID first = upper;
+        assertThrows(AccountLockTimeoutException.class, () -> locks.withLocks(first, lower, () -> "never"));
+        done.countDown();
+        holder.join(10_000);
+
+        // Gave up on the lower stripe without ever trying the upper one
+        assertEquals(0, locks.getStripeStats().get(locks.stripeIndex(upper)).getAcquisitions());
+        assertEquals(2, locks.getStripeStats().get(locks.stripeIndex(lower)).getAcquisitions());
+    }
+
+    @Test
+    public void oppositeTransfersDoNotDeadlock() throws Exception {
+        AccountLockManager locks = new AccountLockManager(2, 5_000);
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        while (locks.stripeIndex(a) == locks.stripeIndex(b)) {
+            b = UUID.randomUUID();
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread forward = transfers(locks, a, b, failure);
+        Thread backward = transfers(locks, b, a, failure);
+        forward.join(30_000);
+        backward.join(30_000);
+
+        assertEquals(null, failure.get());
+        assertEquals(0, locks.getTotals().getTimeouts());
+    }
+
+    @Test
+    public void sameStripeIsLockedOnce() throws Exception {
+        AccountLockManager locks = new AccountLockManager(1, 50);
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        assertEquals(locks.stripeIndex(a), locks.stripeIndex(b));
+        assertEquals("ran", locks.withLocks(a, b, () -> "ran"));
+        assertEquals(1, locks.getTotals().getAcquisitions());
+    }
+
+    @Test
+    public void releasesStripesWhenTheOperationThrows() throws Exception {
+        AccountLockManager locks = new AccountLockManager(16, 50);
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        assertThrows(IllegalStateException.class, () -> locks.withLocks(a, b, () -> {
+            throw new IllegalStateException("failed");
+        }));
+
+        Thread other = new Thread(() -> {
+            try {
+                locks.withLocks(b, a, () -> "ran");
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        other.start();
+        other.join(10_000);
+        assertEquals(Thread.State.TERMINATED, other.getState());
+        assertEquals(0, locks.getTotals().getTimeouts());
+    }
+
+    private static Thread hold(AccountLockManager locks, UUID account, CountDownLatch held, CountDownLatch done) {
+        Thread thread = new Thread(() -> {
+            try {
+                locks.withLock(account, () -> {
+                    held.countDown();
+                    done.await();
+                    return null;
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static Thread transfers(AccountLockManager locks, UUID from, UUID to, AtomicReference<Throwable> failure) {
+        Thread thread = new Thread(() -> {
+            try {
+                for (int i = 0; i < 20_000; i++) {
+                    locks.withLocks(from, to, () -> null);
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,48 @@
+package com.nizar.atm.service.response;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.nizar.atm.model.Money;
+import org.junit.jupiter.api.Test;
+
+public class ResponseBuilderTest {
+
+    @Test
+    public void alignsColumnsAndPadsTwoDigitNumbers() {
+        String line = ResponseBuilder.start()
+                .append(2024).append('-').appendTwoDigits(3).append(' ').appendTwoDigits(11)
+                .append('|').appendLeft("DEBIT", 9)
+                .append('|').appendRight(42, 5)
+                .append('|').appendRight(Money.ofCents(-123_456), 12)
+                .append('|').appendLeft("TOO-LONG-FOR-IT", 9)
+                .append('|').appendRight(123_456, 3)
+                .build();
+
+        assertEquals("2024-03 11|DEBIT    |   42|    -1234.56|TOO-LONG-FOR-IT|123456", line);
+    }
+
+    @Test
+    public void formatsMoneyWithTwoDecimalPlaces() {
+        assertEquals("0.05 -0.50 12.00 -92233720368547758.08",
+                ResponseBuilder.start()
+                        .append(Money.ofCents(5)).append(' ')
+                        .append(Money.ofCents(-50)).append(' ')
+                        .append(Money.ofCents(1_200)).append(' ')
+                        .append(Money.ofCents(Long.MIN_VALUE))
+                        .build());
+    }
+
+    @Test
+    public void separatesLinesWithNewlinesAndStartsEmpty() {
+        assertEquals("a\nb", ResponseBuilder.start().append("a").newLine().append("b").build());
+        assertEquals("c", ResponseBuilder.start().append("c").build());
+    }
+
+    @Test
+    public void virtualThreadsBuildTheirOwnResponses() throws Exception {
+        String[] built = new String[1];
+        Thread.ofVirtual().start(() -> built[0] = ResponseBuilder.start().append("v").newLine().build()).join();
+
+        assertEquals("v\n", built[0]);
+    }
+}
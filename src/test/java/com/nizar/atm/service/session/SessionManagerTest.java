@@ -0,0 +1,27 @@
+package com.nizar.atm.service.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+public class SessionManagerTest {
+
+    @Test
+    public void closesOnlyIdleSessions() throws InterruptedException {
+        SessionManager sessionManager = new SessionManager();
+        Session idle = sessionManager.open();
+        Thread.sleep(50);
+        Session active = sessionManager.open();
+
+        assertEquals(0, sessionManager.closeIdle(Duration.ofHours(1)));
+        assertEquals(1, sessionManager.closeIdle(Duration.ofMillis(25)));
+
+        assertFalse(sessionManager.isOpen(idle));
+        assertTrue(sessionManager.isOpen(active));
+        assertEquals(1, sessionManager.getOpenSessionCount());
+    }
+}